@@ -0,0 +1,20 @@
+package net.sf.bitumen.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Primitive specialization of {@link IRowExtractor} that extracts a <tt>int</tt> from a row without boxing.
+ *
+ */
+public interface IIntRowExtractor {
+
+    /**
+     * Extract a <tt>int</tt> from the current row in {@link ResultSet}, without closing it or changing its state.
+     * @param  rs {@link ResultSet} instance
+     * @return    result of extracting a row
+     * @throws    SQLException thrown by operations related to {@link ResultSet} <tt>rs</tt>
+     */
+    int extract(ResultSet rs) throws SQLException;
+
+}
@@ -0,0 +1,25 @@
+package net.sf.bitumen.jdbc;
+
+import java.sql.Connection;
+
+/**
+ * JDBC batch write operations that bind parameters directly from rows, in addition to {@link IJdbcWrite}. Kept apart
+ * from {@link IJdbcWrite} so that existing implementations of it need not implement row binding.
+ *
+ */
+public interface IJdbcBatchWrite extends IJdbcWrite {
+
+    /**
+     * Execute a batch update (e.g. INSERT, UPDATE, DELETE etc.) SQL statement, binding the parameters of each batch
+     * entry directly from the corresponding row, and return the number of rows affected for each row. The same SQL
+     * statement is shared among all rows in the batch.
+     * @param  <T>    type of row
+     * @param  conn   a JDBC {@link Connection} to execute statement on
+     * @param  sql    SQL statement
+     * @param  rows   rows to bind parameters from, one batch entry per row
+     * @param  binder binds the parameters for a row
+     * @return        number of rows affected for each row in the batch
+     */
+    <T> int[] batchUpdate(Connection conn, String sql, Iterable<? extends T> rows, IParamBinder<T> binder);
+
+}
@@ -0,0 +1,53 @@
+package net.sf.bitumen.jdbc;
+
+import java.sql.Connection;
+import java.util.Map;
+
+/**
+ * JDBC read operations that stream the result rows through a lazy cursor, in addition to {@link IJdbcRead}. Kept
+ * apart from {@link IJdbcRead} so that existing implementations of it need not implement streaming.
+ *
+ */
+public interface IJdbcStreamingRead extends IJdbcRead {
+
+    /**
+     * Used to represent "driver default" for the <tt>fetchSize</tt> argument in methods in this interface.
+     */
+    int DEFAULT_FETCH_SIZE = 0;
+
+    /**
+     * Execute SQL query and return a lazy cursor over the result rows - each row is represented by a {@link Map} of
+     * column names to values. The query runs with a forward-only, read-only result set and the specified fetch size,
+     * so that rows are streamed from the database rather than loaded into memory all at once. The cursor must be
+     * closed unless it is iterated till the end.
+     * <p>
+     * Note that some drivers need extra settings to stream results, e.g. PostgreSQL honors fetch size only when
+     * auto-commit is turned off, and MySQL streams only when fetch size is {@link Integer#MIN_VALUE}.
+     * @param  conn      an active {@link java.sql.Connection} connection
+     * @param  sql       SQL statement
+     * @param  params    SQL statement parameters
+     * @param  fetchSize number of rows to fetch from the database at a time ({@link #DEFAULT_FETCH_SIZE} for driver
+     *                   default)
+     * @return           lazy cursor over the result rows
+     */
+    IRowCursor<Map<String, Object>> queryForCursor(Connection conn, String sql, Iterable<?> params, int fetchSize);
+
+    /**
+     * Execute SQL query and return a lazy cursor over the result rows, using a row-extractor to extract each row. The
+     * query runs with a forward-only, read-only result set and the specified fetch size, so that rows are streamed
+     * from the database rather than loaded into memory all at once. The cursor must be closed unless it is iterated
+     * till the end.
+     * @param  <T>       element type of the returned cursor
+     * @param  conn      an active {@link java.sql.Connection} connection
+     * @param  sql       SQL statement
+     * @param  params    SQL statement parameters
+     * @param  extractor row extractor that extracts each row as a cursor element
+     * @param  fetchSize number of rows to fetch from the database at a time ({@link #DEFAULT_FETCH_SIZE} for driver
+     *                   default)
+     * @return           lazy cursor over the extracted rows
+     * @see              #queryForCursor(Connection, String, Iterable, int)
+     */
+    <T> IRowCursor<T> queryForCursor(Connection conn, String sql, Iterable<?> params, IRowExtractor<T> extractor,
+            int fetchSize);
+
+}
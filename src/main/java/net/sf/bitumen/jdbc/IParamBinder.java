@@ -0,0 +1,22 @@
+package net.sf.bitumen.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Functional interface to bind the parameters of a {@link PreparedStatement} directly from a row object, i.e. without
+ * collecting the parameters into an intermediate list first. This is the write counterpart of {@link IRowExtractor}.
+ *
+ * @param  <T> type of row
+ */
+public interface IParamBinder<T> {
+
+    /**
+     * Set all parameters of the {@link PreparedStatement} from specified row.
+     * @param  pstmt {@link PreparedStatement} instance
+     * @param  row   row to bind parameters from
+     * @throws       SQLException thrown by operations related to {@link PreparedStatement} <tt>pstmt</tt>
+     */
+    void bind(PreparedStatement pstmt, T row) throws SQLException;
+
+}
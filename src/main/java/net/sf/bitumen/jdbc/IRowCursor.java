@@ -0,0 +1,34 @@
+package net.sf.bitumen.jdbc;
+
+import java.util.Iterator;
+
+/**
+ * Lazy, forward-only iterator over the rows of a query result. Rows are read from the database only as the cursor is
+ * advanced, so the memory used does not depend on the size of the result. The underlying JDBC resources are released
+ * automatically when the cursor is exhausted, or explicitly by calling {@link #close()} - callers that may abandon the
+ * iteration early must always close the cursor.
+ *
+ * @param <T> type of each extracted row
+ */
+public interface IRowCursor<T> extends Iterator<T>, AutoCloseable {
+
+    /**
+     * Return the number of rows read so far.
+     * @return number of rows read so far
+     */
+    long getRowCount();
+
+    /**
+     * Return <tt>true</tt> if the cursor is closed (exhausted or closed explicitly), <tt>false</tt> otherwise.
+     * @return whether the cursor is closed
+     */
+    boolean isClosed();
+
+    /**
+     * Release the underlying {@link java.sql.ResultSet} and {@link java.sql.PreparedStatement}. Calling this method
+     * more than once has no effect.
+     */
+    @Override
+    void close();
+
+}
@@ -0,0 +1,154 @@
+package net.sf.bitumen.jdbc.impl;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Type-specialized {@link IColumnReader} implementations. Readers are resolved once per result set (from
+ * {@link ResultSetMetaData}) or once per extractor (from the expected Java type), so that reading a cell involves
+ * neither reflection nor meta data lookups. Types without a specialized reader fall back to
+ * {@link JdbcUtil#getValue(ResultSet, int)}.
+ *
+ */
+public final class ColumnReaders {
+
+    /** Utility class, hence inaccessible private constructor. */
+    private ColumnReaders() {
+        // do nothing
+    }
+
+    /** Generic reader, see {@link JdbcUtil#getValue(ResultSet, int)}. */
+    public static final IColumnReader<Object> GENERIC = new IColumnReader<Object>() {
+        public Object read(final ResultSet rs, final int columnIndex) throws SQLException {
+            return JdbcUtil.getValue(rs, columnIndex);
+        }
+    };
+
+    /** Reader for {@link Long} values. */
+    public static final IColumnReader<Long> LONG = new IColumnReader<Long>() {
+        public Long read(final ResultSet rs, final int columnIndex) throws SQLException {
+            final long value = rs.getLong(columnIndex);
+            return value == 0 && rs.wasNull() ? null : Long.valueOf(value);
+        }
+    };
+
+    /** Reader for {@link Integer} values. */
+    public static final IColumnReader<Integer> INTEGER = new IColumnReader<Integer>() {
+        public Integer read(final ResultSet rs, final int columnIndex) throws SQLException {
+            final int value = rs.getInt(columnIndex);
+            return value == 0 && rs.wasNull() ? null : Integer.valueOf(value);
+        }
+    };
+
+    /** Reader for {@link Double} values. */
+    public static final IColumnReader<Double> DOUBLE = new IColumnReader<Double>() {
+        public Double read(final ResultSet rs, final int columnIndex) throws SQLException {
+            final double value = rs.getDouble(columnIndex);
+            return value == 0 && rs.wasNull() ? null : Double.valueOf(value);
+        }
+    };
+
+    /** Reader for {@link Boolean} values. */
+    public static final IColumnReader<Boolean> BOOLEAN = new IColumnReader<Boolean>() {
+        public Boolean read(final ResultSet rs, final int columnIndex) throws SQLException {
+            final boolean value = rs.getBoolean(columnIndex);
+            return !value && rs.wasNull() ? null : Boolean.valueOf(value);
+        }
+    };
+
+    /** Reader for {@link BigDecimal} values. */
+    public static final IColumnReader<BigDecimal> DECIMAL = new IColumnReader<BigDecimal>() {
+        public BigDecimal read(final ResultSet rs, final int columnIndex) throws SQLException {
+            return rs.getBigDecimal(columnIndex);
+        }
+    };
+
+    /** Reader for {@link String} values, also used for CLOB columns. */
+    public static final IColumnReader<String> STRING = new IColumnReader<String>() {
+        public String read(final ResultSet rs, final int columnIndex) throws SQLException {
+            return rs.getString(columnIndex);
+        }
+    };
+
+    /** Reader for byte array values, also used for BLOB columns. */
+    public static final IColumnReader<byte[]> BYTES = new IColumnReader<byte[]>() {
+        public byte[] read(final ResultSet rs, final int columnIndex) throws SQLException {
+            return rs.getBytes(columnIndex);
+        }
+    };
+
+    /** Reader for {@link Timestamp} values. */
+    public static final IColumnReader<Timestamp> TIMESTAMP = new IColumnReader<Timestamp>() {
+        public Timestamp read(final ResultSet rs, final int columnIndex) throws SQLException {
+            return rs.getTimestamp(columnIndex);
+        }
+    };
+
+    /** Specialized readers by Java class. */
+    private static final Map<Class<?>, IColumnReader<?>> BY_CLASS = new HashMap<Class<?>, IColumnReader<?>>();
+
+    /** Specialized readers by JDBC column class name, as reported by {@link ResultSetMetaData}. */
+    private static final Map<String, IColumnReader<?>> BY_CLASS_NAME = new HashMap<String, IColumnReader<?>>();
+
+    static {
+        BY_CLASS.put(Long.class, LONG);
+        BY_CLASS.put(Integer.class, INTEGER);
+        BY_CLASS.put(Double.class, DOUBLE);
+        BY_CLASS.put(Boolean.class, BOOLEAN);
+        BY_CLASS.put(BigDecimal.class, DECIMAL);
+        BY_CLASS.put(String.class, STRING);
+        BY_CLASS.put(byte[].class, BYTES);
+        BY_CLASS.put(Timestamp.class, TIMESTAMP);
+        for (Map.Entry<Class<?>, IColumnReader<?>> entry: BY_CLASS.entrySet()) {
+            BY_CLASS_NAME.put(entry.getKey().getName(), entry.getValue());
+        }
+        BY_CLASS_NAME.put("java.sql.Clob", STRING);
+        BY_CLASS_NAME.put("java.sql.NClob", STRING);
+        BY_CLASS_NAME.put("java.sql.Blob", BYTES);
+        BY_CLASS_NAME.put("oracle.sql.TIMESTAMP", TIMESTAMP);
+    }
+
+    /**
+     * Return a reader for specified Java type, falling back to {@link #GENERIC} (cast to the type) when there is no
+     * specialized reader.
+     * @param  <T>   column value type
+     * @param  clazz column value type
+     * @return       column reader
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> IColumnReader<T> forClass(final Class<T> clazz) {
+        final IColumnReader<?> reader = BY_CLASS.get(clazz);
+        if (reader != null) {
+            return (IColumnReader<T>) reader;
+        }
+        return new IColumnReader<T>() {
+            public T read(final ResultSet rs, final int columnIndex) throws SQLException {
+                return clazz.cast(JdbcUtil.getValue(rs, columnIndex));
+            }
+        };
+    }
+
+    /**
+     * Resolve a reader for every column in a result set based on its meta data. Columns of a type without a
+     * specialized reader get {@link #GENERIC}.
+     * @param  rsmd         {@link ResultSetMetaData} instance
+     * @return              array of column readers in column index order (element <tt>i</tt> is for column
+     *                      <tt>i + 1</tt>)
+     * @throws SQLException when {@link ResultSetMetaData} related operation throws exception
+     */
+    public static IColumnReader<?>[] forMetaData(final ResultSetMetaData rsmd) throws SQLException {
+        final int colCount = rsmd.getColumnCount();
+        final IColumnReader<?>[] readers = new IColumnReader<?>[colCount];
+        for (int i = 0; i < colCount; i++) {
+            final IColumnReader<?> reader = BY_CLASS_NAME.get(rsmd.getColumnClassName(i + 1));
+            readers[i] = reader == null ? GENERIC : reader;
+        }
+        return readers;
+    }
+
+}
@@ -11,16 +11,36 @@ import java.util.List;
 import java.util.Map;
 
 import net.sf.bitumen.jdbc.IJdbcRead;
+import net.sf.bitumen.jdbc.IJdbcStreamingRead;
 import net.sf.bitumen.jdbc.IResultSetExtractor;
+import net.sf.bitumen.jdbc.IRowCursor;
 import net.sf.bitumen.jdbc.IRowExtractor;
 import net.sf.bitumen.jdbc.JdbcException;
 import net.sf.bitumen.util.Util;
 
 /**
- * Default implementation of {@link IJdbcRead}.
+ * Default implementation of {@link IJdbcRead}, including the streaming operations of {@link IJdbcStreamingRead}.
  *
  */
-public class DefaultJdbcRead implements IJdbcRead {
+public class DefaultJdbcRead implements IJdbcStreamingRead {
+
+    /** Prepared statement cache, <tt>null</tt> when statements are not cached. */
+    private final PreparedStatementCache statementCache;
+
+    /**
+     * Construct instance that prepares a new statement for every query.
+     */
+    public DefaultJdbcRead() {
+        this(null);
+    }
+
+    /**
+     * Construct instance that reuses prepared statements via specified cache.
+     * @param  cache prepared statement cache, <tt>null</tt> to disable caching
+     */
+    public DefaultJdbcRead(final PreparedStatementCache cache) {
+        this.statementCache = cache;
+    }
 
     @Override
     public final List<Map<String, Object>> queryForList(final Connection conn, final String sql,
@@ -44,6 +64,8 @@ public class DefaultJdbcRead implements IJdbcRead {
 
     /**
      * Extract a list of rows (where every row is a map of column names to values) from specified {@link ResultSet}.
+     * Rows are represented as {@link RowMap} instances that share the column names and index, and column values are
+     * read using type-specialized readers resolved once from the result set meta data.
      * @param  rs                        {@link ResultSet} instance
      * @param  limit                     maximum row count to retrieve
      * @param  throwLimitExceedException whether throw exception when row count exceeds specified limit
@@ -54,11 +76,8 @@ public class DefaultJdbcRead implements IJdbcRead {
             final boolean throwLimitExceedException) throws SQLException {
         final List<Map<String, Object>> result = new ArrayList<Map<String, Object>>(1);
         final ResultSetMetaData rsmd = rs.getMetaData();
-        final int colCount = rsmd.getColumnCount();
-        final String[] colNames = new String[colCount];
-        for (int i = 0; i < colCount; i++) {
-            colNames[i] = rsmd.getColumnName(i + 1);
-        }
+        final RowMap.Columns columns = new RowMap.Columns(getColumnNames(rsmd));
+        final IColumnReader<?>[] readers = ColumnReaders.forMetaData(rsmd);
         if (limit >= 0) {
             for (long rowCount = 1; rs.next(); rowCount++) {
                 if (rowCount > limit) {
@@ -68,24 +87,70 @@ public class DefaultJdbcRead implements IJdbcRead {
                         break;
                     }
                 }
-                final Object[] vals = new Object[colCount];
-                for (int i = 0; i < colCount; i++) {
-                    vals[i] = JdbcUtil.getValue(rs, i + 1);
-                }
-                result.add(Util.zipmap(colNames, vals));
+                result.add(extractMap(rs, columns, readers));
             }
         } else {
             while (rs.next()) {
-                final Object[] vals = new Object[colCount];
-                for (int i = 0; i < colCount; i++) {
-                    vals[i] = JdbcUtil.getValue(rs, i + 1);
-                }
-                result.add(Util.zipmap(colNames, vals));
+                result.add(extractMap(rs, columns, readers));
             }
         }
         return result;
     }
 
+    /**
+     * Return the column names from specified {@link ResultSetMetaData}.
+     * @param  rsmd         {@link ResultSetMetaData} instance
+     * @return              array of column names in column index order
+     * @throws SQLException when {@link ResultSetMetaData} related operation throws exception
+     */
+    public static String[] getColumnNames(final ResultSetMetaData rsmd) throws SQLException {
+        final int colCount = rsmd.getColumnCount();
+        final String[] colNames = new String[colCount];
+        for (int i = 0; i < colCount; i++) {
+            colNames[i] = rsmd.getColumnName(i + 1);
+        }
+        return colNames;
+    }
+
+    /**
+     * Extract the current row in specified {@link ResultSet} as a map of column names to values.
+     * @param  rs           {@link ResultSet} instance
+     * @param  columns      shared column names and index
+     * @param  readers      column readers in column index order
+     * @return              map of column names to values
+     * @throws SQLException when {@link ResultSet} related operation throws exception
+     */
+    private static Map<String, Object> extractMap(final ResultSet rs, final RowMap.Columns columns,
+            final IColumnReader<?>[] readers) throws SQLException {
+        final int colCount = columns.getValueCount();
+        final Object[] vals = new Object[colCount];
+        for (int i = 0; i < colCount; i++) {
+            vals[i] = readers[i].read(rs, i + 1);
+        }
+        return new RowMap(columns, vals);
+    }
+
+    /**
+     * Create a row extractor that extracts each row as a map of column names to values. The column names and readers
+     * are resolved from the first row extracted and reused for subsequent rows, hence the returned extractor must not
+     * be shared across result sets.
+     * @return row extractor
+     */
+    public static IRowExtractor<Map<String, Object>> makeMapExtractor() {
+        return new IRowExtractor<Map<String, Object>>() {
+            private RowMap.Columns columns = null;
+            private IColumnReader<?>[] readers = null;
+            public Map<String, Object> extract(final ResultSet rs) throws SQLException {
+                if (columns == null) {
+                    final ResultSetMetaData rsmd = rs.getMetaData();
+                    columns = new RowMap.Columns(getColumnNames(rsmd));
+                    readers = ColumnReaders.forMetaData(rsmd);
+                }
+                return extractMap(rs, columns, readers);
+            }
+        };
+    }
+
     @Override
     public final <T> List<T> queryForList(final Connection conn, final String sql, final Iterable<?> params,
             final IRowExtractor<T> extractor) {
@@ -134,7 +199,7 @@ public class DefaultJdbcRead implements IJdbcRead {
             final IRowExtractor<K> keyExtractor, final IRowExtractor<V> valueExtractor, final long limit,
             final boolean throwLimitExceedException) {
         Util.echo("Query SQL: [%s], args: %s\n", sql, String.valueOf(params));
-        final PreparedStatement pstmt = JdbcUtil.prepareStatementWithParams(conn, sql, params);
+        final PreparedStatement pstmt = JdbcUtil.prepareStatementWithParams(statementCache, conn, sql, params, false);
         ResultSet rs = null;
         try {
             rs = pstmt.executeQuery();
@@ -160,7 +225,7 @@ public class DefaultJdbcRead implements IJdbcRead {
             throw new JdbcException(String.format("Unable to execute SQL statement: [%s]", sql), e);
         } finally {
             JdbcUtil.close(rs);
-            JdbcUtil.close(pstmt);
+            JdbcUtil.release(statementCache, conn, sql, false, pstmt);
         }
     }
 
@@ -168,7 +233,7 @@ public class DefaultJdbcRead implements IJdbcRead {
     public final <T> T queryCustom(final Connection conn, final String sql, final Iterable<?> params,
             final IResultSetExtractor<T> extractor) {
         Util.echo("Query SQL: [%s], args: %s\n", sql, String.valueOf(params));
-        final PreparedStatement pstmt = JdbcUtil.prepareStatementWithParams(conn, sql, params);
+        final PreparedStatement pstmt = JdbcUtil.prepareStatementWithParams(statementCache, conn, sql, params, false);
         ResultSet rs = null;
         try {
             rs = pstmt.executeQuery();
@@ -177,7 +242,27 @@ public class DefaultJdbcRead implements IJdbcRead {
             throw new JdbcException(String.format("Unable to execute SQL statement: [%s]", sql), e);
         } finally {
             JdbcUtil.close(rs);
+            JdbcUtil.release(statementCache, conn, sql, false, pstmt);
+        }
+    }
+
+    @Override
+    public final IRowCursor<Map<String, Object>> queryForCursor(final Connection conn, final String sql,
+            final Iterable<?> params, final int fetchSize) {
+        return queryForCursor(conn, sql, params, makeMapExtractor(), fetchSize);
+    }
+
+    @Override
+    public final <T> IRowCursor<T> queryForCursor(final Connection conn, final String sql, final Iterable<?> params,
+            final IRowExtractor<T> extractor, final int fetchSize) {
+        Util.echo("Query SQL: [%s], args: %s\n", sql, String.valueOf(params));
+        final PreparedStatement pstmt = JdbcUtil.prepareCursorStatement(conn, sql, fetchSize);
+        JdbcUtil.prepareParams(pstmt, params);
+        try {
+            return new ResultSetCursor<T>(pstmt, pstmt.executeQuery(), extractor, sql);
+        } catch (SQLException e) {
             JdbcUtil.close(pstmt);
+            throw new JdbcException(String.format("Unable to execute SQL statement: [%s]", sql), e);
         }
     }
 
@@ -5,47 +5,76 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
+import net.sf.bitumen.jdbc.IJdbcBatchWrite;
 import net.sf.bitumen.jdbc.IJdbcRead;
 import net.sf.bitumen.jdbc.IJdbcWrite;
+import net.sf.bitumen.jdbc.IParamBinder;
 import net.sf.bitumen.jdbc.JdbcException;
 import net.sf.bitumen.util.Util;
 
 /**
- * Default implementation of {@link IJdbcWrite}.
+ * Default implementation of {@link IJdbcWrite}, including the row-binding batch operations of
+ * {@link IJdbcBatchWrite}.
  *
  */
-public class DefaultJdbcWrite implements IJdbcWrite {
+public class DefaultJdbcWrite implements IJdbcBatchWrite {
+
+    /** Prepared statement cache, <tt>null</tt> when statements are not cached. */
+    private final PreparedStatementCache statementCache;
+
+    /**
+     * Construct instance that prepares a new statement for every update.
+     */
+    public DefaultJdbcWrite() {
+        this(null);
+    }
+
+    /**
+     * Construct instance that reuses prepared statements via specified cache.
+     * @param  cache prepared statement cache, <tt>null</tt> to disable caching
+     */
+    public DefaultJdbcWrite(final PreparedStatementCache cache) {
+        this.statementCache = cache;
+    }
 
     @Override
     public final GeneratedKeyHolder genkey(final Connection conn, final String sql, final Iterable<?> params) {
-        final PreparedStatement pstmt = JdbcUtil.prepareStatementWithParams(conn, sql, params, true);
-        try {
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            throw new JdbcException(String.format("Unable to execute SQL statement: [%s], args: %s",
-                    sql, String.valueOf(params)), e);
-        }
+        final PreparedStatement pstmt = JdbcUtil.prepareStatementWithParams(statementCache, conn, sql, params, true);
         try {
-            final ResultSet rs = pstmt.getGeneratedKeys();
-            return new GeneratedKeyHolder(DefaultJdbcRead.extractMaps(rs, IJdbcRead.NO_LIMIT,
-                    IJdbcRead.NO_LIMIT_EXCEED_EXCEPTION));
-        } catch (SQLException e) {
-            throw new JdbcException(String.format("Unable to extract gnerated keys for SQL statement: [%s], args: %s",
-                    sql, String.valueOf(params)), e);
+            try {
+                pstmt.executeUpdate();
+            } catch (SQLException e) {
+                throw new JdbcException(String.format("Unable to execute SQL statement: [%s], args: %s",
+                        sql, String.valueOf(params)), e);
+            }
+            ResultSet rs = null;
+            try {
+                rs = pstmt.getGeneratedKeys();
+                return new GeneratedKeyHolder(DefaultJdbcRead.extractMaps(rs, IJdbcRead.NO_LIMIT,
+                        IJdbcRead.NO_LIMIT_EXCEED_EXCEPTION));
+            } catch (SQLException e) {
+                throw new JdbcException(String.format(
+                        "Unable to extract gnerated keys for SQL statement: [%s], args: %s",
+                        sql, String.valueOf(params)), e);
+            } finally {
+                JdbcUtil.close(rs);
+            }
+        } finally {
+            JdbcUtil.release(statementCache, conn, sql, true, pstmt);
         }
     }
 
     @Override
     public final int update(final Connection conn, final String sql, final Iterable<?> params) {
         Util.echo("Update SQL: [%s], args: %s\n", sql, String.valueOf(params));
-        final PreparedStatement pstmt = JdbcUtil.prepareStatementWithParams(conn, sql, params);
+        final PreparedStatement pstmt = JdbcUtil.prepareStatementWithParams(statementCache, conn, sql, params, false);
         try {
             return pstmt.executeUpdate();
         } catch (SQLException e) {
             throw new JdbcException(String.format("Unable to execute SQL statement: [%s], args: %s",
                     sql, String.valueOf(params)), e);
         } finally {
-            JdbcUtil.close(pstmt);
+            JdbcUtil.release(statementCache, conn, sql, false, pstmt);
         }
     }
 
@@ -53,7 +82,7 @@ public class DefaultJdbcWrite implements IJdbcWrite {
     public final int[] batchUpdate(final Connection conn, final String sql,
             final Iterable<? extends Iterable<?>> paramsBatch) {
         Util.echo("Update SQL: [%s], args: %s\n", sql, String.valueOf(paramsBatch));
-        final PreparedStatement pstmt = JdbcUtil.prepareStatement(conn, sql);
+        final PreparedStatement pstmt = JdbcUtil.prepareStatement(statementCache, conn, sql, false);
         int batchSize = 0;
         for (final Iterable<?> params: paramsBatch) {
             batchSize++;
@@ -69,12 +98,17 @@ public class DefaultJdbcWrite implements IJdbcWrite {
         try {
             return pstmt.executeBatch();
         } catch (SQLException e) {
-            JdbcUtil.close(pstmt);
             throw new JdbcException(String.format("Unable to execute batch for SQL: [%s] (batch size = %d)",
                     sql, batchSize), e);
         } finally {
-            JdbcUtil.close(pstmt);
+            JdbcUtil.release(statementCache, conn, sql, false, pstmt);
         }
     }
 
+    @Override
+    public final <T> int[] batchUpdate(final Connection conn, final String sql, final Iterable<? extends T> rows,
+            final IParamBinder<T> binder) {
+        return JdbcUtil.batchUpdate(statementCache, conn, sql, rows, binder);
+    }
+
 }
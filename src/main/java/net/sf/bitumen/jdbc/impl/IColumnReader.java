@@ -0,0 +1,24 @@
+package net.sf.bitumen.jdbc.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Functional interface to read a column value from the current row in a {@link ResultSet}, typically using a
+ * type-specific getter resolved once per result set.
+ *
+ * @param <T> type of column value
+ * @see   ColumnReaders
+ */
+public interface IColumnReader<T> {
+
+    /**
+     * Read column value from the current row, returning <tt>null</tt> for SQL NULL.
+     * @param  rs           {@link ResultSet} instance
+     * @param  columnIndex  column index in {@link ResultSet} (1 based)
+     * @return              column value
+     * @throws SQLException when {@link ResultSet} related operation throws an exception
+     */
+    T read(ResultSet rs, int columnIndex) throws SQLException;
+
+}
@@ -0,0 +1,24 @@
+package net.sf.bitumen.jdbc.impl;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Functional interface to set a parameter of a {@link PreparedStatement}, typically using a type-specific setter
+ * resolved once per statement rather than per parameter.
+ *
+ * @param <T> type of parameter value
+ * @see   ParamSetters
+ */
+public interface IParamSetter<T> {
+
+    /**
+     * Set parameter value, binding SQL NULL for <tt>null</tt>.
+     * @param  pstmt        {@link PreparedStatement} instance
+     * @param  paramIndex   parameter index (1 based)
+     * @param  value        parameter value
+     * @throws SQLException when {@link PreparedStatement} related operation throws an exception
+     */
+    void set(PreparedStatement pstmt, int paramIndex, T value) throws SQLException;
+
+}
@@ -12,8 +12,18 @@ import java.util.Arrays;
 
 import javax.sql.DataSource;
 
+import net.sf.bitumen.jdbc.IDoubleRowExtractor;
+import net.sf.bitumen.jdbc.IIntRowExtractor;
+import net.sf.bitumen.jdbc.IJdbcBatchWrite;
+import net.sf.bitumen.jdbc.IJdbcRead;
+import net.sf.bitumen.jdbc.IJdbcWrite;
+import net.sf.bitumen.jdbc.ILongRowExtractor;
+import net.sf.bitumen.jdbc.IParamBinder;
+import net.sf.bitumen.jdbc.IResultSetExtractor;
 import net.sf.bitumen.jdbc.IRowExtractor;
 import net.sf.bitumen.jdbc.JdbcException;
+import net.sf.bitumen.util.LongList;
+import net.sf.bitumen.util.ObjectLongMap;
 import net.sf.bitumen.util.Util;
 
 /**
@@ -38,6 +48,21 @@ public final class JdbcUtil {
      * @return            activity result
      */
     public static <V> V withConnection(final DataSource dataSource, final IConnectionActivity<V> activity) {
+        return withConnection(dataSource, null, activity);
+    }
+
+    /**
+     * Get a {@link Connection} from specified {@link DataSource}, execute an activity with the connection and finally
+     * clean it up, evicting the cached statements of the connection if closing it closes the physical connection.
+     * @param  <V>        return type of the activity
+     * @param  dataSource JDBC {@link DataSource} instance
+     * @param  cache      prepared statement cache used by the activity, <tt>null</tt> if none
+     * @param  activity   activity to perform
+     * @return            activity result
+     * @see               #close(PreparedStatementCache, Connection)
+     */
+    public static <V> V withConnection(final DataSource dataSource, final PreparedStatementCache cache,
+            final IConnectionActivity<V> activity) {
         final Connection conn = getConnection(dataSource);
         try {
             final V result = activity.execute(conn);
@@ -64,7 +89,7 @@ public final class JdbcUtil {
             }
             throw e;
         } finally {
-            close(conn);
+            close(cache, conn);
         }
     }
 
@@ -113,6 +138,19 @@ public final class JdbcUtil {
      * @param  activity   activity to perform
      */
     public static void withConnectionNoResult(final DataSource dataSource, final IConnectionActivityNoResult activity) {
+        withConnectionNoResult(dataSource, null, activity);
+    }
+
+    /**
+     * Get a {@link Connection} from specified {@link DataSource}, execute an activity with the connection and finally
+     * clean it up, evicting the cached statements of the connection if closing it closes the physical connection.
+     * @param  dataSource JDBC {@link DataSource} instance
+     * @param  cache      prepared statement cache used by the activity, <tt>null</tt> if none
+     * @param  activity   activity to perform
+     * @see               #close(PreparedStatementCache, Connection)
+     */
+    public static void withConnectionNoResult(final DataSource dataSource, final PreparedStatementCache cache,
+            final IConnectionActivityNoResult activity) {
         final Connection conn = getConnection(dataSource);
         try {
             activity.execute(conn);
@@ -138,7 +176,7 @@ public final class JdbcUtil {
             }
             throw e;
         } finally {
-            close(conn);
+            close(cache, conn);
         }
     }
 
@@ -204,6 +242,189 @@ public final class JdbcUtil {
         };
     }
 
+    /**
+     * Create a row extractor that extracts just a column from every row in a {@link ResultSet}, using a reader
+     * specialized for the column type (e.g. {@link ResultSet#getLong(int)} for {@link Long}) instead of inspecting
+     * each value. Unlike {@link #makeColumnExtractor(Class, int)}, the column value is converted by the JDBC driver
+     * rather than cast.
+     * @param  <T>         type of the column value
+     * @param  columnClass type of the column value
+     * @param  columnIndex column index in {@link ResultSet} (1 based)
+     * @return             row extractor
+     * @see                ColumnReaders#forClass(Class)
+     */
+    public static <T> IRowExtractor<T> makeTypedColumnExtractor(final Class<T> columnClass, final int columnIndex) {
+        final IColumnReader<T> columnReader = ColumnReaders.forClass(columnClass);
+        return new IRowExtractor<T>() {
+            public T extract(final ResultSet rs) throws SQLException {
+                return columnReader.read(rs, columnIndex);
+            }
+        };
+    }
+
+    /**
+     * Create a primitive row extractor that extracts a <tt>long</tt> column from every row in a {@link ResultSet}.
+     * SQL NULL is extracted as 0.
+     * @param  columnIndex column index in {@link ResultSet} (1 based)
+     * @return             primitive row extractor
+     */
+    public static ILongRowExtractor makeLongColumnExtractor(final int columnIndex) {
+        return new ILongRowExtractor() {
+            public long extract(final ResultSet rs) throws SQLException {
+                return rs.getLong(columnIndex);
+            }
+        };
+    }
+
+    /**
+     * Create a primitive row extractor that extracts an <tt>int</tt> column from every row in a {@link ResultSet}.
+     * SQL NULL is extracted as 0.
+     * @param  columnIndex column index in {@link ResultSet} (1 based)
+     * @return             primitive row extractor
+     */
+    public static IIntRowExtractor makeIntColumnExtractor(final int columnIndex) {
+        return new IIntRowExtractor() {
+            public int extract(final ResultSet rs) throws SQLException {
+                return rs.getInt(columnIndex);
+            }
+        };
+    }
+
+    /**
+     * Create a primitive row extractor that extracts a <tt>double</tt> column from every row in a {@link ResultSet}.
+     * SQL NULL is extracted as 0.
+     * @param  columnIndex column index in {@link ResultSet} (1 based)
+     * @return             primitive row extractor
+     */
+    public static IDoubleRowExtractor makeDoubleColumnExtractor(final int columnIndex) {
+        return new IDoubleRowExtractor() {
+            public double extract(final ResultSet rs) throws SQLException {
+                return rs.getDouble(columnIndex);
+            }
+        };
+    }
+
+    /**
+     * Execute SQL query using specified reader and return result as a primitive list, using a primitive row-extractor
+     * to extract each row as a <tt>long</tt> without boxing. Works with any {@link IJdbcRead} implementation, as it
+     * relies only on {@link IJdbcRead#queryCustom(Connection, String, Iterable, IResultSetExtractor)}.
+     * @param  reader    JDBC reader
+     * @param  conn      an active {@link java.sql.Connection} connection
+     * @param  sql       SQL statement
+     * @param  params    SQL statement parameters
+     * @param  extractor primitive row extractor that extracts each row as a list item
+     * @return           {@link LongList} of extracted rows
+     */
+    public static LongList queryForLongList(final IJdbcRead reader, final Connection conn, final String sql,
+            final Iterable<?> params, final ILongRowExtractor extractor) {
+        return reader.queryCustom(conn, sql, params, new IResultSetExtractor<LongList>() {
+            public LongList extract(final ResultSet rs) {
+                final LongList result = new LongList();
+                try {
+                    while (rs.next()) {
+                        result.add(extractor.extract(rs));
+                    }
+                } catch (SQLException e) {
+                    throw new JdbcException(String.format("Unable to execute SQL statement: [%s]", sql), e);
+                }
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Execute SQL query using specified reader and return result as a primitive-valued map, using a key extractor and
+     * a primitive value extractor to extract each row as a pair of key and <tt>long</tt> value without boxing the
+     * value. Works with any {@link IJdbcRead} implementation, as it relies only on
+     * {@link IJdbcRead#queryCustom(Connection, String, Iterable, IResultSetExtractor)}.
+     * @param  <K>            key type of the returned map
+     * @param  reader         JDBC reader
+     * @param  conn           an active {@link java.sql.Connection} connection
+     * @param  sql            SQL statement
+     * @param  params         SQL statement parameters
+     * @param  keyExtractor   key extractor that extracts the key from a row - extracted key must be unique
+     * @param  valueExtractor primitive value extractor that extracts the value from a row
+     * @param  expectedSize   expected number of rows, used to size the map
+     * @return                {@link ObjectLongMap} of extracted key-value pairs
+     */
+    public static <K> ObjectLongMap<K> queryForLongMap(final IJdbcRead reader, final Connection conn,
+            final String sql, final Iterable<?> params, final IRowExtractor<K> keyExtractor,
+            final ILongRowExtractor valueExtractor, final int expectedSize) {
+        return reader.queryCustom(conn, sql, params, new IResultSetExtractor<ObjectLongMap<K>>() {
+            public ObjectLongMap<K> extract(final ResultSet rs) {
+                final ObjectLongMap<K> result = new ObjectLongMap<K>(expectedSize);
+                try {
+                    while (rs.next()) {
+                        result.put(keyExtractor.extract(rs), valueExtractor.extract(rs));
+                    }
+                } catch (SQLException e) {
+                    throw new JdbcException(String.format("Unable to execute SQL statement: [%s]", sql), e);
+                }
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Execute a batch update SQL statement using specified writer, binding the parameters of each batch entry directly
+     * from the corresponding row. Writers implementing {@link IJdbcBatchWrite} execute the batch themselves; for any
+     * other {@link IJdbcWrite} the batch is executed here on an uncached prepared statement.
+     * @param  <T>    type of row
+     * @param  writer JDBC writer
+     * @param  conn   a JDBC {@link Connection} to execute statement on
+     * @param  sql    SQL statement
+     * @param  rows   rows to bind parameters from, one batch entry per row
+     * @param  binder binds the parameters for a row
+     * @return        number of rows affected for each row in the batch
+     */
+    public static <T> int[] batchUpdate(final IJdbcWrite writer, final Connection conn, final String sql,
+            final Iterable<? extends T> rows, final IParamBinder<T> binder) {
+        if (writer instanceof IJdbcBatchWrite) {
+            return ((IJdbcBatchWrite) writer).batchUpdate(conn, sql, rows, binder);
+        }
+        return batchUpdate((PreparedStatementCache) null, conn, sql, rows, binder);
+    }
+
+    /**
+     * Execute a batch update SQL statement, binding the parameters of each batch entry directly from the corresponding
+     * row, on a statement prepared (and released) via specified cache.
+     * @param  <T>    type of row
+     * @param  cache  prepared statement cache, <tt>null</tt> to prepare a new statement
+     * @param  conn   a JDBC {@link Connection} to execute statement on
+     * @param  sql    SQL statement
+     * @param  rows   rows to bind parameters from, one batch entry per row
+     * @param  binder binds the parameters for a row
+     * @return        number of rows affected for each row in the batch
+     */
+    public static <T> int[] batchUpdate(final PreparedStatementCache cache, final Connection conn, final String sql,
+            final Iterable<? extends T> rows, final IParamBinder<T> binder) {
+        Util.echo("Update SQL: [%s], bound rows\n", sql);
+        final PreparedStatement pstmt = prepareStatement(cache, conn, sql, false);
+        int batchSize = 0;
+        for (final T row: rows) {
+            batchSize++;
+            try {
+                binder.bind(pstmt, row);
+                pstmt.addBatch();
+            } catch (SQLException e) {
+                close(pstmt);
+                throw new JdbcException(String.format("Unable to add batch arguments for SQL: [%s], row: %s",
+                        sql, String.valueOf(row)), e);
+            } catch (RuntimeException e) {
+                close(pstmt);
+                throw e;
+            }
+        }
+        try {
+            return pstmt.executeBatch();
+        } catch (SQLException e) {
+            throw new JdbcException(String.format("Unable to execute batch for SQL: [%s] (batch size = %d)",
+                    sql, batchSize), e);
+        } finally {
+            release(cache, conn, sql, false, pstmt);
+        }
+    }
+
     /**
      * Get column value from current row in a {@link ResultSet}.
      * @param  rs          {@link ResultSet instance}
@@ -313,6 +534,57 @@ public final class JdbcUtil {
         return pstmt;
     }
 
+    /**
+     * Obtain a {@link PreparedStatement} from specified cache (or create one if the cache is <tt>null</tt>) and set
+     * the specified parameters. The statement must be handed back with
+     * {@link #release(PreparedStatementCache, Connection, String, boolean, PreparedStatement)}.
+     * @param  cache               statement cache, may be <tt>null</tt>
+     * @param  conn                {@link Connection} object
+     * @param  sql                 SQL statement
+     * @param  params              SQL statement parameters
+     * @param  returnGeneratedkeys whether statement should return generated keys
+     * @return                     {@link PreparedStatement} instance
+     */
+    public static PreparedStatement prepareStatementWithParams(final PreparedStatementCache cache,
+            final Connection conn, final String sql, final Iterable<?> params, final boolean returnGeneratedkeys) {
+        final PreparedStatement pstmt = prepareStatement(cache, conn, sql, returnGeneratedkeys);
+        prepareParams(pstmt, params);
+        return pstmt;
+    }
+
+    /**
+     * Obtain a {@link PreparedStatement} from specified cache, or create one if the cache is <tt>null</tt>. The
+     * statement must be handed back with
+     * {@link #release(PreparedStatementCache, Connection, String, boolean, PreparedStatement)}.
+     * @param  cache               statement cache, may be <tt>null</tt>
+     * @param  conn                {@link Connection} object
+     * @param  sql                 SQL statement
+     * @param  returnGeneratedkeys whether statement should return generated keys
+     * @return                     {@link PreparedStatement} instance
+     */
+    public static PreparedStatement prepareStatement(final PreparedStatementCache cache, final Connection conn,
+            final String sql, final boolean returnGeneratedkeys) {
+        return cache == null ? prepareStatement(conn, sql, returnGeneratedkeys)
+                : cache.acquire(conn, sql, returnGeneratedkeys);
+    }
+
+    /**
+     * Hand back a {@link PreparedStatement} to specified cache for reuse, or close it if the cache is <tt>null</tt>.
+     * @param  cache               statement cache, may be <tt>null</tt>
+     * @param  conn                {@link Connection} object the statement belongs to
+     * @param  sql                 SQL statement
+     * @param  returnGeneratedkeys whether statement returns generated keys
+     * @param  pstmt               {@link PreparedStatement} instance
+     */
+    public static void release(final PreparedStatementCache cache, final Connection conn, final String sql,
+            final boolean returnGeneratedkeys, final PreparedStatement pstmt) {
+        if (cache == null) {
+            close(pstmt);
+        } else {
+            cache.release(conn, sql, returnGeneratedkeys, pstmt);
+        }
+    }
+
     /**
      * Simply create a {@link PreparedStatement} from {@link Connection} object and SQL statement.
      * @param  conn {@link Connection} object
@@ -343,6 +615,33 @@ public final class JdbcUtil {
         }
     }
 
+    /**
+     * Create a {@link PreparedStatement} suitable for streaming large results, i.e. with a forward-only, read-only
+     * result set and specified fetch size.
+     * @param  conn      {@link Connection} object
+     * @param  sql       SQL statement
+     * @param  fetchSize number of rows to fetch at a time, 0 for driver default
+     * @return           {@link PreparedStatement} instance
+     */
+    public static PreparedStatement prepareCursorStatement(final Connection conn, final String sql,
+            final int fetchSize) {
+        final PreparedStatement pstmt;
+        try {
+            pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        } catch (SQLException e) {
+            throw new JdbcException(String.format("Unable to prepare statement for SQL: [%s]", sql), e);
+        }
+        if (fetchSize != 0) {
+            try {
+                pstmt.setFetchSize(fetchSize);
+            } catch (SQLException e) {
+                close(pstmt);
+                throw new JdbcException(String.format("Unable to set fetch size %d for SQL: [%s]", fetchSize, sql), e);
+            }
+        }
+        return pstmt;
+    }
+
     /**
      * Given a {@link PreparedStatement}, set the specified parameters.
      * @param  pstmt  {@link PreparedStatement} instance
@@ -355,17 +654,7 @@ public final class JdbcUtil {
             try {
                 for (final Object param: params) {
                     lastParam = param;
-                    if (param instanceof Integer) {
-                        pstmt.setInt(i, (Integer) param);
-                    } else if (param instanceof Long) {
-                        pstmt.setLong(i, (Long) param);
-                    } else if (param instanceof String) {
-                        pstmt.setString(i, (String) param);
-                    } else if (param instanceof Timestamp) {
-                        pstmt.setTimestamp(i, (Timestamp) param);
-                    } else {
-                        pstmt.setObject(i, param);
-                    }
+                    setParam(pstmt, i, param);
                     i++;
                 }
             } catch (SQLException e) {
@@ -379,6 +668,28 @@ public final class JdbcUtil {
         }
     }
 
+    /**
+     * Set a parameter of a {@link PreparedStatement}, using the setter that matches the runtime type of the value.
+     * @param  pstmt        {@link PreparedStatement} instance
+     * @param  paramIndex   parameter index (1 based)
+     * @param  param        parameter value
+     * @throws SQLException when {@link PreparedStatement} related operation throws an exception
+     */
+    public static void setParam(final PreparedStatement pstmt, final int paramIndex, final Object param)
+            throws SQLException {
+        if (param instanceof Integer) {
+            pstmt.setInt(paramIndex, (Integer) param);
+        } else if (param instanceof Long) {
+            pstmt.setLong(paramIndex, (Long) param);
+        } else if (param instanceof String) {
+            pstmt.setString(paramIndex, (String) param);
+        } else if (param instanceof Timestamp) {
+            pstmt.setTimestamp(paramIndex, (Timestamp) param);
+        } else {
+            pstmt.setObject(paramIndex, param);
+        }
+    }
+
     /**
      * Close a {@link ResultSet}.
      * @param  rs {@link ResultSet} instance
@@ -424,6 +735,20 @@ public final class JdbcUtil {
         }
     }
 
+    /**
+     * Close a {@link Connection}, first evicting its statements from specified cache if closing it closes the physical
+     * connection. Closing a pooled connection wrapper keeps the statements, as they remain usable on the next checkout
+     * of the same physical connection.
+     * @param  cache statement cache, may be <tt>null</tt>
+     * @param  conn  {@link Connection} instance
+     */
+    public static void close(final PreparedStatementCache cache, final Connection conn) {
+        if (cache != null && conn != null && cache.isPhysical(conn)) {
+            cache.evict(conn);
+        }
+        close(conn);
+    }
+
     /**
      * Return SQL statement parameter placeholder string for specified number of parameters.
      * @param  count number of parameters
@@ -0,0 +1,97 @@
+package net.sf.bitumen.jdbc.impl;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Type-specialized {@link IParamSetter} implementations, the write counterpart of {@link ColumnReaders}. Setters are
+ * resolved once from the expected Java type, so that setting a parameter involves no <tt>instanceof</tt> checks.
+ * Types without a specialized setter fall back to {@link JdbcUtil#setParam(PreparedStatement, int, Object)}.
+ *
+ */
+public final class ParamSetters {
+
+    /** Utility class, hence inaccessible private constructor. */
+    private ParamSetters() {
+        // do nothing
+    }
+
+    /** Generic setter, see {@link JdbcUtil#setParam(PreparedStatement, int, Object)}. */
+    public static final IParamSetter<Object> GENERIC = new IParamSetter<Object>() {
+        public void set(final PreparedStatement pstmt, final int paramIndex, final Object value) throws SQLException {
+            JdbcUtil.setParam(pstmt, paramIndex, value);
+        }
+    };
+
+    /** Setter for {@link Long} values. */
+    public static final IParamSetter<Long> LONG = new IParamSetter<Long>() {
+        public void set(final PreparedStatement pstmt, final int paramIndex, final Long value) throws SQLException {
+            if (value == null) {
+                pstmt.setObject(paramIndex, null);
+            } else {
+                pstmt.setLong(paramIndex, value);
+            }
+        }
+    };
+
+    /** Setter for {@link Integer} values. */
+    public static final IParamSetter<Integer> INTEGER = new IParamSetter<Integer>() {
+        public void set(final PreparedStatement pstmt, final int paramIndex, final Integer value)
+                throws SQLException {
+            if (value == null) {
+                pstmt.setObject(paramIndex, null);
+            } else {
+                pstmt.setInt(paramIndex, value);
+            }
+        }
+    };
+
+    /** Setter for {@link String} values. */
+    public static final IParamSetter<String> STRING = new IParamSetter<String>() {
+        public void set(final PreparedStatement pstmt, final int paramIndex, final String value) throws SQLException {
+            pstmt.setString(paramIndex, value);
+        }
+    };
+
+    /** Setter for byte array values, also used for BLOB/BYTEA columns. */
+    public static final IParamSetter<byte[]> BYTES = new IParamSetter<byte[]>() {
+        public void set(final PreparedStatement pstmt, final int paramIndex, final byte[] value) throws SQLException {
+            pstmt.setBytes(paramIndex, value);
+        }
+    };
+
+    /** Setter for {@link Timestamp} values. */
+    public static final IParamSetter<Timestamp> TIMESTAMP = new IParamSetter<Timestamp>() {
+        public void set(final PreparedStatement pstmt, final int paramIndex, final Timestamp value)
+                throws SQLException {
+            pstmt.setTimestamp(paramIndex, value);
+        }
+    };
+
+    /** Specialized setters by Java class. */
+    private static final Map<Class<?>, IParamSetter<?>> BY_CLASS = new HashMap<Class<?>, IParamSetter<?>>();
+
+    static {
+        BY_CLASS.put(Long.class, LONG);
+        BY_CLASS.put(Integer.class, INTEGER);
+        BY_CLASS.put(String.class, STRING);
+        BY_CLASS.put(byte[].class, BYTES);
+        BY_CLASS.put(Timestamp.class, TIMESTAMP);
+    }
+
+    /**
+     * Return a setter for specified Java type, falling back to {@link #GENERIC} when there is no specialized setter.
+     * @param  <T>   parameter value type
+     * @param  clazz parameter value type, <tt>null</tt> if unknown
+     * @return       parameter setter
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> IParamSetter<T> forClass(final Class<T> clazz) {
+        final IParamSetter<?> setter = clazz == null ? null : BY_CLASS.get(clazz);
+        return (IParamSetter<T>) (setter != null ? setter : GENERIC);
+    }
+
+}
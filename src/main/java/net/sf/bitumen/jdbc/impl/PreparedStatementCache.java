@@ -0,0 +1,341 @@
+package net.sf.bitumen.jdbc.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.bitumen.util.Util;
+
+/**
+ * Bounded LRU cache of {@link PreparedStatement} instances, keyed by physical connection (identity), SQL statement
+ * and whether the statement returns generated keys. A statement is checked out of the cache by
+ * {@link #acquire(Connection, String, boolean)} and checked back in (after clearing its parameters) by
+ * {@link #release(Connection, String, boolean, PreparedStatement)} instead of being closed, so that a statement is
+ * never shared by two concurrent users.
+ * <p>
+ * Connections handed out by a pool are usually proxy wrappers that differ on every checkout, and that close their
+ * statements when closed. Hence the physical connection is obtained via {@link Connection#unwrap(Class)} and the
+ * statements are prepared on, and cached for, the physical connection - so they are reused across checkouts of the
+ * same pooled connection. Drivers and pools that do not unwrap to another connection are keyed on the connection
+ * as-is.
+ * <p>
+ * Statements are closed when evicted, or when {@link #evict(Connection)} is called before closing the connection
+ * ({@link JdbcUtil#close(PreparedStatementCache, Connection)} does that when closing the physical connection).
+ * Statements found closed (e.g. because their connection was closed) are discarded on lookup, and statements of
+ * closed connections are periodically purged so that the cache does not keep dead connections reachable.
+ *
+ */
+public class PreparedStatementCache {
+
+    /** Default maximum number of cached statements. */
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    /**
+     * Cache key - physical connection is compared by identity.
+     */
+    private static final class StatementKey {
+
+        /** The physical connection. */
+        private final Connection conn;
+
+        /** The SQL statement. */
+        private final String sql;
+
+        /** Whether the statement returns generated keys. */
+        private final boolean returnGeneratedKeys;
+
+        /** Pre-computed hash code. */
+        private final int hash;
+
+        /**
+         * Construct instance from required arguments.
+         * @param  connection       the physical connection
+         * @param  sqlStatement     the SQL statement
+         * @param  genkeys          whether the statement returns generated keys
+         */
+        StatementKey(final Connection connection, final String sqlStatement, final boolean genkeys) {
+            this.conn = connection;
+            this.sql = sqlStatement;
+            this.returnGeneratedKeys = genkeys;
+            this.hash = (System.identityHashCode(connection) * 31 + sqlStatement.hashCode()) * 31 + (genkeys ? 1 : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof StatementKey)) {
+                return false;
+            }
+            final StatementKey that = (StatementKey) obj;
+            return conn == that.conn && returnGeneratedKeys == that.returnGeneratedKeys && sql.equals(that.sql);
+        }
+    }
+
+    /** Maximum number of cached statements. */
+    private final int maxSize;
+
+    /** Cached statements in access order. Guarded by <tt>this</tt>. */
+    private final LinkedHashMap<StatementKey, PreparedStatement> cache;
+
+    /** Statistics counters. */
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong();
+
+    /** Number of misses since statements of closed connections were last purged. */
+    private final AtomicLong missesSincePurge = new AtomicLong();
+
+    /**
+     * Construct instance with {@link #DEFAULT_MAX_SIZE}.
+     */
+    public PreparedStatementCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Construct instance with specified maximum size.
+     * @param  maxCacheSize maximum number of cached statements across all connections
+     */
+    public PreparedStatementCache(final int maxCacheSize) {
+        if (maxCacheSize < 1) {
+            throw new IllegalArgumentException("Expected max cache size to be positive, found: " + maxCacheSize);
+        }
+        this.maxSize = maxCacheSize;
+        this.cache = new LinkedHashMap<StatementKey, PreparedStatement>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<StatementKey, PreparedStatement> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    JdbcUtil.close(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Check out a cached statement for specified connection and SQL, or prepare a new one if none is cached.
+     * @param  conn                {@link Connection} object
+     * @param  sql                 SQL statement
+     * @param  returnGeneratedKeys whether statement should return generated keys
+     * @return                     {@link PreparedStatement} instance, to be returned with
+     *                             {@link #release(Connection, String, boolean, PreparedStatement)}
+     */
+    public final PreparedStatement acquire(final Connection conn, final String sql, final boolean returnGeneratedKeys) {
+        final Connection physical = physicalConnection(conn);
+        final PreparedStatement cached;
+        synchronized (this) {
+            cached = cache.remove(new StatementKey(physical, sql, returnGeneratedKeys));
+        }
+        if (cached != null && !isClosed(cached)) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        if (missesSincePurge.incrementAndGet() >= maxSize) {
+            missesSincePurge.set(0);
+            purgeClosed();
+        }
+        return JdbcUtil.prepareStatement(physical, sql, returnGeneratedKeys);
+    }
+
+    /**
+     * Check in a statement obtained via {@link #acquire(Connection, String, boolean)}. The statement parameters and
+     * batch are cleared before caching; a statement that cannot be cleared, or that duplicates an already cached one,
+     * is closed instead.
+     * @param  conn                {@link Connection} object the statement belongs to
+     * @param  sql                 SQL statement
+     * @param  returnGeneratedKeys whether statement returns generated keys
+     * @param  pstmt               statement to check in
+     */
+    public final void release(final Connection conn, final String sql, final boolean returnGeneratedKeys,
+            final PreparedStatement pstmt) {
+        try {
+            pstmt.clearParameters();
+            pstmt.clearBatch();
+        } catch (SQLException e) {
+            JdbcUtil.close(pstmt);
+            return;
+        }
+        final PreparedStatement previous;
+        synchronized (this) {
+            previous = cache.put(new StatementKey(physicalConnection(conn), sql, returnGeneratedKeys), pstmt);
+        }
+        if (previous != null && previous != pstmt) {
+            JdbcUtil.close(previous);
+        }
+    }
+
+    /**
+     * Close and remove all cached statements for the physical connection of specified connection. Call this before
+     * closing the physical connection.
+     * @param  conn {@link Connection} object
+     */
+    public final void evict(final Connection conn) {
+        evict(Collections.singleton(physicalConnection(conn)));
+    }
+
+    /**
+     * Close and remove all cached statements for specified physical connections.
+     * @param  physicals physical connections
+     */
+    private void evict(final Set<Connection> physicals) {
+        final List<PreparedStatement> evicted = new ArrayList<PreparedStatement>();
+        synchronized (this) {
+            final Iterator<Map.Entry<StatementKey, PreparedStatement>> iter = cache.entrySet().iterator();
+            while (iter.hasNext()) {
+                final Map.Entry<StatementKey, PreparedStatement> entry = iter.next();
+                if (physicals.contains(entry.getKey().conn)) {
+                    evicted.add(entry.getValue());
+                    iter.remove();
+                }
+            }
+        }
+        for (PreparedStatement each: evicted) {
+            JdbcUtil.close(each);
+        }
+    }
+
+    /**
+     * Close and remove all cached statements of physical connections that are closed.
+     */
+    public final void purgeClosed() {
+        final Set<Connection> physicals = Collections.newSetFromMap(new IdentityHashMap<Connection, Boolean>());
+        synchronized (this) {
+            for (StatementKey each: cache.keySet()) {
+                physicals.add(each.conn);
+            }
+        }
+        final Iterator<Connection> iter = physicals.iterator();
+        while (iter.hasNext()) {
+            if (!isClosed(iter.next())) {
+                iter.remove();
+            }
+        }
+        if (!physicals.isEmpty()) {
+            evict(physicals);
+        }
+    }
+
+    /**
+     * Return whether closing specified connection closes its physical connection, i.e. it is not a pooled wrapper.
+     * @param  conn {@link Connection} object
+     * @return      <tt>true</tt> if the connection is the physical connection, <tt>false</tt> otherwise
+     */
+    public final boolean isPhysical(final Connection conn) {
+        return physicalConnection(conn) == conn;
+    }
+
+    /**
+     * Return the physical connection of specified connection, i.e. the innermost connection it unwraps to.
+     * @param  conn {@link Connection} object
+     * @return      physical connection, or <tt>conn</tt> itself if it does not unwrap to another connection
+     */
+    private static Connection physicalConnection(final Connection conn) {
+        Connection current = conn;
+        try {
+            Connection unwrapped = current.unwrap(Connection.class);
+            while (unwrapped != null && unwrapped != current) {
+                current = unwrapped;
+                unwrapped = current.unwrap(Connection.class);
+            }
+        } catch (SQLException e) {
+            Util.echo("Connection %s does not unwrap further\n", current);
+        }
+        return current;
+    }
+
+    /**
+     * Close and remove all cached statements.
+     */
+    public final void clear() {
+        final List<PreparedStatement> evicted;
+        synchronized (this) {
+            evicted = new ArrayList<PreparedStatement>(cache.values());
+            cache.clear();
+        }
+        for (PreparedStatement each: evicted) {
+            JdbcUtil.close(each);
+        }
+    }
+
+    /**
+     * Return <tt>true</tt> if specified connection is closed or its state cannot be determined.
+     * @param  conn connection
+     * @return      whether connection is unusable
+     */
+    private static boolean isClosed(final Connection conn) {
+        try {
+            return conn.isClosed();
+        } catch (SQLException e) {
+            Util.swallow(e);
+            return true;
+        }
+    }
+
+    /**
+     * Return <tt>true</tt> if specified statement is closed or its state cannot be determined.
+     * @param  pstmt statement
+     * @return       whether statement is unusable
+     */
+    private static boolean isClosed(final PreparedStatement pstmt) {
+        try {
+            return pstmt.isClosed();
+        } catch (SQLException e) {
+            Util.swallow(e);
+            return true;
+        }
+    }
+
+    /**
+     * Return number of statements currently cached.
+     * @return number of statements currently cached
+     */
+    public final synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * Return number of times a cached statement was reused.
+     * @return cache hit count
+     */
+    public final long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Return number of times a new statement had to be prepared.
+     * @return cache miss count
+     */
+    public final long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Return number of statements closed due to the cache exceeding its maximum size.
+     * @return cache eviction count
+     */
+    public final long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public final String toString() {
+        return String.format("maxSize=%d, size=%d, hits=%d, misses=%d, evictions=%d",
+                maxSize, size(), getHitCount(), getMissCount(), getEvictionCount());
+    }
+
+}
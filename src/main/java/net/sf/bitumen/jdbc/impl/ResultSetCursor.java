@@ -0,0 +1,122 @@
+package net.sf.bitumen.jdbc.impl;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+
+import net.sf.bitumen.jdbc.IRowCursor;
+import net.sf.bitumen.jdbc.IRowExtractor;
+import net.sf.bitumen.jdbc.JdbcException;
+
+/**
+ * Default implementation of {@link IRowCursor} that reads rows from an open {@link ResultSet} on demand. The cursor
+ * owns the {@link ResultSet} and the {@link PreparedStatement}, and closes both when exhausted or closed. Instances
+ * are not thread-safe.
+ *
+ * @param <T> type of each extracted row
+ */
+public class ResultSetCursor<T> implements IRowCursor<T> {
+
+    /** Statement that produced the result set. */
+    private final PreparedStatement pstmt;
+
+    /** Result set to read rows from. */
+    private final ResultSet rs;
+
+    /** Row extractor. */
+    private final IRowExtractor<T> extractor;
+
+    /** SQL statement, used for error messages. */
+    private final String sql;
+
+    /** Whether the result set is positioned at a row that has not been returned yet. */
+    private boolean pending = false;
+
+    /** Whether the cursor is closed. */
+    private boolean closed = false;
+
+    /** Number of rows read so far. */
+    private long rowCount = 0;
+
+    /**
+     * Construct instance from required arguments.
+     * @param  statement    statement that produced the result set
+     * @param  resultSet    result set to read rows from
+     * @param  rowExtractor row extractor
+     * @param  sqlStatement SQL statement, used for error messages
+     */
+    public ResultSetCursor(final PreparedStatement statement, final ResultSet resultSet,
+            final IRowExtractor<T> rowExtractor, final String sqlStatement) {
+        this.pstmt = statement;
+        this.rs = resultSet;
+        this.extractor = rowExtractor;
+        this.sql = sqlStatement;
+    }
+
+    @Override
+    public final boolean hasNext() {
+        if (pending) {
+            return true;
+        }
+        if (closed) {
+            return false;
+        }
+        try {
+            pending = rs.next();
+        } catch (SQLException e) {
+            close();
+            throw new JdbcException(String.format("Unable to read next row for SQL: [%s]", sql), e);
+        }
+        if (!pending) {
+            close();
+        }
+        return pending;
+    }
+
+    @Override
+    public final T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more rows in cursor");
+        }
+        pending = false;
+        try {
+            final T row = extractor.extract(rs);
+            rowCount++;
+            return row;
+        } catch (SQLException e) {
+            close();
+            throw new JdbcException(String.format("Unable to extract row for SQL: [%s]", sql), e);
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public final void remove() {
+        throw new UnsupportedOperationException("Cursor is read-only");
+    }
+
+    @Override
+    public final long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public final boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public final void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pending = false;
+        JdbcUtil.close(rs);
+        JdbcUtil.close(pstmt);
+    }
+
+}
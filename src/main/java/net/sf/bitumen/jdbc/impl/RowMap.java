@@ -0,0 +1,234 @@
+package net.sf.bitumen.jdbc.impl;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Compact {@link Map} of column names to values representing a result row. All rows of a result share one
+ * {@link Columns} instance (column names and their pre-computed index), so that each row only holds an array of
+ * values. Iteration follows the column order. Values of existing columns are replaced in place; adding or removing a
+ * column (or clearing the row) first copies the row into a {@link LinkedHashMap} that backs it from then on, so the
+ * row stays fully mutable like the rows returned by earlier versions.
+ *
+ */
+public final class RowMap extends AbstractMap<String, Object> implements Serializable {
+
+    /** Class version; {@link Serializable} requires it. */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Column names and their index, shared by all rows of a result. When a column name is repeated, the value of the
+     * last such column is visible under that name (same as putting the values into a map in column order).
+     */
+    public static final class Columns implements Serializable {
+
+        /** Class version; {@link Serializable} requires it. */
+        private static final long serialVersionUID = 1L;
+
+        /** Unique column names in the order of first occurrence. */
+        private final String[] names;
+
+        /** Value array position for each unique column name. */
+        private final int[] positions;
+
+        /** Column name to value array position. */
+        private final Map<String, Integer> index;
+
+        /** Number of values in each row, i.e. total column count. */
+        private final int valueCount;
+
+        /**
+         * Construct instance from column names in column index order.
+         * @param  colNames column names in column index order
+         */
+        public Columns(final String[] colNames) {
+            this.valueCount = colNames.length;
+            this.index = new HashMap<String, Integer>(colNames.length * 2);
+            for (int i = 0; i < colNames.length; i++) {
+                index.put(colNames[i], i);
+            }
+            final Set<String> seen = new HashSet<String>(colNames.length * 2);
+            this.names = new String[index.size()];
+            this.positions = new int[index.size()];
+            int j = 0;
+            for (int i = 0; i < colNames.length; i++) {
+                if (seen.add(colNames[i])) {
+                    names[j] = colNames[i];
+                    positions[j] = index.get(colNames[i]);
+                    j++;
+                }
+            }
+        }
+
+        /**
+         * Return the number of values each row must hold, i.e. the total column count.
+         * @return total column count
+         */
+        public int getValueCount() {
+            return valueCount;
+        }
+
+    }
+
+    /** Shared column index. */
+    private final Columns columns;
+
+    /** Row values in column index order. */
+    private final Object[] values;
+
+    /** Copy of the row backing it once a column is added or removed, <tt>null</tt> until then. */
+    private Map<String, Object> detached = null;
+
+    /** Lazily created entry set view. */
+    private transient Set<Map.Entry<String, Object>> entrySet = null;
+
+    /**
+     * Construct instance from shared columns and row values.
+     * @param  rowColumns shared column index
+     * @param  rowValues  row values in column index order, owned by this map from now on
+     */
+    public RowMap(final Columns rowColumns, final Object[] rowValues) {
+        if (rowValues.length != rowColumns.valueCount) {
+            throw new IllegalArgumentException(String.format("Expected %d values, found %d",
+                    rowColumns.valueCount, rowValues.length));
+        }
+        this.columns = rowColumns;
+        this.values = rowValues;
+    }
+
+    /**
+     * Copy the row into a {@link LinkedHashMap} that backs it from now on, unless already done.
+     * @return the copy backing the row
+     */
+    private Map<String, Object> detach() {
+        if (detached == null) {
+            final Map<String, Object> copy = new LinkedHashMap<String, Object>(columns.names.length * 2);
+            for (int i = 0; i < columns.names.length; i++) {
+                copy.put(columns.names[i], values[columns.positions[i]]);
+            }
+            detached = copy;
+        }
+        return detached;
+    }
+
+    @Override
+    public int size() {
+        return detached == null ? columns.names.length : detached.size();
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return detached == null ? columns.index.containsKey(key) : detached.containsKey(key);
+    }
+
+    @Override
+    public Object get(final Object key) {
+        if (detached != null) {
+            return detached.get(key);
+        }
+        final Integer pos = columns.index.get(key);
+        return pos == null ? null : values[pos];
+    }
+
+    @Override
+    public Object put(final String key, final Object value) {
+        final Integer pos = detached == null ? columns.index.get(key) : null;
+        if (pos == null) {
+            return detach().put(key, value);
+        }
+        final Object old = values[pos];
+        values[pos] = value;
+        return old;
+    }
+
+    @Override
+    public Object remove(final Object key) {
+        if (detached == null && !columns.index.containsKey(key)) {
+            return null;
+        }
+        return detach().remove(key);
+    }
+
+    @Override
+    public void clear() {
+        detach().clear();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, Object>>() {
+                @Override
+                public int size() {
+                    return RowMap.this.size();
+                }
+                @Override
+                public Iterator<Map.Entry<String, Object>> iterator() {
+                    return detached == null ? new EntryIterator() : detached.entrySet().iterator();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * Iterator over the row entries in column order. Removing an entry detaches the row, and the iteration continues
+     * over the copy backing it.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+
+        /** Position of the next entry among unique names. */
+        private int next = 0;
+
+        /** Iterator over the copy backing the row once an entry is removed, <tt>null</tt> until then. */
+        private Iterator<Map.Entry<String, Object>> delegate = null;
+
+        @Override
+        public boolean hasNext() {
+            return delegate == null ? next < columns.names.length : delegate.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (delegate != null) {
+                return delegate.next();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final int i = next++;
+            return new AbstractMap.SimpleEntry<String, Object>(columns.names[i], values[columns.positions[i]]) {
+                private static final long serialVersionUID = 1L;
+                @Override
+                public Object setValue(final Object value) {
+                    put(getKey(), value);
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (delegate == null) {
+                if (next == 0) {
+                    throw new IllegalStateException("Expected next() to be called before remove()");
+                }
+                delegate = detach().entrySet().iterator();
+                for (int i = 0; i < next; i++) {
+                    delegate.next();
+                }
+            }
+            delegate.remove();
+        }
+
+    }
+
+}
@@ -0,0 +1,99 @@
+package net.sf.bitumen.jdbc.kv;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Asynchronous read operations for key-value store. Every operation runs in the background on a connection of its own
+ * and returns a {@link Future} result, which may be cancelled. See {@link IKeyvalRead} for the semantics of each
+ * operation.
+ *
+ * @param  <K> key type
+ * @param  <V> value type
+ */
+public interface IAsyncKeyvalRead<K, V> {
+
+    // ---- contains ----
+
+    /**
+     * Find specified key in the store and return the current version, see {@link IKeyvalRead#contains}.
+     * @param  key key to find
+     * @return     future current version of the value (<tt>null</tt> if not found)
+     */
+    Future<Long> contains(K key);
+
+    /**
+     * Find specified keys in the store and return the current versions, see {@link IKeyvalRead#batchContains}.
+     * @param  keys keys to find
+     * @return      future current versions of the values (<tt>null</tt> if not found)
+     */
+    Future<List<Long>> batchContains(List<K> keys);
+
+    // ---- containsVersion (requires old version) ----
+
+    /**
+     * Return whether specified key has specified version in the store, see {@link IKeyvalRead#containsVersion}.
+     * @param  key     key to find
+     * @param  version version to match
+     * @return         future match result
+     */
+    Future<Boolean> containsVersion(K key, long version);
+
+    /**
+     * Match specified keys and versions in store, see {@link IKeyvalRead#batchContainsVersion}.
+     * @param  keyVersions keys and versions to match
+     * @return             future map of keys to corresponding match result
+     */
+    Future<Map<K, Boolean>> batchContainsVersion(Map<K, Long> keyVersions);
+
+    // ---- read ----
+
+    /**
+     * Find specified key in store and return corresponding value, see {@link IKeyvalRead#read}.
+     * @param  key key to find
+     * @return     future current value, <tt>null</tt> if key not found
+     */
+    Future<V> read(K key);
+
+    /**
+     * Find specified keys in store and return corresponding values, see {@link IKeyvalRead#batchRead}.
+     * @param  keys keys to find
+     * @return      future current values
+     */
+    Future<Map<K, V>> batchRead(List<K> keys);
+
+    // ---- readVersion (requires old version) ----
+
+    /**
+     * Find specified key and version in store and return the value, see {@link IKeyvalRead#readForVersion}.
+     * @param  key     key to find
+     * @param  version version to match
+     * @return         future current value if there's a key/version match, <tt>null</tt> otherwise
+     */
+    Future<V> readForVersion(K key, long version);
+
+    /**
+     * Find specified keys and versions in store and return the values, see {@link IKeyvalRead#batchReadForVersion}.
+     * @param  keyVersions map of keys and versions
+     * @return             future current values when there's key/version match
+     */
+    Future<Map<K, V>> batchReadForVersion(Map<K, Long> keyVersions);
+
+    // ---- readAll ----
+
+    /**
+     * Find specified key in store and return value and version tuple, see {@link IKeyvalRead#readAll}.
+     * @param  key key to find
+     * @return     future current value and version tuple, or <tt>null</tt> if key not found
+     */
+    Future<ValueVersion<V>> readAll(K key);
+
+    /**
+     * Find specified keys in store and return value and version tuples, see {@link IKeyvalRead#batchReadAll}.
+     * @param  keys keys to find
+     * @return      future current value and version tuples
+     */
+    Future<Map<K, ValueVersion<V>>> batchReadAll(List<K> keys);
+
+}
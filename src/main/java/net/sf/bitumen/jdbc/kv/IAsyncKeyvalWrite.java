@@ -0,0 +1,138 @@
+package net.sf.bitumen.jdbc.kv;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Asynchronous write operations for key-value store. Every operation runs in the background on a connection of its
+ * own and returns a {@link Future} result, which may be cancelled. See {@link IKeyvalWrite} for the semantics of each
+ * operation.
+ *
+ * @param  <K> key type
+ * @param  <V> value type
+ */
+public interface IAsyncKeyvalWrite<K, V> {
+
+    // ---- insert (fails if key already exists) ----
+
+    /**
+     * Insert key-value pair into the store, see {@link IKeyvalWrite#insert}.
+     * @param  key   key to insert
+     * @param  value value to insert
+     * @return       future version of the inserted key-value pair
+     */
+    Future<Long> insert(K key, V value);
+
+    /**
+     * Insert key-value pairs into the store, see {@link IKeyvalWrite#batchInsert}.
+     * @param  pairs key-value pairs to insert
+     * @return       future version of the inserted key-value pairs
+     */
+    Future<Long> batchInsert(Map<K, V> pairs);
+
+    // ---- save, regardless of whether they already exist ----
+
+    /**
+     * Upsert the specified key-value pair, see {@link IKeyvalWrite#save}.
+     * @param  key   key to be saved
+     * @param  value value to be saved
+     * @return       future version after saving
+     */
+    Future<Long> save(K key, V value);
+
+    /**
+     * Upsert the specified key-value pairs, see {@link IKeyvalWrite#batchSave}.
+     * @param  pairs key-value pairs to be saved
+     * @return       future version after saving
+     */
+    Future<Long> batchSave(Map<K, V> pairs);
+
+    // ---- swap (requires old version) ----
+
+    /**
+     * Update value only if specified key and version match in the store, see {@link IKeyvalWrite#swap}.
+     * @param  key     key to find
+     * @param  value   value to update
+     * @param  version version to match
+     * @return         future new version if update successful
+     */
+    Future<Long> swap(K key, V value, long version);
+
+    /**
+     * Update key-value pairs if specified key and version match in the store, see
+     * {@link IKeyvalWrite#batchSwap(java.sql.Connection, Map, long)}.
+     * @param  pairs   key-value pairs
+     * @param  version version to match
+     * @return         future new version if update successful
+     */
+    Future<Long> batchSwap(Map<K, V> pairs, long version);
+
+    /**
+     * Update key-value pairs if specified key and version match in the store, see
+     * {@link IKeyvalWrite#batchSwap(java.sql.Connection, List)}.
+     * @param  triplets key, value and version triplets
+     * @return          future new version if update successful
+     */
+    Future<Long> batchSwap(List<KeyValueVersion<K, V>> triplets);
+
+    // ---- touch (update version) ----
+
+    /**
+     * Update version of specified key, see {@link IKeyvalWrite#touch}.
+     * @param  key key to find
+     * @return     future new version on successful update, <tt>null</tt> if key not found
+     */
+    Future<Long> touch(K key);
+
+    /**
+     * Update version of specified keys, see {@link IKeyvalWrite#batchTouch}.
+     * @param  keys keys to find
+     * @return      future new version on successful update
+     */
+    Future<Long> batchTouch(List<K> keys);
+
+    // ---- delete ----
+
+    /**
+     * Unconditionally delete the specified key, see {@link IKeyvalWrite#delete}.
+     * @param  key key to find and delete
+     * @return     future completion
+     */
+    Future<Void> delete(K key);
+
+    /**
+     * Unconditionally delete the specified keys, see {@link IKeyvalWrite#batchDelete}.
+     * @param  keys keys to find and delete
+     * @return      future completion
+     */
+    Future<Void> batchDelete(List<K> keys);
+
+    // ---- remove (requires old version) ----
+
+    /**
+     * Delete the specified key if specified version matches, see {@link IKeyvalWrite#remove}.
+     * @param  key     key to find
+     * @param  version version to match
+     * @return         future completion
+     */
+    Future<Void> remove(K key, long version);
+
+    /**
+     * Delete the specified keys if specified version matches, see
+     * {@link IKeyvalWrite#batchRemove(java.sql.Connection, List, long)}.
+     * @param  keys    keys to find
+     * @param  version version to match
+     * @return         future completion
+     */
+    Future<Void> batchRemove(List<K> keys, long version);
+
+    /**
+     * Delete the specified keys if corresponding version matches, see
+     * {@link IKeyvalWrite#batchRemove(java.sql.Connection, Map)}.
+     * @param  keys keys and versions to match
+     * @return      future completion
+     */
+    Future<Void> batchRemove(Map<K, Long> keys);
+
+}
@@ -0,0 +1,26 @@
+package net.sf.bitumen.jdbc.kv;
+
+import java.sql.Connection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Bulk load of key-value pairs into a key-value store, e.g. for the initial load or a rebuild of the store. The pairs
+ * are inserted as in {@link IKeyvalWrite#batchInsert}, except that they are consumed from an iterator instead of
+ * being held in memory all at once.
+ *
+ * @param  <K> key type
+ * @param  <V> value type
+ */
+public interface IKeyvalBulkLoad<K, V> {
+
+    /**
+     * Insert all key-value pairs from specified iterator, failing if any of the keys already exists. All pairs are
+     * inserted with the same version and create/update timestamps.
+     * @param  conn  JDBC connection
+     * @param  pairs key-value pairs to insert
+     * @return       version of the inserted key-value pairs
+     */
+    long load(Connection conn, Iterator<? extends Map.Entry<K, V>> pairs);
+
+}
@@ -0,0 +1,37 @@
+package net.sf.bitumen.jdbc.kv;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Set-based optimistic writes to a key-value store. Unlike {@link IKeyvalWrite#batchSwap(Connection, List)} and
+ * {@link IKeyvalWrite#batchRemove(Connection, Map)} these operations report the outcome of each key, so that the
+ * caller can retry only the conflicting keys, and send the keys to the database a whole chunk per statement rather
+ * than one statement per key.
+ *
+ * @param  <K> key type
+ * @param  <V> value type
+ */
+public interface IKeyvalConditionalWrite<K, V> {
+
+    /**
+     * Update key-value pairs whose corresponding version matches the current version in the store.
+     * @param  conn     JDBC connection
+     * @param  triplets key, value and version triplets
+     * @return          new version of each updated key, in the order of the triplets - keys whose version did not
+     *                  match (or that do not exist) are absent
+     */
+    Map<K, Long> batchSwapEach(Connection conn, List<KeyValueVersion<K, V>> triplets);
+
+    /**
+     * Delete the specified keys and associated data if corresponding version matches current version.
+     * @param  conn JDBC connection
+     * @param  keys keys to find, mapped to version to match
+     * @return      deleted keys, in the order of specified keys - keys whose version did not match (or that do not
+     *              exist) are absent
+     */
+    Set<K> batchRemoveEach(Connection conn, Map<K, Long> keys);
+
+}
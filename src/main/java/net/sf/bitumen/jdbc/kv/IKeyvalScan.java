@@ -0,0 +1,64 @@
+package net.sf.bitumen.jdbc.kv;
+
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Scan operations for Key-value store, to walk the whole store (e.g. to warm a cache) or the pairs updated since a
+ * point in time (e.g. to replicate changes). Results are fetched in pages of bounded size using keyset pagination,
+ * i.e. each page resumes after the last row of the previous page instead of using an offset, so that every page costs
+ * the same regardless of how far the scan has progressed.
+ *
+ * @param  <K> key type
+ * @param  <V> value type
+ */
+public interface IKeyvalScan<K, V> {
+
+    // ---- scan ----
+
+    /**
+     * Return the page of key-value pairs following specified key, ordered by key.
+     * @param  conn     JDBC connection
+     * @param  afterKey key to resume after, <tt>null</tt> to start from the first key
+     * @param  pageSize maximum number of pairs to return
+     * @return          key, value and version triplets - fewer than <tt>pageSize</tt> only on the last page
+     */
+    List<KeyValueVersion<K, V>> scanPage(Connection conn, K afterKey, int pageSize);
+
+    /**
+     * Iterate over the key-value pairs following specified key, ordered by key, fetching a page at a time. The
+     * connection must stay open until the iteration completes.
+     * @param  conn     JDBC connection
+     * @param  afterKey key to resume after, <tt>null</tt> to start from the first key
+     * @param  pageSize number of pairs to fetch at a time
+     * @return          iterator of key, value and version triplets
+     */
+    Iterator<KeyValueVersion<K, V>> scan(Connection conn, K afterKey, int pageSize);
+
+    // ---- change feed ----
+
+    /**
+     * Return the page of key-value pairs updated since specified timestamp, ordered by update timestamp and key.
+     * Pass the update timestamp and key of the last change seen to resume a change feed.
+     * @param  conn     JDBC connection
+     * @param  since    update timestamp to start at (inclusive, unless <tt>afterKey</tt> is specified)
+     * @param  afterKey key to resume after among the pairs updated at <tt>since</tt>, <tt>null</tt> to include all
+     * @param  pageSize maximum number of pairs to return
+     * @return          changed pairs - fewer than <tt>pageSize</tt> only on the last page
+     */
+    List<KeyValueChange<K, V>> changesPage(Connection conn, Timestamp since, K afterKey, int pageSize);
+
+    /**
+     * Iterate over the key-value pairs updated since specified timestamp, ordered by update timestamp and key,
+     * fetching a page at a time. The connection must stay open until the iteration completes.
+     * @param  conn     JDBC connection
+     * @param  since    update timestamp to start at (inclusive, unless <tt>afterKey</tt> is specified)
+     * @param  afterKey key to resume after among the pairs updated at <tt>since</tt>, <tt>null</tt> to include all
+     * @param  pageSize number of pairs to fetch at a time
+     * @return          iterator of changed pairs
+     */
+    Iterator<KeyValueChange<K, V>> changes(Connection conn, Timestamp since, K afterKey, int pageSize);
+
+}
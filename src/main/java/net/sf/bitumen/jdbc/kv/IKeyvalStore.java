@@ -0,0 +1,197 @@
+package net.sf.bitumen.jdbc.kv;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Key-value store that manages its own connections, e.g. because keys are spread over several databases. Operations
+ * have the same semantics as in {@link IKeyvalRead} and {@link IKeyvalWrite}, except that batch writes return the
+ * version of each key, because keys in different databases get different versions.
+ *
+ * @param  <K> key type
+ * @param  <V> value type
+ */
+public interface IKeyvalStore<K, V> {
+
+    // ---- contains ----
+
+    /**
+     * Find specified key in the store and return the current version, see {@link IKeyvalRead#contains}.
+     * @param  key key to find
+     * @return     current version of the value (<tt>null</tt> if not found)
+     */
+    Long contains(K key);
+
+    /**
+     * Find specified keys in the store and return the current versions, see {@link IKeyvalRead#batchContains}.
+     * @param  keys keys to find
+     * @return      current versions of the values in key order (<tt>null</tt> if not found)
+     */
+    List<Long> batchContains(List<K> keys);
+
+    // ---- containsVersion (requires old version) ----
+
+    /**
+     * Return whether specified key has specified version in the store, see {@link IKeyvalRead#containsVersion}.
+     * @param  key     key to find
+     * @param  version version to match
+     * @return         <tt>true</tt> if specified key has specified version in the store, <tt>false</tt> otherwise
+     */
+    boolean containsVersion(K key, long version);
+
+    /**
+     * Match specified keys and versions in store, see {@link IKeyvalRead#batchContainsVersion}.
+     * @param  keyVersions keys and versions to match
+     * @return             map of keys to corresponding match result
+     */
+    Map<K, Boolean> batchContainsVersion(Map<K, Long> keyVersions);
+
+    // ---- read ----
+
+    /**
+     * Find specified key in store and return corresponding value, see {@link IKeyvalRead#read}.
+     * @param  key key to find
+     * @return     current value, <tt>null</tt> if key not found
+     */
+    V read(K key);
+
+    /**
+     * Find specified keys in store and return corresponding values, see {@link IKeyvalRead#batchRead}.
+     * @param  keys keys to find
+     * @return      current values of keys found, in key order
+     */
+    Map<K, V> batchRead(List<K> keys);
+
+    // ---- readVersion (requires old version) ----
+
+    /**
+     * Find specified key and version in store and return the value, see {@link IKeyvalRead#readForVersion}.
+     * @param  key     key to find
+     * @param  version version to match
+     * @return         current value if there's a key/version match, <tt>null</tt> otherwise
+     */
+    V readForVersion(K key, long version);
+
+    /**
+     * Find specified keys and versions in store and return the values, see {@link IKeyvalRead#batchReadForVersion}.
+     * @param  keyVersions map of keys and versions
+     * @return             current values of keys with key/version match, in key order
+     */
+    Map<K, V> batchReadForVersion(Map<K, Long> keyVersions);
+
+    // ---- readAll ----
+
+    /**
+     * Find specified key in store and return value and version tuple, see {@link IKeyvalRead#readAll}.
+     * @param  key key to find
+     * @return     current value and version tuple, or <tt>null</tt> if key not found
+     */
+    ValueVersion<V> readAll(K key);
+
+    /**
+     * Find specified keys in store and return value and version tuples, see {@link IKeyvalRead#batchReadAll}.
+     * @param  keys keys to find
+     * @return      current value and version tuples of keys found, in key order
+     */
+    Map<K, ValueVersion<V>> batchReadAll(List<K> keys);
+
+    // ---- insert (fails if key already exists) ----
+
+    /**
+     * Insert key-value pair into the store, see {@link IKeyvalWrite#insert}.
+     * @param  key   key to insert
+     * @param  value value to insert
+     * @return       version of the inserted key-value pair
+     */
+    long insert(K key, V value);
+
+    /**
+     * Insert key-value pairs into the store, see {@link IKeyvalWrite#batchInsert}.
+     * @param  pairs key-value pairs to insert
+     * @return       version of each inserted key
+     */
+    Map<K, Long> batchInsert(Map<K, V> pairs);
+
+    // ---- save, regardless of whether they already exist ----
+
+    /**
+     * Upsert the specified key-value pair, see {@link IKeyvalWrite#save}.
+     * @param  key   key to be saved
+     * @param  value value to be saved
+     * @return       version after saving
+     */
+    long save(K key, V value);
+
+    /**
+     * Upsert the specified key-value pairs, see {@link IKeyvalWrite#batchSave}.
+     * @param  pairs key-value pairs to be saved
+     * @return       version of each saved key
+     */
+    Map<K, Long> batchSave(Map<K, V> pairs);
+
+    // ---- swap (requires old version) ----
+
+    /**
+     * Update value only if specified key and version match in the store, see {@link IKeyvalWrite#swap}.
+     * @param  key     key to find
+     * @param  value   value to update
+     * @param  version version to match
+     * @return         new version if update successful, <tt>null</tt> otherwise
+     */
+    Long swap(K key, V value, long version);
+
+    /**
+     * Update key-value pairs if specified key and version match in the store, see
+     * {@link IKeyvalWrite#batchSwap(java.sql.Connection, List)}.
+     * @param  triplets key, value and version triplets
+     * @return          for each key in triplet order, its new version (<tt>null</tt> if the key was not updated)
+     */
+    Map<K, Long> batchSwap(List<KeyValueVersion<K, V>> triplets);
+
+    // ---- touch (update version) ----
+
+    /**
+     * Update version of specified key, see {@link IKeyvalWrite#touch}.
+     * @param  key key to find
+     * @return     new version on successful update, <tt>null</tt> if key not found
+     */
+    Long touch(K key);
+
+    /**
+     * Update version of specified keys, see {@link IKeyvalWrite#batchTouch}.
+     * @param  keys keys to find
+     * @return      for each key in key order, its new version (<tt>null</tt> if the key was not found)
+     */
+    Map<K, Long> batchTouch(List<K> keys);
+
+    // ---- delete ----
+
+    /**
+     * Unconditionally delete the specified key, see {@link IKeyvalWrite#delete}.
+     * @param  key key to find and delete
+     */
+    void delete(K key);
+
+    /**
+     * Unconditionally delete the specified keys, see {@link IKeyvalWrite#batchDelete}.
+     * @param  keys keys to find and delete
+     */
+    void batchDelete(List<K> keys);
+
+    // ---- remove (requires old version) ----
+
+    /**
+     * Delete the specified key if specified version matches, see {@link IKeyvalWrite#remove}.
+     * @param  key     key to find
+     * @param  version version to match
+     */
+    void remove(K key, long version);
+
+    /**
+     * Delete the specified keys if corresponding version matches, see
+     * {@link IKeyvalWrite#batchRemove(java.sql.Connection, Map)}.
+     * @param  keys keys and versions to match
+     */
+    void batchRemove(Map<K, Long> keys);
+
+}
@@ -0,0 +1,18 @@
+package net.sf.bitumen.jdbc.kv;
+
+/**
+ * Callback to receive the key-value pairs found by a scan.
+ *
+ * @param  <K> key type
+ * @param  <V> value type
+ */
+public interface IKeyvalVisitor<K, V> {
+
+    /**
+     * Receive a key-value pair. Parallel scans call this method concurrently from several threads, hence the
+     * implementation must be thread-safe in that case.
+     * @param  triplet key, value and version
+     */
+    void visit(KeyValueVersion<K, V> triplet);
+
+}
@@ -0,0 +1,25 @@
+package net.sf.bitumen.jdbc.kv;
+
+/**
+ * Codec to convert values to/from bytes, so that values can be stored in a binary (BLOB/BYTEA) value column, e.g.
+ * serialized and compressed. Implementations must be thread-safe.
+ *
+ * @param  <V> value type
+ */
+public interface IValueCodec<V> {
+
+    /**
+     * Encode specified value.
+     * @param  value value, never <tt>null</tt>
+     * @return       encoded bytes
+     */
+    byte[] encode(V value);
+
+    /**
+     * Decode specified bytes.
+     * @param  bytes bytes returned by {@link #encode(Object)}, never <tt>null</tt>
+     * @return       decoded value
+     */
+    V decode(byte[] bytes);
+
+}
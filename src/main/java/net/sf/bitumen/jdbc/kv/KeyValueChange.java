@@ -0,0 +1,112 @@
+package net.sf.bitumen.jdbc.kv;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+import net.sf.bitumen.util.Util;
+
+/**
+ * Bean class to hold key, value, version and update timestamp of a changed key-value pair.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class KeyValueChange<K, V> implements Serializable {
+
+    /**
+     * Class version; required by {@link Serializable}.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The key.
+     */
+    private final K key;
+
+    /**
+     * The value.
+     */
+    private final V value;
+
+    /**
+     * The version.
+     */
+    private final Long version;
+
+    /**
+     * The update timestamp.
+     */
+    private final Timestamp updated;
+
+    /**
+     * Getter for key.
+     * @return key
+     */
+    public final K getKey() {
+        return key;
+    }
+
+    /**
+     * Getter for value.
+     * @return value
+     */
+    public final V getValue() {
+        return value;
+    }
+
+    /**
+     * Getter for version.
+     * @return version
+     */
+    public final Long getVersion() {
+        return version;
+    }
+
+    /**
+     * Getter for update timestamp.
+     * @return update timestamp
+     */
+    public final Timestamp getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Construct instance from required arguments.
+     * @param  theKey     the key
+     * @param  theValue   the value
+     * @param  theVersion the version
+     * @param  theUpdated the update timestamp
+     */
+    public KeyValueChange(final K theKey, final V theValue, final Long theVersion, final Timestamp theUpdated) {
+        this.key = theKey;
+        this.value = theValue;
+        this.version = theVersion;
+        this.updated = theUpdated;
+    }
+
+    @Override
+    public final String toString() {
+        return String.format("key=%s, value=%s, version=%d, updated=%s", key, value, version, updated);
+    }
+
+    @Override
+    public final int hashCode() {
+        final String compositeString = "" + key + '|' + value + '|' + version + '|' + updated;
+        return compositeString.hashCode();
+    }
+
+    @Override
+    public final boolean equals(final Object obj) {
+        if (obj == null || !(obj instanceof KeyValueChange)) {
+            return false;
+        }
+        if (this == obj) {
+            return true;
+        }
+        @SuppressWarnings("unchecked")
+        KeyValueChange<K, V> that = (KeyValueChange<K, V>) obj;
+        return Util.equals(key, that.key) && Util.equals(value, that.value) && Util.equals(version, that.version)
+                && Util.equals(updated, that.updated);
+    }
+
+}
@@ -5,7 +5,8 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import net.sf.bitumen.jdbc.IRowExtractor;
-import net.sf.bitumen.jdbc.impl.JdbcUtil;
+import net.sf.bitumen.jdbc.impl.ColumnReaders;
+import net.sf.bitumen.jdbc.impl.IColumnReader;
 import net.sf.bitumen.util.Util;
 
 /**
@@ -90,10 +91,11 @@ public class ValueVersion<V> implements Serializable {
      */
     public static <V> IRowExtractor<ValueVersion<V>> makeExtractor(final Class<V> valueClass,
             final int valueColumnIndex, final int versionColumnIndex) {
+        final IColumnReader<V> valueReader = ColumnReaders.forClass(valueClass);
         return new IRowExtractor<ValueVersion<V>>() {
             public ValueVersion<V> extract(final ResultSet rs) {
                 try {
-                    return new ValueVersion<V>(valueClass.cast(JdbcUtil.getValue(rs, valueColumnIndex)),
+                    return new ValueVersion<V>(valueReader.read(rs, valueColumnIndex),
                             rs.getLong(versionColumnIndex));
                 } catch (SQLException e) {
                     throw new IllegalStateException("Unable to extract value and version", e);
@@ -0,0 +1,393 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.sql.DataSource;
+
+import net.sf.bitumen.jdbc.impl.IConnectionActivity;
+import net.sf.bitumen.jdbc.impl.JdbcUtil;
+import net.sf.bitumen.util.Util;
+
+/**
+ * Runs connection activities on an executor, each on a connection of its own, with an optional per-operation
+ * timeout. Shared by the asynchronous key-value facades.
+ * <p>
+ * The timeout is enforced by the database rather than by waiting callers: every statement created by the activity gets
+ * the time remaining until the deadline as its query timeout ({@link Statement#setQueryTimeout(int)}), and once the
+ * deadline passes - whether or not anybody waits for the result - the statements still open are cancelled
+ * ({@link Statement#cancel()}) and the operation is cancelled too. Statements prepared through a
+ * {@link net.sf.bitumen.jdbc.impl.PreparedStatementCache} are not reused across operations with a timeout.
+ *
+ */
+final class AsyncExecution {
+
+    /** Timer that expires operation deadlines. */
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "bitumen-async-deadline");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Deadline of an operation, tracking the statements it creates so that they can be timed out and cancelled.
+     */
+    private static final class Deadline {
+
+        /** Deadline as per {@link System#nanoTime()}. */
+        private final long deadline;
+
+        /** Timeout for error message. */
+        private final long timeoutNanos;
+
+        /** Statements created by the operation. Guarded by <tt>this</tt>. */
+        private final List<Statement> statements = new ArrayList<Statement>();
+
+        /** Scheduled expiry, <tt>null</tt> until scheduled. Guarded by <tt>this</tt>. */
+        private ScheduledFuture<?> expiry = null;
+
+        /** Whether the operation finished. Guarded by <tt>this</tt>. */
+        private boolean finished = false;
+
+        /** Whether the deadline passed before the operation finished. */
+        private volatile boolean expired = false;
+
+        /**
+         * Construct instance.
+         * @param  timeout timeout in nanoseconds from now
+         */
+        Deadline(final long timeout) {
+            this.timeoutNanos = timeout;
+            this.deadline = System.nanoTime() + timeout;
+        }
+
+        /**
+         * Schedule the expiry of specified operation at the deadline, unless it has already finished.
+         * @param operation future of the operation to cancel on expiry
+         */
+        synchronized void schedule(final Future<?> operation) {
+            if (finished) {
+                return;
+            }
+            expiry = TIMER.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    expire();
+                    operation.cancel(true);
+                }
+            }, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Mark the operation finished, and unschedule its expiry.
+         */
+        synchronized void finish() {
+            finished = true;
+            statements.clear();
+            if (expiry != null) {
+                expiry.cancel(false);
+            }
+        }
+
+        /**
+         * Clear the query timeout of specified connection if the operation created any statement on it. Some drivers
+         * (e.g. H2) apply a statement's query timeout to the whole session, which must not outlive the operation when
+         * the connection is pooled.
+         * @param  conn connection of the operation
+         */
+        void reset(final Connection conn) {
+            synchronized (this) {
+                if (statements.isEmpty()) {
+                    return;
+                }
+            }
+            try {
+                final Statement stmt = conn.createStatement();
+                try {
+                    stmt.setQueryTimeout(0);
+                } finally {
+                    stmt.close();
+                }
+            } catch (SQLException e) {
+                Util.swallow(e);
+            }
+        }
+
+        /**
+         * Mark the deadline expired, and cancel the open statements of the operation.
+         */
+        void expire() {
+            final List<Statement> open;
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                expired = true;
+                open = new ArrayList<Statement>(statements);
+            }
+            for (Statement each: open) {
+                try {
+                    if (!each.isClosed()) {
+                        each.cancel();
+                    }
+                } catch (SQLException e) {
+                    Util.swallow(e);
+                }
+            }
+        }
+
+        /**
+         * Apply the time remaining until the deadline as query timeout of specified statement, and track it.
+         * @param  stmt statement created by the operation
+         * @throws SQLException if the query timeout cannot be set
+         */
+        void track(final Statement stmt) throws SQLException {
+            final long remaining = deadline - System.nanoTime();
+            final long oneSecond = TimeUnit.SECONDS.toNanos(1);
+            final long seconds = Math.max(1, (remaining + oneSecond - 1) / oneSecond); // round up
+            try {
+                stmt.setQueryTimeout((int) Math.min(Integer.MAX_VALUE, seconds));
+            } catch (SQLFeatureNotSupportedException e) {
+                Util.echo("Query timeout not supported: %s\n", e.getMessage());
+            }
+            synchronized (this) {
+                statements.add(stmt);
+            }
+        }
+
+        /**
+         * Return a {@link Connection} that tracks the statements created through it.
+         * @param  conn connection to decorate
+         * @return      decorated connection
+         */
+        Connection guard(final Connection conn) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, new InvocationHandler() {
+                        @Override
+                        public Object invoke(final Object proxy, final Method method, final Object[] args)
+                                throws Throwable {
+                            if ("unwrap".equals(method.getName()) && args[0] == Connection.class) {
+                                return proxy; // so that statement caches prepare statements through the guard
+                            }
+                            final Object result;
+                            try {
+                                result = method.invoke(conn, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                            if (result instanceof Statement) {
+                                track((Statement) result);
+                            }
+                            return result;
+                        }
+                    });
+        }
+
+        /**
+         * Return the exception reported for an operation that did not complete by the deadline.
+         * @return execution exception caused by a {@link TimeoutException}
+         */
+        ExecutionException timeoutException() {
+            return new ExecutionException(new TimeoutException(String.format(
+                    "Operation did not complete in %dms", TimeUnit.NANOSECONDS.toMillis(timeoutNanos))));
+        }
+    }
+
+    /**
+     * {@link Future} decorator that reports an operation expired by its {@link Deadline} as failed with an
+     * {@link ExecutionException} caused by {@link TimeoutException}. A caller waiting past the deadline expires the
+     * operation right away, in case the timer is late.
+     *
+     * @param <T> result type
+     */
+    private static final class DeadlineFuture<T> implements Future<T> {
+
+        /** Decorated future. */
+        private final Future<T> future;
+
+        /** Deadline of the operation. */
+        private final Deadline deadline;
+
+        /**
+         * Construct instance.
+         * @param  orig      decorated future
+         * @param  opDeadline deadline of the operation
+         */
+        DeadlineFuture(final Future<T> orig, final Deadline opDeadline) {
+            this.future = orig;
+            this.deadline = opDeadline;
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            return future.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return future.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return future.isDone();
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            return await(deadline.deadline - System.nanoTime());
+        }
+
+        @Override
+        public T get(final long timeout, final TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            final long remaining = deadline.deadline - System.nanoTime();
+            final long requested = unit.toNanos(timeout);
+            if (requested < remaining) {
+                try {
+                    return future.get(requested, TimeUnit.NANOSECONDS);
+                } catch (CancellationException e) {
+                    throw expiredOr(e);
+                }
+            }
+            return await(remaining);
+        }
+
+        /**
+         * Wait for the result until the deadline, expiring the operation if it is still running then.
+         * @param  remaining nanoseconds remaining until the deadline
+         * @return           the result
+         * @throws InterruptedException when interrupted while waiting
+         * @throws ExecutionException   when the operation failed or the deadline passed
+         */
+        private T await(final long remaining) throws InterruptedException, ExecutionException {
+            try {
+                return future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                deadline.expire();
+                future.cancel(true);
+                try {
+                    return future.get(); // completed meanwhile
+                } catch (CancellationException e2) {
+                    throw expiredOr(e2);
+                }
+            } catch (CancellationException e) {
+                throw expiredOr(e);
+            }
+        }
+
+        /**
+         * Return the timeout exception if the deadline expired, or else the specified cancellation exception.
+         * @param  e cancellation exception
+         * @return   exception to throw
+         * @throws ExecutionException if the deadline expired
+         */
+        private CancellationException expiredOr(final CancellationException e) throws ExecutionException {
+            if (deadline.expired) {
+                throw deadline.timeoutException();
+            }
+            return e;
+        }
+    }
+
+    /** Executor to run operations on. */
+    private final ExecutorService executor;
+
+    /** Data source to obtain a connection for each operation. */
+    private final DataSource dataSource;
+
+    /** Per-operation timeout in nanoseconds, zero for no timeout. */
+    private final long timeoutNanos;
+
+    /**
+     * Construct instance.
+     * @param  threadPool executor to run operations on
+     * @param  source     data source to obtain a connection for each operation
+     * @param  timeout    per-operation timeout, zero for no timeout
+     * @param  unit       time unit of <tt>timeout</tt>
+     */
+    AsyncExecution(final ExecutorService threadPool, final DataSource source, final long timeout,
+            final TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Expected timeout to be non-negative, found: " + timeout);
+        }
+        this.executor = threadPool;
+        this.dataSource = source;
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Return a copy of this instance with specified per-operation timeout.
+     * @param  timeout per-operation timeout, zero for no timeout
+     * @param  unit    time unit of <tt>timeout</tt>
+     * @return         new instance
+     */
+    AsyncExecution withTimeout(final long timeout, final TimeUnit unit) {
+        return new AsyncExecution(executor, dataSource, timeout, unit);
+    }
+
+    /**
+     * Submit specified activity for execution on a new connection, enforcing the per-operation timeout if any.
+     * @param  <T>      result type
+     * @param  activity activity to execute
+     * @return          future result
+     */
+    <T> Future<T> submit(final IConnectionActivity<T> activity) {
+        if (timeoutNanos == 0) {
+            return executor.submit(new Callable<T>() {
+                @Override
+                public T call() {
+                    return JdbcUtil.withConnection(dataSource, activity);
+                }
+            });
+        }
+        final Deadline deadline = new Deadline(timeoutNanos);
+        final Future<T> result = executor.submit(new Callable<T>() {
+            @Override
+            public T call() {
+                try {
+                    return JdbcUtil.withConnection(dataSource, new IConnectionActivity<T>() {
+                        @Override
+                        public T execute(final Connection conn) {
+                            try {
+                                return activity.execute(deadline.guard(conn));
+                            } finally {
+                                deadline.reset(conn);
+                            }
+                        }
+                    });
+                } finally {
+                    deadline.finish();
+                }
+            }
+        });
+        deadline.schedule(result);
+        return new DeadlineFuture<T>(result, deadline);
+    }
+
+}
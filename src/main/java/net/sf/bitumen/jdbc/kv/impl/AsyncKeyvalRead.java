@@ -0,0 +1,189 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import net.sf.bitumen.jdbc.impl.IConnectionActivity;
+import net.sf.bitumen.jdbc.kv.IAsyncKeyvalRead;
+import net.sf.bitumen.jdbc.kv.IKeyvalRead;
+import net.sf.bitumen.jdbc.kv.ValueVersion;
+
+/**
+ * Asynchronous facade over an {@link IKeyvalRead} (e.g. {@link DefaultKeyvalRead}). Every operation is submitted to an
+ * executor and runs on a connection of its own from a {@link DataSource}. With a per-operation timeout, the remaining
+ * time is applied as query timeout of the operation's statements, and at the deadline the statements still running
+ * and the operation are cancelled; the {@link Future} then reports an
+ * {@link java.util.concurrent.ExecutionException} caused by {@link java.util.concurrent.TimeoutException}.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class AsyncKeyvalRead<K, V> implements IAsyncKeyvalRead<K, V> {
+
+    /** Key-value reader to actually connect and read. */
+    private final IKeyvalRead<K, V> reader;
+
+    /** Executor, data source and timeout. */
+    private final AsyncExecution exec;
+
+    /**
+     * Construct instance without per-operation timeout.
+     * @param orig       key-value reader to actually connect and read
+     * @param source     data source to obtain a connection for each operation
+     * @param threadPool executor to run operations on (not shut down by this instance), preferably bounded
+     */
+    public AsyncKeyvalRead(final IKeyvalRead<K, V> orig, final DataSource source, final ExecutorService threadPool) {
+        this(orig, source, threadPool, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Construct instance using all required arguments.
+     * @param orig       key-value reader to actually connect and read
+     * @param source     data source to obtain a connection for each operation
+     * @param threadPool executor to run operations on (not shut down by this instance), preferably bounded
+     * @param timeout    per-operation timeout, zero for no timeout
+     * @param unit       time unit of <tt>timeout</tt>
+     */
+    public AsyncKeyvalRead(final IKeyvalRead<K, V> orig, final DataSource source, final ExecutorService threadPool,
+            final long timeout, final TimeUnit unit) {
+        this(orig, new AsyncExecution(threadPool, source, timeout, unit));
+    }
+
+    /**
+     * Construct instance from reader and execution settings.
+     * @param orig      key-value reader to actually connect and read
+     * @param execution executor, data source and timeout
+     */
+    private AsyncKeyvalRead(final IKeyvalRead<K, V> orig, final AsyncExecution execution) {
+        this.reader = orig;
+        this.exec = execution;
+    }
+
+    /**
+     * Return a facade sharing the reader, data source and executor of this instance but with specified per-operation
+     * timeout.
+     * @param  timeout per-operation timeout, zero for no timeout
+     * @param  unit    time unit of <tt>timeout</tt>
+     * @return         new instance
+     */
+    public final AsyncKeyvalRead<K, V> withTimeout(final long timeout, final TimeUnit unit) {
+        return new AsyncKeyvalRead<K, V>(reader, exec.withTimeout(timeout, unit));
+    }
+
+    // ---- contains ----
+
+    @Override
+    public final Future<Long> contains(final K key) {
+        return exec.submit(new IConnectionActivity<Long>() {
+            @Override
+            public Long execute(final Connection conn) {
+                return reader.contains(conn, key);
+            }
+        });
+    }
+
+    @Override
+    public final Future<List<Long>> batchContains(final List<K> keys) {
+        return exec.submit(new IConnectionActivity<List<Long>>() {
+            @Override
+            public List<Long> execute(final Connection conn) {
+                return reader.batchContains(conn, keys);
+            }
+        });
+    }
+
+    // ---- containsVersion (requires old version) ----
+
+    @Override
+    public final Future<Boolean> containsVersion(final K key, final long version) {
+        return exec.submit(new IConnectionActivity<Boolean>() {
+            @Override
+            public Boolean execute(final Connection conn) {
+                return reader.containsVersion(conn, key, version);
+            }
+        });
+    }
+
+    @Override
+    public final Future<Map<K, Boolean>> batchContainsVersion(final Map<K, Long> keyVersions) {
+        return exec.submit(new IConnectionActivity<Map<K, Boolean>>() {
+            @Override
+            public Map<K, Boolean> execute(final Connection conn) {
+                return reader.batchContainsVersion(conn, keyVersions);
+            }
+        });
+    }
+
+    // ---- read ----
+
+    @Override
+    public final Future<V> read(final K key) {
+        return exec.submit(new IConnectionActivity<V>() {
+            @Override
+            public V execute(final Connection conn) {
+                return reader.read(conn, key);
+            }
+        });
+    }
+
+    @Override
+    public final Future<Map<K, V>> batchRead(final List<K> keys) {
+        return exec.submit(new IConnectionActivity<Map<K, V>>() {
+            @Override
+            public Map<K, V> execute(final Connection conn) {
+                return reader.batchRead(conn, keys);
+            }
+        });
+    }
+
+    // ---- readVersion (requires old version) ----
+
+    @Override
+    public final Future<V> readForVersion(final K key, final long version) {
+        return exec.submit(new IConnectionActivity<V>() {
+            @Override
+            public V execute(final Connection conn) {
+                return reader.readForVersion(conn, key, version);
+            }
+        });
+    }
+
+    @Override
+    public final Future<Map<K, V>> batchReadForVersion(final Map<K, Long> keyVersions) {
+        return exec.submit(new IConnectionActivity<Map<K, V>>() {
+            @Override
+            public Map<K, V> execute(final Connection conn) {
+                return reader.batchReadForVersion(conn, keyVersions);
+            }
+        });
+    }
+
+    // ---- readAll ----
+
+    @Override
+    public final Future<ValueVersion<V>> readAll(final K key) {
+        return exec.submit(new IConnectionActivity<ValueVersion<V>>() {
+            @Override
+            public ValueVersion<V> execute(final Connection conn) {
+                return reader.readAll(conn, key);
+            }
+        });
+    }
+
+    @Override
+    public final Future<Map<K, ValueVersion<V>>> batchReadAll(final List<K> keys) {
+        return exec.submit(new IConnectionActivity<Map<K, ValueVersion<V>>>() {
+            @Override
+            public Map<K, ValueVersion<V>> execute(final Connection conn) {
+                return reader.batchReadAll(conn, keys);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,237 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import net.sf.bitumen.jdbc.impl.IConnectionActivity;
+import net.sf.bitumen.jdbc.kv.IAsyncKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.IKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.KeyValueVersion;
+
+/**
+ * Asynchronous facade over an {@link IKeyvalWrite} (e.g. {@link DefaultKeyvalWrite}). Every operation is submitted to
+ * an executor and runs on a connection of its own from a {@link DataSource}, and is committed on success. With a
+ * per-operation timeout, the remaining time is applied as query timeout of the operation's statements, and at the
+ * deadline the statements still running and the operation are cancelled; the {@link Future} then reports an
+ * {@link java.util.concurrent.ExecutionException} caused by {@link java.util.concurrent.TimeoutException} - the write
+ * may still have taken effect.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class AsyncKeyvalWrite<K, V> implements IAsyncKeyvalWrite<K, V> {
+
+    /** Key-value writer to actually write. */
+    private final IKeyvalWrite<K, V> writer;
+
+    /** Executor, data source and timeout. */
+    private final AsyncExecution exec;
+
+    /**
+     * Construct instance without per-operation timeout.
+     * @param orig       key-value writer to actually connect and write
+     * @param source     data source to obtain a connection for each operation
+     * @param threadPool executor to run operations on (not shut down by this instance), preferably bounded
+     */
+    public AsyncKeyvalWrite(final IKeyvalWrite<K, V> orig, final DataSource source, final ExecutorService threadPool) {
+        this(orig, source, threadPool, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Construct instance using all required arguments.
+     * @param orig       key-value writer to actually connect and write
+     * @param source     data source to obtain a connection for each operation
+     * @param threadPool executor to run operations on (not shut down by this instance), preferably bounded
+     * @param timeout    per-operation timeout, zero for no timeout
+     * @param unit       time unit of <tt>timeout</tt>
+     */
+    public AsyncKeyvalWrite(final IKeyvalWrite<K, V> orig, final DataSource source, final ExecutorService threadPool,
+            final long timeout, final TimeUnit unit) {
+        this(orig, new AsyncExecution(threadPool, source, timeout, unit));
+    }
+
+    /**
+     * Construct instance from writer and execution settings.
+     * @param orig      key-value writer to actually connect and write
+     * @param execution executor, data source and timeout
+     */
+    private AsyncKeyvalWrite(final IKeyvalWrite<K, V> orig, final AsyncExecution execution) {
+        this.writer = orig;
+        this.exec = execution;
+    }
+
+    /**
+     * Return a facade sharing the writer, data source and executor of this instance but with specified per-operation
+     * timeout.
+     * @param  timeout per-operation timeout, zero for no timeout
+     * @param  unit    time unit of <tt>timeout</tt>
+     * @return         new instance
+     */
+    public final AsyncKeyvalWrite<K, V> withTimeout(final long timeout, final TimeUnit unit) {
+        return new AsyncKeyvalWrite<K, V>(writer, exec.withTimeout(timeout, unit));
+    }
+
+    // ---- insert ----
+
+    @Override
+    public final Future<Long> insert(final K key, final V value) {
+        return exec.submit(new IConnectionActivity<Long>() {
+            @Override
+            public Long execute(final Connection conn) {
+                return writer.insert(conn, key, value);
+            }
+        });
+    }
+
+    @Override
+    public final Future<Long> batchInsert(final Map<K, V> pairs) {
+        return exec.submit(new IConnectionActivity<Long>() {
+            @Override
+            public Long execute(final Connection conn) {
+                return writer.batchInsert(conn, pairs);
+            }
+        });
+    }
+
+    // ---- save, regardless of whether they already exist ----
+
+    @Override
+    public final Future<Long> save(final K key, final V value) {
+        return exec.submit(new IConnectionActivity<Long>() {
+            @Override
+            public Long execute(final Connection conn) {
+                return writer.save(conn, key, value);
+            }
+        });
+    }
+
+    @Override
+    public final Future<Long> batchSave(final Map<K, V> pairs) {
+        return exec.submit(new IConnectionActivity<Long>() {
+            @Override
+            public Long execute(final Connection conn) {
+                return writer.batchSave(conn, pairs);
+            }
+        });
+    }
+
+    // ---- swap (requires old version) ----
+
+    @Override
+    public final Future<Long> swap(final K key, final V value, final long version) {
+        return exec.submit(new IConnectionActivity<Long>() {
+            @Override
+            public Long execute(final Connection conn) {
+                return writer.swap(conn, key, value, version);
+            }
+        });
+    }
+
+    @Override
+    public final Future<Long> batchSwap(final Map<K, V> pairs, final long version) {
+        return exec.submit(new IConnectionActivity<Long>() {
+            @Override
+            public Long execute(final Connection conn) {
+                return writer.batchSwap(conn, pairs, version);
+            }
+        });
+    }
+
+    @Override
+    public final Future<Long> batchSwap(final List<KeyValueVersion<K, V>> triplets) {
+        return exec.submit(new IConnectionActivity<Long>() {
+            @Override
+            public Long execute(final Connection conn) {
+                return writer.batchSwap(conn, triplets);
+            }
+        });
+    }
+
+    // ---- touch (update version) ----
+
+    @Override
+    public final Future<Long> touch(final K key) {
+        return exec.submit(new IConnectionActivity<Long>() {
+            @Override
+            public Long execute(final Connection conn) {
+                return writer.touch(conn, key);
+            }
+        });
+    }
+
+    @Override
+    public final Future<Long> batchTouch(final List<K> keys) {
+        return exec.submit(new IConnectionActivity<Long>() {
+            @Override
+            public Long execute(final Connection conn) {
+                return writer.batchTouch(conn, keys);
+            }
+        });
+    }
+
+    // ---- delete ----
+
+    @Override
+    public final Future<Void> delete(final K key) {
+        return exec.submit(new IConnectionActivity<Void>() {
+            @Override
+            public Void execute(final Connection conn) {
+                writer.delete(conn, key);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public final Future<Void> batchDelete(final List<K> keys) {
+        return exec.submit(new IConnectionActivity<Void>() {
+            @Override
+            public Void execute(final Connection conn) {
+                writer.batchDelete(conn, keys);
+                return null;
+            }
+        });
+    }
+
+    // ---- remove (requires old version) ----
+
+    @Override
+    public final Future<Void> remove(final K key, final long version) {
+        return exec.submit(new IConnectionActivity<Void>() {
+            @Override
+            public Void execute(final Connection conn) {
+                writer.remove(conn, key, version);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public final Future<Void> batchRemove(final List<K> keys, final long version) {
+        return exec.submit(new IConnectionActivity<Void>() {
+            @Override
+            public Void execute(final Connection conn) {
+                writer.batchRemove(conn, keys, version);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public final Future<Void> batchRemove(final Map<K, Long> keys) {
+        return exec.submit(new IConnectionActivity<Void>() {
+            @Override
+            public Void execute(final Connection conn) {
+                writer.batchRemove(conn, keys);
+                return null;
+            }
+        });
+    }
+
+}
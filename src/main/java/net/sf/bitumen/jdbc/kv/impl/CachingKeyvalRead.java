@@ -0,0 +1,495 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.sf.bitumen.jdbc.kv.IKeyvalRead;
+import net.sf.bitumen.jdbc.kv.ValueVersion;
+
+/**
+ * Read-through near cache in front of another {@link IKeyvalRead}. Value-version tuples of found keys are held in a
+ * bounded in-process cache backed by a {@link ConcurrentHashMap}, so that cache hits take no lock. When the cache
+ * grows beyond its maximum size, the least recently used entries are evicted in a batch by one thread at a time. A
+ * loaded entry replaces a cached one only if the cached one is still the entry that was looked up, so that a slower
+ * reader never overwrites a newer value-version tuple with an older one, and it is dropped again if the cache was
+ * invalidated while the tuple was being read, so that an invalidation is never undone by a read that started before
+ * it. How a cached entry is trusted depends on
+ * {@link Mode}:
+ * <ul>
+ *   <li>{@link Mode#TTL} - an entry is served as-is until it is older than the configured time-to-live</li>
+ *   <li>{@link Mode#VALIDATE} - an entry older than the configured time-to-live (zero means always) is validated with a
+ *   cheap version lookup ({@link IKeyvalRead#contains(Connection, Object)}), and the value is re-read only if the
+ *   version has changed</li>
+ * </ul>
+ * Writes made through other instances are not seen by the cache, so in TTL mode the staleness is bounded only by the
+ * time-to-live; use {@link #invalidate(Object)} or {@link #invalidateAll()} after local writes. Existence and
+ * version-match lookups ({@link #contains(Connection, Object)}, {@link #containsVersion(Connection, Object, long)}
+ * and their batch variants) and version-based reads in VALIDATE mode are always delegated.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class CachingKeyvalRead<K, V> implements IKeyvalRead<K, V> {
+
+    /** Default maximum number of cached entries. */
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    /** Fraction (as divisor of the maximum size) of entries evicted in addition to the excess, to amortize eviction. */
+    private static final int EVICTION_BATCH_DIVISOR = 16;
+
+    /**
+     * How cached entries are trusted.
+     */
+    public enum Mode {
+        /** Serve cached entries until they expire. */
+        TTL,
+        /** Validate cached entries by version before serving them. */
+        VALIDATE
+    }
+
+    /**
+     * Cached value-version tuple along with the time it was loaded or last validated.
+     *
+     * @param <V> value type
+     */
+    private static final class CacheEntry<V> {
+
+        /** Cached value and version. */
+        private final ValueVersion<V> valueVersion;
+
+        /** {@link System#nanoTime()} at the time of loading or last validation. */
+        private final long timestamp;
+
+        /** {@link System#nanoTime()} at the time of last access, used to pick eviction victims. */
+        private volatile long accessed;
+
+        /**
+         * Construct instance from value-version tuple and timestamp.
+         * @param  vv value and version
+         * @param  ts {@link System#nanoTime()} at the time of loading or validation
+         */
+        CacheEntry(final ValueVersion<V> vv, final long ts) {
+            this.valueVersion = vv;
+            this.timestamp = ts;
+            this.accessed = ts;
+        }
+    }
+
+    /** Key-value reader to actually connect and read. */
+    private final IKeyvalRead<K, V> reader;
+
+    /** Cache mode. */
+    private final Mode mode;
+
+    /** Time-to-live (TTL mode) or validation interval (VALIDATE mode) in nanoseconds. */
+    private final long ttlNanos;
+
+    /** Maximum number of cached entries. */
+    private final int maxSize;
+
+    /** Cached entries. */
+    private final ConcurrentMap<K, CacheEntry<V>> cache;
+
+    /** Invalidation generation, incremented by every invalidation before it removes entries. */
+    private final AtomicLong generation = new AtomicLong(0);
+
+    /** Held by the thread evicting entries. */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /** Statistics counters. */
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong(),
+            validations = new AtomicLong();
+
+    /**
+     * Construct instance in {@link Mode#VALIDATE} mode that validates every cache hit, with
+     * {@link #DEFAULT_MAX_SIZE}.
+     * @param orig key-value reader to actually connect and read
+     */
+    public CachingKeyvalRead(final IKeyvalRead<K, V> orig) {
+        this(orig, DEFAULT_MAX_SIZE, Mode.VALIDATE, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Construct instance using all required arguments.
+     * @param orig         key-value reader to actually connect and read
+     * @param maxCacheSize maximum number of cached entries
+     * @param cacheMode    how cached entries are trusted
+     * @param ttl          time-to-live in TTL mode, interval after which an entry is validated in VALIDATE mode
+     * @param unit         time unit of <tt>ttl</tt>
+     */
+    public CachingKeyvalRead(final IKeyvalRead<K, V> orig, final int maxCacheSize, final Mode cacheMode,
+            final long ttl, final TimeUnit unit) {
+        if (maxCacheSize < 1) {
+            throw new IllegalArgumentException("Expected max cache size to be positive, found: " + maxCacheSize);
+        }
+        if (ttl < 0) {
+            throw new IllegalArgumentException("Expected TTL to be non-negative, found: " + ttl);
+        }
+        if (cacheMode == Mode.TTL && ttl == 0) {
+            throw new IllegalArgumentException("Expected TTL to be positive in TTL mode");
+        }
+        this.reader = orig;
+        this.mode = cacheMode;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.maxSize = maxCacheSize;
+        this.cache = new ConcurrentHashMap<K, CacheEntry<V>>();
+    }
+
+    // ---- cache access ----
+
+    /**
+     * Return cached entry for specified key, <tt>null</tt> if not cached.
+     * @param  key key to look up
+     * @return     cached entry or <tt>null</tt>
+     */
+    private CacheEntry<V> lookup(final K key) {
+        final CacheEntry<V> entry = cache.get(key);
+        if (entry != null) {
+            entry.accessed = System.nanoTime();
+        }
+        return entry;
+    }
+
+    /**
+     * Cache the value-version tuple for specified key, or remove the key when tuple is <tt>null</tt> - but only if
+     * the cached entry is still the one that was looked up before reading the tuple. Otherwise another reader has
+     * stored a tuple in the meantime, which is kept as it may be newer. A stored tuple is removed again if the cache
+     * has been invalidated since the tuple was read, since it may predate the invalidation.
+     * @param key      key
+     * @param expected entry looked up before reading the tuple, <tt>null</tt> if none was cached
+     * @param vv       value-version tuple, <tt>null</tt> if not found
+     * @param now      timestamp as per {@link System#nanoTime()}
+     * @param gen      invalidation generation before the entry was looked up
+     */
+    private void store(final K key, final CacheEntry<V> expected, final ValueVersion<V> vv, final long now,
+            final long gen) {
+        if (vv == null) {
+            if (expected != null) {
+                cache.remove(key, expected);
+            }
+            return;
+        }
+        final CacheEntry<V> entry = new CacheEntry<V>(vv, now);
+        if (expected == null) {
+            if (cache.putIfAbsent(key, entry) != null) {
+                return;
+            }
+        } else if (!cache.replace(key, expected, entry)) {
+            return;
+        }
+        if (generation.get() != gen) {
+            cache.remove(key, entry); // invalidated meanwhile, possibly after the tuple was read
+        } else if (expected == null) {
+            evictIfFull();
+        }
+    }
+
+    /**
+     * Evict the least recently used entries if the cache has grown beyond its maximum size. Evicts a batch beyond the
+     * excess so that eviction is not needed on every insert. Only one thread evicts at a time; others carry on.
+     */
+    private void evictIfFull() {
+        if (cache.size() <= maxSize || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            final List<Map.Entry<K, CacheEntry<V>>> entries = new ArrayList<Map.Entry<K, CacheEntry<V>>>(
+                    cache.entrySet());
+            final int count = Math.min(entries.size(), entries.size() - maxSize + maxSize / EVICTION_BATCH_DIVISOR);
+            if (count <= 0) {
+                return;
+            }
+            final long[] stamps = new long[entries.size()];
+            for (int i = 0; i < stamps.length; i++) {
+                stamps[i] = entries.get(i).getValue().accessed;
+            }
+            Arrays.sort(stamps);
+            final long threshold = stamps[count - 1];
+            int evicted = 0;
+            for (Map.Entry<K, CacheEntry<V>> each: entries) {
+                if (evicted >= count) {
+                    break;
+                }
+                if (each.getValue().accessed - threshold <= 0 && cache.remove(each.getKey(), each.getValue())) {
+                    evicted++;
+                }
+            }
+            evictions.addAndGet(evicted);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Return <tt>true</tt> if specified entry can be served without going to the database.
+     * @param  entry cached entry
+     * @param  now   timestamp as per {@link System#nanoTime()}
+     * @return       whether entry is fresh
+     */
+    private boolean isFresh(final CacheEntry<V> entry, final long now) {
+        return now - entry.timestamp < ttlNanos;
+    }
+
+    /**
+     * Remove specified key from the cache. Reads in progress do not cache what they read.
+     * @param key key to remove
+     */
+    public final void invalidate(final K key) {
+        generation.incrementAndGet();
+        cache.remove(key);
+    }
+
+    /**
+     * Remove all keys from the cache. Reads in progress do not cache what they read.
+     */
+    public final void invalidateAll() {
+        generation.incrementAndGet();
+        cache.clear();
+    }
+
+    // ---- contains ----
+
+    @Override
+    public final Long contains(final Connection conn, final K key) {
+        return reader.contains(conn, key);
+    }
+
+    @Override
+    public final List<Long> batchContains(final Connection conn, final List<K> keys) {
+        return reader.batchContains(conn, keys);
+    }
+
+    // ---- containsVersion (requires old version) ----
+
+    @Override
+    public final boolean containsVersion(final Connection conn, final K key, final long version) {
+        return reader.containsVersion(conn, key, version);
+    }
+
+    @Override
+    public final Map<K, Boolean> batchContainsVersion(final Connection conn, final Map<K, Long> keyVersions) {
+        return reader.batchContainsVersion(conn, keyVersions);
+    }
+
+    // ---- read ----
+
+    @Override
+    public final V read(final Connection conn, final K key) {
+        final ValueVersion<V> vv = readAll(conn, key);
+        return vv == null ? null : vv.getValue();
+    }
+
+    @Override
+    public final Map<K, V> batchRead(final Connection conn, final List<K> keys) {
+        final Map<K, V> result = new LinkedHashMap<K, V>();
+        for (Map.Entry<K, ValueVersion<V>> entry: batchReadAll(conn, keys).entrySet()) {
+            final ValueVersion<V> vv = entry.getValue();
+            if (vv != null) {
+                result.put(entry.getKey(), vv.getValue());
+            }
+        }
+        return result;
+    }
+
+    // ---- readVersion (requires old version) ----
+
+    @Override
+    public final V readForVersion(final Connection conn, final K key, final long version) {
+        if (mode == Mode.TTL) {
+            final CacheEntry<V> entry = lookup(key);
+            if (entry != null && isFresh(entry, System.nanoTime())
+                    && entry.valueVersion.getVersion().longValue() == version) {
+                hits.incrementAndGet();
+                return entry.valueVersion.getValue();
+            }
+            misses.incrementAndGet();
+        }
+        return reader.readForVersion(conn, key, version);
+    }
+
+    @Override
+    public final Map<K, V> batchReadForVersion(final Connection conn, final Map<K, Long> keyVersions) {
+        if (mode != Mode.TTL) {
+            return reader.batchReadForVersion(conn, keyVersions);
+        }
+        final long now = System.nanoTime();
+        final Map<K, V> cached = new LinkedHashMap<K, V>();
+        final Map<K, Long> missing = new LinkedHashMap<K, Long>();
+        for (Map.Entry<K, Long> each: keyVersions.entrySet()) {
+            final CacheEntry<V> entry = lookup(each.getKey());
+            if (entry != null && isFresh(entry, now) && entry.valueVersion.getVersion().equals(each.getValue())) {
+                hits.incrementAndGet();
+                cached.put(each.getKey(), entry.valueVersion.getValue());
+            } else {
+                misses.incrementAndGet();
+                missing.put(each.getKey(), each.getValue());
+            }
+        }
+        final Map<K, V> loaded = missing.isEmpty() ? cached : reader.batchReadForVersion(conn, missing);
+        final Map<K, V> result = new LinkedHashMap<K, V>();
+        for (K key: keyVersions.keySet()) {
+            if (cached.containsKey(key)) {
+                result.put(key, cached.get(key));
+            } else if (loaded.containsKey(key)) {
+                result.put(key, loaded.get(key));
+            }
+        }
+        return result;
+    }
+
+    // ---- readAll ----
+
+    @Override
+    public final ValueVersion<V> readAll(final Connection conn, final K key) {
+        final long gen = generation.get();
+        final long now = System.nanoTime();
+        final CacheEntry<V> entry = lookup(key);
+        if (entry != null) {
+            if (isFresh(entry, now)) {
+                hits.incrementAndGet();
+                return entry.valueVersion;
+            }
+            if (mode == Mode.VALIDATE) {
+                validations.incrementAndGet();
+                final Long latest = reader.contains(conn, key);
+                if (latest == null) {
+                    misses.incrementAndGet();
+                    store(key, entry, null, now, gen);
+                    return null;
+                }
+                if (latest.equals(entry.valueVersion.getVersion())) {
+                    hits.incrementAndGet();
+                    store(key, entry, entry.valueVersion, now, gen);
+                    return entry.valueVersion;
+                }
+            }
+        }
+        misses.incrementAndGet();
+        final ValueVersion<V> vv = reader.readAll(conn, key);
+        store(key, entry, vv, now, gen);
+        return vv;
+    }
+
+    @Override
+    public final Map<K, ValueVersion<V>> batchReadAll(final Connection conn, final List<K> keys) {
+        final long gen = generation.get();
+        final long now = System.nanoTime();
+        final Map<K, ValueVersion<V>> found = new LinkedHashMap<K, ValueVersion<V>>(keys.size() * 2);
+        final Map<K, CacheEntry<V>> lookedUp = new HashMap<K, CacheEntry<V>>(keys.size() * 2);
+        final List<K> stale = new ArrayList<K>();
+        final List<K> missing = new ArrayList<K>();
+        for (K key: keys) {
+            final CacheEntry<V> entry = lookup(key);
+            if (entry == null) {
+                missing.add(key);
+                continue;
+            }
+            lookedUp.put(key, entry);
+            if (isFresh(entry, now)) {
+                hits.incrementAndGet();
+                found.put(key, entry.valueVersion);
+            } else if (mode == Mode.VALIDATE) {
+                stale.add(key);
+            } else {
+                missing.add(key);
+            }
+        }
+        if (!stale.isEmpty()) {
+            validations.addAndGet(stale.size());
+            final List<Long> latest = reader.batchContains(conn, stale);
+            for (int i = 0; i < stale.size(); i++) {
+                final K key = stale.get(i);
+                final CacheEntry<V> entry = lookedUp.get(key);
+                final Long version = latest.get(i);
+                if (version == null) {
+                    misses.incrementAndGet();
+                    store(key, entry, null, now, gen);
+                } else if (version.equals(entry.valueVersion.getVersion())) {
+                    hits.incrementAndGet();
+                    store(key, entry, entry.valueVersion, now, gen);
+                    found.put(key, entry.valueVersion);
+                } else {
+                    missing.add(key);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            misses.addAndGet(missing.size());
+            final Map<K, ValueVersion<V>> loaded = reader.batchReadAll(conn, missing);
+            for (K key: missing) {
+                final ValueVersion<V> vv = loaded.get(key);
+                store(key, lookedUp.get(key), vv, now, gen);
+                if (vv != null) {
+                    found.put(key, vv);
+                }
+            }
+        }
+        final Map<K, ValueVersion<V>> result = new LinkedHashMap<K, ValueVersion<V>>();
+        for (K key: keys) {
+            final ValueVersion<V> vv = found.get(key);
+            if (vv != null) {
+                result.put(key, vv);
+            }
+        }
+        return result;
+    }
+
+    // ---- statistics ----
+
+    /**
+     * Return number of entries currently cached.
+     * @return number of entries currently cached
+     */
+    public final int size() {
+        return cache.size();
+    }
+
+    /**
+     * Return number of reads served from the cache (including those after a successful validation).
+     * @return cache hit count
+     */
+    public final long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Return number of reads that had to fetch the value from the underlying reader.
+     * @return cache miss count
+     */
+    public final long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Return number of entries removed due to the cache exceeding its maximum size.
+     * @return cache eviction count
+     */
+    public final long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Return number of version checks made in VALIDATE mode.
+     * @return validation count
+     */
+    public final long getValidationCount() {
+        return validations.get();
+    }
+
+    @Override
+    public final String toString() {
+        return String.format("mode=%s, maxSize=%d, size=%d, hits=%d, misses=%d, evictions=%d, validations=%d",
+                mode, maxSize, size(), getHitCount(), getMissCount(), getEvictionCount(), getValidationCount());
+    }
+
+}
@@ -0,0 +1,127 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.sql.Connection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.bitumen.jdbc.kv.IKeyvalRead;
+import net.sf.bitumen.jdbc.kv.IValueCodec;
+import net.sf.bitumen.jdbc.kv.ValueVersion;
+
+/**
+ * Decorator that reads values stored as bytes (e.g. in a BLOB/BYTEA value column) through another {@link IKeyvalRead},
+ * and decodes them using an {@link IValueCodec}. Typically paired with {@link CodecKeyvalWrite} using the same codec.
+ * Existence and version-match lookups are delegated unchanged. <tt>NULL</tt> values are not decoded.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class CodecKeyvalRead<K, V> implements IKeyvalRead<K, V> {
+
+    /** Key-value reader of encoded values. */
+    private final IKeyvalRead<K, byte[]> reader;
+
+    /** Value codec. */
+    private final IValueCodec<V> codec;
+
+    /**
+     * Construct instance.
+     * @param orig       key-value reader of encoded values, e.g. {@link DefaultKeyvalRead} with <tt>byte[]</tt> values
+     * @param valueCodec value codec
+     */
+    public CodecKeyvalRead(final IKeyvalRead<K, byte[]> orig, final IValueCodec<V> valueCodec) {
+        this.reader = orig;
+        this.codec = valueCodec;
+    }
+
+    /**
+     * Decode specified bytes.
+     * @param  bytes encoded value, may be <tt>null</tt>
+     * @return       decoded value, <tt>null</tt> if <tt>bytes</tt> is <tt>null</tt>
+     */
+    private V decode(final byte[] bytes) {
+        return bytes == null ? null : codec.decode(bytes);
+    }
+
+    /**
+     * Decode the values of specified map.
+     * @param  encoded map of keys and encoded values
+     * @return         map of keys and decoded values, in the same order
+     */
+    private Map<K, V> decodeAll(final Map<K, byte[]> encoded) {
+        final Map<K, V> result = new LinkedHashMap<K, V>(encoded.size());
+        for (final Map.Entry<K, byte[]> entry: encoded.entrySet()) {
+            result.put(entry.getKey(), decode(entry.getValue()));
+        }
+        return result;
+    }
+
+    // ---- contains ----
+
+    @Override
+    public final Long contains(final Connection conn, final K key) {
+        return reader.contains(conn, key);
+    }
+
+    @Override
+    public final List<Long> batchContains(final Connection conn, final List<K> keys) {
+        return reader.batchContains(conn, keys);
+    }
+
+    // ---- containsVersion (requires old version) ----
+
+    @Override
+    public final boolean containsVersion(final Connection conn, final K key, final long version) {
+        return reader.containsVersion(conn, key, version);
+    }
+
+    @Override
+    public final Map<K, Boolean> batchContainsVersion(final Connection conn, final Map<K, Long> keyVersions) {
+        return reader.batchContainsVersion(conn, keyVersions);
+    }
+
+    // ---- read ----
+
+    @Override
+    public final V read(final Connection conn, final K key) {
+        return decode(reader.read(conn, key));
+    }
+
+    @Override
+    public final Map<K, V> batchRead(final Connection conn, final List<K> keys) {
+        return decodeAll(reader.batchRead(conn, keys));
+    }
+
+    // ---- readVersion (requires old version) ----
+
+    @Override
+    public final V readForVersion(final Connection conn, final K key, final long version) {
+        return decode(reader.readForVersion(conn, key, version));
+    }
+
+    @Override
+    public final Map<K, V> batchReadForVersion(final Connection conn, final Map<K, Long> keyVersions) {
+        return decodeAll(reader.batchReadForVersion(conn, keyVersions));
+    }
+
+    // ---- readAll ----
+
+    @Override
+    public final ValueVersion<V> readAll(final Connection conn, final K key) {
+        final ValueVersion<byte[]> encoded = reader.readAll(conn, key);
+        return encoded == null ? null : new ValueVersion<V>(decode(encoded.getValue()), encoded.getVersion());
+    }
+
+    @Override
+    public final Map<K, ValueVersion<V>> batchReadAll(final Connection conn, final List<K> keys) {
+        final Map<K, ValueVersion<byte[]>> encoded = reader.batchReadAll(conn, keys);
+        final Map<K, ValueVersion<V>> result = new LinkedHashMap<K, ValueVersion<V>>(encoded.size());
+        for (final Map.Entry<K, ValueVersion<byte[]>> entry: encoded.entrySet()) {
+            final ValueVersion<byte[]> each = entry.getValue();
+            result.put(entry.getKey(), new ValueVersion<V>(decode(each.getValue()), each.getVersion()));
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,148 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.bitumen.jdbc.kv.IKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.IValueCodec;
+import net.sf.bitumen.jdbc.kv.KeyValueVersion;
+
+/**
+ * Decorator that encodes values using an {@link IValueCodec} and writes them as bytes (e.g. to a BLOB/BYTEA value
+ * column) through another {@link IKeyvalWrite}. Typically paired with {@link CodecKeyvalRead} using the same codec.
+ * Operations that do not write values are delegated unchanged. <tt>NULL</tt> values are not encoded.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class CodecKeyvalWrite<K, V> implements IKeyvalWrite<K, V> {
+
+    /** Key-value writer of encoded values. */
+    private final IKeyvalWrite<K, byte[]> writer;
+
+    /** Value codec. */
+    private final IValueCodec<V> codec;
+
+    /**
+     * Construct instance.
+     * @param orig       key-value writer of encoded values, e.g. {@link DefaultKeyvalWrite} with <tt>byte[]</tt>
+     *                   values
+     * @param valueCodec value codec
+     */
+    public CodecKeyvalWrite(final IKeyvalWrite<K, byte[]> orig, final IValueCodec<V> valueCodec) {
+        this.writer = orig;
+        this.codec = valueCodec;
+    }
+
+    /**
+     * Encode specified value.
+     * @param  value value, may be <tt>null</tt>
+     * @return       encoded value, <tt>null</tt> if <tt>value</tt> is <tt>null</tt>
+     */
+    private byte[] encode(final V value) {
+        return value == null ? null : codec.encode(value);
+    }
+
+    /**
+     * Encode the values of specified map.
+     * @param  pairs map of keys and values
+     * @return       map of keys and encoded values, in the same order
+     */
+    private Map<K, byte[]> encodeAll(final Map<K, V> pairs) {
+        final Map<K, byte[]> result = new LinkedHashMap<K, byte[]>(pairs.size());
+        for (final Map.Entry<K, V> entry: pairs.entrySet()) {
+            result.put(entry.getKey(), encode(entry.getValue()));
+        }
+        return result;
+    }
+
+    // ---- insert (fails if key already exists) ----
+
+    @Override
+    public final long insert(final Connection conn, final K key, final V value) {
+        return writer.insert(conn, key, encode(value));
+    }
+
+    @Override
+    public final long batchInsert(final Connection conn, final Map<K, V> pairs) {
+        return writer.batchInsert(conn, encodeAll(pairs));
+    }
+
+    // ---- save, regardless of whether they already exist ----
+
+    @Override
+    public final long save(final Connection conn, final K key, final V value) {
+        return writer.save(conn, key, encode(value));
+    }
+
+    @Override
+    public final long batchSave(final Connection conn, final Map<K, V> pairs) {
+        return writer.batchSave(conn, encodeAll(pairs));
+    }
+
+    // ---- swap (requires old version) ----
+
+    @Override
+    public final Long swap(final Connection conn, final K key, final V value, final long version) {
+        return writer.swap(conn, key, encode(value), version);
+    }
+
+    @Override
+    public final Long batchSwap(final Connection conn, final Map<K, V> pairs, final long version) {
+        return writer.batchSwap(conn, encodeAll(pairs), version);
+    }
+
+    @Override
+    public final Long batchSwap(final Connection conn, final List<KeyValueVersion<K, V>> triplets) {
+        final List<KeyValueVersion<K, byte[]>> encoded = new ArrayList<KeyValueVersion<K, byte[]>>(triplets.size());
+        for (final KeyValueVersion<K, V> each: triplets) {
+            encoded.add(new KeyValueVersion<K, byte[]>(each.getKey(), encode(each.getValue()), each.getVersion()));
+        }
+        return writer.batchSwap(conn, encoded);
+    }
+
+    // ---- touch (update version) ----
+
+    @Override
+    public final Long touch(final Connection conn, final K key) {
+        return writer.touch(conn, key);
+    }
+
+    @Override
+    public final Long batchTouch(final Connection conn, final List<K> keys) {
+        return writer.batchTouch(conn, keys);
+    }
+
+    // ---- delete ----
+
+    @Override
+    public final void delete(final Connection conn, final K key) {
+        writer.delete(conn, key);
+    }
+
+    @Override
+    public final void batchDelete(final Connection conn, final List<K> keys) {
+        writer.batchDelete(conn, keys);
+    }
+
+    // ---- remove (requires old version) ----
+
+    @Override
+    public final void remove(final Connection conn, final K key, final long version) {
+        writer.remove(conn, key, version);
+    }
+
+    @Override
+    public final void batchRemove(final Connection conn, final List<K> keys, final long version) {
+        writer.batchRemove(conn, keys, version);
+    }
+
+    @Override
+    public final void batchRemove(final Connection conn, final Map<K, Long> keys) {
+        writer.batchRemove(conn, keys);
+    }
+
+}
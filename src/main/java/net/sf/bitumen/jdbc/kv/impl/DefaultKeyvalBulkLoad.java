@@ -0,0 +1,95 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.bitumen.jdbc.IJdbcWrite;
+import net.sf.bitumen.jdbc.impl.DefaultJdbcWrite;
+import net.sf.bitumen.jdbc.kv.IKeyvalBulkLoad;
+import net.sf.bitumen.util.Util;
+
+/**
+ * Default implementation of {@link IKeyvalBulkLoad} that inserts the key-value pairs in chunks of JDBC batches.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class DefaultKeyvalBulkLoad<K, V> implements IKeyvalBulkLoad<K, V> {
+
+    /** Default number of rows per JDBC batch. */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    /** SQL format used to render SQL template. */
+    private static final String
+    INSERT_FORMAT = "INSERT INTO $tableName ($keyColname, $valueColname, $versionColname, $createTimestampColname,"
+    + " $updateTimestampColname) VALUES (?, ?, ?, ?, ?)"; // key, val, version, timestamp[1,2]
+
+    /** SQL template - rendered from format. */
+    private final String insertSql;
+
+    /** JDBC writer. */
+    private final IJdbcWrite writer;
+
+    /** Number of rows per JDBC batch. */
+    private final int chunkSize;
+
+    /**
+     * Construct instance from required parameters and using default JDBC writer and chunk size.
+     * @param tableMeta table meta data
+     */
+    public DefaultKeyvalBulkLoad(final TableMetadata tableMeta) {
+        this(tableMeta, new DefaultJdbcWrite(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Construct instance from required parameters.
+     * @param tableMeta table meta data
+     * @param dbWriter  JDBC writer
+     * @param maxRows   number of rows per JDBC batch
+     */
+    public DefaultKeyvalBulkLoad(final TableMetadata tableMeta, final IJdbcWrite dbWriter, final int maxRows) {
+        if (maxRows < 1) {
+            throw new IllegalArgumentException("Expected chunk size to be positive, found: " + maxRows);
+        }
+        this.insertSql = tableMeta.groovyReplace(INSERT_FORMAT);
+        this.writer = dbWriter;
+        this.chunkSize = maxRows;
+    }
+
+    @Override
+    public final long load(final Connection conn, final Iterator<? extends Map.Entry<K, V>> pairs) {
+        final long version = Util.newVersion();
+        load(conn, pairs, version, Util.now());
+        return version;
+    }
+
+    /**
+     * Insert all key-value pairs from specified iterator with specified version and timestamp.
+     * @param  conn    JDBC connection
+     * @param  pairs   key-value pairs to insert
+     * @param  version version of the inserted pairs
+     * @param  now     create/update timestamp of the inserted pairs
+     * @return         number of pairs inserted
+     */
+    public final long load(final Connection conn, final Iterator<? extends Map.Entry<K, V>> pairs, final long version,
+            final Timestamp now) {
+        long count = 0;
+        final List<Iterable<?>> paramBatch = new ArrayList<>(chunkSize);
+        while (pairs.hasNext()) {
+            final Map.Entry<K, V> each = pairs.next();
+            paramBatch.add(Arrays.asList(each.getKey(), each.getValue(), version, now, now));
+            if (paramBatch.size() == chunkSize || !pairs.hasNext()) {
+                writer.batchUpdate(conn, insertSql, paramBatch);
+                count += paramBatch.size();
+                paramBatch.clear();
+            }
+        }
+        return count;
+    }
+
+}
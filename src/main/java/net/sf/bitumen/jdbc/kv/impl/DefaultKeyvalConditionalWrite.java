@@ -0,0 +1,217 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.sf.bitumen.jdbc.IJdbcRead;
+import net.sf.bitumen.jdbc.IJdbcWrite;
+import net.sf.bitumen.jdbc.IRowExtractor;
+import net.sf.bitumen.jdbc.impl.DefaultJdbcRead;
+import net.sf.bitumen.jdbc.impl.DefaultJdbcWrite;
+import net.sf.bitumen.jdbc.impl.JdbcUtil;
+import net.sf.bitumen.jdbc.kv.IKeyvalConditionalWrite;
+import net.sf.bitumen.jdbc.kv.KeyValueVersion;
+import net.sf.bitumen.util.NamedParams;
+import net.sf.bitumen.util.Util;
+
+/**
+ * Default implementation of {@link IKeyvalConditionalWrite} using portable SQL. Each chunk of keys is swapped with a
+ * single <tt>UPDATE</tt> (values picked by a <tt>CASE</tt> expression) that stamps the matching rows with a fresh
+ * version, followed by a <tt>SELECT</tt> of the keys carrying that version. Removal stamps the matching rows the same
+ * way before deleting them, so that the deleted keys are known without relying on <tt>RETURNING</tt> support. Hence a
+ * chunk costs two (swap) or three (remove) round trips regardless of its size. Should be called within a transaction,
+ * so that the stamped rows stay locked until the follow up statements complete.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class DefaultKeyvalConditionalWrite<K, V> implements IKeyvalConditionalWrite<K, V> {
+
+    /** Default maximum number of keys per statement. */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    /** SQL formats for various purposes. Used to render SQL templates. */
+    private static final String
+    SWAP_FORMAT   = "UPDATE $tableName SET $valueColname = CASE $keyColname $valueCases END, $versionColname = ?, $updateTimestampColname = ? WHERE $keyVersionExpression", // key/val-pairs, ver, timestamp, key/old-ver-pairs
+    MARK_FORMAT   = "UPDATE $tableName SET $versionColname = ? WHERE $keyVersionExpression", // ver, key/old-ver-pairs
+    FIND_FORMAT   = "SELECT $keyColname FROM $tableName WHERE $versionColname = ? AND $keyColname IN ($keysPlaceholder)", // ver, keys
+    DELETE_FORMAT = "DELETE FROM $tableName WHERE $versionColname = ? AND $keyColname IN ($keysPlaceholder)"; // ver, keys
+
+    /** SQL templates - rendered from formats, except for the per-chunk variables. */
+    private final String swapSql, markSql, findSql, deleteSql;
+
+    /** Table meta data. */
+    private final TableMetadata meta;
+
+    /** JDBC reader. */
+    private final IJdbcRead reader;
+
+    /** JDBC writer. */
+    private final IJdbcWrite writer;
+
+    /** Maximum number of keys per statement. */
+    private final int chunkSize;
+
+    /** Key extractor from column index 1. */
+    private final IRowExtractor<K> keyExtractor1;
+
+    /** Rendered SQL cache (by key count). */
+    private final ConcurrentMap<Integer, String>
+    swapSqls = new ConcurrentHashMap<Integer, String>(),
+    markSqls = new ConcurrentHashMap<Integer, String>(),
+    findSqls = new ConcurrentHashMap<Integer, String>(),
+    deleteSqls = new ConcurrentHashMap<Integer, String>();
+
+    /**
+     * Construct instance from required parameters and using default JDBC reader/writer and chunk size.
+     * @param tableMeta table meta data
+     * @param keyClass  key class
+     */
+    public DefaultKeyvalConditionalWrite(final TableMetadata tableMeta, final Class<K> keyClass) {
+        this(tableMeta, keyClass, new DefaultJdbcRead(), new DefaultJdbcWrite(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Construct instance from all parameters.
+     * @param tableMeta table meta data
+     * @param keyClass  key class
+     * @param dbReader  JDBC reader
+     * @param dbWriter  JDBC writer
+     * @param maxKeys   maximum number of keys per statement
+     */
+    public DefaultKeyvalConditionalWrite(final TableMetadata tableMeta, final Class<K> keyClass,
+            final IJdbcRead dbReader, final IJdbcWrite dbWriter, final int maxKeys) {
+        if (maxKeys < 1) {
+            throw new IllegalArgumentException("Expected chunk size to be positive, found: " + maxKeys);
+        }
+        this.meta = tableMeta;
+        this.swapSql   = tableMeta.groovyReplaceKeep(SWAP_FORMAT);
+        this.markSql   = tableMeta.groovyReplaceKeep(MARK_FORMAT);
+        this.findSql   = tableMeta.groovyReplaceKeep(FIND_FORMAT);
+        this.deleteSql = tableMeta.groovyReplaceKeep(DELETE_FORMAT);
+        this.reader = dbReader;
+        this.writer = dbWriter;
+        this.chunkSize = maxKeys;
+        this.keyExtractor1 = JdbcUtil.makeTypedColumnExtractor(keyClass, 1);
+    }
+
+    /**
+     * Return SQL rendered from specified template for specified number of keys, caching the result.
+     * @param  cache    rendered SQL cache for the template
+     * @param  template SQL template
+     * @param  count    number of keys
+     * @return          rendered SQL
+     */
+    private String sqlFor(final ConcurrentMap<Integer, String> cache, final String template, final int count) {
+        final String sql = cache.get(count);
+        if (sql != null) {
+            return sql;
+        }
+        final Map<String, String> values = new LinkedHashMap<String, String>();
+        values.put("valueCases", Util.repeat("WHEN ? THEN ?", count, " "));
+        values.put("keyVersionExpression", Util.repeat("(" + meta.getKeyColname() + " = ? AND "
+                + meta.getVersionColname() + " = ?)", count, " OR "));
+        values.put("keysPlaceholder", JdbcUtil.paramPlaceholders(count));
+        final String rendered = NamedParams.groovyReplace(template, values, true);
+        cache.put(count, rendered);  // idempotent, so skip the check for efficiency
+        return rendered;
+    }
+
+    /**
+     * Return a version that is distinct from all specified versions, to stamp the affected rows with.
+     * @param  versions versions to avoid
+     * @return          new version
+     */
+    private static long newVersionExcept(final Set<Long> versions) {
+        long version = Util.newVersion();
+        while (versions.contains(version)) {
+            version++;
+        }
+        return version;
+    }
+
+    /**
+     * Find the keys, among specified keys, whose rows carry specified version.
+     * @param  conn    JDBC connection
+     * @param  keys    keys to find
+     * @param  version version to match
+     * @return         found keys
+     */
+    private Set<K> findStamped(final Connection conn, final List<K> keys, final long version) {
+        final List<Object> params = new ArrayList<Object>(keys.size() + 1);
+        params.add(version);
+        params.addAll(keys);
+        return new HashSet<K>(reader.queryForList(conn, sqlFor(findSqls, findSql, keys.size()), params,
+                keyExtractor1));
+    }
+
+    @Override
+    public final Map<K, Long> batchSwapEach(final Connection conn, final List<KeyValueVersion<K, V>> triplets) {
+        final Timestamp now = Util.now();
+        final Set<Long> oldVersions = new HashSet<Long>(triplets.size());
+        for (KeyValueVersion<K, V> each: triplets) {
+            oldVersions.add(each.getVersion());
+        }
+        final long newVersion = newVersionExcept(oldVersions);
+        final Map<K, Long> result = new LinkedHashMap<K, Long>(triplets.size());
+        for (List<KeyValueVersion<K, V>> chunk: Util.partition(triplets, chunkSize)) {
+            final List<K> keys = new ArrayList<K>(chunk.size());
+            final List<Object> params = new ArrayList<Object>(chunk.size() * 4 + 2);
+            for (KeyValueVersion<K, V> each: chunk) {
+                keys.add(each.getKey());
+                params.add(each.getKey());
+                params.add(each.getValue());
+            }
+            params.add(newVersion);
+            params.add(now);
+            for (KeyValueVersion<K, V> each: chunk) {
+                params.add(each.getKey());
+                params.add(each.getVersion());
+            }
+            if (writer.update(conn, sqlFor(swapSqls, swapSql, chunk.size()), params) > 0) {
+                final Set<K> swapped = findStamped(conn, keys, newVersion);
+                for (K each: keys) {
+                    if (swapped.contains(each)) {
+                        result.put(each, newVersion);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public final Set<K> batchRemoveEach(final Connection conn, final Map<K, Long> keys) {
+        final long marker = newVersionExcept(new HashSet<Long>(keys.values()));
+        final Set<K> result = new LinkedHashSet<K>(keys.size());
+        for (Map<K, Long> chunk: Util.partition(keys, chunkSize)) {
+            final List<Object> markParams = new ArrayList<Object>(chunk.size() * 2 + 1);
+            markParams.add(marker);
+            markParams.addAll(Util.paramList(chunk));
+            if (writer.update(conn, sqlFor(markSqls, markSql, chunk.size()), markParams) > 0) {
+                final List<K> chunkKeys = new ArrayList<K>(chunk.keySet());
+                final Set<K> removed = findStamped(conn, chunkKeys, marker);
+                final List<Object> deleteParams = new ArrayList<Object>(chunk.size() + 1);
+                deleteParams.add(marker);
+                deleteParams.addAll(chunkKeys);
+                writer.update(conn, sqlFor(deleteSqls, deleteSql, chunk.size()), deleteParams);
+                for (K each: chunkKeys) {
+                    if (removed.contains(each)) {
+                        result.add(each);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+}
@@ -11,34 +11,48 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import net.sf.bitumen.jdbc.IJdbcRead;
+import net.sf.bitumen.jdbc.ILongRowExtractor;
 import net.sf.bitumen.jdbc.IRowExtractor;
 import net.sf.bitumen.jdbc.impl.DefaultJdbcRead;
 import net.sf.bitumen.jdbc.impl.JdbcUtil;
 import net.sf.bitumen.jdbc.kv.IKeyvalRead;
 import net.sf.bitumen.jdbc.kv.ValueVersion;
 import net.sf.bitumen.util.NamedParams;
+import net.sf.bitumen.util.ObjectLongMap;
 import net.sf.bitumen.util.Util;
 
 /**
- * Default implementation of {@link IKeyvalRead}.
+ * Default implementation of {@link IKeyvalRead}. When the table has an expiry timestamp column (see
+ * {@link TableMetadata#hasExpiry()}) pairs whose expiry timestamp is not after the current (application) time are
+ * treated as absent.
  *
  * @param <K> key type
  * @param <V> value type
  */
 public class DefaultKeyvalRead<K, V> implements IKeyvalRead<K, V> {
 
+    /**
+     * Default maximum number of keys per SQL statement in batch operations. Keeps statements well within driver and
+     * database parameter limits (e.g. PostgreSQL's 32767 parameters).
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+    /** Used to represent "no limit" for the <tt>maxBatchSize</tt> constructor argument, i.e. no chunking. */
+    public static final int NO_BATCH_LIMIT = 0;
+
     /** SQL formats for various purposes. Used to render SQL templates. */
     private static final String
-    VERSION_FORMAT            = "SELECT $versionColname FROM $tableName WHERE $keyColname = ?",    // key
-    MULTI_VERSION_FORMAT      = "SELECT $keyColname, $versionColname FROM $tableName WHERE $keyColname IN ($keysPlaceholder)", // keys-placeholder
-    COND_VERSION_FORMAT       = "SELECT COUNT(*) FROM $tableName WHERE $keyColname = ? AND $versionColname = ?", // key, old-version
-    COND_MULTI_VERSION_FORMAT = "SELECT $keyColname, COUNT(*) FROM $tableName WHERE $keyVersionExpression GROUP BY $keyColname", // key, old-version
-    FETCH_FORMAT              = "SELECT $valueColname FROM $tableName WHERE $keyColname = ?",  // key
-    MULTI_FETCH_FORMAT        = "SELECT $keyColname, $valueColname FROM $tableName WHERE $keyColname IN ($keysPlaceholder)",  // key
-    COND_FETCH_FORMAT         = "SELECT $valueColname FROM $tableName WHERE $keyColname = ? AND $versionColname = ?", // key, old-version
-    COND_MULTI_FETCH_FORMAT   = "SELECT $keyColname, $valueColname FROM $tableName WHERE $keyVersionExpression", // key, old-version
-    FETCH_ALL_FORMAT          = "SELECT $valueColname, $versionColname FROM $tableName WHERE $keyColname = ?",
-    BATCH_FETCH_ALL_FORMAT    = "SELECT $keyColname, $valueColname, $versionColname FROM $tableName WHERE $keyColname IN ($keysPlaceholder)";
+    VERSION_FORMAT            = "SELECT $versionColname FROM $tableName WHERE $keyColname = ?$liveFilter",    // key
+    MULTI_VERSION_FORMAT      = "SELECT $keyColname, $versionColname FROM $tableName WHERE $keyColname IN ($keysPlaceholder)$liveFilter", // keys-placeholder
+    COND_VERSION_FORMAT       = "SELECT COUNT(*) FROM $tableName WHERE $keyColname = ? AND $versionColname = ?$liveFilter", // key, old-version
+    COND_MULTI_VERSION_FORMAT = "SELECT $keyColname, COUNT(*) FROM $tableName WHERE ($keyVersionExpression)$liveFilter GROUP BY $keyColname", // key, old-version
+    FETCH_FORMAT              = "SELECT $valueColname FROM $tableName WHERE $keyColname = ?$liveFilter",  // key
+    MULTI_FETCH_FORMAT        = "SELECT $keyColname, $valueColname FROM $tableName WHERE $keyColname IN ($keysPlaceholder)$liveFilter",  // key
+    COND_FETCH_FORMAT         = "SELECT $valueColname FROM $tableName WHERE $keyColname = ? AND $versionColname = ?$liveFilter", // key, old-version
+    COND_MULTI_FETCH_FORMAT   = "SELECT $keyColname, $valueColname FROM $tableName WHERE ($keyVersionExpression)$liveFilter", // key, old-version
+    FETCH_ALL_FORMAT          = "SELECT $valueColname, $versionColname FROM $tableName WHERE $keyColname = ?$liveFilter",
+    BATCH_FETCH_ALL_FORMAT    = "SELECT $keyColname, $valueColname, $versionColname FROM $tableName WHERE $keyColname IN ($keysPlaceholder)$liveFilter",
+    LIVE_FILTER_FORMAT        = " AND ($expiresTimestampColname IS NULL OR $expiresTimestampColname > ?)"; // now
 
     /** SQL templates - rendered from formats. */
     private final String
@@ -48,26 +62,163 @@ public class DefaultKeyvalRead<K, V> implements IKeyvalRead<K, V> {
     /** Table meta data. */
     private final TableMetadata meta;
 
+    /** Whether to filter out expired pairs, i.e. whether the SQL templates take the current time as last parameter. */
+    private final boolean expiry;
+
     /** JDBC reader. */
     private final IJdbcRead reader;
 
-    /** SQL fragment cache for memoized result. */
-    private final ConcurrentMap<Integer, String> keyVersionExpressions = new ConcurrentHashMap<Integer, String>();
+    /** Maximum number of keys per SQL statement in batch operations; larger batches are split into chunks. */
+    private final int maxBatchSize;
+
+    /** Whether to round key count up to a power-of-two bucket (padding with a repeated key) in batch operations. */
+    private final boolean bucketBatchSize;
+
+    /** Rendered SQL cache (by key count) for batch operations. */
+    private final ConcurrentMap<Integer, String>
+    multiVersionSqls = new ConcurrentHashMap<Integer, String>(),
+    condMultiVersionSqls = new ConcurrentHashMap<Integer, String>(),
+    multiFetchSqls = new ConcurrentHashMap<Integer, String>(),
+    condMultiFetchSqls = new ConcurrentHashMap<Integer, String>(),
+    batchFetchAllSqls = new ConcurrentHashMap<Integer, String>();
+
+    /**
+     * Return SQL rendered from specified '$keysPlaceholder' template for specified number of keys, caching the result
+     * when the count does not exceed the chunk size (so that the cache stays bounded).
+     * @param  cache    rendered SQL cache for the template
+     * @param  template SQL template containing '$keysPlaceholder'
+     * @param  count    number of keys
+     * @return          rendered SQL
+     */
+    private String keysSqlFor(final ConcurrentMap<Integer, String> cache, final String template, final int count) {
+        final String sql = cache.get(count);
+        if (sql != null) {
+            return sql;
+        }
+        return cacheSql(cache, count, putKeysPlaceholder(template, count));
+    }
+
+    /**
+     * Return SQL rendered from specified '$keyVersionExpression' template for specified number of key/version pairs,
+     * caching the result when the count does not exceed the chunk size (so that the cache stays bounded).
+     * @param  cache    rendered SQL cache for the template
+     * @param  template SQL template containing '$keyVersionExpression'
+     * @param  count    number of key/version pairs
+     * @return          rendered SQL
+     */
+    private String keyVersionSqlFor(final ConcurrentMap<Integer, String> cache, final String template,
+            final int count) {
+        final String sql = cache.get(count);
+        if (sql != null) {
+            return sql;
+        }
+        return cacheSql(cache, count, NamedParams.groovyReplace(template, keyVersionExpression(count), true));
+    }
+
+    /**
+     * Put rendered SQL in specified cache if the count is cacheable, and return the SQL.
+     * @param  cache rendered SQL cache
+     * @param  count number of keys
+     * @param  sql   rendered SQL
+     * @return       rendered SQL
+     */
+    private String cacheSql(final ConcurrentMap<Integer, String> cache, final int count, final String sql) {
+        if (bucketBatchSize || count <= (maxBatchSize > 0 ? maxBatchSize : DEFAULT_MAX_BATCH_SIZE)) {
+            cache.put(count, sql);  // idempotent, so skip the check for efficiency
+        }
+        return sql;
+    }
+
+    /**
+     * Return the number of keys to render SQL for, given the actual number of keys. When bucketing is enabled this is
+     * the next power of two (capped at the chunk size), so that at most about log2(chunk size) distinct statements
+     * are generated per template - else it is the actual number of keys.
+     * @param  count actual number of keys
+     * @return       number of keys to render SQL for
+     */
+    private int bucketFor(final int count) {
+        if (!bucketBatchSize || count <= 1) {
+            return count;
+        }
+        final int bucket = Integer.highestOneBit(count - 1) << 1;
+        return maxBatchSize > 0 ? Math.min(bucket, maxBatchSize) : bucket;
+    }
+
+    /**
+     * Render the filter of expired pairs into specified SQL format.
+     * @param  format SQL format
+     * @param  filter filter fragment keyed by <tt>liveFilter</tt>, empty when the table has no expiry column
+     * @return        SQL format with the filter rendered
+     */
+    private static String liveFormat(final String format, final Map<String, String> filter) {
+        return NamedParams.groovyReplace(format, filter, false);
+    }
+
+    /**
+     * Append the current time to specified SQL params when expired pairs are filtered out.
+     * @param  params SQL params
+     * @return        SQL params, with the current time as the last param if required
+     */
+    private List<?> live(final List<?> params) {
+        if (!expiry) {
+            return params;
+        }
+        final List<Object> result = new ArrayList<Object>(params.size() + 1);
+        result.addAll(params);
+        result.add(Util.now());
+        return result;
+    }
+
+    /**
+     * Pad specified keys to the bucket size by repeating the last key.
+     * @param  keys   keys
+     * @param  bucket bucket size, see {@link #bucketFor(int)}
+     * @return        SQL params
+     */
+    private List<?> padKeys(final List<K> keys, final int bucket) {
+        final int count = keys.size();
+        if (count == bucket) {
+            return keys;
+        }
+        final List<Object> result = new ArrayList<Object>(bucket);
+        result.addAll(keys);
+        final K last = keys.get(count - 1);
+        for (int i = count; i < bucket; i++) {
+            result.add(last);
+        }
+        return result;
+    }
+
+    /**
+     * Flatten specified key/version pairs into SQL params, padded to the bucket size by repeating the last pair.
+     * @param  keyVersions key/version pairs
+     * @param  bucket      bucket size, see {@link #bucketFor(int)}
+     * @return             SQL params
+     */
+    private List<?> padKeyVersions(final Map<K, Long> keyVersions, final int bucket) {
+        final List<?> params = Util.paramList(keyVersions);
+        final int count = keyVersions.size();
+        if (count == bucket) {
+            return params;
+        }
+        final List<Object> result = new ArrayList<Object>(bucket * 2);
+        result.addAll(params);
+        final Object lastKey = params.get(params.size() - 2), lastVersion = params.get(params.size() - 1);
+        for (int i = count; i < bucket; i++) {
+            result.add(lastKey);
+            result.add(lastVersion);
+        }
+        return result;
+    }
 
     /**
-     * Return SQL expression fragment based on number of parameter count - memoize results for speed.
+     * Return SQL expression fragment to match specified number of key/version pairs.
      * @param  count number of expressions
      * @return       SQL expression fragment
      */
     private String keyVersionExpressionFor(final int count) {
-        final String expr = keyVersionExpressions.get(count);
-        if (expr != null) {
-            return expr;
-        }
-        final String newExpr = Util.repeat("(" + meta.getKeyColname() + "= ? AND " + meta.getVersionColname() + " = ?)",
+        return Util.repeat("(" + meta.getKeyColname() + "= ? AND " + meta.getVersionColname() + " = ?)",
                 count, " OR ");
-        keyVersionExpressions.put(count, newExpr);  // idempotent, so skip the check for efficiency
-        return newExpr;
     }
 
     /** Column index 01. */
@@ -95,13 +246,13 @@ public class DefaultKeyvalRead<K, V> implements IKeyvalRead<K, V> {
     private final IRowExtractor<ValueVersion<V>> valueVersionExtractor23;
 
     /** Row extractor that finds version at column index 01. */
-    private final IRowExtractor<Long> versionExtractor1 = JdbcUtil.makeColumnExtractor(Long.class, COLUMN_ONE);
+    private final IRowExtractor<Long> versionExtractor1 = JdbcUtil.makeTypedColumnExtractor(Long.class, COLUMN_ONE);
 
-    /** Row extractor that finds version at column index 02. */
-    private final IRowExtractor<Long> versionExtractor2 = JdbcUtil.makeColumnExtractor(Long.class, COLUMN_TWO);
+    /** Primitive row extractor that finds version at column index 02. */
+    private final ILongRowExtractor versionExtractor2 = JdbcUtil.makeLongColumnExtractor(COLUMN_TWO);
 
-    /** Row extractor that finds count at column index 02. */
-    private final IRowExtractor<Long> countExtractor2 = JdbcUtil.makeColumnExtractor(Long.class, COLUMN_TWO);
+    /** Primitive row extractor that finds count at column index 02. */
+    private final ILongRowExtractor countExtractor2 = JdbcUtil.makeLongColumnExtractor(COLUMN_TWO);
 
     /**
      * Construct instance from required parameters and using default JDBC reader instance.
@@ -114,7 +265,7 @@ public class DefaultKeyvalRead<K, V> implements IKeyvalRead<K, V> {
     }
 
     /**
-     * Construct instance from required parameters.
+     * Construct instance from required parameters and using {@link #DEFAULT_MAX_BATCH_SIZE}.
      * @param tableMeta table meta data
      * @param keyClass  key class
      * @param valClass  value class
@@ -122,20 +273,58 @@ public class DefaultKeyvalRead<K, V> implements IKeyvalRead<K, V> {
      */
     public DefaultKeyvalRead(final TableMetadata tableMeta, final Class<K> keyClass, final Class<V> valClass,
             final IJdbcRead dbReader) {
+        this(tableMeta, keyClass, valClass, dbReader, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Construct instance from all parameters.
+     * @param tableMeta    table meta data
+     * @param keyClass     key class - key columns are read with the matching JDBC getter, and converted by the driver
+     *                     if of a different SQL type
+     * @param valClass     value class - value columns are read with the matching JDBC getter, and converted by the
+     *                     driver if of a different SQL type
+     * @param dbReader     JDBC reader
+     * @param maxBatchKeys maximum number of keys per SQL statement in batch operations - larger batches are split
+     *                     into chunks whose results are merged in order ({@link #NO_BATCH_LIMIT} to disable)
+     */
+    public DefaultKeyvalRead(final TableMetadata tableMeta, final Class<K> keyClass, final Class<V> valClass,
+            final IJdbcRead dbReader, final int maxBatchKeys) {
+        this(tableMeta, keyClass, valClass, dbReader, maxBatchKeys, false);
+    }
+
+    /**
+     * Construct instance from all parameters.
+     * @param tableMeta    table meta data
+     * @param keyClass     key class
+     * @param valClass     value class
+     * @param dbReader     JDBC reader
+     * @param maxBatchKeys maximum number of keys per SQL statement in batch operations - larger batches are split
+     *                     into chunks whose results are merged in order ({@link #NO_BATCH_LIMIT} to disable)
+     * @param bucketed     whether to round the key count of batch operations up to a power of two (padding with a
+     *                     repeated key), which bounds the number of distinct SQL statements sent to the database and
+     *                     hence plan cache and server-side prepared statement cache churn
+     */
+    public DefaultKeyvalRead(final TableMetadata tableMeta, final Class<K> keyClass, final Class<V> valClass,
+            final IJdbcRead dbReader, final int maxBatchKeys, final boolean bucketed) {
         this.meta = tableMeta;
-        this.versionSql          = tableMeta.groovyReplace(VERSION_FORMAT);
-        this.multiVersionSql     = tableMeta.groovyReplaceKeep(MULTI_VERSION_FORMAT);
-        this.condVersionSql      = tableMeta.groovyReplace(COND_VERSION_FORMAT);
-        this.condMultiVersionSql = tableMeta.groovyReplaceKeep(COND_MULTI_VERSION_FORMAT);
-        this.fetchSql            = tableMeta.groovyReplace(FETCH_FORMAT);
-        this.multiFetchSql       = tableMeta.groovyReplaceKeep(MULTI_FETCH_FORMAT);
-        this.condFetchSql        = tableMeta.groovyReplace(COND_FETCH_FORMAT);
-        this.condMultiFetchSql   = tableMeta.groovyReplaceKeep(COND_MULTI_FETCH_FORMAT);
-        this.fetchAllSql         = tableMeta.groovyReplace(FETCH_ALL_FORMAT);
-        this.batchFetchAllSql    = tableMeta.groovyReplaceKeep(BATCH_FETCH_ALL_FORMAT);
-        this.keyExtractor1 = JdbcUtil.makeColumnExtractor(keyClass, COLUMN_ONE);
-        this.valExtractor1 = JdbcUtil.makeColumnExtractor(valClass, COLUMN_ONE);
-        this.valExtractor2 = JdbcUtil.makeColumnExtractor(valClass, COLUMN_TWO);
+        this.maxBatchSize = maxBatchKeys;
+        this.bucketBatchSize = bucketed;
+        this.expiry = tableMeta.hasExpiry();
+        final Map<String, String> filter = Collections.singletonMap("liveFilter",
+                expiry ? tableMeta.groovyReplace(LIVE_FILTER_FORMAT) : "");
+        this.versionSql          = tableMeta.groovyReplace(liveFormat(VERSION_FORMAT, filter));
+        this.multiVersionSql     = tableMeta.groovyReplaceKeep(liveFormat(MULTI_VERSION_FORMAT, filter));
+        this.condVersionSql      = tableMeta.groovyReplace(liveFormat(COND_VERSION_FORMAT, filter));
+        this.condMultiVersionSql = tableMeta.groovyReplaceKeep(liveFormat(COND_MULTI_VERSION_FORMAT, filter));
+        this.fetchSql            = tableMeta.groovyReplace(liveFormat(FETCH_FORMAT, filter));
+        this.multiFetchSql       = tableMeta.groovyReplaceKeep(liveFormat(MULTI_FETCH_FORMAT, filter));
+        this.condFetchSql        = tableMeta.groovyReplace(liveFormat(COND_FETCH_FORMAT, filter));
+        this.condMultiFetchSql   = tableMeta.groovyReplaceKeep(liveFormat(COND_MULTI_FETCH_FORMAT, filter));
+        this.fetchAllSql         = tableMeta.groovyReplace(liveFormat(FETCH_ALL_FORMAT, filter));
+        this.batchFetchAllSql    = tableMeta.groovyReplaceKeep(liveFormat(BATCH_FETCH_ALL_FORMAT, filter));
+        this.keyExtractor1 = JdbcUtil.makeTypedColumnExtractor(keyClass, COLUMN_ONE);
+        this.valExtractor1 = JdbcUtil.makeTypedColumnExtractor(valClass, COLUMN_ONE);
+        this.valExtractor2 = JdbcUtil.makeTypedColumnExtractor(valClass, COLUMN_TWO);
         this.valueVersionExtractor12 = ValueVersion.makeExtractor(valClass, COLUMN_ONE, COLUMN_TWO);
         this.valueVersionExtractor23 = ValueVersion.makeExtractor(valClass, COLUMN_TWO, COLUMN_THREE);
         this.reader = dbReader;
@@ -157,27 +346,47 @@ public class DefaultKeyvalRead<K, V> implements IKeyvalRead<K, V> {
      * repeated (delimited by 'OR') specified number of times.
      * @param  count number of expressions
      * @return       SQL expression
-     * @see          #keyVersionExpressionFor(int)
      */
     private Map<String, String> keyVersionExpression(final int count) {
         return Collections.singletonMap("keyVersionExpression", keyVersionExpressionFor(count));
     }
 
+    /**
+     * Put the rows found for specified keys into the result in the order of the keys, since the database returns the
+     * rows in no particular order. Keys not found are skipped.
+     * @param <K>    key type
+     * @param <T>    row value type
+     * @param result result map to put into
+     * @param keys   requested keys, in order
+     * @param rows   rows found, keyed by key
+     */
+    private static <K, T> void putInOrder(final Map<K, T> result, final Iterable<K> keys, final Map<K, T> rows) {
+        for (K each: keys) {
+            if (rows.containsKey(each)) {
+                result.put(each, rows.get(each));
+            }
+        }
+    }
+
     // ---- contains ----
 
     @Override
     public final Long contains(final Connection conn, final K key) {
-        return Util.firstItem(reader.queryForList(conn, versionSql, Arrays.asList(key), versionExtractor1, 1,
+        return Util.firstItem(reader.queryForList(conn, versionSql, live(Arrays.asList(key)), versionExtractor1, 1,
                 IJdbcRead.NO_LIMIT_EXCEED_EXCEPTION));
     }
 
     @Override
     public final List<Long> batchContains(final Connection conn, final List<K> keys) {
-        final String sql = putKeysPlaceholder(multiVersionSql, keys.size());
-        final Map<K, Long> rows = reader.queryForMap(conn, sql, keys, keyExtractor1, versionExtractor2);
         final List<Long> result = new ArrayList<Long>(keys.size());
-        for (K each: keys) {
-            result.add(rows.get(each));
+        for (List<K> chunk: Util.partition(keys, maxBatchSize)) {
+            final int bucket = bucketFor(chunk.size());
+            final String sql = keysSqlFor(multiVersionSqls, multiVersionSql, bucket);
+            final ObjectLongMap<K> rows = JdbcUtil.queryForLongMap(reader, conn, sql,
+                    live(padKeys(chunk, bucket)), keyExtractor1, versionExtractor2, chunk.size());
+            for (K each: chunk) {
+                result.add(rows.containsKey(each) ? Long.valueOf(rows.get(each, 0)) : null);
+            }
         }
         return result;
     }
@@ -187,19 +396,22 @@ public class DefaultKeyvalRead<K, V> implements IKeyvalRead<K, V> {
     @Override
     public final boolean containsVersion(final Connection conn, final K key, final long version) {
         return Util.firstItem(reader.queryForList(
-                conn, condVersionSql, Arrays.asList(key, version), versionExtractor1, 1,
+                conn, condVersionSql, live(Arrays.asList(key, version)), versionExtractor1, 1,
                 IJdbcRead.NO_LIMIT_EXCEED_EXCEPTION)) > 0;
     }
 
     @Override
     public final Map<K, Boolean> batchContainsVersion(final Connection conn, final Map<K, Long> keyVersions) {
-        final String sql = NamedParams.groovyReplace(condMultiVersionSql, keyVersionExpression(keyVersions.size()), true);
-        final Iterable<?> params = Util.paramList(keyVersions);
-        final Map<K, Long> keyVersionCount = reader.queryForMap(conn, sql, params, keyExtractor1, countExtractor2);
-        final Map<K, Boolean> result = new LinkedHashMap<K, Boolean>(keyVersionCount.size());
-        for (K key: keyVersions.keySet()) {
-            Long count = keyVersionCount.get(key);
-            result.put(key, count != null && count.longValue() > 0);
+        final Map<K, Boolean> result = new LinkedHashMap<K, Boolean>(keyVersions.size());
+        for (Map<K, Long> chunk: Util.partition(keyVersions, maxBatchSize)) {
+            final int bucket = bucketFor(chunk.size());
+            final String sql = keyVersionSqlFor(condMultiVersionSqls, condMultiVersionSql, bucket);
+            final Iterable<?> params = live(padKeyVersions(chunk, bucket));
+            final ObjectLongMap<K> keyVersionCount = JdbcUtil.queryForLongMap(reader, conn, sql, params,
+                    keyExtractor1, countExtractor2, chunk.size());
+            for (K key: chunk.keySet()) {
+                result.put(key, keyVersionCount.get(key, 0) > 0 ? Boolean.TRUE : Boolean.FALSE);
+            }
         }
         return result;
     }
@@ -208,43 +420,60 @@ public class DefaultKeyvalRead<K, V> implements IKeyvalRead<K, V> {
 
     @Override
     public final V read(final Connection conn, final K key) {
-        return Util.firstItem(reader.queryForList(conn, fetchSql, Arrays.asList(key), valExtractor1, 1,
+        return Util.firstItem(reader.queryForList(conn, fetchSql, live(Arrays.asList(key)), valExtractor1, 1,
                 IJdbcRead.NO_LIMIT_EXCEED_EXCEPTION));
     }
 
     @Override
     public final Map<K, V> batchRead(final Connection conn, final List<K> keys) {
-        final String sql = putKeysPlaceholder(multiFetchSql, keys.size());
-        return reader.queryForMap(conn, sql, keys, keyExtractor1, valExtractor2);
+        final Map<K, V> result = new LinkedHashMap<K, V>();
+        for (List<K> chunk: Util.partition(keys, maxBatchSize)) {
+            final int bucket = bucketFor(chunk.size());
+            final String sql = keysSqlFor(multiFetchSqls, multiFetchSql, bucket);
+            putInOrder(result, chunk,
+                    reader.queryForMap(conn, sql, live(padKeys(chunk, bucket)), keyExtractor1, valExtractor2));
+        }
+        return result;
     }
 
     // ---- readVersion ----
 
     @Override
     public final V readForVersion(final Connection conn, final K key, final long version) {
-        return Util.firstItem(reader.queryForList(conn, condFetchSql, Arrays.asList(key, version), valExtractor1, 1,
-                IJdbcRead.NO_LIMIT_EXCEED_EXCEPTION));
+        return Util.firstItem(reader.queryForList(conn, condFetchSql, live(Arrays.asList(key, version)), valExtractor1,
+                1, IJdbcRead.NO_LIMIT_EXCEED_EXCEPTION));
     }
 
     @Override
     public final Map<K, V> batchReadForVersion(final Connection conn, final Map<K, Long> keyVersions) {
-        final String sql = NamedParams.groovyReplace(condMultiFetchSql, keyVersionExpression(keyVersions.size()), true);
-        final Iterable<?> params = Util.paramList(keyVersions);
-        return reader.queryForMap(conn, sql, params, keyExtractor1, valExtractor2);
+        final Map<K, V> result = new LinkedHashMap<K, V>();
+        for (Map<K, Long> chunk: Util.partition(keyVersions, maxBatchSize)) {
+            final int bucket = bucketFor(chunk.size());
+            final String sql = keyVersionSqlFor(condMultiFetchSqls, condMultiFetchSql, bucket);
+            final Iterable<?> params = live(padKeyVersions(chunk, bucket));
+            putInOrder(result, chunk.keySet(), reader.queryForMap(conn, sql, params, keyExtractor1, valExtractor2));
+        }
+        return result;
     }
 
     // ---- readAll ----
 
     @Override
     public final ValueVersion<V> readAll(final Connection conn, final K key) {
-        return Util.firstItem(reader.queryForList(conn, fetchAllSql, Arrays.asList(key), valueVersionExtractor12, 1,
-                IJdbcRead.NO_LIMIT_EXCEED_EXCEPTION));
+        return Util.firstItem(reader.queryForList(conn, fetchAllSql, live(Arrays.asList(key)), valueVersionExtractor12,
+                1, IJdbcRead.NO_LIMIT_EXCEED_EXCEPTION));
     }
 
     @Override
     public final Map<K, ValueVersion<V>> batchReadAll(final Connection conn, final List<K> keys) {
-        final String sql = putKeysPlaceholder(batchFetchAllSql, keys.size());
-        return reader.queryForMap(conn, sql, keys, keyExtractor1, valueVersionExtractor23);
+        final Map<K, ValueVersion<V>> result = new LinkedHashMap<K, ValueVersion<V>>();
+        for (List<K> chunk: Util.partition(keys, maxBatchSize)) {
+            final int bucket = bucketFor(chunk.size());
+            final String sql = keysSqlFor(batchFetchAllSqls, batchFetchAllSql, bucket);
+            putInOrder(result, chunk, reader.queryForMap(conn, sql, live(padKeys(chunk, bucket)), keyExtractor1,
+                    valueVersionExtractor23));
+        }
+        return result;
     }
 
 }
@@ -0,0 +1,234 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import net.sf.bitumen.jdbc.IJdbcRead;
+import net.sf.bitumen.jdbc.IRowExtractor;
+import net.sf.bitumen.jdbc.impl.ColumnReaders;
+import net.sf.bitumen.jdbc.impl.DefaultJdbcRead;
+import net.sf.bitumen.jdbc.impl.IColumnReader;
+import net.sf.bitumen.jdbc.kv.IKeyvalScan;
+import net.sf.bitumen.jdbc.kv.KeyValueChange;
+import net.sf.bitumen.jdbc.kv.KeyValueVersion;
+
+/**
+ * Default implementation of {@link IKeyvalScan}, paginating with the <tt>LIMIT</tt> clause. The scan relies on the
+ * index on the key column; the change feed should be backed by an index on the update timestamp and key columns.
+ * <p>
+ * Note: The change feed finds pairs by update timestamp, hence it does not report deleted keys, and a transaction that
+ * commits after a later timestamp has been read may be missed unless the feed is resumed a little in the past.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class DefaultKeyvalScan<K, V> implements IKeyvalScan<K, V> {
+
+    /** SQL formats for various purposes. Used to render SQL templates. */
+    private static final String
+    SCAN_FIRST_FORMAT    = "SELECT $keyColname, $valueColname, $versionColname FROM $tableName ORDER BY $keyColname LIMIT ?", // limit
+    SCAN_NEXT_FORMAT     = "SELECT $keyColname, $valueColname, $versionColname FROM $tableName WHERE $keyColname > ? ORDER BY $keyColname LIMIT ?", // key, limit
+    RANGE_FIRST_FORMAT   = "SELECT $keyColname, $valueColname, $versionColname FROM $tableName WHERE $keyColname <= ? ORDER BY $keyColname LIMIT ?", // last-key, limit
+    RANGE_NEXT_FORMAT    = "SELECT $keyColname, $valueColname, $versionColname FROM $tableName WHERE $keyColname > ? AND $keyColname <= ? ORDER BY $keyColname LIMIT ?", // key, last-key, limit
+    CHANGES_FIRST_FORMAT = "SELECT $keyColname, $valueColname, $versionColname, $updateTimestampColname FROM $tableName"
+    + " WHERE $updateTimestampColname >= ? ORDER BY $updateTimestampColname, $keyColname LIMIT ?", // timestamp, limit
+    CHANGES_NEXT_FORMAT  = "SELECT $keyColname, $valueColname, $versionColname, $updateTimestampColname FROM $tableName"
+    + " WHERE $updateTimestampColname > ? OR ($updateTimestampColname = ? AND $keyColname > ?)"
+    + " ORDER BY $updateTimestampColname, $keyColname LIMIT ?"; // timestamp[1,2], key, limit
+
+    /** SQL templates - rendered from formats. */
+    private final String scanFirstSql, scanNextSql, rangeFirstSql, rangeNextSql, changesFirstSql, changesNextSql;
+
+    /** JDBC reader. */
+    private final IJdbcRead reader;
+
+    /** Row extractor that finds key, value and version at column indices 1 to 3. */
+    private final IRowExtractor<KeyValueVersion<K, V>> tripletExtractor;
+
+    /** Row extractor that finds key, value, version and update timestamp at column indices 1 to 4. */
+    private final IRowExtractor<KeyValueChange<K, V>> changeExtractor;
+
+    /**
+     * Iterator that fetches a page at a time, resuming after the last item of the previous page.
+     *
+     * @param <T> item type
+     */
+    private abstract static class PageIterator<T> implements Iterator<T> {
+
+        /** Number of items per page. */
+        private final int pageSize;
+
+        /** Current page. */
+        private List<T> page;
+
+        /** Index of the next item in the current page. */
+        private int index = 0;
+
+        /**
+         * Construct instance.
+         * @param firstPage first page
+         * @param limit     number of items per page
+         */
+        PageIterator(final List<T> firstPage, final int limit) {
+            this.page = firstPage;
+            this.pageSize = limit;
+        }
+
+        /**
+         * Fetch the page following specified item.
+         * @param  last last item of the previous page
+         * @return      next page
+         */
+        protected abstract List<T> nextPage(T last);
+
+        @Override
+        public boolean hasNext() {
+            if (index == page.size() && page.size() == pageSize) {
+                page = nextPage(page.get(pageSize - 1));
+                index = 0;
+            }
+            return index < page.size();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.get(index++);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Removal is not supported");
+        }
+
+    }
+
+    /**
+     * Construct instance from required parameters and using default JDBC reader instance.
+     * @param  tableMeta table meta data
+     * @param  keyClass  key class
+     * @param  valClass  value class
+     */
+    public DefaultKeyvalScan(final TableMetadata tableMeta, final Class<K> keyClass, final Class<V> valClass) {
+        this(tableMeta, keyClass, valClass, new DefaultJdbcRead());
+    }
+
+    /**
+     * Construct instance from all parameters.
+     * @param tableMeta table meta data
+     * @param keyClass  key class
+     * @param valClass  value class
+     * @param dbReader  JDBC reader
+     */
+    public DefaultKeyvalScan(final TableMetadata tableMeta, final Class<K> keyClass, final Class<V> valClass,
+            final IJdbcRead dbReader) {
+        this.scanFirstSql    = tableMeta.groovyReplace(SCAN_FIRST_FORMAT);
+        this.scanNextSql     = tableMeta.groovyReplace(SCAN_NEXT_FORMAT);
+        this.rangeFirstSql   = tableMeta.groovyReplace(RANGE_FIRST_FORMAT);
+        this.rangeNextSql    = tableMeta.groovyReplace(RANGE_NEXT_FORMAT);
+        this.changesFirstSql = tableMeta.groovyReplace(CHANGES_FIRST_FORMAT);
+        this.changesNextSql  = tableMeta.groovyReplace(CHANGES_NEXT_FORMAT);
+        this.reader = dbReader;
+        final IColumnReader<K> keyReader = ColumnReaders.forClass(keyClass);
+        final IColumnReader<V> valueReader = ColumnReaders.forClass(valClass);
+        this.tripletExtractor = new IRowExtractor<KeyValueVersion<K, V>>() {
+            @Override
+            public KeyValueVersion<K, V> extract(final ResultSet rs) throws SQLException {
+                return new KeyValueVersion<K, V>(keyReader.read(rs, 1), valueReader.read(rs, 2), rs.getLong(3));
+            }
+        };
+        this.changeExtractor = new IRowExtractor<KeyValueChange<K, V>>() {
+            @Override
+            public KeyValueChange<K, V> extract(final ResultSet rs) throws SQLException {
+                return new KeyValueChange<K, V>(keyReader.read(rs, 1), valueReader.read(rs, 2), rs.getLong(3),
+                        rs.getTimestamp(4));
+            }
+        };
+    }
+
+    /**
+     * Ensure that specified page size is positive.
+     * @param pageSize page size
+     */
+    private static void checkPageSize(final int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Expected page size to be positive, found: " + pageSize);
+        }
+    }
+
+    // ---- scan ----
+
+    @Override
+    public final List<KeyValueVersion<K, V>> scanPage(final Connection conn, final K afterKey, final int pageSize) {
+        checkPageSize(pageSize);
+        if (afterKey == null) {
+            return reader.queryForList(conn, scanFirstSql, Collections.singletonList(pageSize), tripletExtractor);
+        }
+        return reader.queryForList(conn, scanNextSql, Arrays.asList(afterKey, pageSize), tripletExtractor);
+    }
+
+    @Override
+    public final Iterator<KeyValueVersion<K, V>> scan(final Connection conn, final K afterKey, final int pageSize) {
+        return new PageIterator<KeyValueVersion<K, V>>(scanPage(conn, afterKey, pageSize), pageSize) {
+            @Override
+            protected List<KeyValueVersion<K, V>> nextPage(final KeyValueVersion<K, V> last) {
+                return scanPage(conn, last.getKey(), pageSize);
+            }
+        };
+    }
+
+    /**
+     * Return the page of key-value pairs following specified key up to (and including) specified last key, ordered by
+     * key. Used to scan a key range, e.g. by {@link ParallelKeyvalScan}.
+     * @param  conn     JDBC connection
+     * @param  afterKey key to resume after, <tt>null</tt> to start from the first key
+     * @param  lastKey  last key of the range, <tt>null</tt> for no upper bound
+     * @param  pageSize maximum number of pairs to return
+     * @return          key, value and version triplets - fewer than <tt>pageSize</tt> only on the last page
+     */
+    public final List<KeyValueVersion<K, V>> scanRangePage(final Connection conn, final K afterKey, final K lastKey,
+            final int pageSize) {
+        checkPageSize(pageSize);
+        if (lastKey == null) {
+            return scanPage(conn, afterKey, pageSize);
+        }
+        if (afterKey == null) {
+            return reader.queryForList(conn, rangeFirstSql, Arrays.asList(lastKey, pageSize), tripletExtractor);
+        }
+        return reader.queryForList(conn, rangeNextSql, Arrays.asList(afterKey, lastKey, pageSize), tripletExtractor);
+    }
+
+    // ---- change feed ----
+
+    @Override
+    public final List<KeyValueChange<K, V>> changesPage(final Connection conn, final Timestamp since,
+            final K afterKey, final int pageSize) {
+        checkPageSize(pageSize);
+        if (afterKey == null) {
+            return reader.queryForList(conn, changesFirstSql, Arrays.asList(since, pageSize), changeExtractor);
+        }
+        return reader.queryForList(conn, changesNextSql, Arrays.asList(since, since, afterKey, pageSize),
+                changeExtractor);
+    }
+
+    @Override
+    public final Iterator<KeyValueChange<K, V>> changes(final Connection conn, final Timestamp since,
+            final K afterKey, final int pageSize) {
+        return new PageIterator<KeyValueChange<K, V>>(changesPage(conn, since, afterKey, pageSize), pageSize) {
+            @Override
+            protected List<KeyValueChange<K, V>> nextPage(final KeyValueChange<K, V> last) {
+                return changesPage(conn, last.getUpdated(), last.getKey(), pageSize);
+            }
+        };
+    }
+
+}
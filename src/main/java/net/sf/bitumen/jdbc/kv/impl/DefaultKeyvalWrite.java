@@ -1,22 +1,37 @@
 package net.sf.bitumen.jdbc.kv.impl;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import net.sf.bitumen.jdbc.IJdbcWrite;
+import net.sf.bitumen.jdbc.IParamBinder;
 import net.sf.bitumen.jdbc.impl.DefaultJdbcWrite;
+import net.sf.bitumen.jdbc.impl.IParamSetter;
+import net.sf.bitumen.jdbc.impl.JdbcUtil;
+import net.sf.bitumen.jdbc.impl.ParamSetters;
 import net.sf.bitumen.jdbc.kv.IKeyvalWrite;
 import net.sf.bitumen.jdbc.kv.KeyValueVersion;
 import net.sf.bitumen.util.Util;
 
 /**
- * Default implementation of {@link IKeyvalWrite}.
+ * Default implementation of {@link IKeyvalWrite}. Batch operations bind the statement parameters directly from the
+ * key-value pairs (see {@link IParamBinder}), with versions and timestamps set as <tt>long</tt> and
+ * {@link Timestamp} respectively, and keys and values set with setters resolved from their classes when known.
+ * <p>
+ * When the table has an expiry timestamp column (see {@link TableMetadata#hasExpiry()}) the expiry timestamp is
+ * written by the same <tt>INSERT</tt>/<tt>UPDATE</tt> statement as the pair - cleared, so that the pair does not
+ * expire, unless a time-to-live is set (see {@link ExpiringKeyvalWrite}). <tt>swap</tt>/<tt>touch</tt> match live rows
+ * only, so that an expired pair is not brought back to life, and <tt>insert</tt> deletes the expired rows of its keys
+ * first, so that an expired key can be inserted again.
  *
  * @param <K> key type
  * @param <V> value type
@@ -33,14 +48,72 @@ public class DefaultKeyvalWrite<K, V> implements IKeyvalWrite<K, V> {
     + " WHERE $keyColname = ? AND $versionColname = ?", // val, ver, timestamp, key, old-ver
     TOUCH_FORMAT       = "UPDATE $tableName SET $versionColname = ?, $updateTimestampColname = ? WHERE $keyColname = ?", // version, timestamp, key
     DELETE_FORMAT      = "DELETE FROM $tableName WHERE $keyColname = ?",  // key
-    COND_DELETE_FORMAT = "DELETE FROM $tableName WHERE $keyColname = ? AND $versionColname = ?"; // key, old-version
+    COND_DELETE_FORMAT = "DELETE FROM $tableName WHERE $keyColname = ? AND $versionColname = ?", // key, old-version
+    MULTI_INSERT_FORMAT = "INSERT INTO $tableName ($keyColname, $valueColname, $versionColname,"
+    + " $createTimestampColname, $updateTimestampColname) VALUES ", // followed by rows
+    ROW_FORMAT         = "(?, ?, ?, ?, ?)"; // key, val, version, timestamp[1,2]
+
+    /** SQL formats that also write the expiry timestamp. Used to render SQL templates. */
+    private static final String
+    EXPIRING_INSERT_FORMAT = "INSERT INTO $tableName ($keyColname, $valueColname, $versionColname,"
+    + " $createTimestampColname, $updateTimestampColname, $expiresTimestampColname) VALUES (?, ?, ?, ?, ?, ?)", // key, val, version, timestamp[1,2], expires
+    EXPIRING_UPDATE_FORMAT = "UPDATE $tableName SET $valueColname = ?, $versionColname = ?, $updateTimestampColname = ?,"
+    + " $expiresTimestampColname = ? WHERE $keyColname = ?", // val, version, timestamp, expires, key
+    EXPIRING_SWAP_FORMAT   = "UPDATE $tableName SET $valueColname = ?, $versionColname = ?, $updateTimestampColname = ?,"
+    + " $expiresTimestampColname = ? WHERE $keyColname = ? AND $versionColname = ?"
+    + " AND ($expiresTimestampColname IS NULL OR $expiresTimestampColname > ?)", // val, ver, timestamp, expires, key, old-ver, now
+    EXPIRING_TOUCH_FORMAT  = "UPDATE $tableName SET $versionColname = ?, $updateTimestampColname = ?,"
+    + " $expiresTimestampColname = ? WHERE $keyColname = ?"
+    + " AND ($expiresTimestampColname IS NULL OR $expiresTimestampColname > ?)", // version, timestamp, expires, key, now
+    EXPIRING_MULTI_INSERT_FORMAT = "INSERT INTO $tableName ($keyColname, $valueColname, $versionColname,"
+    + " $createTimestampColname, $updateTimestampColname, $expiresTimestampColname) VALUES ", // followed by rows
+    EXPIRING_ROW_FORMAT    = "(?, ?, ?, ?, ?, ?)", // key, val, version, timestamp[1,2], expires
+    PURGE_FORMAT           = "DELETE FROM $tableName WHERE $keyColname = ? AND $expiresTimestampColname <= ?"; // key, now
 
     /** SQL templates - rendered from formats. */
     private final String insertSql, updateSql, swapSql, touchSql, deleteSql, condDeleteSql;
 
+    /** SQL template to delete expired rows, <tt>null</tt> without expiry column. */
+    private final String purgeSql;
+
+    /** Whether the table has an expiry timestamp column, maintained by every write. */
+    private final boolean expiry;
+
+    /** Time-to-live of written pairs in milliseconds, zero if pairs do not expire. */
+    private final long ttlMillis;
+
     /** JDBC Writer. */
     private final IJdbcWrite writer;
 
+    /** Multi-row insert statement, <tt>null</tt> to insert batches using JDBC batch. */
+    private final MultiRowInsert multiRowInsert;
+
+    /** Key parameter setter. */
+    private final IParamSetter<? super K> keySetter;
+
+    /** Value parameter setter. */
+    private final IParamSetter<? super V> valueSetter;
+
+    /** Version parameter setter. */
+    private final IParamSetter<Long> versionSetter = ParamSetters.LONG;
+
+    /** Binds the key only, for batch delete. */
+    private final IParamBinder<K> deleteBinder = new IParamBinder<K>() {
+        @Override
+        public void bind(final PreparedStatement pstmt, final K key) throws SQLException {
+            keySetter.set(pstmt, 1, key);
+        }
+    };
+
+    /** Binds key and old version, for batch remove. */
+    private final IParamBinder<Entry<K, Long>> condDeleteBinder = new IParamBinder<Entry<K, Long>>() {
+        @Override
+        public void bind(final PreparedStatement pstmt, final Entry<K, Long> keyVersion) throws SQLException {
+            keySetter.set(pstmt, 1, keyVersion.getKey());
+            versionSetter.set(pstmt, 2, keyVersion.getValue());
+        }
+    };
+
     /**
      * Construct instance from required parameters and using default JDBC reader instance.
      * @param tableMeta table meta data
@@ -55,34 +128,250 @@ public class DefaultKeyvalWrite<K, V> implements IKeyvalWrite<K, V> {
      * @param dbWriter  JDBC writer
      */
     public DefaultKeyvalWrite(final TableMetadata tableMeta, final IJdbcWrite dbWriter) {
-        this.insertSql     = tableMeta.groovyReplace(INSERT_FORMAT);
-        this.updateSql     = tableMeta.groovyReplace(UPDATE_FORMAT);
-        this.swapSql       = tableMeta.groovyReplace(SWAP_FORMAT);
-        this.touchSql      = tableMeta.groovyReplace(TOUCH_FORMAT);
+        this(tableMeta, dbWriter, 0);
+    }
+
+    /**
+     * Construct instance from required parameters, optionally inserting batches as multi-row <tt>INSERT</tt>
+     * statements of up to specified number of rows each (see {@link MultiRowInsert}) instead of a JDBC batch.
+     * @param tableMeta         table meta data
+     * @param dbWriter          JDBC writer
+     * @param multiRowChunkSize maximum rows per multi-row <tt>INSERT</tt>, or zero to use JDBC batch
+     */
+    public DefaultKeyvalWrite(final TableMetadata tableMeta, final IJdbcWrite dbWriter, final int multiRowChunkSize) {
+        this(tableMeta, dbWriter, multiRowChunkSize, null, null);
+    }
+
+    /**
+     * Construct instance from all parameters. Knowing the key and value classes lets batch operations bind keys and
+     * values using type-specific setters (see {@link ParamSetters}).
+     * @param tableMeta         table meta data
+     * @param dbWriter          JDBC writer
+     * @param multiRowChunkSize maximum rows per multi-row <tt>INSERT</tt>, or zero to use JDBC batch
+     * @param keyClass          key class, <tt>null</tt> if unknown
+     * @param valClass          value class, <tt>null</tt> if unknown
+     */
+    public DefaultKeyvalWrite(final TableMetadata tableMeta, final IJdbcWrite dbWriter, final int multiRowChunkSize,
+            final Class<K> keyClass, final Class<V> valClass) {
+        this(tableMeta, dbWriter, multiRowChunkSize, keyClass, valClass, 0);
+    }
+
+    /**
+     * Construct instance from all parameters and a time-to-live of written pairs, see {@link ExpiringKeyvalWrite}.
+     * @param tableMeta         table meta data, with an expiry timestamp column if <tt>ttl</tt> is positive
+     * @param dbWriter          JDBC writer
+     * @param multiRowChunkSize maximum rows per multi-row <tt>INSERT</tt>, or zero to use JDBC batch
+     * @param keyClass          key class, <tt>null</tt> if unknown
+     * @param valClass          value class, <tt>null</tt> if unknown
+     * @param ttl               time-to-live of written pairs in milliseconds, zero if pairs do not expire
+     */
+    DefaultKeyvalWrite(final TableMetadata tableMeta, final IJdbcWrite dbWriter, final int multiRowChunkSize,
+            final Class<K> keyClass, final Class<V> valClass, final long ttl) {
+        final boolean withExpiry = ttl > 0 || tableMeta.hasExpiry();
+        this.insertSql     = tableMeta.groovyReplace(withExpiry ? EXPIRING_INSERT_FORMAT : INSERT_FORMAT);
+        this.updateSql     = tableMeta.groovyReplace(withExpiry ? EXPIRING_UPDATE_FORMAT : UPDATE_FORMAT);
+        this.swapSql       = tableMeta.groovyReplace(withExpiry ? EXPIRING_SWAP_FORMAT : SWAP_FORMAT);
+        this.touchSql      = tableMeta.groovyReplace(withExpiry ? EXPIRING_TOUCH_FORMAT : TOUCH_FORMAT);
         this.deleteSql     = tableMeta.groovyReplace(DELETE_FORMAT);
         this.condDeleteSql = tableMeta.groovyReplace(COND_DELETE_FORMAT);
+        this.purgeSql      = withExpiry ? tableMeta.groovyReplace(PURGE_FORMAT) : null;
+        this.expiry = withExpiry;
+        this.ttlMillis = ttl;
         this.writer = dbWriter;
+        this.multiRowInsert = multiRowChunkSize > 0 ? new MultiRowInsert(tableMeta.groovyReplace(
+                withExpiry ? EXPIRING_MULTI_INSERT_FORMAT : MULTI_INSERT_FORMAT),
+                withExpiry ? EXPIRING_ROW_FORMAT : ROW_FORMAT, "", multiRowChunkSize) : null;
+        this.keySetter = ParamSetters.forClass(keyClass);
+        this.valueSetter = ParamSetters.forClass(valClass);
+    }
+
+    /**
+     * Return the expiry timestamp of pairs written at specified time.
+     * @param  now write timestamp
+     * @return     expiry timestamp, <tt>null</tt> without time-to-live
+     */
+    private Timestamp expiresAt(final Timestamp now) {
+        return ttlMillis > 0 ? new Timestamp(now.getTime() + ttlMillis) : null;
+    }
+
+    /**
+     * Return the parameters of the insert statement.
+     * @param  key     key
+     * @param  value   value
+     * @param  version version
+     * @param  now     create/update timestamp
+     * @return         statement parameters
+     */
+    private List<?> insertParams(final K key, final V value, final long version, final Timestamp now) {
+        return expiry ? Arrays.asList(key, value, version, now, now, expiresAt(now))
+                : Arrays.asList(key, value, version, now, now);
+    }
+
+    /**
+     * Delete the expired rows of specified keys, so that they can be inserted again. Does nothing without expiry
+     * column.
+     * @param conn JDBC connection
+     * @param keys keys
+     */
+    private void purgeExpired(final Connection conn, final Collection<K> keys) {
+        if (!expiry || keys.isEmpty()) {
+            return;
+        }
+        final Timestamp now = Util.now();
+        if (keys.size() == 1) {
+            writer.update(conn, purgeSql, Arrays.asList(keys.iterator().next(), now));
+            return;
+        }
+        JdbcUtil.batchUpdate(writer, conn, purgeSql, keys, new IParamBinder<K>() {
+            @Override
+            public void bind(final PreparedStatement pstmt, final K key) throws SQLException {
+                keySetter.set(pstmt, 1, key);
+                pstmt.setTimestamp(2, now);
+            }
+        });
+    }
+
+    /**
+     * Return the total of specified row counts.
+     * @param  rowCount row count per batch entry
+     * @return          total row count
+     */
+    private static int totalRowCount(final int[] rowCount) {
+        int total = 0;
+        for (int j = 0; j < rowCount.length; j++) {
+            total += rowCount[j];
+        }
+        return total;
+    }
+
+    /**
+     * Insert specified key-value pairs, using multi-row <tt>INSERT</tt> statements if configured, JDBC batch otherwise.
+     * @param conn    JDBC connection
+     * @param pairs   key-value pairs
+     * @param version version of the inserted pairs
+     * @param now     create/update timestamp of the inserted pairs
+     */
+    private void insertRows(final Connection conn, final Collection<Entry<K, V>> pairs, final long version,
+            final Timestamp now) {
+        if (multiRowInsert != null) {
+            final List<List<?>> rows = new ArrayList<>(pairs.size());
+            for (Entry<K, V> each: pairs) {
+                rows.add(insertParams(each.getKey(), each.getValue(), version, now));
+            }
+            multiRowInsert.execute(writer, conn, rows);
+        } else {
+            JdbcUtil.batchUpdate(writer, conn, insertSql, pairs, new IParamBinder<Entry<K, V>>() {
+                @Override
+                public void bind(final PreparedStatement pstmt, final Entry<K, V> pair) throws SQLException {
+                    keySetter.set(pstmt, 1, pair.getKey());
+                    valueSetter.set(pstmt, 2, pair.getValue());
+                    pstmt.setLong(3, version);
+                    pstmt.setTimestamp(4, now);
+                    pstmt.setTimestamp(5, now);
+                    if (expiry) {
+                        pstmt.setTimestamp(6, expiresAt(now));
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Return the parameters of the update statements, i.e. value, new version, timestamp, expiry timestamp (with
+     * expiry column), key, and old version and live check timestamp (with expiry column) if the statement is a swap.
+     * @param  value      value, ignored if <tt>touch</tt> is <tt>true</tt>
+     * @param  newVersion new version
+     * @param  now        update timestamp
+     * @param  key        key
+     * @param  oldVersion old version to match, <tt>null</tt> if the statement has no version check
+     * @param  touch      <tt>true</tt> for the touch statement, which does not set the value
+     * @return            statement parameters
+     */
+    private List<Object> updateParams(final V value, final long newVersion, final Timestamp now, final K key,
+            final Long oldVersion, final boolean touch) {
+        final List<Object> params = new ArrayList<Object>(7);
+        if (!touch) {
+            params.add(value);
+        }
+        params.add(newVersion);
+        params.add(now);
+        if (expiry) {
+            params.add(expiresAt(now));
+        }
+        params.add(key);
+        if (oldVersion != null) {
+            params.add(oldVersion);
+        }
+        if (expiry && (touch || oldVersion != null)) {
+            params.add(now);
+        }
+        return params;
+    }
+
+    /**
+     * Bind the parameters of the update statements, see {@link #updateParams}.
+     * @param  pstmt      prepared statement
+     * @param  value      value, ignored if <tt>touch</tt> is <tt>true</tt>
+     * @param  newVersion new version
+     * @param  now        update timestamp
+     * @param  key        key
+     * @param  oldVersion old version to match, <tt>null</tt> if the statement has no version check
+     * @param  touch      <tt>true</tt> for the touch statement, which does not set the value
+     * @throws SQLException if a parameter cannot be set
+     */
+    private void bindUpdate(final PreparedStatement pstmt, final V value, final long newVersion, final Timestamp now,
+            final K key, final Long oldVersion, final boolean touch) throws SQLException {
+        int i = 1;
+        if (!touch) {
+            valueSetter.set(pstmt, i++, value);
+        }
+        pstmt.setLong(i++, newVersion);
+        pstmt.setTimestamp(i++, now);
+        if (expiry) {
+            pstmt.setTimestamp(i++, expiresAt(now));
+        }
+        keySetter.set(pstmt, i++, key);
+        if (oldVersion != null) {
+            versionSetter.set(pstmt, i++, oldVersion);
+        }
+        if (expiry && (touch || oldVersion != null)) {
+            pstmt.setTimestamp(i++, now);
+        }
+    }
+
+    /**
+     * Return binder for the update statements of key-value pairs, see {@link #bindUpdate}.
+     * @param  newVersion new version
+     * @param  now        update timestamp
+     * @param  oldVersion old version to match, <tt>null</tt> if the statement has no version check
+     * @return            parameter binder
+     */
+    private IParamBinder<Entry<K, V>> updateBinder(final long newVersion, final Timestamp now, final Long oldVersion) {
+        return new IParamBinder<Entry<K, V>>() {
+            @Override
+            public void bind(final PreparedStatement pstmt, final Entry<K, V> pair) throws SQLException {
+                bindUpdate(pstmt, pair.getValue(), newVersion, now, pair.getKey(), oldVersion, false);
+            }
+        };
     }
 
     // ----- insert -----
 
     @Override
     public final long insert(final Connection conn, final K key, final V value) {
+        purgeExpired(conn, Collections.singletonList(key));
         final long version = Util.newVersion();
         final Timestamp now = Util.now();
-        writer.update(conn, insertSql, Arrays.asList(key, value, version, now, now));
+        writer.update(conn, insertSql, insertParams(key, value, version, now));
         return version;
     }
 
     @Override
     public final long batchInsert(final Connection conn, final Map<K, V> pairs) {
+        purgeExpired(conn, pairs.keySet());
         final Timestamp now = Util.now();
         final long version = Util.newVersion();
-        final Collection<Iterable<?>> insertParamBatch = new ArrayList<>(pairs.size());
-        for (Entry<K, V> each: pairs.entrySet()) {
-            insertParamBatch.add(Arrays.asList(each.getKey(), each.getValue(), version, now, now));
-        }
-        writer.batchUpdate(conn, insertSql, insertParamBatch);
+        insertRows(conn, pairs.entrySet(), version, now);
         return version;
     }
 
@@ -92,9 +381,9 @@ public class DefaultKeyvalWrite<K, V> implements IKeyvalWrite<K, V> {
     public final long save(final Connection conn, final K key, final V value) {
         final long version = Util.newVersion();
         final Timestamp now = Util.now();
-        int rows = writer.update(conn, updateSql, Arrays.asList(value, version, now, key));
+        int rows = writer.update(conn, updateSql, updateParams(value, version, now, key, null, false));
         if (rows == 0) {
-            writer.update(conn, insertSql, Arrays.asList(key, value, version, now, now));
+            writer.update(conn, insertSql, insertParams(key, value, version, now));
         }
         return version;
     }
@@ -103,11 +392,8 @@ public class DefaultKeyvalWrite<K, V> implements IKeyvalWrite<K, V> {
     public final long batchSave(final Connection conn, final Map<K, V> pairs) {
         final Timestamp now = Util.now();
         final long version = Util.newVersion();
-        final Collection<Iterable<?>> updateParamBatch = new ArrayList<>(pairs.size());
-        for (Entry<K, V> each : pairs.entrySet()) {
-            updateParamBatch.add(Arrays.asList(each.getValue(), version, now, each.getKey()));
-        }
-        final int[] rows = writer.batchUpdate(conn, updateSql, updateParamBatch);
+        final int[] rows = JdbcUtil.batchUpdate(writer, conn, updateSql, pairs.entrySet(),
+                updateBinder(version, now, null));
         int toInsert = 0;
         for (int i = 0; i < rows.length; i++) {
             if (rows[i] == 0) {
@@ -115,14 +401,14 @@ public class DefaultKeyvalWrite<K, V> implements IKeyvalWrite<K, V> {
             }
         }
         if (toInsert > 0) {
-            final Collection<Iterable<?>> insertParamBatch = new ArrayList<>(toInsert);
+            final List<Entry<K, V>> insertPairs = new ArrayList<>(toInsert);
             int i = 0;
             for (Entry<K, V> each: pairs.entrySet()) {
                 if (rows[i++] == 0) {
-                    insertParamBatch.add(Arrays.asList(each.getKey(), each.getValue(), version, now, now));
+                    insertPairs.add(each);
                 }
             }
-            writer.batchUpdate(conn, insertSql, insertParamBatch);
+            insertRows(conn, insertPairs, version, now);
         }
         return version;
     }
@@ -133,7 +419,7 @@ public class DefaultKeyvalWrite<K, V> implements IKeyvalWrite<K, V> {
     public final Long swap(final Connection conn, final K key, final V value, final long version) {
         final long tmpVersion = Util.newVersion();
         final long newVersion = version == tmpVersion ? version + 1 : tmpVersion;
-        int rowCount = writer.update(conn, swapSql, Arrays.asList(value, newVersion, Util.now(), key, version));
+        int rowCount = writer.update(conn, swapSql, updateParams(value, newVersion, Util.now(), key, version, false));
         return rowCount > 0 ? newVersion : null;
     }
 
@@ -142,32 +428,23 @@ public class DefaultKeyvalWrite<K, V> implements IKeyvalWrite<K, V> {
         final Timestamp now = Util.now();
         final long tmpVersion = Util.newVersion();
         final long newVersion = version == tmpVersion ? version + 1 : tmpVersion;
-        final Collection<Iterable<?>> paramBatch = new ArrayList<>(pairs.size());
-        for (Entry<K, V> each : pairs.entrySet()) {
-            paramBatch.add(Arrays.asList(each.getValue(), newVersion, now, each.getKey(), version));
-        }
-        final int[] rowCount = writer.batchUpdate(conn, swapSql, paramBatch);
-        int totalRowCount = 0;
-        for (int j = 0; j < rowCount.length; j++) {
-            totalRowCount += rowCount[j];
-        }
-        return totalRowCount > 0 ? newVersion : null;
+        final int[] rowCount = JdbcUtil.batchUpdate(writer, conn, swapSql, pairs.entrySet(),
+                updateBinder(newVersion, now, version));
+        return totalRowCount(rowCount) > 0 ? newVersion : null;
     }
 
     @Override
     public final Long batchSwap(final Connection conn, final List<KeyValueVersion<K, V>> triplets) {
         final Timestamp now = Util.now();
         final long newVersion = Util.newVersion();
-        final Collection<Iterable<?>> paramBatch = new ArrayList<>(triplets.size());
-        for (KeyValueVersion<K, V> each : triplets) {
-            paramBatch.add(Arrays.asList(each.getValue(), newVersion, now, each.getKey(), each.getVersion()));
-        }
-        final int[] rowCount = writer.batchUpdate(conn, swapSql, paramBatch);
-        int totalRowCount = 0;
-        for (int j = 0; j < rowCount.length; j++) {
-            totalRowCount += rowCount[j];
-        }
-        return totalRowCount > 0 ? newVersion : null;
+        final IParamBinder<KeyValueVersion<K, V>> tripletBinder = new IParamBinder<KeyValueVersion<K, V>>() {
+            @Override
+            public void bind(final PreparedStatement pstmt, final KeyValueVersion<K, V> triplet) throws SQLException {
+                bindUpdate(pstmt, triplet.getValue(), newVersion, now, triplet.getKey(), triplet.getVersion(), false);
+            }
+        };
+        final int[] rowCount = JdbcUtil.batchUpdate(writer, conn, swapSql, triplets, tripletBinder);
+        return totalRowCount(rowCount) > 0 ? newVersion : null;
     }
 
     // ---- touch (update version) ----
@@ -176,7 +453,7 @@ public class DefaultKeyvalWrite<K, V> implements IKeyvalWrite<K, V> {
     public final Long touch(final Connection conn, final K key) {
         final Timestamp now = Util.now();
         final long version = Util.newVersion();
-        final int rowCount = writer.update(conn, touchSql, Arrays.asList(version, now, key));
+        final int rowCount = writer.update(conn, touchSql, updateParams(null, version, now, key, null, true));
         return rowCount > 0 ? version : null;
     }
 
@@ -184,16 +461,13 @@ public class DefaultKeyvalWrite<K, V> implements IKeyvalWrite<K, V> {
     public final Long batchTouch(final Connection conn, final List<K> keys) {
         final Timestamp now = Util.now();
         final long version = Util.newVersion();
-        final Collection<Iterable<?>> paramBatch = new ArrayList<>(keys.size());
-        for (K each : keys) {
-            paramBatch.add(Arrays.asList(version, now, each));
-        }
-        final int[] rowCount = writer.batchUpdate(conn, swapSql, paramBatch);
-        int totalRowCount = 0;
-        for (int j = 0; j < rowCount.length; j++) {
-            totalRowCount += rowCount[j];
-        }
-        return totalRowCount > 0 ? version : null;
+        final int[] rowCount = JdbcUtil.batchUpdate(writer, conn, touchSql, keys, new IParamBinder<K>() {
+            @Override
+            public void bind(final PreparedStatement pstmt, final K key) throws SQLException {
+                bindUpdate(pstmt, null, version, now, key, null, true);
+            }
+        });
+        return totalRowCount(rowCount) > 0 ? version : null;
     }
 
     // ---- delete ----
@@ -205,11 +479,7 @@ public class DefaultKeyvalWrite<K, V> implements IKeyvalWrite<K, V> {
 
     @Override
     public final void batchDelete(final Connection conn, final List<K> keys) {
-        final Collection<Iterable<?>> paramBatch = new ArrayList<>(keys.size());
-        for (K each: keys) {
-            paramBatch.add(Arrays.asList(each));
-        }
-        writer.batchUpdate(conn, deleteSql, paramBatch);
+        JdbcUtil.batchUpdate(writer, conn, deleteSql, keys, deleteBinder);
     }
 
     // ---- remove (requires old version) ----
@@ -221,20 +491,18 @@ public class DefaultKeyvalWrite<K, V> implements IKeyvalWrite<K, V> {
 
     @Override
     public final void batchRemove(final Connection conn, final List<K> keys, final long version) {
-        final Collection<Iterable<?>> paramBatch = new ArrayList<>(keys.size());
-        for (K each: keys) {
-            paramBatch.add(Arrays.asList(each, version));
-        }
-        writer.batchUpdate(conn, condDeleteSql, paramBatch);
+        JdbcUtil.batchUpdate(writer, conn, condDeleteSql, keys, new IParamBinder<K>() {
+            @Override
+            public void bind(final PreparedStatement pstmt, final K key) throws SQLException {
+                keySetter.set(pstmt, 1, key);
+                pstmt.setLong(2, version);
+            }
+        });
     }
 
     @Override
     public final void batchRemove(final Connection conn, final Map<K, Long> keys) {
-        final Collection<Iterable<?>> paramBatch = new ArrayList<>(keys.size());
-        for (Entry<K, Long> each: keys.entrySet()) {
-            paramBatch.add(Arrays.asList(each.getKey(), each.getValue()));
-        }
-        writer.batchUpdate(conn, condDeleteSql, paramBatch);
+        JdbcUtil.batchUpdate(writer, conn, condDeleteSql, keys.entrySet(), condDeleteBinder);
     }
 
 }
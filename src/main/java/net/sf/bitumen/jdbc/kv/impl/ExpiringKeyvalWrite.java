@@ -0,0 +1,116 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.bitumen.jdbc.IJdbcWrite;
+import net.sf.bitumen.jdbc.IParamBinder;
+import net.sf.bitumen.jdbc.impl.DefaultJdbcWrite;
+import net.sf.bitumen.jdbc.impl.JdbcUtil;
+
+/**
+ * Time-to-live variant of {@link DefaultKeyvalWrite}, for tables with an expiry timestamp column (see
+ * {@link TableMetadata#hasExpiry()}). Every pair written by <tt>insert</tt>, <tt>save</tt>, <tt>swap</tt> or
+ * <tt>touch</tt> is set to expire after the time-to-live by the very <tt>INSERT</tt>/<tt>UPDATE</tt> statement that
+ * writes it, hence a pair is never visible without its expiry timestamp, even outside a transaction. <tt>swap</tt> and
+ * <tt>touch</tt> only match pairs that have not expired, so that an expired pair is not brought back to life, and
+ * <tt>insert</tt> deletes the expired rows of its keys first, so that an expired key can be inserted again.
+ * <tt>delete</tt> and <tt>remove</tt> are the same as in {@link DefaultKeyvalWrite}.
+ * <p>
+ * Note: Expiry timestamps are computed from the application clock, which is also what {@link DefaultKeyvalRead} and
+ * {@link ExpiryReaper} compare them against.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class ExpiringKeyvalWrite<K, V> extends DefaultKeyvalWrite<K, V> {
+
+    /** SQL formats for various purposes. Used to render SQL templates. */
+    private static final String
+    EXPIRE_FORMAT = "UPDATE $tableName SET $expiresTimestampColname = ? WHERE $keyColname = ?"; // expires, key
+
+    /** SQL templates - rendered from formats. */
+    private final String expireSql;
+
+    /** JDBC writer for the expiry statements. */
+    private final IJdbcWrite dbWriter;
+
+    /**
+     * Construct instance using default JDBC writer.
+     * @param tableMeta table meta data, with an expiry timestamp column
+     * @param ttl       time-to-live of written pairs
+     * @param unit      time unit of <tt>ttl</tt>
+     */
+    public ExpiringKeyvalWrite(final TableMetadata tableMeta, final long ttl, final TimeUnit unit) {
+        this(tableMeta, new DefaultJdbcWrite(), 0, null, null, ttl, unit);
+    }
+
+    /**
+     * Construct instance using all required arguments.
+     * @param tableMeta         table meta data, with an expiry timestamp column
+     * @param jdbcWrite         JDBC writer
+     * @param multiRowChunkSize maximum rows per multi-row <tt>INSERT</tt>, or zero to use JDBC batch
+     * @param keyClass          key class, <tt>null</tt> if unknown
+     * @param valClass          value class, <tt>null</tt> if unknown
+     * @param ttl               time-to-live of written pairs
+     * @param unit              time unit of <tt>ttl</tt>
+     */
+    public ExpiringKeyvalWrite(final TableMetadata tableMeta, final IJdbcWrite jdbcWrite, final int multiRowChunkSize,
+            final Class<K> keyClass, final Class<V> valClass, final long ttl, final TimeUnit unit) {
+        super(tableMeta, jdbcWrite, multiRowChunkSize, keyClass, valClass, toTtlMillis(tableMeta, ttl, unit));
+        this.dbWriter = jdbcWrite;
+        this.expireSql = tableMeta.groovyReplace(EXPIRE_FORMAT);
+    }
+
+    /**
+     * Validate specified table meta data and time-to-live, and convert the time-to-live to milliseconds.
+     * @param  tableMeta table meta data, with an expiry timestamp column
+     * @param  ttl       time-to-live of written pairs
+     * @param  unit      time unit of <tt>ttl</tt>
+     * @return           time-to-live in milliseconds
+     */
+    private static long toTtlMillis(final TableMetadata tableMeta, final long ttl, final TimeUnit unit) {
+        if (!tableMeta.hasExpiry()) {
+            throw new IllegalArgumentException("Expected table meta data with expiry timestamp column, found: "
+                    + tableMeta);
+        }
+        if (ttl <= 0 || unit.toMillis(ttl) <= 0) {
+            throw new IllegalArgumentException("Expected time-to-live to be at least 1ms, found: " + ttl + " " + unit);
+        }
+        return unit.toMillis(ttl);
+    }
+
+    // ---- expiry ----
+
+    /**
+     * Set the expiry timestamp of specified key.
+     * @param conn    JDBC connection
+     * @param key     key
+     * @param expires expiry timestamp, <tt>null</tt> to never expire
+     */
+    public final void expire(final Connection conn, final K key, final Timestamp expires) {
+        dbWriter.update(conn, expireSql, Arrays.asList(expires, key));
+    }
+
+    /**
+     * Set the expiry timestamp of specified keys.
+     * @param conn    JDBC connection
+     * @param keys    keys
+     * @param expires expiry timestamp, <tt>null</tt> to never expire
+     */
+    public final void batchExpire(final Connection conn, final List<K> keys, final Timestamp expires) {
+        JdbcUtil.batchUpdate(dbWriter, conn, expireSql, keys, new IParamBinder<K>() {
+            @Override
+            public void bind(final PreparedStatement pstmt, final K key) throws SQLException {
+                pstmt.setTimestamp(1, expires);
+                JdbcUtil.setParam(pstmt, 2, key);
+            }
+        });
+    }
+
+}
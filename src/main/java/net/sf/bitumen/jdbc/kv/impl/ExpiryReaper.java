@@ -0,0 +1,301 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sql.DataSource;
+
+import net.sf.bitumen.jdbc.IJdbcRead;
+import net.sf.bitumen.jdbc.IJdbcWrite;
+import net.sf.bitumen.jdbc.IRowExtractor;
+import net.sf.bitumen.jdbc.impl.DefaultJdbcRead;
+import net.sf.bitumen.jdbc.impl.DefaultJdbcWrite;
+import net.sf.bitumen.jdbc.impl.IConnectionActivity;
+import net.sf.bitumen.jdbc.impl.JdbcUtil;
+import net.sf.bitumen.util.NamedParams;
+import net.sf.bitumen.util.Util;
+
+/**
+ * Background deletion of expired rows from a key-value table with an expiry timestamp column (see
+ * {@link TableMetadata#hasExpiry()}). A pass deletes the rows expired by the start of the pass in small batches, each
+ * in a transaction of its own, pausing between batches so that the deletion does not hog the database or hold locks
+ * for long. Rows are found in expiry order, which should be backed by an index on the expiry timestamp column.
+ * <p>
+ * The background thread, started by the constructor, runs a pass every interval until {@link #close()} is called.
+ * Exceptions thrown by a pass are recorded (see {@link #getLastError()}) and the next pass is attempted after the
+ * interval. A pass may also be run synchronously using {@link #reap()}.
+ *
+ */
+public class ExpiryReaper implements AutoCloseable {
+
+    /** Default maximum number of rows deleted per batch. */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /** Default pause between batches in milliseconds. */
+    public static final long DEFAULT_PAUSE_MILLIS = 50;
+
+    /** Default interval between passes in milliseconds. */
+    public static final long DEFAULT_INTERVAL_MILLIS = 60000;
+
+    /** Sequence to name the background threads. */
+    private static final AtomicInteger THREAD_SEQ = new AtomicInteger();
+
+    /** SQL formats for various purposes. Used to render SQL templates. */
+    private static final String
+    FIND_FORMAT   = "SELECT $keyColname FROM $tableName WHERE $expiresTimestampColname <= ?"
+    + " ORDER BY $expiresTimestampColname LIMIT ?", // now, limit
+    DELETE_FORMAT = "DELETE FROM $tableName WHERE $keyColname IN ($keysPlaceholder)"
+    + " AND $expiresTimestampColname <= ?"; // keys-placeholder, now
+
+    /** SQL templates - rendered from formats. */
+    private final String findSql, deleteSql;
+
+    /** Data source to obtain a connection per batch from. */
+    private final DataSource dataSource;
+
+    /** JDBC reader. */
+    private final IJdbcRead reader;
+
+    /** JDBC writer. */
+    private final IJdbcWrite writer;
+
+    /** Key extractor from column index 1. */
+    private final IRowExtractor<Object> keyExtractor1 = JdbcUtil.makeColumnExtractor(Object.class, 1);
+
+    /** Maximum number of rows deleted per batch. */
+    private final int batchSize;
+
+    /** Pause between batches in milliseconds. */
+    private final long pauseMillis;
+
+    /** Interval between passes in nanoseconds. */
+    private final long intervalNanos;
+
+    /** Lock guarding the <tt>closed</tt> flag. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signalled when closed. */
+    private final Condition closing = lock.newCondition();
+
+    /** Whether closed. Guarded by <tt>lock</tt>, read without it between batches. */
+    private volatile boolean closed = false;
+
+    /** Background reaper thread. */
+    private final Thread reaper;
+
+    /** Statistics counters. */
+    private final AtomicLong reaped = new AtomicLong(), passes = new AtomicLong();
+
+    /** Exception thrown by the last failed background pass, <tt>null</tt> if none. */
+    private final AtomicReference<RuntimeException> lastError = new AtomicReference<RuntimeException>();
+
+    /** Serializes passes. */
+    private final Object passLock = new Object();
+
+    /**
+     * Construct instance using default JDBC reader/writer, {@link #DEFAULT_BATCH_SIZE},
+     * {@link #DEFAULT_PAUSE_MILLIS} and {@link #DEFAULT_INTERVAL_MILLIS}, and start the background thread.
+     * @param source    data source to obtain a connection per batch from
+     * @param tableMeta table meta data, with an expiry timestamp column
+     */
+    public ExpiryReaper(final DataSource source, final TableMetadata tableMeta) {
+        this(source, tableMeta, new DefaultJdbcRead(), new DefaultJdbcWrite(), DEFAULT_BATCH_SIZE, DEFAULT_PAUSE_MILLIS,
+                DEFAULT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Construct instance using all required arguments, and start the background thread.
+     * @param source    data source to obtain a connection per batch from
+     * @param tableMeta table meta data, with an expiry timestamp column
+     * @param dbReader  JDBC reader
+     * @param dbWriter  JDBC writer
+     * @param maxRows   maximum number of rows deleted per batch
+     * @param pause     pause between batches in milliseconds
+     * @param interval  interval between passes
+     * @param unit      time unit of <tt>interval</tt>
+     */
+    public ExpiryReaper(final DataSource source, final TableMetadata tableMeta, final IJdbcRead dbReader,
+            final IJdbcWrite dbWriter, final int maxRows, final long pause, final long interval, final TimeUnit unit) {
+        if (!tableMeta.hasExpiry()) {
+            throw new IllegalArgumentException("Expected table meta data with expiry timestamp column, found: "
+                    + tableMeta);
+        }
+        if (maxRows < 1) {
+            throw new IllegalArgumentException("Expected batch size to be positive, found: " + maxRows);
+        }
+        if (pause < 0) {
+            throw new IllegalArgumentException("Expected pause to be non-negative, found: " + pause);
+        }
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Expected interval to be positive, found: " + interval);
+        }
+        this.dataSource = Util.notNull(source, "Data source must not be null");
+        this.reader = dbReader;
+        this.writer = dbWriter;
+        this.batchSize = maxRows;
+        this.pauseMillis = pause;
+        this.intervalNanos = unit.toNanos(interval);
+        this.findSql = tableMeta.groovyReplace(FIND_FORMAT);
+        this.deleteSql = tableMeta.groovyReplaceKeep(DELETE_FORMAT);
+        this.reaper = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                reapLoop();
+            }
+        }, "bitumen-expiry-reaper-" + THREAD_SEQ.incrementAndGet());
+        this.reaper.setDaemon(true);
+        this.reaper.start();
+    }
+
+    // ---- statistics ----
+
+    /**
+     * Return the number of expired rows deleted so far.
+     * @return number of rows deleted
+     */
+    public final long getReapedCount() {
+        return reaped.get();
+    }
+
+    /**
+     * Return the number of completed passes so far.
+     * @return number of passes
+     */
+    public final long getPassCount() {
+        return passes.get();
+    }
+
+    /**
+     * Return the exception thrown by the last failed background pass.
+     * @return exception, <tt>null</tt> if no background pass failed
+     */
+    public final RuntimeException getLastError() {
+        return lastError.get();
+    }
+
+    // ---- reaping ----
+
+    /**
+     * Delete the rows expired by now, a batch at a time, pausing between batches. Does nothing once closed.
+     * Interrupting a calling thread (other than the background thread) while pausing ends the pass early, keeping the
+     * thread interrupted.
+     * @return number of rows deleted
+     */
+    public final long reap() {
+        synchronized (passLock) {
+            final Timestamp now = Util.now();
+            long count = 0;
+            while (!closed) {
+                final int deleted = reapBatch(now);
+                count += deleted;
+                reaped.addAndGet(deleted);
+                if (deleted < batchSize) {
+                    break;
+                }
+                if (pauseMillis > 0 && !awaitClose(TimeUnit.MILLISECONDS.toNanos(pauseMillis))) {
+                    break;
+                }
+            }
+            passes.incrementAndGet();
+            return count;
+        }
+    }
+
+    /**
+     * Delete a batch of rows expired by specified time, in a transaction.
+     * @param  now time the rows must have expired by
+     * @return     number of rows deleted, less than the batch size if no more rows have expired (or some of the rows
+     *             found were written again meanwhile)
+     */
+    private int reapBatch(final Timestamp now) {
+        return JdbcUtil.withTransaction(dataSource, new IConnectionActivity<Integer>() {
+            @Override
+            public Integer execute(final Connection conn) {
+                final List<Object> keys = reader.queryForList(conn, findSql, Arrays.asList(now, batchSize),
+                        keyExtractor1);
+                if (keys.isEmpty()) {
+                    return 0;
+                }
+                final String sql = NamedParams.groovyReplace(deleteSql, Collections.singletonMap("keysPlaceholder",
+                        Util.repeat("?", keys.size(), ", ")), true);
+                final List<Object> params = new ArrayList<Object>(keys.size() + 1);
+                params.addAll(keys);
+                params.add(now);
+                return writer.update(conn, sql, params);
+            }
+        });
+    }
+
+    /**
+     * Wait for specified duration, or until closed. Interrupting the background thread is treated as a request to
+     * close; any other thread keeps its interrupt status.
+     * @param  nanos duration to wait in nanoseconds
+     * @return       <tt>false</tt> if the calling thread was interrupted, <tt>true</tt> otherwise
+     */
+    private boolean awaitClose(final long nanos) {
+        lock.lock();
+        try {
+            long remaining = nanos;
+            while (!closed && remaining > 0) {
+                remaining = closing.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            if (Thread.currentThread() == reaper) {
+                closed = true; // interrupting the reaper thread is treated as a request to close
+            } else {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Background loop - wait for the interval, then run a pass.
+     */
+    private void reapLoop() {
+        while (true) {
+            awaitClose(intervalNanos);
+            if (closed) {
+                return;
+            }
+            try {
+                reap();
+            } catch (RuntimeException e) {
+                lastError.set(e);
+            }
+        }
+    }
+
+    /**
+     * Stop the background thread, waiting for the batch in progress (if any) to complete.
+     */
+    @Override
+    public final void close() {
+        lock.lock();
+        try {
+            closed = true;
+            closing.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            reaper.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.util.List;
+
+import javax.sql.DataSource;
+
+/**
+ * Strategy to select the slave to read from, informed by the outcome of earlier slave reads. Implementations must be
+ * thread-safe. See {@link SlaveSelectors} for the standard strategies.
+ *
+ */
+public interface ISlaveSelector {
+
+    /**
+     * Select a slave to read from.
+     * @param  slaves available slave data sources (never empty)
+     * @return        selected slave, or <tt>null</tt> to read from master
+     */
+    DataSource select(List<DataSource> slaves);
+
+    /**
+     * Notify that a read from specified slave has started.
+     * @param slave slave {@link DataSource}
+     */
+    void readStarted(DataSource slave);
+
+    /**
+     * Notify that a read from specified slave, earlier notified as started, has finished.
+     * @param slave        slave {@link DataSource}
+     * @param elapsedNanos time taken by the read (including connection acquisition) in nanoseconds
+     * @param failed       whether the read threw an exception
+     */
+    void readFinished(DataSource slave, long elapsedNanos, boolean failed);
+
+    /**
+     * Notify whether data read from specified slave was found to be up to date with the master.
+     * @param slave slave {@link DataSource}
+     * @param stale <tt>true</tt> if the slave copy was older than master (version mismatch), <tt>false</tt> otherwise
+     */
+    void readReconciled(DataSource slave, boolean stale);
+
+}
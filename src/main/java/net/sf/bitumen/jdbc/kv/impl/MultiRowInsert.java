@@ -0,0 +1,95 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.sf.bitumen.jdbc.IJdbcWrite;
+import net.sf.bitumen.util.Util;
+
+/**
+ * Multi-row <tt>INSERT ... VALUES (...), (...), ...</tt> statement, executed in chunks of configurable row count so
+ * that a batch of rows costs one network round trip per chunk rather than per row (unless the JDBC driver rewrites
+ * batches). The rendered SQL is cached per chunk row count. An optional suffix supports upsert forms such as MySQL's
+ * <tt>ON DUPLICATE KEY UPDATE</tt> and PostgreSQL's <tt>ON CONFLICT ... DO UPDATE</tt>. The prefix and suffix may
+ * as well wrap the rows in other statements joining a <tt>VALUES</tt> list, e.g. <tt>UPDATE ... FROM (VALUES ...)</tt>.
+ * <p>
+ * Note: Databases limit the number of parameters in a statement (e.g. 32767 in PostgreSQL), which bounds the chunk
+ * size to that limit divided by the number of parameters per row.
+ *
+ */
+public class MultiRowInsert {
+
+    /** Default maximum number of rows per statement. */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    /** Statement prefix, e.g. <tt>INSERT INTO t (a, b) VALUES </tt>. */
+    private final String prefix;
+
+    /** Placeholder for one row, e.g. <tt>(?, ?)</tt>. */
+    private final String rowPlaceholder;
+
+    /** Statement suffix, empty if none. */
+    private final String suffix;
+
+    /** Maximum number of rows per statement. */
+    private final int chunkSize;
+
+    /** Rendered SQL per row count. */
+    private final ConcurrentMap<Integer, String> sqlCache = new ConcurrentHashMap<Integer, String>();
+
+    /**
+     * Construct instance using all required arguments.
+     * @param insertPrefix statement prefix up to and including <tt>VALUES</tt>
+     * @param rowValues    placeholder for one row, e.g. <tt>(?, ?)</tt>
+     * @param insertSuffix statement suffix, e.g. <tt>ON DUPLICATE KEY UPDATE ...</tt>, or empty string
+     * @param maxRows      maximum number of rows per statement
+     */
+    public MultiRowInsert(final String insertPrefix, final String rowValues, final String insertSuffix,
+            final int maxRows) {
+        if (maxRows < 1) {
+            throw new IllegalArgumentException("Expected chunk size to be positive, found: " + maxRows);
+        }
+        this.prefix = insertPrefix;
+        this.rowPlaceholder = rowValues;
+        this.suffix = insertSuffix;
+        this.chunkSize = maxRows;
+    }
+
+    /**
+     * Return the SQL for specified number of rows, rendering it on first use.
+     * @param  rows number of rows
+     * @return      multi-row statement SQL
+     */
+    public final String sqlFor(final int rows) {
+        final String sql = sqlCache.get(rows);
+        if (sql != null) {
+            return sql;
+        }
+        final String rendered = prefix + Util.repeat(rowPlaceholder, rows, ", ") + suffix;
+        final String existing = sqlCache.putIfAbsent(rows, rendered);
+        return existing != null ? existing : rendered;
+    }
+
+    /**
+     * Insert specified rows in chunks, one statement per chunk.
+     * @param  writer JDBC writer
+     * @param  conn   JDBC connection
+     * @param  rows   parameters of each row
+     * @return        total number of rows affected as reported by the database
+     */
+    public final int execute(final IJdbcWrite writer, final Connection conn, final List<? extends List<?>> rows) {
+        int affected = 0;
+        for (final List<? extends List<?>> chunk: Util.partition(rows, chunkSize)) {
+            final List<Object> params = new ArrayList<Object>(chunk.size() * chunk.get(0).size());
+            for (final List<?> row: chunk) {
+                params.addAll(row);
+            }
+            affected += writer.update(conn, sqlFor(chunk.size()), params);
+        }
+        return affected;
+    }
+
+}
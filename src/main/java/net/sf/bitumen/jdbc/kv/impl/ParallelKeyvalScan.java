@@ -0,0 +1,279 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import net.sf.bitumen.jdbc.IJdbcRead;
+import net.sf.bitumen.jdbc.IRowExtractor;
+import net.sf.bitumen.jdbc.impl.DefaultJdbcRead;
+import net.sf.bitumen.jdbc.impl.IConnectionActivity;
+import net.sf.bitumen.jdbc.impl.JdbcUtil;
+import net.sf.bitumen.jdbc.kv.IKeyvalVisitor;
+import net.sf.bitumen.jdbc.kv.KeyValueVersion;
+import net.sf.bitumen.util.Util;
+
+/**
+ * Parallel scan of a key-value table. The key space is split into ranges at caller specified (or sampled) boundary
+ * keys, and the ranges are scanned concurrently on a fixed pool of threads, each range over its own connection from
+ * the {@link DataSource} and using keyset pagination (see {@link DefaultKeyvalScan}). The number of threads, hence the
+ * number of connections used at a time, is the parallelism. Found pairs are passed to an {@link IKeyvalVisitor}, in
+ * key order within a range but in no particular order across ranges.
+ * <p>
+ * Callers that know their key distribution should pass boundaries to {@link #scan(List, IKeyvalVisitor)}. Otherwise
+ * {@link #scan(IKeyvalVisitor)} samples them in one extra ordered pass over the keys (see
+ * {@link #sampleBoundaries(int)}), which reads the key index but no values.
+ * <p>
+ * Note: Ranges are scanned in separate transactions, hence the scan is not a consistent snapshot of the table.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class ParallelKeyvalScan<K, V> {
+
+    /** Default number of pairs per page. */
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    /** Number of ranges per unit of parallelism, so that uneven ranges do not leave threads idle. */
+    private static final int RANGES_PER_THREAD = 4;
+
+    /** Number of keys sampled per range, so that range sizes are even to within a few percent. */
+    private static final int SAMPLES_PER_RANGE = 32;
+
+    /** Sequence number of scan threads. */
+    private static final AtomicInteger THREAD_SEQ = new AtomicInteger();
+
+    /** SQL formats to sample range boundaries. Used to render SQL templates. */
+    private static final String
+    KEYS_FIRST_FORMAT = "SELECT $keyColname FROM $tableName ORDER BY $keyColname LIMIT ?", // limit
+    KEYS_NEXT_FORMAT  = "SELECT $keyColname FROM $tableName WHERE $keyColname > ? ORDER BY $keyColname LIMIT ?"; // key, limit
+
+    /** SQL templates - rendered from formats. */
+    private final String keysFirstSql, keysNextSql;
+
+    /** Data source to obtain a connection per range from. */
+    private final DataSource dataSource;
+
+    /** Scanner for the pages of a range. */
+    private final DefaultKeyvalScan<K, V> scanner;
+
+    /** JDBC reader. */
+    private final IJdbcRead reader;
+
+    /** Key extractor from column index 1. */
+    private final IRowExtractor<K> keyExtractor1;
+
+    /** Maximum number of ranges scanned concurrently. */
+    private final int parallelism;
+
+    /** Number of pairs per page. */
+    private final int pageSize;
+
+    /**
+     * Construct instance using default JDBC reader and page size.
+     * @param source      data source to obtain a connection per range from
+     * @param meta        table meta data
+     * @param keyClass    key class
+     * @param valClass    value class
+     * @param maxParallel maximum number of ranges scanned concurrently
+     */
+    public ParallelKeyvalScan(final DataSource source, final TableMetadata meta, final Class<K> keyClass,
+            final Class<V> valClass, final int maxParallel) {
+        this(source, meta, keyClass, valClass, new DefaultJdbcRead(), maxParallel, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Construct instance using all required arguments.
+     * @param source       data source to obtain a connection per range from
+     * @param meta         table meta data
+     * @param keyClass     key class
+     * @param valClass     value class
+     * @param dbReader     JDBC reader
+     * @param maxParallel  maximum number of ranges scanned concurrently
+     * @param pairsPerPage number of pairs per page
+     */
+    public ParallelKeyvalScan(final DataSource source, final TableMetadata meta, final Class<K> keyClass,
+            final Class<V> valClass, final IJdbcRead dbReader, final int maxParallel, final int pairsPerPage) {
+        if (maxParallel < 1) {
+            throw new IllegalArgumentException("Expected parallelism to be positive, found: " + maxParallel);
+        }
+        if (pairsPerPage < 1) {
+            throw new IllegalArgumentException("Expected page size to be positive, found: " + pairsPerPage);
+        }
+        this.dataSource = Util.notNull(source, "Data source must not be null");
+        this.scanner = new DefaultKeyvalScan<K, V>(meta, keyClass, valClass, dbReader);
+        this.reader = dbReader;
+        this.keyExtractor1 = JdbcUtil.makeTypedColumnExtractor(keyClass, 1);
+        this.keysFirstSql = meta.groovyReplace(KEYS_FIRST_FORMAT);
+        this.keysNextSql = meta.groovyReplace(KEYS_NEXT_FORMAT);
+        this.parallelism = maxParallel;
+        this.pageSize = pairsPerPage;
+    }
+
+    /**
+     * Sample boundary keys that split the table into ranges of about the same number of rows, in a single ordered pass
+     * over the keys (keyset pagination, key column only). Every <tt>stride</tt>-th key is kept, doubling the stride
+     * and dropping every other sampled key whenever the sample grows too large, so that the memory used does not
+     * depend on the size of the table.
+     * @param  ranges number of ranges
+     * @return        distinct boundary keys in ascending order, fewer than <tt>ranges - 1</tt> for small tables
+     */
+    public List<K> sampleBoundaries(final int ranges) {
+        if (ranges < 1) {
+            throw new IllegalArgumentException("Expected number of ranges to be positive, found: " + ranges);
+        }
+        return JdbcUtil.withConnection(dataSource, new IConnectionActivity<List<K>>() {
+            @Override
+            public List<K> execute(final Connection conn) {
+                final int capacity = 2 * ranges * SAMPLES_PER_RANGE;
+                final List<K> sample = new ArrayList<K>(capacity);
+                long stride = 1;
+                long rows = 0;
+                List<K> page = reader.queryForList(conn, keysFirstSql, Collections.singletonList(pageSize),
+                        keyExtractor1);
+                while (!page.isEmpty()) {
+                    for (final K key: page) {
+                        if (++rows % stride == 0) { // sample key i represents rows up to (i + 1) * stride
+                            sample.add(key);
+                        }
+                        if (sample.size() == capacity) {
+                            for (int i = 0; i < capacity / 2; i++) {
+                                sample.set(i, sample.get(2 * i + 1));
+                            }
+                            sample.subList(capacity / 2, capacity).clear();
+                            stride *= 2;
+                        }
+                    }
+                    page = page.size() < pageSize ? Collections.<K>emptyList() : reader.queryForList(conn,
+                            keysNextSql, Arrays.asList(page.get(page.size() - 1), pageSize), keyExtractor1);
+                }
+                final List<K> result = new ArrayList<K>(ranges);
+                for (int i = 1; i < ranges; i++) {
+                    final long index = Math.min(sample.size(), Math.round((double) rows * i / ranges / stride)) - 1;
+                    final K key = index < 0 ? null : sample.get((int) index);
+                    if (key != null && (result.isEmpty() || !key.equals(result.get(result.size() - 1)))) {
+                        result.add(key);
+                    }
+                }
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Scan the whole table, split into ranges at boundaries sampled by {@link #sampleBoundaries(int)}.
+     * @param  visitor receives the found pairs, concurrently from several threads
+     * @return         number of pairs found
+     */
+    public long scan(final IKeyvalVisitor<K, V> visitor) {
+        return scan(parallelism == 1 ? Collections.<K>emptyList() : sampleBoundaries(parallelism * RANGES_PER_THREAD),
+                visitor);
+    }
+
+    /**
+     * Scan the whole table, split into ranges at specified boundaries. Range <tt>i</tt> includes the keys after
+     * boundary <tt>i - 1</tt> up to (and including) boundary <tt>i</tt>; the first and last ranges are open ended.
+     * @param  boundaries distinct boundary keys in ascending order
+     * @param  visitor    receives the found pairs, concurrently from several threads
+     * @return            number of pairs found
+     */
+    public long scan(final List<K> boundaries, final IKeyvalVisitor<K, V> visitor) {
+        final List<K> bounds = new ArrayList<K>(boundaries.size() + 2);
+        bounds.add(null);
+        bounds.addAll(boundaries);
+        bounds.add(null);
+        final int threads = Math.min(parallelism, bounds.size() - 1);
+        final ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "bitumen-parallel-scan-" + THREAD_SEQ.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            final List<Future<Long>> results = new ArrayList<Future<Long>>(bounds.size() - 1);
+            for (int i = 1; i < bounds.size(); i++) {
+                final K afterKey = bounds.get(i - 1);
+                final K lastKey = bounds.get(i);
+                results.add(pool.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        return scanRange(afterKey, lastKey, visitor);
+                    }
+                }));
+            }
+            long count = 0;
+            for (final Future<Long> each: results) {
+                count += await(each);
+            }
+            return count;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Wait for the result of a range scan, rethrowing the scan exception if any.
+     * @param  result future result
+     * @return        number of pairs found in the range
+     */
+    private static long await(final Future<Long> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for range scan", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Range scan failed", cause);
+        }
+    }
+
+    /**
+     * Scan a range of keys over a connection of its own.
+     * @param  afterKey key the range starts after, <tt>null</tt> for no lower bound
+     * @param  lastKey  last key of the range, <tt>null</tt> for no upper bound
+     * @param  visitor  receives the found pairs
+     * @return          number of pairs found
+     */
+    private long scanRange(final K afterKey, final K lastKey, final IKeyvalVisitor<K, V> visitor) {
+        return JdbcUtil.withConnection(dataSource, new IConnectionActivity<Long>() {
+            @Override
+            public Long execute(final Connection conn) {
+                long count = 0;
+                K after = afterKey;
+                List<KeyValueVersion<K, V>> page;
+                do {
+                    page = scanner.scanRangePage(conn, after, lastKey, pageSize);
+                    for (final KeyValueVersion<K, V> each: page) {
+                        visitor.visit(each);
+                    }
+                    count += page.size();
+                    if (!page.isEmpty()) {
+                        after = page.get(page.size() - 1).getKey();
+                    }
+                } while (page.size() == pageSize);
+                return count;
+            }
+        });
+    }
+
+}
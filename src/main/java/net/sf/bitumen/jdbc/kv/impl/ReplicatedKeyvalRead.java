@@ -6,6 +6,10 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.sql.DataSource;
 
@@ -16,8 +20,15 @@ import net.sf.bitumen.jdbc.kv.ValueVersion;
 import net.sf.bitumen.util.Util;
 
 /**
- * A master-slave replication aware implementation of {@link IKeyvalRead}. The reads are directed to slaves in a
- * Round-robin fashion.
+ * A master-slave replication aware implementation of {@link IKeyvalRead}. The reads are directed to slaves chosen by
+ * an {@link ISlaveSelector} (Round-robin by default), which is informed of the latency and outcome of every slave
+ * read, and of every slave copy found stale when reconciled with the master version.
+ * <p>
+ * When constructed with an {@link ExecutorService}, reads that need the latest version from the master (see
+ * {@link #consistentRead(Connection, DataSource, Object)}, {@link #consistentReadAll(Connection, DataSource, Object)}
+ * and their batch variants) read the value and version from the slave on the executor while the master is probed,
+ * instead of one after the other. Slave copies are then reconciled with the master versions, falling back to the
+ * master only for mismatches.
  *
  * @param <K> key type
  * @param <V> value type
@@ -30,6 +41,12 @@ public class ReplicatedKeyvalRead<K, V> implements IKeyvalRead<K, V> {
     /** JDBC reader. */
     private final IKeyvalRead<K, V> reader;
 
+    /** Executor to read from slaves concurrently with master version probes, <tt>null</tt> to read sequentially. */
+    private final ExecutorService executor;
+
+    /** Strategy to select slaves. */
+    private final ISlaveSelector selector;
+
     /**
      * Construct instance using required arguments to infer defaults.
      * @param meta         table meta data
@@ -48,30 +65,202 @@ public class ReplicatedKeyvalRead<K, V> implements IKeyvalRead<K, V> {
      * @param orig         key-value reader to actually connect and read
      */
     public ReplicatedKeyvalRead(final IReplicationSlavesPointer slavesSource, final IKeyvalRead<K, V> orig) {
+        this(slavesSource, orig, null);
+    }
+
+    /**
+     * Construct instance that reads from slaves concurrently with master version probes.
+     * @param slavesSource     source of slave data sources
+     * @param orig             key-value reader to actually connect and read
+     * @param parallelExecutor executor to read from slaves on (not shut down by this instance), <tt>null</tt> to read
+     *                         sequentially
+     */
+    public ReplicatedKeyvalRead(final IReplicationSlavesPointer slavesSource, final IKeyvalRead<K, V> orig,
+            final ExecutorService parallelExecutor) {
+        this(slavesSource, orig, parallelExecutor, SlaveSelectors.roundRobin());
+    }
+
+    /**
+     * Construct instance using all arguments.
+     * @param slavesSource     source of slave data sources
+     * @param orig             key-value reader to actually connect and read
+     * @param parallelExecutor executor to read from slaves on (not shut down by this instance), <tt>null</tt> to read
+     *                         sequentially
+     * @param slaveSelector    strategy to select slaves, see {@link SlaveSelectors}
+     */
+    public ReplicatedKeyvalRead(final IReplicationSlavesPointer slavesSource, final IKeyvalRead<K, V> orig,
+            final ExecutorService parallelExecutor, final ISlaveSelector slaveSelector) {
         this.slavesPointer = slavesSource;
         this.reader = orig;
+        this.executor = parallelExecutor;
+        this.selector = Util.notNull(slaveSelector, "Slave selector must not be null");
     }
 
-    /** Index that loops from 0 until slave-count, at which point it rolls over to 0. */
-    private volatile int index = 0;
-
     /**
-     * Obtain the next slave data source in round-robin fashion.
-     * @return next slave {@link DataSource} in Round-robin fashion.
+     * Obtain the next slave data source as chosen by the slave selector.
+     * @return next slave {@link DataSource}, or <tt>null</tt> to read from master
      */
-    private DataSource nextSlaveDataSource() { // this uses an approximate (but lock-free) counter for efficiency
+    private DataSource nextSlaveDataSource() {
         final List<DataSource> ds = slavesPointer.getDataSources();
         if (ds == null || ds.isEmpty()) {
             return null;
-        } else if (ds.size() == 1) {
-            return ds.get(0);
         }
-        int i = ++index;
-        if (i >= ds.size()) {
-            i = 0;
-            index = 0;
+        return selector.select(ds);
+    }
+
+    /**
+     * Execute specified activity on a connection from specified slave, informing the slave selector.
+     * @param  <T>      result type
+     * @param  slave    slave {@link DataSource}
+     * @param  activity activity to execute on the slave connection
+     * @return          result of the activity
+     */
+    private <T> T withSlave(final DataSource slave, final IConnectionActivity<T> activity) {
+        selector.readStarted(slave);
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final T result = JdbcUtil.withConnection(slave, activity);
+            failed = false;
+            return result;
+        } finally {
+            selector.readFinished(slave, System.nanoTime() - start, failed);
         }
-        return ds.get(i);
+    }
+
+    /**
+     * Start specified activity on a connection from specified slave using the executor.
+     * @param  <T>      result type
+     * @param  slave    slave {@link DataSource}
+     * @param  activity activity to execute on the slave connection
+     * @return          future result of the activity
+     */
+    private <T> Future<T> submitToSlave(final DataSource slave, final IConnectionActivity<T> activity) {
+        return executor.submit(new Callable<T>() {
+            @Override
+            public T call() {
+                return withSlave(slave, activity);
+            }
+        });
+    }
+
+    /**
+     * Start reading value-version tuples of specified keys from specified slave using the executor.
+     * @param  slave slave {@link DataSource}
+     * @param  keys  keys to find
+     * @return       future value-version tuples found on slave
+     */
+    private Future<Map<K, ValueVersion<V>>> submitBatchReadAll(final DataSource slave, final List<K> keys) {
+        return submitToSlave(slave, new IConnectionActivity<Map<K, ValueVersion<V>>>() {
+            @Override
+            public Map<K, ValueVersion<V>> execute(final Connection slaveConn) {
+                return reader.batchReadAll(slaveConn, keys);
+            }
+        });
+    }
+
+    /**
+     * Wait for the result of a slave activity, rethrowing the activity exception if any.
+     * @param  <T>    result type
+     * @param  result future result
+     * @return        result of the activity
+     */
+    private static <T> T await(final Future<T> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for slave read", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Slave read failed", cause);
+        }
+    }
+
+    /**
+     * Find value-version tuples of specified keys consistently across master and slave: probe the latest versions on
+     * master, read the copies from slave (concurrently with the probe when an executor is configured), and reconcile.
+     * @param  conn  JDBC connection to master
+     * @param  slave slave {@link DataSource}
+     * @param  keys  keys to find
+     * @return       value-version tuples of keys found on master, in key order
+     */
+    private Map<K, ValueVersion<V>> consistentBatchFind(final Connection conn, final DataSource slave,
+            final List<K> keys) {
+        if (executor != null) {
+            final Future<Map<K, ValueVersion<V>>> slaveCopy = submitBatchReadAll(slave, keys);
+            final List<Long> latest = batchContains(conn, keys);
+            if (Util.areAllNull(latest)) {
+                return new LinkedHashMap<K, ValueVersion<V>>(0);
+            }
+            return reconcile(conn, slave, keys, latest, await(slaveCopy));
+        }
+        final List<Long> latest = batchContains(conn, keys);
+        if (Util.areAllNull(latest)) {
+            return new LinkedHashMap<K, ValueVersion<V>>(0);
+        }
+        final Map<K, Long> keyVersions = new LinkedHashMap<K, Long>(keys.size() * 2);
+        final int len = keys.size();
+        for (int i = 0; i < len; i++) {
+            final Long version = latest.get(i);
+            if (version != null) {
+                keyVersions.put(keys.get(i), version);
+            }
+        }
+        final Map<K, V> slaveKeyVals = withSlave(slave, new IConnectionActivity<Map<K, V>>() {
+            @Override
+            public Map<K, V> execute(final Connection slaveConn) {
+                return reader.batchReadForVersion(slaveConn, keyVersions);
+            }
+        });
+        final Map<K, ValueVersion<V>> slaveCopy = new HashMap<K, ValueVersion<V>>(slaveKeyVals.size() * 2);
+        for (Map.Entry<K, V> entry: slaveKeyVals.entrySet()) {
+            slaveCopy.put(entry.getKey(), new ValueVersion<V>(entry.getValue(), keyVersions.get(entry.getKey())));
+        }
+        return reconcile(conn, slave, keys, latest, slaveCopy);
+    }
+
+    /**
+     * Reconcile slave copies with the latest versions found on master, reading mismatched keys from master. This is
+     * linear in the number of keys - copies are looked up by key, and each version is compared individually.
+     * @param  conn      JDBC connection to master
+     * @param  slave     slave {@link DataSource} the copies were read from
+     * @param  keys      keys to find
+     * @param  latest    latest versions on master, in the same order as keys (<tt>null</tt> if not found)
+     * @param  slaveCopy value-version tuples found on slave
+     * @return           value-version tuples of keys found on master, in key order
+     */
+    private Map<K, ValueVersion<V>> reconcile(final Connection conn, final DataSource slave, final List<K> keys,
+            final List<Long> latest, final Map<K, ValueVersion<V>> slaveCopy) {
+        final Map<K, ValueVersion<V>> result = new LinkedHashMap<K, ValueVersion<V>>(keys.size() * 2);
+        final List<K> mismatched = new ArrayList<K>();
+        final int len = keys.size();
+        for (int i = 0; i < len; i++) {
+            final Long version = latest.get(i);
+            if (version != null) {
+                final K key = keys.get(i);
+                final ValueVersion<V> copy = slaveCopy.get(key);
+                if (copy != null && version.equals(copy.getVersion())) {
+                    result.put(key, copy);
+                } else {
+                    result.put(key, null); // placeholder to retain key order
+                    mismatched.add(key);
+                }
+            }
+        }
+        selector.readReconciled(slave, !mismatched.isEmpty());
+        if (!mismatched.isEmpty()) {
+            result.putAll(reader.batchReadAll(conn, mismatched));
+            for (K key: mismatched) {
+                if (result.get(key) == null) {
+                    result.remove(key); // deleted on master since the version probe
+                }
+            }
+        }
+        return result;
     }
 
     // ---- contains ----
@@ -108,16 +297,21 @@ public class ReplicatedKeyvalRead<K, V> implements IKeyvalRead<K, V> {
      * @return       corresponding value of the key (<tt>null</tt> if not key found)
      */
     public final V consistentRead(final Connection conn, final DataSource slave, final K key) {
+        if (executor != null) {
+            final ValueVersion<V> vv = consistentReadAll(conn, slave, key);
+            return vv == null ? null : vv.getValue();
+        }
         final Long latest = contains(conn, key);
         if (latest == null) {
             return null;
         }
-        V copy = JdbcUtil.withConnection(slave, new IConnectionActivity<V>() {
+        V copy = withSlave(slave, new IConnectionActivity<V>() {
             @Override
             public V execute(final Connection conn) {
                 return reader.readForVersion(conn, key, latest);
             }
         });
+        selector.readReconciled(slave, copy == null);
         if (copy == null) {
             return reader.read(conn, key);
         } else {
@@ -143,29 +337,18 @@ public class ReplicatedKeyvalRead<K, V> implements IKeyvalRead<K, V> {
      * @return       map of keys and corresponding values (<tt>null</tt> if key not found)
      */
     public final Map<K, V> consistentBatchRead(final Connection conn, final DataSource slave, final List<K> keys) {
-        final List<Long> latest = batchContains(conn, keys);
-        if (Util.areAllNull(latest)) {
-            List<V> data = new ArrayList<V>(keys.size());
-            for (int i = 0; i < keys.size(); i++) {
-                data.add(null);
-            }
-            return Util.zipmap(keys, data);
-        }
-        final Map<K, V> copy = JdbcUtil.withConnection(slave, new IConnectionActivity<Map<K, V>>() {
-            @Override
-            public Map<K, V> execute(final Connection conn) {
-                return reader.batchRead(conn, keys);
+        final Map<K, ValueVersion<V>> found = consistentBatchFind(conn, slave, keys);
+        final Map<K, V> result = new LinkedHashMap<K, V>(keys.size() * 2);
+        if (found.isEmpty()) {
+            for (K key: keys) {
+                result.put(key, null);
             }
-        });
-        final List<K> missing = new ArrayList<K>(keys);
-        for (K key: copy.keySet()) {
-            missing.remove(key);
+            return result;
         }
-        if (!missing.isEmpty()) {
-            final Map<K, V> master = reader.batchRead(conn, missing);
-            copy.putAll(master);
+        for (Map.Entry<K, ValueVersion<V>> entry: found.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().getValue());
         }
-        return copy;
+        return result;
     }
 
     @Override
@@ -189,15 +372,18 @@ public class ReplicatedKeyvalRead<K, V> implements IKeyvalRead<K, V> {
      * @return         corresponding value of the key
      */
     public final V consistentReadVersion(final Connection conn, final DataSource slave, final K key, final long version) {
-        final V copy = JdbcUtil.withConnection(slave, new IConnectionActivity<V>() {
+        final V copy = withSlave(slave, new IConnectionActivity<V>() {
             @Override
             public V execute(final Connection conn) {
                 return reader.readForVersion(conn, key, version);
             }
         });
         if (copy == null) {
-            return reader.readForVersion(conn, key, version);
+            final V master = reader.readForVersion(conn, key, version);
+            selector.readReconciled(slave, master != null);
+            return master;
         } else {
+            selector.readReconciled(slave, false);
             return copy;
         }
     }
@@ -220,7 +406,7 @@ public class ReplicatedKeyvalRead<K, V> implements IKeyvalRead<K, V> {
      * @return             map of keys and corresponding values (<tt>null</tt> for each value when there was no match)
      */
     public final Map<K, V> consistentBatchReadVersion(final Connection conn, final DataSource slave, final Map<K, Long> keyVersions) {
-        final Map<K, V> copy = JdbcUtil.withConnection(slave, new IConnectionActivity<Map<K, V>>() {
+        final Map<K, V> copy = withSlave(slave, new IConnectionActivity<Map<K, V>>() {
             @Override
             public Map<K, V> execute(final Connection conn) {
                 return reader.batchReadForVersion(conn, keyVersions);
@@ -232,7 +418,10 @@ public class ReplicatedKeyvalRead<K, V> implements IKeyvalRead<K, V> {
         }
         if (!missing.isEmpty()) {
             final Map<K, V> master = reader.batchReadForVersion(conn, missing);
+            selector.readReconciled(slave, !master.isEmpty());
             copy.putAll(master);
+        } else {
+            selector.readReconciled(slave, false);
         }
         return copy;
     }
@@ -257,18 +446,36 @@ public class ReplicatedKeyvalRead<K, V> implements IKeyvalRead<K, V> {
      * @return       corresponding value and version (<tt>null</tt> when key not found)
      */
     public final ValueVersion<V> consistentReadAll(final Connection conn, final DataSource slave, final K key) {
+        if (executor != null) {
+            final Future<ValueVersion<V>> slaveCopy = submitToSlave(slave, new IConnectionActivity<ValueVersion<V>>() {
+                @Override
+                public ValueVersion<V> execute(final Connection slaveConn) {
+                    return reader.readAll(slaveConn, key);
+                }
+            });
+            final Long latest = contains(conn, key);
+            if (latest == null) {
+                return null;
+            }
+            final ValueVersion<V> copy = await(slaveCopy);
+            final boolean stale = copy == null || !latest.equals(copy.getVersion());
+            selector.readReconciled(slave, stale);
+            return stale ? reader.readAll(conn, key) : copy;
+        }
         final Long latest = contains(conn, key);
         if (latest == null) {
             return null;
         }
-        final ValueVersion<V> copy = JdbcUtil.withConnection(slave,
+        final ValueVersion<V> copy = withSlave(slave,
                 new IConnectionActivity<ValueVersion<V>>() {
                    @Override
                     public ValueVersion<V> execute(final Connection conn) {
                         return reader.readAll(conn, key);
                     }
                 });
-        if (copy == null || !copy.getVersion().equals(latest)) {
+        final boolean stale = copy == null || !copy.getVersion().equals(latest);
+        selector.readReconciled(slave, stale);
+        if (stale) {
             return reader.readAll(conn, key);
         } else {
             return copy;
@@ -294,28 +501,10 @@ public class ReplicatedKeyvalRead<K, V> implements IKeyvalRead<K, V> {
      */
     public final Map<K, ValueVersion<V>> consistentBatchReadAll(final Connection conn, final DataSource slave,
             final List<K> keys) {
-        final List<Long> latest = batchContains(conn, keys);
-        final Map<K, Long> keyVersions = Util.zipmap(keys, latest);
-        final Map<K, V> slaveKeyVals = JdbcUtil.withConnection(slave, new IConnectionActivity<Map<K, V>>() {
-            @Override
-            public Map<K, V> execute(final Connection slaveConn) {
-                return reader.batchReadForVersion(slaveConn, keyVersions);
-            }
-        });
-        final Map<K, Long> missingKeyVersions = new HashMap<K, Long>(keyVersions);
-        for (K key: slaveKeyVals.keySet()) {
-            missingKeyVersions.remove(key);
-        }
-        if (!missingKeyVersions.isEmpty()) {
-            final Map<K, V> masterKeyVals = reader.batchReadForVersion(conn, missingKeyVersions);
-            slaveKeyVals.putAll(masterKeyVals);
-        }
-        final Map<K, ValueVersion<V>> result = new LinkedHashMap<K, ValueVersion<V>>();
-        final int len = keys.size();
-        for (int i = 0; i < len; i++) {
-            final K key = keys.get(i);
-            final Long version = latest.get(i);
-            result.put(key, version == null ? null : new ValueVersion<V>(slaveKeyVals.get(key), version));
+        final Map<K, ValueVersion<V>> found = consistentBatchFind(conn, slave, keys);
+        final Map<K, ValueVersion<V>> result = new LinkedHashMap<K, ValueVersion<V>>(keys.size() * 2);
+        for (K key: keys) {
+            result.put(key, found.get(key));
         }
         return result;
     }
@@ -0,0 +1,335 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import net.sf.bitumen.jdbc.impl.IConnectionActivity;
+import net.sf.bitumen.jdbc.impl.JdbcUtil;
+import net.sf.bitumen.jdbc.kv.IKeyvalRead;
+import net.sf.bitumen.jdbc.kv.IKeyvalWrite;
+import net.sf.bitumen.util.Util;
+
+/**
+ * {@link ISlaveSelector} decorator that tracks replication lag and stale-read rate of every slave, and routes reads
+ * away from slaves that are too far behind.
+ * <p>
+ * Lag is estimated using a heartbeat row in the key-value table: every {@link #run()} saves the heartbeat key on
+ * master (which assigns it a new version) and remembers when each version was written, then reads the heartbeat
+ * version from every slave. A slave that has the latest heartbeat version has no lag; otherwise its lag is the time
+ * elapsed since the first heartbeat it has not yet seen. A slave that cannot be probed is treated as infinitely
+ * behind until the next successful probe.
+ * <p>
+ * Since only the versions written by this instance are known to it, every tracker instance (e.g. one per application
+ * node) needs a heartbeat key of its own: a slave having a heartbeat written by another instance would look behind all
+ * remembered heartbeats. A heartbeat that finds the row changed since the previous one fails with
+ * {@link IllegalStateException} after writing the heartbeat. Schedule {@link #run()} periodically, e.g. using
+ * {@link java.util.concurrent.ScheduledExecutorService#scheduleWithFixedDelay(Runnable, long, long, TimeUnit)}.
+ * <p>
+ * The stale-read rate is an exponentially weighted moving average of slave copies found stale on reconciliation with
+ * the master version (see {@link ISlaveSelector#readReconciled(DataSource, boolean)}); every probe that finds a slave
+ * up to date counts as a fresh read so that an excluded slave can recover.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class ReplicationLagTracker<K, V> implements ISlaveSelector, Runnable {
+
+    /** Maximum number of heartbeats remembered. */
+    private static final int MAX_HEARTBEATS = 64;
+
+    /** Weight of the latest sample in the stale-read rate. */
+    private static final double STALE_RATE_ALPHA = 0.1;
+
+    /**
+     * Heartbeat version and the time it was written.
+     */
+    private static final class Heartbeat {
+
+        /** Version assigned to the heartbeat row. */
+        private final long version;
+
+        /** {@link System#nanoTime()} when written. */
+        private final long writtenAt;
+
+        /**
+         * Construct instance.
+         * @param  ver version assigned to the heartbeat row
+         * @param  ts  {@link System#nanoTime()} when written
+         */
+        Heartbeat(final long ver, final long ts) {
+            this.version = ver;
+            this.writtenAt = ts;
+        }
+    }
+
+    /**
+     * Lag and stale-read statistics of a slave.
+     */
+    private static final class LagStats {
+
+        /** Estimated lag in nanoseconds. */
+        private volatile long lagNanos = 0;
+
+        /** Stale-read rate. Guarded by <tt>this</tt> for updates. */
+        private volatile double staleRate = 0;
+
+        /**
+         * Add a stale (or fresh) read sample.
+         * @param stale whether the read was stale
+         */
+        synchronized void sample(final boolean stale) {
+            staleRate = STALE_RATE_ALPHA * (stale ? 1 : 0) + (1 - STALE_RATE_ALPHA) * staleRate;
+        }
+    }
+
+    /** Selector to choose among slaves within limits. */
+    private final ISlaveSelector selector;
+
+    /** Source of slave data sources to probe. */
+    private final IReplicationSlavesPointer slavesPointer;
+
+    /** Master data source to write heartbeats to. */
+    private final DataSource master;
+
+    /** Key-value writer for heartbeats. */
+    private final IKeyvalWrite<K, V> writer;
+
+    /** Key-value reader to probe heartbeat version. */
+    private final IKeyvalRead<K, V> reader;
+
+    /** Heartbeat key. */
+    private final K heartbeatKey;
+
+    /** Heartbeat value. */
+    private final V heartbeatValue;
+
+    /** Maximum lag in nanoseconds for a slave to be selected. */
+    private final long maxLagNanos;
+
+    /** Maximum stale-read rate for a slave to be selected. */
+    private final double maxStaleRate;
+
+    /** Recent heartbeats, oldest first. Guarded by <tt>this</tt>. */
+    private final LinkedList<Heartbeat> heartbeats = new LinkedList<Heartbeat>();
+
+    /** Statistics by slave. */
+    private final ConcurrentMap<DataSource, LagStats> stats = new ConcurrentHashMap<DataSource, LagStats>();
+
+    /**
+     * Construct instance using all required arguments.
+     * @param orig          selector to choose among slaves within limits
+     * @param slavesSource  source of slave data sources to probe
+     * @param masterSource  master data source to write heartbeats to
+     * @param kvWriter      key-value writer for heartbeats
+     * @param kvReader      key-value reader (not replication aware) to probe heartbeat version on slaves
+     * @param key           heartbeat key, reserved for this tracker instance in the key-value table (not shared with
+     *                      other trackers)
+     * @param value         heartbeat value
+     * @param maxLag        maximum lag for a slave to be selected
+     * @param unit          time unit of <tt>maxLag</tt>
+     * @param maxStaleReads maximum stale-read rate [0, 1] for a slave to be selected
+     */
+    public ReplicationLagTracker(final ISlaveSelector orig, final IReplicationSlavesPointer slavesSource,
+            final DataSource masterSource, final IKeyvalWrite<K, V> kvWriter, final IKeyvalRead<K, V> kvReader,
+            final K key, final V value, final long maxLag, final TimeUnit unit, final double maxStaleReads) {
+        this.selector = orig;
+        this.slavesPointer = slavesSource;
+        this.master = masterSource;
+        this.writer = kvWriter;
+        this.reader = kvReader;
+        this.heartbeatKey = key;
+        this.heartbeatValue = value;
+        this.maxLagNanos = unit.toNanos(maxLag);
+        this.maxStaleRate = maxStaleReads;
+    }
+
+    /**
+     * Return statistics of specified slave, creating them if required.
+     * @param  slave slave {@link DataSource}
+     * @return       slave statistics
+     */
+    private LagStats statsOf(final DataSource slave) {
+        final LagStats existing = stats.get(slave);
+        if (existing != null) {
+            return existing;
+        }
+        final LagStats created = new LagStats();
+        final LagStats previous = stats.putIfAbsent(slave, created);
+        return previous == null ? created : previous;
+    }
+
+    // ---- heartbeat and probe ----
+
+    /**
+     * Write a heartbeat to master, then probe all slaves. Exceptions are swallowed so that periodic scheduling
+     * continues.
+     */
+    @Override
+    public final void run() {
+        try {
+            heartbeat();
+        } catch (RuntimeException e) {
+            Util.swallow(e);
+        }
+        final List<DataSource> slaves = slavesPointer.getDataSources();
+        if (slaves != null) {
+            for (DataSource each: slaves) {
+                probe(each);
+            }
+        }
+    }
+
+    /**
+     * Write a heartbeat to master.
+     * @throws IllegalStateException if the heartbeat row was changed since the previous heartbeat, e.g. by another
+     *                               tracker instance using the same heartbeat key
+     */
+    public final void heartbeat() {
+        final Long previous;
+        synchronized (this) {
+            previous = heartbeats.isEmpty() ? null : heartbeats.getLast().version;
+        }
+        final Long swapped = previous == null ? null : writeHeartbeat(previous);
+        final long version = swapped != null ? swapped : writeHeartbeat(null);
+        final long now = System.nanoTime();
+        synchronized (this) {
+            heartbeats.addLast(new Heartbeat(version, now));
+            if (heartbeats.size() > MAX_HEARTBEATS) {
+                heartbeats.removeFirst();
+            }
+        }
+        if (previous != null && swapped == null) {
+            throw new IllegalStateException("Heartbeat key " + heartbeatKey + " was changed since the previous"
+                    + " heartbeat - is it shared with another replication lag tracker?");
+        }
+    }
+
+    /**
+     * Write the heartbeat row to master, either unconditionally or only if it still has specified version.
+     * @param  previous version written by the previous heartbeat, <tt>null</tt> to write unconditionally
+     * @return          new version, <tt>null</tt> if the row did not have the previous version
+     */
+    private Long writeHeartbeat(final Long previous) {
+        return JdbcUtil.withConnection(master, new IConnectionActivity<Long>() {
+            @Override
+            public Long execute(final Connection conn) {
+                if (previous == null) {
+                    return writer.save(conn, heartbeatKey, heartbeatValue);
+                }
+                return writer.swap(conn, heartbeatKey, heartbeatValue, previous);
+            }
+        });
+    }
+
+    /**
+     * Read the heartbeat version from specified slave and update its estimated lag.
+     * @param slave slave {@link DataSource}
+     */
+    public final void probe(final DataSource slave) {
+        final LagStats s = statsOf(slave);
+        final Long version;
+        try {
+            version = JdbcUtil.withConnection(slave, new IConnectionActivity<Long>() {
+                @Override
+                public Long execute(final Connection conn) {
+                    return reader.contains(conn, heartbeatKey);
+                }
+            });
+        } catch (RuntimeException e) {
+            s.lagNanos = Long.MAX_VALUE;
+            return;
+        }
+        final long lag = lagOf(version, System.nanoTime());
+        s.lagNanos = lag;
+        if (lag == 0) {
+            s.sample(false);
+        }
+    }
+
+    /**
+     * Estimate the lag of a slave having specified heartbeat version.
+     * @param  version heartbeat version found on slave, <tt>null</tt> if not found
+     * @param  now     timestamp as per {@link System#nanoTime()}
+     * @return         estimated lag in nanoseconds
+     */
+    private synchronized long lagOf(final Long version, final long now) {
+        Heartbeat next = null; // the heartbeat written after the one being compared
+        final Iterator<Heartbeat> iter = heartbeats.descendingIterator();
+        while (iter.hasNext()) {
+            final Heartbeat each = iter.next();
+            if (version != null && each.version == version.longValue()) {
+                return next == null ? 0 : now - next.writtenAt;
+            }
+            next = each;
+        }
+        return next == null ? 0 : now - next.writtenAt; // behind all remembered heartbeats
+    }
+
+    /**
+     * Return the estimated lag of specified slave.
+     * @param  slave slave {@link DataSource}
+     * @param  unit  time unit of the result
+     * @return       estimated lag (<tt>Long.MAX_VALUE</tt> if the last probe failed)
+     */
+    public final long getEstimatedLag(final DataSource slave, final TimeUnit unit) {
+        final long lag = statsOf(slave).lagNanos;
+        return lag == Long.MAX_VALUE ? lag : unit.convert(lag, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Return the stale-read rate of specified slave.
+     * @param  slave slave {@link DataSource}
+     * @return       stale-read rate [0, 1]
+     */
+    public final double getStaleRate(final DataSource slave) {
+        return statsOf(slave).staleRate;
+    }
+
+    /**
+     * Return <tt>true</tt> if specified slave is within the lag and stale-read rate limits.
+     * @param  slave slave {@link DataSource}
+     * @return       whether the slave may be selected
+     */
+    public final boolean isWithinLimits(final DataSource slave) {
+        final LagStats s = statsOf(slave);
+        return s.lagNanos <= maxLagNanos && s.staleRate <= maxStaleRate;
+    }
+
+    // ---- ISlaveSelector ----
+
+    @Override
+    public final DataSource select(final List<DataSource> slaves) {
+        final List<DataSource> eligible = new ArrayList<DataSource>(slaves.size());
+        for (DataSource each: slaves) {
+            if (isWithinLimits(each)) {
+                eligible.add(each);
+            }
+        }
+        return eligible.isEmpty() ? null : selector.select(eligible);
+    }
+
+    @Override
+    public final void readStarted(final DataSource slave) {
+        selector.readStarted(slave);
+    }
+
+    @Override
+    public final void readFinished(final DataSource slave, final long elapsedNanos, final boolean failed) {
+        selector.readFinished(slave, elapsedNanos, failed);
+    }
+
+    @Override
+    public final void readReconciled(final DataSource slave, final boolean stale) {
+        selector.readReconciled(slave, stale);
+        statsOf(slave).sample(stale);
+    }
+
+}
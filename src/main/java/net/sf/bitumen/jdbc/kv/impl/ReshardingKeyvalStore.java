@@ -0,0 +1,670 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.sf.bitumen.jdbc.IJdbcRead;
+import net.sf.bitumen.jdbc.IJdbcWrite;
+import net.sf.bitumen.jdbc.JdbcException;
+import net.sf.bitumen.jdbc.impl.DefaultJdbcRead;
+import net.sf.bitumen.jdbc.impl.DefaultJdbcWrite;
+import net.sf.bitumen.jdbc.impl.IConnectionActivity;
+import net.sf.bitumen.jdbc.impl.JdbcUtil;
+import net.sf.bitumen.jdbc.kv.IKeyvalStore;
+import net.sf.bitumen.jdbc.kv.KeyValueVersion;
+import net.sf.bitumen.jdbc.kv.ValueVersion;
+import net.sf.bitumen.util.Util;
+
+/**
+ * Key-value store that moves keys from one shard mapping (source) to another (target) while online. Until the switch
+ * over, the source is authoritative: reads go to the source, and every write goes to the source first and is then
+ * mirrored to the target. Once {@link #migrate()} (or {@link #run()}, e.g. on a background thread) has copied and
+ * verified all keys, reads and writes switch over to the target atomically.
+ * <p>
+ * Keys are copied with their version intact, so that versions obtained before the switch over remain valid after it.
+ * A key is brought in sync by reading its target version first and the source value and version next, and then
+ * inserting, updating or deleting the target row conditionally on the target version read (compare-and-set). A failed
+ * compare-and-set means a concurrent writer changed the target, and is retried. Reading the target before the source
+ * ensures that a mirror racing with a newer write can never overwrite the newer copy.
+ * <p>
+ * Migration pages through the keys of every source shard (keyset pagination, using the <tt>LIMIT</tt> clause), syncing
+ * each page, then repeats the pass over both the source and the target keys until a pass finds nothing to repair. The
+ * switch over waits for in-flight writes, syncs keys whose mirroring failed and then redirects all operations. A write
+ * whose mirroring fails does not fail the writer, since the source write succeeded; its keys are synced again before
+ * the switch over. Only one migration may run at a time. Rows
+ * repaired by a pass count against convergence only if their key was not written during the pass, since such keys are
+ * mirrored by the writer anyway - hence migration converges under a steady stream of writes.
+ * <p>
+ * All shards must be constructed with table meta data and key class.
+ * <p>
+ * Note: Copied rows get the copy time as the creation timestamp.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class ReshardingKeyvalStore<K, V> implements IKeyvalStore<K, V>, Runnable {
+
+    /** Default page size for migration. */
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    /** Maximum passes over source and target keys for verification. */
+    public static final int MAX_VERIFY_PASSES = 10;
+
+    /** Maximum attempts to sync a key before giving up until the switch over. */
+    private static final int MAX_SYNC_ATTEMPTS = 5;
+
+    /** SQL formats for migration. Used to render SQL templates. */
+    private static final String
+    FIRST_PAGE_FORMAT = "SELECT $keyColname FROM $tableName ORDER BY $keyColname LIMIT ?", // limit
+    NEXT_PAGE_FORMAT  = "SELECT $keyColname FROM $tableName WHERE $keyColname > ? ORDER BY $keyColname LIMIT ?",
+    INSERT_FORMAT     = "INSERT INTO $tableName ($keyColname, $valueColname, $versionColname, $createTimestampColname,"
+    + " $updateTimestampColname) VALUES (?, ?, ?, ?, ?)", // key, val, version, timestamp[1,2]
+    SWAP_FORMAT       = "UPDATE $tableName SET $valueColname = ?, $versionColname = ?, $updateTimestampColname = ?"
+    + " WHERE $keyColname = ? AND $versionColname = ?", // val, ver, timestamp, key, old-ver
+    DELETE_FORMAT     = "DELETE FROM $tableName WHERE $keyColname = ? AND $versionColname = ?"; // key, old-version
+
+    /** SQL templates of a shard - rendered from formats. */
+    private static final class ShardSql {
+        private final String firstPageSql, nextPageSql, insertSql, swapSql, deleteSql;
+        ShardSql(final TableMetadata meta) {
+            this.firstPageSql = meta.groovyReplace(FIRST_PAGE_FORMAT);
+            this.nextPageSql  = meta.groovyReplace(NEXT_PAGE_FORMAT);
+            this.insertSql    = meta.groovyReplace(INSERT_FORMAT);
+            this.swapSql      = meta.groovyReplace(SWAP_FORMAT);
+            this.deleteSql    = meta.groovyReplace(DELETE_FORMAT);
+        }
+    }
+
+    /** Current shard mapping. */
+    private final ShardedKeyvalStore<K, V> source;
+
+    /** New shard mapping. */
+    private final ShardedKeyvalStore<K, V> target;
+
+    /** Rendered SQL templates of all shards. */
+    private final Map<Shard<K, V>, ShardSql> shardSqls = new IdentityHashMap<Shard<K, V>, ShardSql>();
+
+    /** Number of keys per migration page. */
+    private final int pageSize;
+
+    /** JDBC reader for migration. */
+    private final IJdbcRead reader = new DefaultJdbcRead();
+
+    /** JDBC writer for migration. */
+    private final IJdbcWrite writer = new DefaultJdbcWrite();
+
+    /** Writes hold the read lock, the switch over holds the write lock. */
+    private final ReadWriteLock switchLock = new ReentrantReadWriteLock();
+
+    /** Whether reads and writes have switched over to the target. */
+    private volatile boolean switched = false;
+
+    /** Keys that failed to sync with the target, to be synced again before the switch over. */
+    private final Set<K> unsynced = Collections.newSetFromMap(new ConcurrentHashMap<K, Boolean>());
+
+    /** Number of target rows inserted, updated or deleted to sync with the source. */
+    private final AtomicLong repairCount = new AtomicLong(0);
+
+    /** Whether a migration is in progress. */
+    private final AtomicBoolean migrating = new AtomicBoolean(false);
+
+    /** Last exception that failed a sync attempt, <tt>null</tt> if none. */
+    private volatile RuntimeException lastSyncFailure = null;
+
+    /** Keys written since the current migration pass began. */
+    private final Set<K> recentWrites = Collections.newSetFromMap(new ConcurrentHashMap<K, Boolean>());
+
+    /**
+     * Construct instance using default page size.
+     * @param current current shard mapping
+     * @param next    new shard mapping
+     */
+    public ReshardingKeyvalStore(final ShardedKeyvalStore<K, V> current, final ShardedKeyvalStore<K, V> next) {
+        this(current, next, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Construct instance using all required arguments.
+     * @param current current shard mapping
+     * @param next    new shard mapping
+     * @param keysPerPage number of keys per migration page
+     */
+    public ReshardingKeyvalStore(final ShardedKeyvalStore<K, V> current, final ShardedKeyvalStore<K, V> next,
+            final int keysPerPage) {
+        if (keysPerPage < 1) {
+            throw new IllegalArgumentException("Expected page size to be positive, found: " + keysPerPage);
+        }
+        this.source = Util.notNull(current, "Current shard mapping must not be null");
+        this.target = Util.notNull(next, "New shard mapping must not be null");
+        this.pageSize = keysPerPage;
+        for (final Shard<K, V> each: source.getShards()) {
+            shardSqls.put(each, makeShardSql(each));
+        }
+        for (final Shard<K, V> each: target.getShards()) {
+            shardSqls.put(each, makeShardSql(each));
+        }
+    }
+
+    /**
+     * Render the SQL templates of specified shard.
+     * @param  shard the shard
+     * @return       rendered SQL templates
+     * @throws IllegalArgumentException if the shard has no table meta data or key class
+     */
+    private static ShardSql makeShardSql(final Shard<?, ?> shard) {
+        if (shard.getTableMetadata() == null || shard.getKeyClass() == null) {
+            throw new IllegalArgumentException("Expected shard with table meta data and key class, found: " + shard);
+        }
+        return new ShardSql(shard.getTableMetadata());
+    }
+
+    // ----- migration -----
+
+    @Override
+    public void run() {
+        migrate();
+    }
+
+    /**
+     * Copy all keys from the source to the target, verify and switch over. Does nothing if already switched over.
+     * @throws IllegalStateException if verification does not converge in {@link #MAX_VERIFY_PASSES} passes, or another
+     *                               migration is in progress
+     */
+    public void migrate() {
+        if (switched) {
+            return;
+        }
+        if (!migrating.compareAndSet(false, true)) {
+            throw new IllegalStateException("Migration is already in progress");
+        }
+        try {
+            migrateAndSwitch();
+        } finally {
+            migrating.set(false);
+        }
+    }
+
+    /**
+     * Copy all keys from the source to the target, verify and switch over. Must be called by one thread at a time.
+     */
+    private void migrateAndSwitch() {
+        if (switched) {
+            return;
+        }
+        syncShards(source);
+        long repaired = -1;
+        for (int i = 0; i < MAX_VERIFY_PASSES && repaired != 0; i++) {
+            repaired = syncShards(source) + syncShards(target);
+        }
+        if (repaired != 0) {
+            throw new IllegalStateException(String.format(
+                    "Migration did not converge after %d verification passes", MAX_VERIFY_PASSES));
+        }
+        switchLock.writeLock().lock();
+        try {
+            final List<K> keys = new ArrayList<K>(unsynced);
+            if (!keys.isEmpty() && !sync(keys, null)) {
+                throw new IllegalStateException("Unable to sync keys before switch over: " + unsynced,
+                        lastSyncFailure);
+            }
+            unsynced.removeAll(keys);
+            switched = true;
+            recentWrites.clear();
+        } finally {
+            switchLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Return whether reads and writes have switched over to the target.
+     * @return <tt>true</tt> if switched over, <tt>false</tt> otherwise
+     */
+    public boolean isSwitched() {
+        return switched;
+    }
+
+    /**
+     * Return the number of target rows inserted, updated or deleted so far to sync with the source.
+     * @return number of target rows repaired
+     */
+    public long getRepairCount() {
+        return repairCount.get();
+    }
+
+    /**
+     * Return the number of keys that failed to sync with the target, to be synced again before the switch over.
+     * @return number of keys pending sync
+     */
+    public int getUnsyncedCount() {
+        return unsynced.size();
+    }
+
+    /**
+     * Sync all keys of specified shard mapping, page by page.
+     * @param  mapping shard mapping to page through
+     * @return         number of target rows repaired for keys not written during the pass
+     */
+    private long syncShards(final ShardedKeyvalStore<K, V> mapping) {
+        recentWrites.clear();
+        final AtomicLong passRepairs = new AtomicLong(0);
+        for (final Shard<K, V> shard: mapping.getShards()) {
+            List<K> page = readPage(shard, null);
+            while (!page.isEmpty()) {
+                sync(page, passRepairs);
+                page = page.size() < pageSize ? Collections.<K>emptyList() : readPage(shard, page.get(page.size() - 1));
+            }
+        }
+        return passRepairs.get();
+    }
+
+    /**
+     * Read a page of keys from specified shard, in key order.
+     * @param  shard    shard to read from
+     * @param  afterKey last key of previous page, <tt>null</tt> for the first page
+     * @return          keys in the page
+     */
+    private List<K> readPage(final Shard<K, V> shard, final K afterKey) {
+        final ShardSql sqls = shardSqls.get(shard);
+        return JdbcUtil.withConnection(shard.getDataSource(), new IConnectionActivity<List<K>>() {
+            @Override
+            public List<K> execute(final Connection conn) {
+                return afterKey == null
+                        ? reader.queryForList(conn, sqls.firstPageSql, Arrays.asList(pageSize),
+                                JdbcUtil.makeTypedColumnExtractor(shard.getKeyClass(), 1))
+                        : reader.queryForList(conn, sqls.nextPageSql, Arrays.asList(afterKey, pageSize),
+                                JdbcUtil.makeTypedColumnExtractor(shard.getKeyClass(), 1));
+            }
+        });
+    }
+
+    // ----- sync -----
+
+    /**
+     * Bring specified keys in sync on the target with the source, retrying on conflicts. Keys that could not be synced
+     * are remembered for the switch over, since a later successful sync may race with their pending change.
+     * @param  keys        keys to sync
+     * @param  passRepairs counter of repairs of the migration pass, <tt>null</tt> when mirroring a write
+     * @return             <tt>true</tt> if all keys are in sync, <tt>false</tt> otherwise
+     */
+    private boolean sync(final Collection<K> keys, final AtomicLong passRepairs) {
+        List<K> pending = new ArrayList<K>(keys);
+        JdbcException failure = null;
+        for (int i = 0; i < MAX_SYNC_ATTEMPTS && !pending.isEmpty(); i++) {
+            try {
+                pending = syncOnce(pending, passRepairs);
+            } catch (JdbcException e) {
+                failure = e; // e.g. duplicate key on insert due to a concurrent mirror - retry
+            }
+        }
+        if (failure != null && !pending.isEmpty()) {
+            lastSyncFailure = failure;
+            Util.echo("Unable to sync %d keys, last failure: %s\n", pending.size(), failure);
+        }
+        unsynced.addAll(pending);
+        return pending.isEmpty();
+    }
+
+    /**
+     * Compare specified keys on target and source and apply the difference to the target, conditional on the target
+     * version read.
+     * @param  keys        keys to sync
+     * @param  passRepairs counter of repairs of the migration pass, <tt>null</tt> when mirroring a write
+     * @return             keys that failed the compare-and-set due to concurrent changes
+     */
+    private List<K> syncOnce(final List<K> keys, final AtomicLong passRepairs) {
+        // read target before source, so that a stale source copy can never overwrite a newer target copy
+        final List<Long> targetVersions = target.batchContains(keys);
+        final Map<K, ValueVersion<V>> sourceCopies = source.batchReadAll(keys);
+        final Map<Integer, List<Object[]>> changes = new LinkedHashMap<Integer, List<Object[]>>();
+        for (int i = 0; i < keys.size(); i++) {
+            final K key = keys.get(i);
+            final Long targetVersion = targetVersions.get(i);
+            final ValueVersion<V> copy = sourceCopies.get(key);
+            final Long sourceVersion = copy == null ? null : copy.getVersion();
+            if (sourceVersion == null ? targetVersion != null : !sourceVersion.equals(targetVersion)) {
+                final int index = target.shardIndex(key);
+                if (!changes.containsKey(index)) {
+                    changes.put(index, new ArrayList<Object[]>());
+                }
+                changes.get(index).add(new Object[] {key, copy, targetVersion});
+            }
+        }
+        final List<K> conflicts = new ArrayList<K>();
+        for (final Map.Entry<Integer, List<Object[]>> each: changes.entrySet()) {
+            conflicts.addAll(applyChanges(target.getShards().get(each.getKey()), each.getValue(), passRepairs));
+        }
+        return conflicts;
+    }
+
+    /**
+     * Apply specified changes to a target shard in one transaction.
+     * @param  shard       target shard
+     * @param  changes     changes as (key, source value-version or <tt>null</tt>, expected target version) triplets
+     * @param  passRepairs counter of repairs of the migration pass, <tt>null</tt> when mirroring a write
+     * @return             keys that failed the compare-and-set due to concurrent changes
+     */
+    private List<K> applyChanges(final Shard<K, V> shard, final List<Object[]> changes,
+            final AtomicLong passRepairs) {
+        final ShardSql sqls = shardSqls.get(shard);
+        return JdbcUtil.withTransaction(shard.getDataSource(), new IConnectionActivity<List<K>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public List<K> execute(final Connection conn) {
+                final Timestamp now = Util.now();
+                final List<K> insertKeys = new ArrayList<K>(), swapKeys = new ArrayList<K>(),
+                        deleteKeys = new ArrayList<K>();
+                final List<Iterable<?>> inserts = new ArrayList<Iterable<?>>(), swaps = new ArrayList<Iterable<?>>(),
+                        deletes = new ArrayList<Iterable<?>>();
+                for (final Object[] change: changes) {
+                    final K key = (K) change[0];
+                    final ValueVersion<V> copy = (ValueVersion<V>) change[1];
+                    final Long expected = (Long) change[2];
+                    if (copy == null) {
+                        deleteKeys.add(key);
+                        deletes.add(Arrays.asList(key, expected));
+                    } else if (expected == null) {
+                        insertKeys.add(key);
+                        inserts.add(Arrays.asList(key, copy.getValue(), copy.getVersion(), now, now));
+                    } else {
+                        swapKeys.add(key);
+                        swaps.add(Arrays.asList(copy.getValue(), copy.getVersion(), now, key, expected));
+                    }
+                }
+                final List<K> conflicts = new ArrayList<K>();
+                if (!inserts.isEmpty()) {
+                    writer.batchUpdate(conn, sqls.insertSql, inserts);
+                    for (final K key: insertKeys) {
+                        countRepair(key, passRepairs);
+                    }
+                }
+                collectConflicts(swapKeys, swaps.isEmpty() ? null : writer.batchUpdate(conn, sqls.swapSql, swaps),
+                        conflicts, passRepairs);
+                collectConflicts(deleteKeys, deletes.isEmpty() ? null :
+                    writer.batchUpdate(conn, sqls.deleteSql, deletes), conflicts, passRepairs);
+                return conflicts;
+            }
+        });
+    }
+
+    /**
+     * Collect keys whose conditional statement did not affect any row, and count the rest as repaired.
+     * @param keys        keys corresponding to the statement batch
+     * @param rows        row counts of the statement batch, <tt>null</tt> if not executed
+     * @param conflicts   list to add keys to
+     * @param passRepairs counter of repairs of the migration pass, <tt>null</tt> when mirroring a write
+     */
+    private void collectConflicts(final List<K> keys, final int[] rows, final List<K> conflicts,
+            final AtomicLong passRepairs) {
+        if (rows == null) {
+            return;
+        }
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i] == 0) {
+                conflicts.add(keys.get(i));
+            } else {
+                countRepair(keys.get(i), passRepairs);
+            }
+        }
+    }
+
+    /**
+     * Count a repaired target row, against the migration pass too unless the key was written during the pass.
+     * @param key         repaired key
+     * @param passRepairs counter of repairs of the migration pass, <tt>null</tt> when mirroring a write
+     */
+    private void countRepair(final K key, final AtomicLong passRepairs) {
+        repairCount.incrementAndGet();
+        if (passRepairs != null && !recentWrites.contains(key)) {
+            passRepairs.incrementAndGet();
+        }
+    }
+
+    // ----- dual-write -----
+
+    /**
+     * Return the shard mapping currently authoritative for reads.
+     * @return source before switch over, target thereafter
+     */
+    private ShardedKeyvalStore<K, V> current() {
+        return switched ? target : source;
+    }
+
+    /**
+     * Acquire the shared lock for a write operation, and note the keys about to be written unless switched over.
+     * @param  keys keys about to be written
+     * @return      shard mapping to write to
+     */
+    private ShardedKeyvalStore<K, V> beginWrite(final Collection<K> keys) {
+        switchLock.readLock().lock();
+        if (!switched) {
+            recentWrites.addAll(keys);
+        }
+        return current();
+    }
+
+    /**
+     * Acquire the shared lock for a write operation, and note the key about to be written unless switched over.
+     * @param  key key about to be written
+     * @return     shard mapping to write to
+     */
+    private ShardedKeyvalStore<K, V> beginWrite(final K key) {
+        return beginWrite(Collections.singletonList(key));
+    }
+
+    /**
+     * Mirror the written keys to the target unless switched over, and release the shared lock. A mirroring failure is
+     * not thrown, since the source write succeeded; the keys are synced again before the switch over instead.
+     * @param keys written keys
+     */
+    private void endWrite(final Collection<K> keys) {
+        try {
+            if (!switched) {
+                sync(keys, null);
+            }
+        } catch (RuntimeException e) {
+            lastSyncFailure = e;
+            unsynced.addAll(keys);
+            Util.echo("Unable to mirror %d keys, failure: %s\n", keys.size(), e);
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Mirror the written key to the target unless switched over, and release the shared lock.
+     * @param key written key
+     */
+    private void endWrite(final K key) {
+        endWrite(Collections.singletonList(key));
+    }
+
+    /**
+     * Extract keys from specified triplets.
+     * @param  triplets key, value and version triplets
+     * @return          keys in triplet order
+     */
+    private List<K> keysOf(final List<KeyValueVersion<K, V>> triplets) {
+        final List<K> keys = new ArrayList<K>(triplets.size());
+        for (final KeyValueVersion<K, V> each: triplets) {
+            keys.add(each.getKey());
+        }
+        return keys;
+    }
+
+    // ----- reads -----
+
+    @Override
+    public Long contains(final K key) {
+        return current().contains(key);
+    }
+
+    @Override
+    public List<Long> batchContains(final List<K> keys) {
+        return current().batchContains(keys);
+    }
+
+    @Override
+    public boolean containsVersion(final K key, final long version) {
+        return current().containsVersion(key, version);
+    }
+
+    @Override
+    public Map<K, Boolean> batchContainsVersion(final Map<K, Long> keyVersions) {
+        return current().batchContainsVersion(keyVersions);
+    }
+
+    @Override
+    public V read(final K key) {
+        return current().read(key);
+    }
+
+    @Override
+    public Map<K, V> batchRead(final List<K> keys) {
+        return current().batchRead(keys);
+    }
+
+    @Override
+    public V readForVersion(final K key, final long version) {
+        return current().readForVersion(key, version);
+    }
+
+    @Override
+    public Map<K, V> batchReadForVersion(final Map<K, Long> keyVersions) {
+        return current().batchReadForVersion(keyVersions);
+    }
+
+    @Override
+    public ValueVersion<V> readAll(final K key) {
+        return current().readAll(key);
+    }
+
+    @Override
+    public Map<K, ValueVersion<V>> batchReadAll(final List<K> keys) {
+        return current().batchReadAll(keys);
+    }
+
+    // ----- writes -----
+
+    @Override
+    public long insert(final K key, final V value) {
+        try {
+            return beginWrite(key).insert(key, value);
+        } finally {
+            endWrite(key);
+        }
+    }
+
+    @Override
+    public Map<K, Long> batchInsert(final Map<K, V> pairs) {
+        try {
+            return beginWrite(pairs.keySet()).batchInsert(pairs);
+        } finally {
+            endWrite(pairs.keySet());
+        }
+    }
+
+    @Override
+    public long save(final K key, final V value) {
+        try {
+            return beginWrite(key).save(key, value);
+        } finally {
+            endWrite(key);
+        }
+    }
+
+    @Override
+    public Map<K, Long> batchSave(final Map<K, V> pairs) {
+        try {
+            return beginWrite(pairs.keySet()).batchSave(pairs);
+        } finally {
+            endWrite(pairs.keySet());
+        }
+    }
+
+    @Override
+    public Long swap(final K key, final V value, final long version) {
+        try {
+            return beginWrite(key).swap(key, value, version);
+        } finally {
+            endWrite(key);
+        }
+    }
+
+    @Override
+    public Map<K, Long> batchSwap(final List<KeyValueVersion<K, V>> triplets) {
+        try {
+            return beginWrite(keysOf(triplets)).batchSwap(triplets);
+        } finally {
+            endWrite(keysOf(triplets));
+        }
+    }
+
+    @Override
+    public Long touch(final K key) {
+        try {
+            return beginWrite(key).touch(key);
+        } finally {
+            endWrite(key);
+        }
+    }
+
+    @Override
+    public Map<K, Long> batchTouch(final List<K> keys) {
+        try {
+            return beginWrite(keys).batchTouch(keys);
+        } finally {
+            endWrite(keys);
+        }
+    }
+
+    @Override
+    public void delete(final K key) {
+        try {
+            beginWrite(key).delete(key);
+        } finally {
+            endWrite(key);
+        }
+    }
+
+    @Override
+    public void batchDelete(final List<K> keys) {
+        try {
+            beginWrite(keys).batchDelete(keys);
+        } finally {
+            endWrite(keys);
+        }
+    }
+
+    @Override
+    public void remove(final K key, final long version) {
+        try {
+            beginWrite(key).remove(key, version);
+        } finally {
+            endWrite(key);
+        }
+    }
+
+    @Override
+    public void batchRemove(final Map<K, Long> keys) {
+        try {
+            beginWrite(keys.keySet()).batchRemove(keys);
+        } finally {
+            endWrite(keys.keySet());
+        }
+    }
+
+}
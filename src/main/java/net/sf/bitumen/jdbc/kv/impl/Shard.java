@@ -0,0 +1,131 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import javax.sql.DataSource;
+
+import net.sf.bitumen.jdbc.kv.IKeyvalRead;
+import net.sf.bitumen.jdbc.kv.IKeyvalWrite;
+import net.sf.bitumen.util.Util;
+
+/**
+ * A shard of a key-value store - a data source along with the reader and writer for the key-value table in it.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class Shard<K, V> {
+
+    /** Data source of the shard. */
+    private final DataSource dataSource;
+
+    /** Key-value table meta data. */
+    private final TableMetadata meta;
+
+    /** Key class. */
+    private final Class<K> keyClass;
+
+    /** Value class. */
+    private final Class<V> valueClass;
+
+    /** Key-value reader for the shard table. */
+    private final IKeyvalRead<K, V> reader;
+
+    /** Key-value writer for the shard table. */
+    private final IKeyvalWrite<K, V> writer;
+
+    /**
+     * Construct instance using default reader and writer for specified table.
+     * @param source    data source of the shard
+     * @param tableMeta key-value table meta data
+     * @param keyClass  key class
+     * @param valClass  value class
+     */
+    public Shard(final DataSource source, final TableMetadata tableMeta, final Class<K> keyClass,
+            final Class<V> valClass) {
+        this(source, tableMeta, keyClass, valClass, new DefaultKeyvalRead<K, V>(tableMeta, keyClass, valClass),
+                new DefaultKeyvalWrite<K, V>(tableMeta));
+    }
+
+    /**
+     * Construct instance using specified reader and writer, without table meta data and key/value classes. Such a
+     * shard serves a {@link ShardedKeyvalStore}, but cannot take part in a {@link ReshardingKeyvalStore}.
+     * @param source   data source of the shard
+     * @param kvReader key-value reader for the shard table
+     * @param kvWriter key-value writer for the shard table
+     */
+    public Shard(final DataSource source, final IKeyvalRead<K, V> kvReader, final IKeyvalWrite<K, V> kvWriter) {
+        this.dataSource = Util.notNull(source, "Shard data source must not be null");
+        this.meta = null;
+        this.keyClass = null;
+        this.valueClass = null;
+        this.reader = Util.notNull(kvReader, "Shard reader must not be null");
+        this.writer = Util.notNull(kvWriter, "Shard writer must not be null");
+    }
+
+    /**
+     * Construct instance using all required arguments.
+     * @param source    data source of the shard
+     * @param tableMeta key-value table meta data
+     * @param keyClass  key class
+     * @param valClass  value class
+     * @param kvReader  key-value reader for the shard table
+     * @param kvWriter  key-value writer for the shard table
+     */
+    public Shard(final DataSource source, final TableMetadata tableMeta, final Class<K> keyClass,
+            final Class<V> valClass, final IKeyvalRead<K, V> kvReader, final IKeyvalWrite<K, V> kvWriter) {
+        this.dataSource = Util.notNull(source, "Shard data source must not be null");
+        this.meta = Util.notNull(tableMeta, "Shard table meta data must not be null");
+        this.keyClass = Util.notNull(keyClass, "Shard key class must not be null");
+        this.valueClass = Util.notNull(valClass, "Shard value class must not be null");
+        this.reader = Util.notNull(kvReader, "Shard reader must not be null");
+        this.writer = Util.notNull(kvWriter, "Shard writer must not be null");
+    }
+
+    /**
+     * Getter for data source.
+     * @return data source of the shard
+     */
+    public final DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Getter for table meta data.
+     * @return key-value table meta data, <tt>null</tt> if not specified
+     */
+    public final TableMetadata getTableMetadata() {
+        return meta;
+    }
+
+    /**
+     * Getter for key class.
+     * @return key class, <tt>null</tt> if not specified
+     */
+    public final Class<K> getKeyClass() {
+        return keyClass;
+    }
+
+    /**
+     * Getter for value class.
+     * @return value class, <tt>null</tt> if not specified
+     */
+    public final Class<V> getValueClass() {
+        return valueClass;
+    }
+
+    /**
+     * Getter for reader.
+     * @return key-value reader for the shard table
+     */
+    public final IKeyvalRead<K, V> getReader() {
+        return reader;
+    }
+
+    /**
+     * Getter for writer.
+     * @return key-value writer for the shard table
+     */
+    public final IKeyvalWrite<K, V> getWriter() {
+        return writer;
+    }
+
+}
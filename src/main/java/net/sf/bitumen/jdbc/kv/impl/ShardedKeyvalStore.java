@@ -0,0 +1,651 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.sf.bitumen.jdbc.impl.IConnectionActivity;
+import net.sf.bitumen.jdbc.impl.JdbcUtil;
+import net.sf.bitumen.jdbc.kv.IKeyvalConditionalWrite;
+import net.sf.bitumen.jdbc.kv.IKeyvalStore;
+import net.sf.bitumen.jdbc.kv.KeyValueVersion;
+import net.sf.bitumen.jdbc.kv.ValueVersion;
+
+/**
+ * Key-value store partitioned over N {@link Shard} instances, each being a key-value table in a database. Keys are
+ * mapped to shards using Jump Consistent Hash (Lamping and Veach), so that growing the store from N to N+1 shards
+ * moves only about 1/(N+1) of the keys.
+ * <p>
+ * Batch operations are split per shard; when an {@link ExecutorService} is configured the per-shard batches run in
+ * parallel, each on a connection of its own, otherwise one after the other. Results are merged in request order.
+ * Every shard batch commits independently, hence a batch spanning several shards is not atomic. Batch swap and touch
+ * report the outcome of every key: through {@link IKeyvalConditionalWrite} when the shard writer implements it,
+ * otherwise by matching the new version of the shard batch against the keys on the same connection.
+ * <p>
+ * Placement depends on {@link Object#hashCode()} of the keys, which must therefore be value-based and identical in
+ * every JVM sharing the shards, e.g. {@link Integer}, {@link Long} or {@link String} keys. Keys whose hash code is
+ * identity-based or may vary between JVMs (e.g. enums, arrays such as <tt>byte[]</tt>) would be placed on different
+ * shards by different processes.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class ShardedKeyvalStore<K, V> implements IKeyvalStore<K, V> {
+
+    /**
+     * Operation on a part of a batch that belongs to a single shard.
+     *
+     * @param <K> key type
+     * @param <V> value type
+     * @param <P> batch part type
+     * @param <R> result type
+     */
+    private interface IShardActivity<K, V, P, R> {
+        R execute(Connection conn, Shard<K, V> shard, P part);
+    }
+
+    /** The shards, in hash bucket order. */
+    private final List<Shard<K, V>> shards;
+
+    /** Executor to run per-shard batches in parallel, <tt>null</tt> to run them one after the other. */
+    private final ExecutorService executor;
+
+    /**
+     * Construct instance that runs per-shard batches one after the other.
+     * @param shardList the shards, in hash bucket order
+     */
+    public ShardedKeyvalStore(final List<Shard<K, V>> shardList) {
+        this(shardList, null);
+    }
+
+    /**
+     * Construct instance using all required arguments.
+     * @param shardList  the shards, in hash bucket order
+     * @param threadPool executor to run per-shard batches in parallel, <tt>null</tt> to run them one after the other
+     */
+    public ShardedKeyvalStore(final List<Shard<K, V>> shardList, final ExecutorService threadPool) {
+        if (shardList == null || shardList.isEmpty()) {
+            throw new IllegalArgumentException("Expected at least one shard, found: " + shardList);
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<Shard<K, V>>(shardList));
+        this.executor = threadPool;
+    }
+
+    // ----- hashing -----
+
+    /**
+     * Jump Consistent Hash: map a 64-bit key to one of <tt>buckets</tt> buckets.
+     * @param  key     64-bit key
+     * @param  buckets number of buckets
+     * @return         bucket index in the range [0, buckets)
+     */
+    public static int jumpHash(final long key, final int buckets) {
+        long k = key;
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            k = k * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((k >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+    /**
+     * Spread the hash code of specified key over 64 bits (MurmurHash3 finalizer), because Jump Consistent Hash needs
+     * well distributed keys and hash codes of e.g. sequential integers are not.
+     * @param  key the key
+     * @return     64-bit hash
+     */
+    private static long hash64(final Object key) {
+        long h = key.hashCode();
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Return the shard index for specified key. The key must have a value-based hash code that is the same in every
+     * JVM, see the class documentation.
+     * @param  key the key
+     * @return     shard index
+     */
+    public int shardIndex(final K key) {
+        return jumpHash(hash64(key), shards.size());
+    }
+
+    /**
+     * Getter for shards.
+     * @return the shards, in hash bucket order
+     */
+    public List<Shard<K, V>> getShards() {
+        return shards;
+    }
+
+    // ----- execution -----
+
+    /**
+     * Run specified activity on the shard of specified key.
+     * @param  <R>      result type
+     * @param  key      the key
+     * @param  activity activity to run
+     * @return          activity result
+     */
+    private <R> R onShard(final K key, final IShardActivity<K, V, K, R> activity) {
+        return runOnShard(shardIndex(key), key, activity);
+    }
+
+    /**
+     * Run specified activity on a batch part, on a connection to the corresponding shard.
+     * @param  <P>      batch part type
+     * @param  <R>      result type
+     * @param  index    shard index
+     * @param  part     batch part
+     * @param  activity activity to run
+     * @return          activity result
+     */
+    private <P, R> R runOnShard(final int index, final P part, final IShardActivity<K, V, P, R> activity) {
+        final Shard<K, V> shard = shards.get(index);
+        return JdbcUtil.withConnection(shard.getDataSource(), new IConnectionActivity<R>() {
+            @Override
+            public R execute(final Connection conn) {
+                return activity.execute(conn, shard, part);
+            }
+        });
+    }
+
+    /**
+     * Run specified activity on every non-<tt>null</tt> batch part, in parallel if an executor is configured.
+     * @param  <P>      batch part type
+     * @param  <R>      result type
+     * @param  parts    batch parts indexed by shard, <tt>null</tt> for shards not involved
+     * @param  activity activity to run
+     * @return          results indexed by shard, <tt>null</tt> for shards not involved
+     */
+    private <P, R> List<R> runOnShards(final List<P> parts, final IShardActivity<K, V, P, R> activity) {
+        final List<R> results = new ArrayList<R>(Collections.<R>nCopies(parts.size(), null));
+        final List<Integer> involved = new ArrayList<Integer>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            if (parts.get(i) != null) {
+                involved.add(i);
+            }
+        }
+        if (executor == null || involved.size() < 2) {
+            for (final int i: involved) {
+                results.set(i, runOnShard(i, parts.get(i), activity));
+            }
+            return results;
+        }
+        // submit all but the first part, which runs on the calling thread
+        final Map<Integer, Future<R>> futures = new LinkedHashMap<Integer, Future<R>>();
+        for (final int i: involved.subList(1, involved.size())) {
+            futures.put(i, executor.submit(new Callable<R>() {
+                @Override
+                public R call() {
+                    return runOnShard(i, parts.get(i), activity);
+                }
+            }));
+        }
+        RuntimeException failure = null;
+        final int first = involved.get(0);
+        try {
+            results.set(first, runOnShard(first, parts.get(first), activity));
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        for (final Map.Entry<Integer, Future<R>> each: futures.entrySet()) {
+            try {
+                results.set(each.getKey(), await(each.getValue()));
+            } catch (RuntimeException e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * Wait for the result of a shard activity, rethrowing the activity exception if any.
+     * @param  <T>    result type
+     * @param  result future result
+     * @return        result of the activity
+     */
+    private static <T> T await(final Future<T> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for shard operation", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Shard operation failed", cause);
+        }
+    }
+
+    // ----- partitioning and merging -----
+
+    /**
+     * Split specified keys per shard, preserving order within each shard.
+     * @param  keys keys to split
+     * @return      key lists indexed by shard, <tt>null</tt> for shards without keys
+     */
+    private List<List<K>> partition(final List<K> keys) {
+        final List<List<K>> parts = new ArrayList<List<K>>(Collections.<List<K>>nCopies(shards.size(), null));
+        for (final K key: keys) {
+            final int index = shardIndex(key);
+            if (parts.get(index) == null) {
+                parts.set(index, new ArrayList<K>());
+            }
+            parts.get(index).add(key);
+        }
+        return parts;
+    }
+
+    /**
+     * Split specified map per shard, preserving order within each shard.
+     * @param  <X>  value type
+     * @param  pairs map to split
+     * @return       maps indexed by shard, <tt>null</tt> for shards without keys
+     */
+    private <X> List<Map<K, X>> partition(final Map<K, X> pairs) {
+        final List<Map<K, X>> parts = new ArrayList<Map<K, X>>(Collections.<Map<K, X>>nCopies(shards.size(), null));
+        for (final Map.Entry<K, X> each: pairs.entrySet()) {
+            final int index = shardIndex(each.getKey());
+            if (parts.get(index) == null) {
+                parts.set(index, new LinkedHashMap<K, X>());
+            }
+            parts.get(index).put(each.getKey(), each.getValue());
+        }
+        return parts;
+    }
+
+    /**
+     * Split specified triplets per shard, preserving order within each shard.
+     * @param  triplets triplets to split
+     * @return          triplet lists indexed by shard, <tt>null</tt> for shards without keys
+     */
+    private List<List<KeyValueVersion<K, V>>> partitionTriplets(final List<KeyValueVersion<K, V>> triplets) {
+        final List<List<KeyValueVersion<K, V>>> parts = new ArrayList<List<KeyValueVersion<K, V>>>(
+                Collections.<List<KeyValueVersion<K, V>>>nCopies(shards.size(), null));
+        for (final KeyValueVersion<K, V> each: triplets) {
+            final int index = shardIndex(each.getKey());
+            if (parts.get(index) == null) {
+                parts.set(index, new ArrayList<KeyValueVersion<K, V>>());
+            }
+            parts.get(index).add(each);
+        }
+        return parts;
+    }
+
+    /**
+     * Merge per-shard lists that correspond position-wise to the per-shard key lists, in request order.
+     * @param  <X>     element type
+     * @param  keys    keys in request order
+     * @param  results per-shard results
+     * @return         merged list in request order
+     */
+    private <X> List<X> mergeLists(final List<K> keys, final List<List<X>> results) {
+        final int[] cursors = new int[shards.size()];
+        final List<X> merged = new ArrayList<X>(keys.size());
+        for (final K key: keys) {
+            final int index = shardIndex(key);
+            merged.add(results.get(index).get(cursors[index]++));
+        }
+        return merged;
+    }
+
+    /**
+     * Merge per-shard maps in request order, leaving out keys missing in the per-shard maps.
+     * @param  <X>     value type
+     * @param  keys    keys in request order
+     * @param  results per-shard results
+     * @return         merged map in request order
+     */
+    private <X> Map<K, X> mergeMaps(final Iterable<K> keys, final List<Map<K, X>> results) {
+        final Map<K, X> merged = new LinkedHashMap<K, X>();
+        for (final K key: keys) {
+            final Map<K, X> part = results.get(shardIndex(key));
+            if (part != null && part.containsKey(key)) {
+                merged.put(key, part.get(key));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Map every key to the per-shard result of its shard, in request order. Only suitable for operations that either
+     * apply to every key of the shard batch or fail, i.e. insert and save.
+     * @param  <X>     result type
+     * @param  keys    keys in request order
+     * @param  results per-shard results
+     * @return         map of key to per-shard result
+     */
+    private <X> Map<K, X> spread(final Iterable<K> keys, final List<X> results) {
+        final Map<K, X> merged = new LinkedHashMap<K, X>();
+        for (final K key: keys) {
+            merged.put(key, results.get(shardIndex(key)));
+        }
+        return merged;
+    }
+
+    /**
+     * Merge per-shard outcomes in request order, mapping keys missing in the per-shard outcomes to <tt>null</tt>.
+     * @param  keys    keys in request order
+     * @param  results per-shard maps of updated keys to their new version
+     * @return         map of every key to its new version, <tt>null</tt> if not updated
+     */
+    private Map<K, Long> mergeOutcomes(final Iterable<K> keys, final List<Map<K, Long>> results) {
+        final Map<K, Long> merged = new LinkedHashMap<K, Long>();
+        for (final K key: keys) {
+            final Map<K, Long> part = results.get(shardIndex(key));
+            merged.put(key, part == null ? null : part.get(key));
+        }
+        return merged;
+    }
+
+    /**
+     * Find which of specified keys, just updated by a shard batch, carry the new version of that batch.
+     * @param  conn    connection to the shard
+     * @param  shard   the shard
+     * @param  keys    keys of the shard batch
+     * @param  version new version returned by the shard batch, <tt>null</tt> if no key was updated
+     * @return         map of updated keys to the new version
+     */
+    private Map<K, Long> updatedKeys(final Connection conn, final Shard<K, V> shard, final Iterable<K> keys,
+            final Long version) {
+        final Map<K, Long> updated = new LinkedHashMap<K, Long>();
+        if (version == null) {
+            return updated;
+        }
+        final Map<K, Long> keyVersions = new LinkedHashMap<K, Long>();
+        for (final K key: keys) {
+            keyVersions.put(key, version);
+        }
+        for (final Map.Entry<K, Boolean> each: shard.getReader().batchContainsVersion(conn, keyVersions).entrySet()) {
+            if (Boolean.TRUE.equals(each.getValue())) {
+                updated.put(each.getKey(), version);
+            }
+        }
+        return updated;
+    }
+
+    // ----- contains -----
+
+    @Override
+    public Long contains(final K key) {
+        return onShard(key, new IShardActivity<K, V, K, Long>() {
+            @Override
+            public Long execute(final Connection conn, final Shard<K, V> shard, final K part) {
+                return shard.getReader().contains(conn, part);
+            }
+        });
+    }
+
+    @Override
+    public List<Long> batchContains(final List<K> keys) {
+        return mergeLists(keys, runOnShards(partition(keys), new IShardActivity<K, V, List<K>, List<Long>>() {
+            @Override
+            public List<Long> execute(final Connection conn, final Shard<K, V> shard, final List<K> part) {
+                return shard.getReader().batchContains(conn, part);
+            }
+        }));
+    }
+
+    // ----- containsVersion -----
+
+    @Override
+    public boolean containsVersion(final K key, final long version) {
+        return onShard(key, new IShardActivity<K, V, K, Boolean>() {
+            @Override
+            public Boolean execute(final Connection conn, final Shard<K, V> shard, final K part) {
+                return shard.getReader().containsVersion(conn, part, version);
+            }
+        });
+    }
+
+    @Override
+    public Map<K, Boolean> batchContainsVersion(final Map<K, Long> keyVersions) {
+        return mergeMaps(keyVersions.keySet(), runOnShards(partition(keyVersions),
+                new IShardActivity<K, V, Map<K, Long>, Map<K, Boolean>>() {
+            @Override
+            public Map<K, Boolean> execute(final Connection conn, final Shard<K, V> shard, final Map<K, Long> part) {
+                return shard.getReader().batchContainsVersion(conn, part);
+            }
+        }));
+    }
+
+    // ----- read -----
+
+    @Override
+    public V read(final K key) {
+        return onShard(key, new IShardActivity<K, V, K, V>() {
+            @Override
+            public V execute(final Connection conn, final Shard<K, V> shard, final K part) {
+                return shard.getReader().read(conn, part);
+            }
+        });
+    }
+
+    @Override
+    public Map<K, V> batchRead(final List<K> keys) {
+        return mergeMaps(keys, runOnShards(partition(keys), new IShardActivity<K, V, List<K>, Map<K, V>>() {
+            @Override
+            public Map<K, V> execute(final Connection conn, final Shard<K, V> shard, final List<K> part) {
+                return shard.getReader().batchRead(conn, part);
+            }
+        }));
+    }
+
+    // ----- readForVersion -----
+
+    @Override
+    public V readForVersion(final K key, final long version) {
+        return onShard(key, new IShardActivity<K, V, K, V>() {
+            @Override
+            public V execute(final Connection conn, final Shard<K, V> shard, final K part) {
+                return shard.getReader().readForVersion(conn, part, version);
+            }
+        });
+    }
+
+    @Override
+    public Map<K, V> batchReadForVersion(final Map<K, Long> keyVersions) {
+        return mergeMaps(keyVersions.keySet(), runOnShards(partition(keyVersions),
+                new IShardActivity<K, V, Map<K, Long>, Map<K, V>>() {
+            @Override
+            public Map<K, V> execute(final Connection conn, final Shard<K, V> shard, final Map<K, Long> part) {
+                return shard.getReader().batchReadForVersion(conn, part);
+            }
+        }));
+    }
+
+    // ----- readAll -----
+
+    @Override
+    public ValueVersion<V> readAll(final K key) {
+        return onShard(key, new IShardActivity<K, V, K, ValueVersion<V>>() {
+            @Override
+            public ValueVersion<V> execute(final Connection conn, final Shard<K, V> shard, final K part) {
+                return shard.getReader().readAll(conn, part);
+            }
+        });
+    }
+
+    @Override
+    public Map<K, ValueVersion<V>> batchReadAll(final List<K> keys) {
+        return mergeMaps(keys, runOnShards(partition(keys),
+                new IShardActivity<K, V, List<K>, Map<K, ValueVersion<V>>>() {
+            @Override
+            public Map<K, ValueVersion<V>> execute(final Connection conn, final Shard<K, V> shard,
+                    final List<K> part) {
+                return shard.getReader().batchReadAll(conn, part);
+            }
+        }));
+    }
+
+    // ----- insert -----
+
+    @Override
+    public long insert(final K key, final V value) {
+        return onShard(key, new IShardActivity<K, V, K, Long>() {
+            @Override
+            public Long execute(final Connection conn, final Shard<K, V> shard, final K part) {
+                return shard.getWriter().insert(conn, part, value);
+            }
+        });
+    }
+
+    @Override
+    public Map<K, Long> batchInsert(final Map<K, V> pairs) {
+        return spread(pairs.keySet(), runOnShards(partition(pairs), new IShardActivity<K, V, Map<K, V>, Long>() {
+            @Override
+            public Long execute(final Connection conn, final Shard<K, V> shard, final Map<K, V> part) {
+                return shard.getWriter().batchInsert(conn, part);
+            }
+        }));
+    }
+
+    // ----- save -----
+
+    @Override
+    public long save(final K key, final V value) {
+        return onShard(key, new IShardActivity<K, V, K, Long>() {
+            @Override
+            public Long execute(final Connection conn, final Shard<K, V> shard, final K part) {
+                return shard.getWriter().save(conn, part, value);
+            }
+        });
+    }
+
+    @Override
+    public Map<K, Long> batchSave(final Map<K, V> pairs) {
+        return spread(pairs.keySet(), runOnShards(partition(pairs), new IShardActivity<K, V, Map<K, V>, Long>() {
+            @Override
+            public Long execute(final Connection conn, final Shard<K, V> shard, final Map<K, V> part) {
+                return shard.getWriter().batchSave(conn, part);
+            }
+        }));
+    }
+
+    // ----- swap -----
+
+    @Override
+    public Long swap(final K key, final V value, final long version) {
+        return onShard(key, new IShardActivity<K, V, K, Long>() {
+            @Override
+            public Long execute(final Connection conn, final Shard<K, V> shard, final K part) {
+                return shard.getWriter().swap(conn, part, value, version);
+            }
+        });
+    }
+
+    @Override
+    public Map<K, Long> batchSwap(final List<KeyValueVersion<K, V>> triplets) {
+        final List<K> keys = new ArrayList<K>(triplets.size());
+        for (final KeyValueVersion<K, V> each: triplets) {
+            keys.add(each.getKey());
+        }
+        return mergeOutcomes(keys, runOnShards(partitionTriplets(triplets),
+                new IShardActivity<K, V, List<KeyValueVersion<K, V>>, Map<K, Long>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Map<K, Long> execute(final Connection conn, final Shard<K, V> shard,
+                    final List<KeyValueVersion<K, V>> part) {
+                if (shard.getWriter() instanceof IKeyvalConditionalWrite) {
+                    return ((IKeyvalConditionalWrite<K, V>) shard.getWriter()).batchSwapEach(conn, part);
+                }
+                final List<K> partKeys = new ArrayList<K>(part.size());
+                for (final KeyValueVersion<K, V> each: part) {
+                    partKeys.add(each.getKey());
+                }
+                return updatedKeys(conn, shard, partKeys, shard.getWriter().batchSwap(conn, part));
+            }
+        }));
+    }
+
+    // ----- touch -----
+
+    @Override
+    public Long touch(final K key) {
+        return onShard(key, new IShardActivity<K, V, K, Long>() {
+            @Override
+            public Long execute(final Connection conn, final Shard<K, V> shard, final K part) {
+                return shard.getWriter().touch(conn, part);
+            }
+        });
+    }
+
+    @Override
+    public Map<K, Long> batchTouch(final List<K> keys) {
+        return mergeOutcomes(keys, runOnShards(partition(keys), new IShardActivity<K, V, List<K>, Map<K, Long>>() {
+            @Override
+            public Map<K, Long> execute(final Connection conn, final Shard<K, V> shard, final List<K> part) {
+                return updatedKeys(conn, shard, part, shard.getWriter().batchTouch(conn, part));
+            }
+        }));
+    }
+
+    // ----- delete -----
+
+    @Override
+    public void delete(final K key) {
+        onShard(key, new IShardActivity<K, V, K, Void>() {
+            @Override
+            public Void execute(final Connection conn, final Shard<K, V> shard, final K part) {
+                shard.getWriter().delete(conn, part);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void batchDelete(final List<K> keys) {
+        runOnShards(partition(keys), new IShardActivity<K, V, List<K>, Void>() {
+            @Override
+            public Void execute(final Connection conn, final Shard<K, V> shard, final List<K> part) {
+                shard.getWriter().batchDelete(conn, part);
+                return null;
+            }
+        });
+    }
+
+    // ----- remove -----
+
+    @Override
+    public void remove(final K key, final long version) {
+        onShard(key, new IShardActivity<K, V, K, Void>() {
+            @Override
+            public Void execute(final Connection conn, final Shard<K, V> shard, final K part) {
+                shard.getWriter().remove(conn, part, version);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void batchRemove(final Map<K, Long> keys) {
+        runOnShards(partition(keys), new IShardActivity<K, V, Map<K, Long>, Void>() {
+            @Override
+            public Void execute(final Connection conn, final Shard<K, V> shard, final Map<K, Long> part) {
+                shard.getWriter().batchRemove(conn, part);
+                return null;
+            }
+        });
+    }
+
+}
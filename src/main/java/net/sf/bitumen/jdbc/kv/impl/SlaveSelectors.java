@@ -0,0 +1,490 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+/**
+ * Standard {@link ISlaveSelector} implementations:
+ * <ul>
+ *   <li>{@link #roundRobin()} - slaves in turn, ignoring feedback</li>
+ *   <li>{@link #leastOutstanding()} - slave with the fewest reads in progress</li>
+ *   <li>{@link #ewmaLatency(double)} - slave with the lowest exponentially weighted moving average (EWMA) latency,
+ *   weighted by reads in progress</li>
+ *   <li>{@link #powerOfTwoChoices(double)} - the better (as per EWMA latency weighted by reads in progress) of two
+ *   randomly chosen slaves, which avoids herding on a single slave</li>
+ *   <li>{@link #circuitBreaking(ISlaveSelector, int, long, TimeUnit)} - decorator that stops selecting a slave for a
+ *   while after consecutive failed or stale reads, optionally counting reads slower than a bound as failed
+ *   ({@link #circuitBreaking(ISlaveSelector, int, long, TimeUnit, long, TimeUnit)})</li>
+ * </ul>
+ * Failed reads are sampled into the EWMA latency as taking at least {@link #FAILED_READ_PENALTY_MILLIS}, so that a
+ * slave failing fast does not look faster than the healthy ones. A slave not sampled yet is assumed to have the mean
+ * EWMA latency of the sampled slaves (or {@link #FAILED_READ_PENALTY_MILLIS} if none is sampled), so that reads in
+ * progress on it - such as a first read that hangs - count against it as for any other slave.
+ *
+ */
+public final class SlaveSelectors {
+
+    /** Utility class, hence inaccessible private constructor. */
+    private SlaveSelectors() {
+        // do nothing
+    }
+
+    /** Default EWMA smoothing factor, i.e. the weight of the latest latency sample. */
+    public static final double DEFAULT_EWMA_ALPHA = 0.2;
+
+    /** Minimum latency in milliseconds sampled for a failed read. */
+    public static final long FAILED_READ_PENALTY_MILLIS = 1000;
+
+    /** {@link #FAILED_READ_PENALTY_MILLIS} in nanoseconds. */
+    private static final long FAILED_READ_PENALTY_NANOS = TimeUnit.MILLISECONDS.toNanos(FAILED_READ_PENALTY_MILLIS);
+
+    /**
+     * Select slaves in Round-robin fashion.
+     * @return slave selector
+     */
+    public static ISlaveSelector roundRobin() {
+        return new RoundRobin();
+    }
+
+    /**
+     * Select the slave with the fewest reads in progress.
+     * @return slave selector
+     */
+    public static ISlaveSelector leastOutstanding() {
+        return new LeastOutstanding();
+    }
+
+    /**
+     * Select the slave with the lowest EWMA latency multiplied by (1 + reads in progress). Slaves not yet sampled are
+     * assumed to have the mean EWMA latency of the sampled slaves.
+     * @param  alpha EWMA smoothing factor (0, 1] - weight of the latest latency sample
+     * @return       slave selector
+     */
+    public static ISlaveSelector ewmaLatency(final double alpha) {
+        return new EwmaLatency(alpha);
+    }
+
+    /**
+     * Select the better (lower EWMA latency multiplied by (1 + reads in progress)) of two randomly chosen slaves.
+     * @param  alpha EWMA smoothing factor (0, 1] - weight of the latest latency sample
+     * @return       slave selector
+     */
+    public static ISlaveSelector powerOfTwoChoices(final double alpha) {
+        return new PowerOfTwoChoices(alpha);
+    }
+
+    /**
+     * Decorate a slave selector to skip slaves with at least <tt>threshold</tt> consecutive failed reads or
+     * consecutive stale reads, for the specified duration. When all slaves are skipped the reads go to master.
+     * @param  orig      selector to choose among the remaining slaves
+     * @param  threshold number of consecutive failed (or stale) reads that opens the circuit
+     * @param  openFor   duration for which the slave is skipped
+     * @param  unit      time unit of <tt>openFor</tt>
+     * @return           slave selector
+     */
+    public static ISlaveSelector circuitBreaking(final ISlaveSelector orig, final int threshold, final long openFor,
+            final TimeUnit unit) {
+        return new CircuitBreaking(orig, threshold, unit.toNanos(openFor), Long.MAX_VALUE);
+    }
+
+    /**
+     * Decorate a slave selector to skip slaves with at least <tt>threshold</tt> consecutive failed reads or
+     * consecutive stale reads, for the specified duration - where a read taking longer than <tt>timeout</tt> counts as
+     * failed, so that a slave that hangs rather than fails is skipped too. When all slaves are skipped the reads go to
+     * master.
+     * @param  orig        selector to choose among the remaining slaves
+     * @param  threshold   number of consecutive failed (or stale) reads that opens the circuit
+     * @param  openFor     duration for which the slave is skipped
+     * @param  unit        time unit of <tt>openFor</tt>
+     * @param  timeout     read latency beyond which a read counts as failed
+     * @param  timeoutUnit time unit of <tt>timeout</tt>
+     * @return             slave selector
+     */
+    public static ISlaveSelector circuitBreaking(final ISlaveSelector orig, final int threshold, final long openFor,
+            final TimeUnit unit, final long timeout, final TimeUnit timeoutUnit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Expected timeout to be positive, found: " + timeout);
+        }
+        return new CircuitBreaking(orig, threshold, unit.toNanos(openFor), timeoutUnit.toNanos(timeout));
+    }
+
+    // ---- implementations ----
+
+    /**
+     * Load and latency statistics of a slave.
+     */
+    static final class SlaveStats {
+
+        /** Reads in progress. */
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        /** EWMA latency in nanoseconds, zero if not sampled yet. Guarded by <tt>this</tt> for updates. */
+        private volatile double ewmaNanos = 0;
+
+        /**
+         * Update EWMA latency with a new sample.
+         * @param alpha        smoothing factor
+         * @param elapsedNanos latency sample
+         */
+        synchronized void sample(final double alpha, final long elapsedNanos) {
+            ewmaNanos = ewmaNanos == 0 ? elapsedNanos : alpha * elapsedNanos + (1 - alpha) * ewmaNanos;
+        }
+
+        /**
+         * Return load-weighted latency score, lower is better.
+         * @param  priorNanos latency in nanoseconds to assume if not sampled yet
+         * @return            score
+         */
+        double score(final double priorNanos) {
+            final double ewma = ewmaNanos;
+            return (ewma == 0 ? priorNanos : ewma) * (1 + outstanding.get());
+        }
+    }
+
+    /**
+     * Base class for selectors that keep per-slave {@link SlaveStats}.
+     */
+    abstract static class StatsSelector implements ISlaveSelector {
+
+        /** EWMA smoothing factor. */
+        private final double alpha;
+
+        /** Statistics by slave. */
+        private final ConcurrentMap<DataSource, SlaveStats> stats = new ConcurrentHashMap<DataSource, SlaveStats>();
+
+        /**
+         * Construct instance with specified EWMA smoothing factor.
+         * @param  ewmaAlpha EWMA smoothing factor
+         */
+        StatsSelector(final double ewmaAlpha) {
+            if (ewmaAlpha <= 0 || ewmaAlpha > 1) {
+                throw new IllegalArgumentException("Expected EWMA alpha in range (0, 1], found: " + ewmaAlpha);
+            }
+            this.alpha = ewmaAlpha;
+        }
+
+        /**
+         * Return statistics of specified slave, creating them if required.
+         * @param  slave slave {@link DataSource}
+         * @return       slave statistics
+         */
+        final SlaveStats statsOf(final DataSource slave) {
+            final SlaveStats existing = stats.get(slave);
+            if (existing != null) {
+                return existing;
+            }
+            final SlaveStats created = new SlaveStats();
+            final SlaveStats previous = stats.putIfAbsent(slave, created);
+            return previous == null ? created : previous;
+        }
+
+        /**
+         * Return the latency to assume for slaves not sampled yet, i.e. the mean EWMA latency of the sampled ones
+         * among specified slaves, or the failed read penalty if none of them is sampled.
+         * @param  slaves slave {@link DataSource} instances
+         * @return        prior latency in nanoseconds
+         */
+        final double priorNanos(final List<DataSource> slaves) {
+            double sum = 0;
+            int sampled = 0;
+            for (DataSource each: slaves) {
+                final double ewma = statsOf(each).ewmaNanos;
+                if (ewma != 0) {
+                    sum += ewma;
+                    sampled++;
+                }
+            }
+            return sampled == 0 ? FAILED_READ_PENALTY_NANOS : sum / sampled;
+        }
+
+        @Override
+        public final void readStarted(final DataSource slave) {
+            statsOf(slave).outstanding.incrementAndGet();
+        }
+
+        @Override
+        public final void readFinished(final DataSource slave, final long elapsedNanos, final boolean failed) {
+            final SlaveStats s = statsOf(slave);
+            s.outstanding.decrementAndGet();
+            s.sample(alpha, failed ? Math.max(elapsedNanos, FAILED_READ_PENALTY_NANOS) : elapsedNanos);
+        }
+
+        @Override
+        public void readReconciled(final DataSource slave, final boolean stale) {
+            // do nothing
+        }
+    }
+
+    /**
+     * Round-robin selector.
+     */
+    static final class RoundRobin implements ISlaveSelector {
+
+        /** Index of the last selected slave. */
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public DataSource select(final List<DataSource> slaves) {
+            final int i = index.incrementAndGet() & Integer.MAX_VALUE;
+            return slaves.get(i % slaves.size());
+        }
+
+        @Override
+        public void readStarted(final DataSource slave) {
+            // do nothing
+        }
+
+        @Override
+        public void readFinished(final DataSource slave, final long elapsedNanos, final boolean failed) {
+            // do nothing
+        }
+
+        @Override
+        public void readReconciled(final DataSource slave, final boolean stale) {
+            // do nothing
+        }
+    }
+
+    /**
+     * Least-outstanding-reads selector. Ties are broken in Round-robin fashion.
+     */
+    static final class LeastOutstanding extends StatsSelector {
+
+        /** Rotating start index to break ties. */
+        private final AtomicInteger index = new AtomicInteger();
+
+        /** Construct instance. */
+        LeastOutstanding() {
+            super(DEFAULT_EWMA_ALPHA);
+        }
+
+        @Override
+        public DataSource select(final List<DataSource> slaves) {
+            final int size = slaves.size();
+            final int start = (index.incrementAndGet() & Integer.MAX_VALUE) % size;
+            DataSource best = null;
+            int bestCount = Integer.MAX_VALUE;
+            for (int j = 0; j < size; j++) {
+                final DataSource each = slaves.get((start + j) % size);
+                final int count = statsOf(each).outstanding.get();
+                if (count < bestCount) {
+                    best = each;
+                    bestCount = count;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Lowest load-weighted EWMA latency selector.
+     */
+    static final class EwmaLatency extends StatsSelector {
+
+        /**
+         * Construct instance.
+         * @param  alpha EWMA smoothing factor
+         */
+        EwmaLatency(final double alpha) {
+            super(alpha);
+        }
+
+        @Override
+        public DataSource select(final List<DataSource> slaves) {
+            final double prior = priorNanos(slaves);
+            DataSource best = null;
+            double bestScore = Double.MAX_VALUE;
+            for (DataSource each: slaves) {
+                final double score = statsOf(each).score(prior);
+                if (score < bestScore) {
+                    best = each;
+                    bestScore = score;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Power-of-two-choices selector.
+     */
+    static final class PowerOfTwoChoices extends StatsSelector {
+
+        /**
+         * Construct instance.
+         * @param  alpha EWMA smoothing factor
+         */
+        PowerOfTwoChoices(final double alpha) {
+            super(alpha);
+        }
+
+        @Override
+        public DataSource select(final List<DataSource> slaves) {
+            final int size = slaves.size();
+            if (size == 1) {
+                return slaves.get(0);
+            }
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final int i = random.nextInt(size);
+            final int j = (i + 1 + random.nextInt(size - 1)) % size;
+            final DataSource one = slaves.get(i), two = slaves.get(j);
+            final double prior = priorNanos(slaves);
+            return statsOf(one).score(prior) <= statsOf(two).score(prior) ? one : two;
+        }
+    }
+
+    /**
+     * Circuit-breaking decorator.
+     */
+    static final class CircuitBreaking implements ISlaveSelector {
+
+        /**
+         * Circuit state of a slave.
+         */
+        private static final class Circuit {
+
+            /** Consecutive failed reads. */
+            private final AtomicInteger failures = new AtomicInteger();
+
+            /** Consecutive stale reads. */
+            private final AtomicInteger staleReads = new AtomicInteger();
+
+            /** {@link System#nanoTime()} until which the circuit is open, meaningful only when <tt>open</tt>. */
+            private volatile long openUntil = 0;
+
+            /** Whether the circuit is open. */
+            private volatile boolean open = false;
+        }
+
+        /** Selector to choose among slaves with closed circuit. */
+        private final ISlaveSelector selector;
+
+        /** Consecutive failed or stale reads that open the circuit. */
+        private final int threshold;
+
+        /** Duration of open circuit in nanoseconds. */
+        private final long openNanos;
+
+        /** Read latency in nanoseconds beyond which a read counts as failed. */
+        private final long timeoutNanos;
+
+        /** Circuit state by slave. */
+        private final ConcurrentMap<DataSource, Circuit> circuits = new ConcurrentHashMap<DataSource, Circuit>();
+
+        /**
+         * Construct instance.
+         * @param  orig       selector to choose among slaves with closed circuit
+         * @param  maxStreak  consecutive failed or stale reads that open the circuit
+         * @param  openFor    duration of open circuit in nanoseconds
+         * @param  timeout    read latency in nanoseconds beyond which a read counts as failed
+         */
+        CircuitBreaking(final ISlaveSelector orig, final int maxStreak, final long openFor, final long timeout) {
+            if (maxStreak < 1) {
+                throw new IllegalArgumentException("Expected threshold to be positive, found: " + maxStreak);
+            }
+            this.selector = orig;
+            this.threshold = maxStreak;
+            this.openNanos = openFor;
+            this.timeoutNanos = timeout;
+        }
+
+        /**
+         * Return circuit of specified slave, creating it if required.
+         * @param  slave slave {@link DataSource}
+         * @return       circuit state
+         */
+        private Circuit circuitOf(final DataSource slave) {
+            final Circuit existing = circuits.get(slave);
+            if (existing != null) {
+                return existing;
+            }
+            final Circuit created = new Circuit();
+            final Circuit previous = circuits.putIfAbsent(slave, created);
+            return previous == null ? created : previous;
+        }
+
+        /**
+         * Return <tt>true</tt> if specified slave is available, closing its circuit if the open duration is over.
+         * @param  slave slave {@link DataSource}
+         * @param  now   timestamp as per {@link System#nanoTime()}
+         * @return       whether the slave may be selected
+         */
+        private boolean isAvailable(final DataSource slave, final long now) {
+            final Circuit circuit = circuitOf(slave);
+            if (!circuit.open) {
+                return true;
+            }
+            if (now - circuit.openUntil >= 0) {
+                circuit.failures.set(0);
+                circuit.staleReads.set(0);
+                circuit.open = false;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Open the circuit of specified slave.
+         * @param circuit circuit state
+         */
+        private void trip(final Circuit circuit) {
+            circuit.openUntil = System.nanoTime() + openNanos;
+            circuit.open = true;
+        }
+
+        @Override
+        public DataSource select(final List<DataSource> slaves) {
+            final long now = System.nanoTime();
+            List<DataSource> available = null;
+            for (int i = 0; i < slaves.size(); i++) {
+                final DataSource each = slaves.get(i);
+                if (!isAvailable(each, now)) {
+                    if (available == null) {
+                        available = new ArrayList<DataSource>(slaves.subList(0, i));
+                    }
+                } else if (available != null) {
+                    available.add(each);
+                }
+            }
+            if (available == null) {
+                return selector.select(slaves);
+            }
+            return available.isEmpty() ? null : selector.select(available);
+        }
+
+        @Override
+        public void readStarted(final DataSource slave) {
+            selector.readStarted(slave);
+        }
+
+        @Override
+        public void readFinished(final DataSource slave, final long elapsedNanos, final boolean failed) {
+            selector.readFinished(slave, elapsedNanos, failed);
+            final Circuit circuit = circuitOf(slave);
+            if (!failed && elapsedNanos <= timeoutNanos) {
+                circuit.failures.set(0);
+            } else if (circuit.failures.incrementAndGet() >= threshold) {
+                trip(circuit);
+            }
+        }
+
+        @Override
+        public void readReconciled(final DataSource slave, final boolean stale) {
+            selector.readReconciled(slave, stale);
+            final Circuit circuit = circuitOf(slave);
+            if (!stale) {
+                circuit.staleReads.set(0);
+            } else if (circuit.staleReads.incrementAndGet() >= threshold) {
+                trip(circuit);
+            }
+        }
+    }
+
+}
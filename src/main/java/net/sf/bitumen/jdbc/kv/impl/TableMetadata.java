@@ -8,7 +8,9 @@ import net.sf.bitumen.util.NamedParams;
 import net.sf.bitumen.util.Util;
 
 /**
- * Table meta data for a key-value store.
+ * Table meta data for a key-value store. The expiry timestamp column is optional - when specified, pairs whose expiry
+ * timestamp has passed are treated as absent by readers (see {@link DefaultKeyvalRead}) and can be deleted in the
+ * background (see {@link ExpiryReaper}).
  *
  */
 public class TableMetadata implements Serializable {
@@ -20,6 +22,9 @@ public class TableMetadata implements Serializable {
     private final String tableName, keyColname, valueColname, versionColname,
     createTimestampColname, updateTimestampColname;
 
+    /** Expiry timestamp column name, <tt>null</tt> if pairs do not expire. */
+    private final String expiresTimestampColname;
+
     /**
      * Getter for tableName.
      * @return tableName
@@ -68,6 +73,22 @@ public class TableMetadata implements Serializable {
         return updateTimestampColname;
     }
 
+    /**
+     * Getter for expiresTimestampColname.
+     * @return expiresTimestampColname, <tt>null</tt> if pairs do not expire
+     */
+    public final String getExpiresTimestampColname() {
+        return expiresTimestampColname;
+    }
+
+    /**
+     * Return whether the table has an expiry timestamp column.
+     * @return <tt>true</tt> if pairs may expire, <tt>false</tt> otherwise
+     */
+    public final boolean hasExpiry() {
+        return expiresTimestampColname != null;
+    }
+
     /**
      * Construct instance from arguments passed as a map.
      * @param names map of argument names and values
@@ -81,6 +102,7 @@ public class TableMetadata implements Serializable {
                 "createTimestampColname must not be null");
         this.updateTimestampColname = Util.notNull(names.get("updateTimestampColname"),
                 "updateTimestampColname must not be null");
+        this.expiresTimestampColname = names.get("expiresTimestampColname");
     }
 
     /**
@@ -121,6 +143,27 @@ public class TableMetadata implements Serializable {
         return new TableMetadata(names);
     }
 
+    /**
+     * Factory method to create instance from all required arguments and an expiry timestamp column.
+     * @param  tableName               table name
+     * @param  keyColname              column name for <i>key</i>
+     * @param  valueColname            column name for <i>value</i>
+     * @param  versionColname          column name for <i>version</i>
+     * @param  createTimestampColname  column name for <i>created timestamp</i>
+     * @param  updateTimestampColname  column name for <i>last updated timestamp</i>
+     * @param  expiresTimestampColname column name for <i>expiry timestamp</i> (nullable, <tt>NULL</tt> never expires)
+     * @return                         table meta data instance
+     */
+    public static TableMetadata create(final String tableName, final String keyColname, final String valueColname,
+            final String versionColname, final String createTimestampColname, final String updateTimestampColname,
+            final String expiresTimestampColname) {
+        final Map<String, String> names = create(tableName, keyColname, valueColname, versionColname,
+                createTimestampColname, updateTimestampColname).toMap();
+        names.put("expiresTimestampColname", Util.notNull(expiresTimestampColname,
+                "expiresTimestampColname must not be null"));
+        return new TableMetadata(names);
+    }
+
     /**
      * Like string variable replacement feature in <a href="http://groovy-lang.org/">Groovy language</a>, replace table
      * meta data variables with corresponding values. If a remaining variable exists, that may cause
@@ -157,6 +200,9 @@ public class TableMetadata implements Serializable {
         result.put("versionColname", versionColname);
         result.put("updateTimestampColname", updateTimestampColname);
         result.put("createTimestampColname", createTimestampColname);
+        if (expiresTimestampColname != null) {
+            result.put("expiresTimestampColname", expiresTimestampColname);
+        }
         return result;
     }
 
@@ -164,14 +210,15 @@ public class TableMetadata implements Serializable {
     public final String toString() {
         return String.format(
                 "tableName=%s, keyColname=%s, valueColname=%s, versionColname=%s,"
-                + " createTimestampColname=%s, updateTimestampColname=%s",
-                tableName, keyColname, valueColname, versionColname, createTimestampColname, updateTimestampColname);
+                + " createTimestampColname=%s, updateTimestampColname=%s, expiresTimestampColname=%s",
+                tableName, keyColname, valueColname, versionColname, createTimestampColname, updateTimestampColname,
+                expiresTimestampColname);
     }
 
     @Override
     public final int hashCode() {
         final String compositeString = tableName + '|' + keyColname + '|' + valueColname + '|' + versionColname + '|'
-                + createTimestampColname + '|' + updateTimestampColname;
+                + createTimestampColname + '|' + updateTimestampColname + '|' + expiresTimestampColname;
         return compositeString.toLowerCase().hashCode();
     }
 
@@ -186,7 +233,9 @@ public class TableMetadata implements Serializable {
                 && valueColname.equalsIgnoreCase(that.valueColname)
                 && versionColname.equalsIgnoreCase(that.versionColname)
                 && createTimestampColname.equalsIgnoreCase(that.createTimestampColname)
-                && updateTimestampColname.equalsIgnoreCase(that.updateTimestampColname);
+                && updateTimestampColname.equalsIgnoreCase(that.updateTimestampColname)
+                && (expiresTimestampColname == null ? that.expiresTimestampColname == null
+                        : expiresTimestampColname.equalsIgnoreCase(that.expiresTimestampColname));
     }
 
 }
@@ -0,0 +1,356 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import net.sf.bitumen.jdbc.kv.IValueCodec;
+
+/**
+ * Standard {@link IValueCodec} implementations:
+ * <ul>
+ *   <li>{@link #BYTES} - byte arrays as-is</li>
+ *   <li>{@link #STRING} - strings as UTF-8 bytes</li>
+ *   <li>{@link #serializing(Class)} - {@link Serializable} values using Java serialization</li>
+ *   <li>{@link #deflate(IValueCodec, int, int)} - decorator that compresses the encoded bytes using Deflate when they
+ *   are at least as long as a threshold, so that small values do not pay the compression overhead</li>
+ * </ul>
+ * Encoding reuses per-thread output buffers, and compression reuses per-thread {@link Deflater}/{@link Inflater}
+ * instances instead of allocating their native buffers for every value.
+ *
+ */
+public final class ValueCodecs {
+
+    /** Utility class, hence inaccessible private constructor. */
+    private ValueCodecs() {
+        // do nothing
+    }
+
+    /** Default minimum number of encoded bytes to compress. */
+    public static final int DEFAULT_DEFLATE_THRESHOLD = 512;
+
+    /** Per-thread buffers grown beyond this size are not kept for reuse. */
+    private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+    /** Character set of {@link #STRING}. */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Codec for byte array values, stored as-is. */
+    public static final IValueCodec<byte[]> BYTES = new IValueCodec<byte[]>() {
+        @Override
+        public byte[] encode(final byte[] value) {
+            return value;
+        }
+        @Override
+        public byte[] decode(final byte[] bytes) {
+            return bytes;
+        }
+    };
+
+    /** Codec for {@link String} values, stored as UTF-8 bytes. */
+    public static final IValueCodec<String> STRING = new IValueCodec<String>() {
+        @Override
+        public byte[] encode(final String value) {
+            return value.getBytes(UTF_8);
+        }
+        @Override
+        public String decode(final byte[] bytes) {
+            return new String(bytes, UTF_8);
+        }
+    };
+
+    /**
+     * Codec for {@link Serializable} values using Java serialization.
+     * @param  <V>   value type
+     * @param  clazz value class
+     * @return       value codec
+     */
+    public static <V extends Serializable> IValueCodec<V> serializing(final Class<V> clazz) {
+        return new Serializing<V>(clazz);
+    }
+
+    /**
+     * Decorate specified codec to compress the encoded bytes using Deflate with {@link #DEFAULT_DEFLATE_THRESHOLD} and
+     * {@link Deflater#DEFAULT_COMPRESSION}.
+     * @param  <V>   value type
+     * @param  codec codec to encode values with before compression
+     * @return       value codec
+     */
+    public static <V> IValueCodec<V> deflate(final IValueCodec<V> codec) {
+        return deflate(codec, DEFAULT_DEFLATE_THRESHOLD, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Decorate specified codec to compress the encoded bytes using Deflate when they are at least as long as specified
+     * threshold. Compressed bytes are kept only if they are shorter than the encoded bytes. Either way one header byte
+     * is prepended to tell whether the rest is compressed.
+     * @param  <V>       value type
+     * @param  codec     codec to encode values with before compression
+     * @param  threshold minimum number of encoded bytes to compress
+     * @param  level     compression level (0-9), or {@link Deflater#DEFAULT_COMPRESSION}
+     * @return           value codec
+     */
+    public static <V> IValueCodec<V> deflate(final IValueCodec<V> codec, final int threshold, final int level) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Expected threshold to be non-negative, found: " + threshold);
+        }
+        if ((level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+                && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Expected compression level 0-9 or -1, found: " + level);
+        }
+        return new Deflate<V>(codec, threshold, level);
+    }
+
+    // ---- pooled buffers ----
+
+    /**
+     * Byte array output stream that tells whether it is small enough to be reused.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        /** Construct instance with default initial size. */
+        Buffer() {
+            super(256);
+        }
+
+        /**
+         * Return whether the buffer is small enough to be kept for reuse.
+         * @return <tt>true</tt> if reusable, <tt>false</tt> otherwise
+         */
+        boolean reusable() {
+            return buf.length <= MAX_POOLED_BUFFER_SIZE;
+        }
+    }
+
+    /** Per-thread output buffer. */
+    private static final ThreadLocal<Buffer> BUFFER = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            return new Buffer();
+        }
+    };
+
+    /**
+     * Return the reset per-thread output buffer.
+     * @return output buffer
+     */
+    private static Buffer takeBuffer() {
+        final Buffer buffer = BUFFER.get();
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * Drop specified per-thread output buffer if it has grown too large to keep.
+     * @param buffer output buffer
+     */
+    private static void releaseBuffer(final Buffer buffer) {
+        if (!buffer.reusable()) {
+            BUFFER.remove();
+        }
+    }
+
+    // ---- serializing ----
+
+    /**
+     * Java serialization codec.
+     *
+     * @param <V> value type
+     */
+    private static final class Serializing<V extends Serializable> implements IValueCodec<V> {
+
+        /** Value class. */
+        private final Class<V> valueClass;
+
+        /**
+         * Construct instance.
+         * @param clazz value class
+         */
+        Serializing(final Class<V> clazz) {
+            this.valueClass = clazz;
+        }
+
+        @Override
+        public byte[] encode(final V value) {
+            final Buffer buffer = takeBuffer();
+            try {
+                final ObjectOutputStream out = new ObjectOutputStream(buffer);
+                out.writeObject(value);
+                out.close();
+                return buffer.toByteArray();
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to serialize value of " + value.getClass(), e);
+            } finally {
+                releaseBuffer(buffer);
+            }
+        }
+
+        @Override
+        public V decode(final byte[] bytes) {
+            try {
+                final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                try {
+                    return valueClass.cast(in.readObject());
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Unable to deserialize value of " + valueClass, e);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("Unable to deserialize value of " + valueClass, e);
+            }
+        }
+    }
+
+    // ---- deflate ----
+
+    /** Header byte of uncompressed bytes. */
+    private static final byte RAW = 0;
+
+    /** Header byte of compressed bytes, followed by the 4-byte (big-endian) uncompressed length. */
+    private static final byte DEFLATED = 1;
+
+    /** Length of the header of compressed bytes. */
+    private static final int DEFLATED_HEADER_LENGTH = 5;
+
+    /** Maximum ratio of uncompressed to compressed length that Deflate can achieve. */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    /** Per-thread inflater. */
+    private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    /**
+     * Deflate compression codec decorator.
+     *
+     * @param <V> value type
+     */
+    private static final class Deflate<V> implements IValueCodec<V> {
+
+        /** Codec to encode values with before compression. */
+        private final IValueCodec<V> codec;
+
+        /** Minimum number of encoded bytes to compress. */
+        private final int threshold;
+
+        /** Per-thread deflater at the compression level. */
+        private final ThreadLocal<Deflater> deflater;
+
+        /**
+         * Construct instance.
+         * @param valueCodec codec to encode values with before compression
+         * @param minBytes   minimum number of encoded bytes to compress
+         * @param level      compression level
+         */
+        Deflate(final IValueCodec<V> valueCodec, final int minBytes, final int level) {
+            this.codec = valueCodec;
+            this.threshold = minBytes;
+            this.deflater = new ThreadLocal<Deflater>() {
+                @Override
+                protected Deflater initialValue() {
+                    return new Deflater(level);
+                }
+            };
+        }
+
+        @Override
+        public byte[] encode(final V value) {
+            final byte[] raw = codec.encode(value);
+            if (raw.length >= threshold && raw.length > DEFLATED_HEADER_LENGTH) {
+                final byte[] compressed = compress(raw);
+                if (compressed != null) {
+                    return compressed;
+                }
+            }
+            final byte[] result = new byte[raw.length + 1];
+            result[0] = RAW;
+            System.arraycopy(raw, 0, result, 1, raw.length);
+            return result;
+        }
+
+        /**
+         * Compress specified bytes, giving up as soon as the output is not shorter.
+         * @param  raw uncompressed bytes
+         * @return     header and compressed bytes, <tt>null</tt> if not shorter than the uncompressed bytes
+         */
+        private byte[] compress(final byte[] raw) {
+            final Deflater def = deflater.get();
+            final Buffer buffer = takeBuffer();
+            try {
+                def.reset();
+                def.setInput(raw);
+                def.finish();
+                buffer.write(DEFLATED);
+                buffer.write(raw.length >>> 24);
+                buffer.write(raw.length >>> 16);
+                buffer.write(raw.length >>> 8);
+                buffer.write(raw.length);
+                final byte[] chunk = new byte[Math.min(raw.length, 4096)];
+                while (!def.finished()) {
+                    final int count = def.deflate(chunk);
+                    buffer.write(chunk, 0, count);
+                    if (buffer.size() > raw.length) {
+                        return null;
+                    }
+                }
+                return buffer.toByteArray();
+            } finally {
+                releaseBuffer(buffer);
+            }
+        }
+
+        @Override
+        public V decode(final byte[] bytes) {
+            if (bytes.length == 0) {
+                throw new IllegalArgumentException("Expected header byte, found empty value");
+            }
+            if (bytes[0] == RAW) {
+                return codec.decode(Arrays.copyOfRange(bytes, 1, bytes.length));
+            }
+            if (bytes[0] != DEFLATED || bytes.length < DEFLATED_HEADER_LENGTH) {
+                throw new IllegalArgumentException("Invalid header of compressed value: " + bytes[0]);
+            }
+            final int length = ((bytes[1] & 0xFF) << 24) | ((bytes[2] & 0xFF) << 16) | ((bytes[3] & 0xFF) << 8)
+                    | (bytes[4] & 0xFF);
+            final long maxLength = (long) (bytes.length - DEFLATED_HEADER_LENGTH) * MAX_DEFLATE_RATIO;
+            if (length < 0 || length > maxLength) {
+                throw new IllegalArgumentException(String.format(
+                        "Expected uncompressed length in range [0, %d] for %d compressed bytes, found: %d", maxLength,
+                        bytes.length - DEFLATED_HEADER_LENGTH, length));
+            }
+            final byte[] raw = new byte[length];
+            final Inflater inf = INFLATER.get();
+            inf.reset();
+            inf.setInput(bytes, DEFLATED_HEADER_LENGTH, bytes.length - DEFLATED_HEADER_LENGTH);
+            try {
+                int count = 0;
+                while (count < length) {
+                    final int n = inf.inflate(raw, count, length - count);
+                    if (n == 0 && (inf.finished() || inf.needsInput() || inf.needsDictionary())) {
+                        break;
+                    }
+                    count += n;
+                }
+                if (count != length) {
+                    throw new IllegalArgumentException("Expected " + length + " uncompressed bytes, found: " + count);
+                }
+            } catch (DataFormatException e) {
+                throw new IllegalArgumentException("Invalid compressed value", e);
+            }
+            return codec.decode(raw);
+        }
+    }
+
+}
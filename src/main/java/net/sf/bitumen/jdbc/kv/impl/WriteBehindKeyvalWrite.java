@@ -0,0 +1,637 @@
+package net.sf.bitumen.jdbc.kv.impl;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sql.DataSource;
+
+import net.sf.bitumen.jdbc.impl.IConnectionActivity;
+import net.sf.bitumen.jdbc.impl.JdbcUtil;
+import net.sf.bitumen.jdbc.kv.IKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.KeyValueVersion;
+
+/**
+ * Write-behind decorator for {@link IKeyvalWrite} that coalesces <tt>save</tt> operations. Saved key-value pairs are
+ * queued, repeated saves of a queued key replace its value, and a background thread flushes the queue through
+ * {@link IKeyvalWrite#batchSave(Connection, Map)} (using its own connection from a {@link DataSource}) once the
+ * coalescing window has elapsed since the first queued pair, or the queue reaches the maximum batch size.
+ * <p>
+ * {@link #saveAsync(Object, Object)} returns a {@link Future} that completes with the version written by the flush
+ * (or fails with the flush exception), so callers can wait for durability. Saving a new key blocks while the queue is
+ * full (backpressure) - at most one batch is being flushed while another one fills up. {@link #close()} flushes the
+ * queue before stopping the background thread.
+ * <p>
+ * {@link #save(Connection, Object, Object)} and {@link #batchSave(Connection, Map)} queue the pairs and wait for the
+ * flush, ignoring the supplied connection. All other operations first save the queued pairs on the supplied
+ * connection (so that they observe the queued saves, and so that they do not wait for another connection that may
+ * block on row locks held by the caller), and are then delegated to the wrapped writer on the same connection. The
+ * futures of pairs saved that way complete once written on the caller's connection, i.e. they become durable only
+ * when the caller's transaction commits, even though the futures report them as written as soon as the caller's
+ * (still uncommitted) write returns. Batches are written one at a time in queue order, so a flush already in progress
+ * on the background connection is waited for; callers must not hold row locks on keys queued before that flush began,
+ * or the flush and the caller wait for each other.
+ * <p>
+ * If the background thread dies (e.g. of an {@link Error}), the queue is closed: the futures of the queued pairs fail
+ * with that error and further saves fail with {@link IllegalStateException} instead of blocking.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class WriteBehindKeyvalWrite<K, V> implements IKeyvalWrite<K, V>, AutoCloseable {
+
+    /** Default coalescing window in milliseconds. */
+    public static final long DEFAULT_WINDOW_MILLIS = 10;
+
+    /** Default maximum number of distinct keys per flush. */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+    /** Sequence to name the background threads. */
+    private static final AtomicInteger THREAD_SEQ = new AtomicInteger();
+
+    /**
+     * Result of a flush, shared by all pairs queued for the same flush. Completed explicitly, at most once; cannot be
+     * cancelled.
+     */
+    private final class FlushResult implements Future<Long> {
+
+        /** Key-value pairs written by the flush, set when taken for writing. Guarded by <tt>flushLock</tt>. */
+        private Map<K, V> batch;
+
+        /** Released on completion. */
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        /** Version written by the flush. Visible to waiters once <tt>done</tt> is released. */
+        private long version;
+
+        /** Exception thrown by the flush, <tt>null</tt> if none. Visible to waiters once <tt>done</tt> is released. */
+        private Throwable failure;
+
+        /**
+         * Complete with specified version, unless already completed.
+         * @param flushVersion version written by the flush
+         */
+        synchronized void complete(final long flushVersion) {
+            if (done.getCount() > 0) {
+                this.version = flushVersion;
+                done.countDown();
+            }
+        }
+
+        /**
+         * Complete with specified flush exception, unless already completed.
+         * @param e exception thrown by the flush
+         */
+        synchronized void fail(final Throwable e) {
+            if (done.getCount() > 0) {
+                this.failure = e;
+                done.countDown();
+            }
+        }
+
+        /**
+         * Return the version, or throw the flush exception. Must be called after completion.
+         * @return version written by the flush
+         * @throws ExecutionException wrapping the flush exception
+         */
+        private Long outcome() throws ExecutionException {
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+            return version;
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        @Override
+        public Long get() throws InterruptedException, ExecutionException {
+            done.await();
+            return outcome();
+        }
+
+        @Override
+        public Long get(final long timeout, final TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (!done.await(timeout, unit)) {
+                throw new TimeoutException("Write-behind flush did not complete in time");
+            }
+            return outcome();
+        }
+    }
+
+    /** Key-value writer to actually write. */
+    private final IKeyvalWrite<K, V> writer;
+
+    /** Data source for background flushes. */
+    private final DataSource dataSource;
+
+    /** Coalescing window in nanoseconds. */
+    private final long windowNanos;
+
+    /** Maximum number of distinct keys per flush. */
+    private final int maxBatchSize;
+
+    /** Held while writing a batch, so that batches are written one at a time in the order they were taken. */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    /** Lock guarding the queue state below. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signalled when the queue gets work, fills up or is closed. */
+    private final Condition hasWork = lock.newCondition();
+
+    /** Signalled when the queue is taken for flushing or is closed. */
+    private final Condition notFull = lock.newCondition();
+
+    /** Queued pairs in the order of first save. Guarded by <tt>lock</tt>. */
+    private Map<K, V> pending = new LinkedHashMap<K, V>();
+
+    /** Result of the flush of the queued pairs. Guarded by <tt>lock</tt>. */
+    private FlushResult pendingResult = new FlushResult();
+
+    /** {@link System#nanoTime()} when the first pair was queued. Guarded by <tt>lock</tt>. */
+    private long firstQueuedAt = 0;
+
+    /**
+     * Result of the flush in progress, on the background connection or on a caller's connection, <tt>null</tt> if
+     * none. Guarded by <tt>lock</tt>.
+     */
+    private FlushResult inFlightResult = null;
+
+    /** Whether an immediate flush was requested. Guarded by <tt>lock</tt>. */
+    private boolean flushRequested = false;
+
+    /** Whether closed. Guarded by <tt>lock</tt>. */
+    private boolean closed = false;
+
+    /** Error or exception that killed the background thread, <tt>null</tt> if none. Guarded by <tt>lock</tt>. */
+    private Throwable flusherFailure = null;
+
+    /** Background flush thread. */
+    private final Thread flusher;
+
+    /** Statistics counters. */
+    private final AtomicLong coalesced = new AtomicLong(), flushes = new AtomicLong();
+
+    /**
+     * Construct instance with {@link #DEFAULT_WINDOW_MILLIS} and {@link #DEFAULT_MAX_BATCH_SIZE}.
+     * @param orig   key-value writer to actually write
+     * @param source data source for background flushes
+     */
+    public WriteBehindKeyvalWrite(final IKeyvalWrite<K, V> orig, final DataSource source) {
+        this(orig, source, DEFAULT_WINDOW_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Construct instance using all required arguments, and start the background flush thread.
+     * @param orig         key-value writer to actually write
+     * @param source       data source for background flushes
+     * @param window       coalescing window, i.e. maximum delay of a queued pair before flush begins
+     * @param unit         time unit of <tt>window</tt>
+     * @param maxBatchKeys maximum number of distinct keys per flush, beyond which saving new keys blocks
+     */
+    public WriteBehindKeyvalWrite(final IKeyvalWrite<K, V> orig, final DataSource source, final long window,
+            final TimeUnit unit, final int maxBatchKeys) {
+        if (window < 0) {
+            throw new IllegalArgumentException("Expected coalescing window to be non-negative, found: " + window);
+        }
+        if (maxBatchKeys < 1) {
+            throw new IllegalArgumentException("Expected max batch size to be positive, found: " + maxBatchKeys);
+        }
+        this.writer = orig;
+        this.dataSource = source;
+        this.windowNanos = unit.toNanos(window);
+        this.maxBatchSize = maxBatchKeys;
+        this.flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flushLoop();
+                } catch (RuntimeException e) {
+                    flusherDied(e);
+                    throw e;
+                } catch (Error e) {
+                    flusherDied(e);
+                    throw e;
+                }
+            }
+        }, "bitumen-write-behind-" + THREAD_SEQ.incrementAndGet());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    // ---- queue ----
+
+    /**
+     * Queue specified key-value pair for saving, replacing the value if the key is already queued. Blocks while the
+     * queue is full.
+     * @param  key   key
+     * @param  value value
+     * @return       future version written by the flush
+     */
+    public final Future<Long> saveAsync(final K key, final V value) {
+        lock.lock();
+        try {
+            while (!closed && pending.size() >= maxBatchSize && !pending.containsKey(key)) {
+                notFull.await();
+            }
+            if (closed) {
+                throw new IllegalStateException("Write-behind queue is closed", flusherFailure);
+            }
+            if (pending.isEmpty()) {
+                firstQueuedAt = System.nanoTime();
+                hasWork.signal();
+            }
+            if (pending.put(key, value) != null) {
+                coalesced.incrementAndGet();
+            }
+            if (pending.size() >= maxBatchSize) {
+                hasWork.signal();
+            }
+            return pendingResult;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for write-behind queue capacity", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flush queued pairs right away and wait for completion of the flush, including the one in progress if any.
+     */
+    public final void flush() {
+        final Future<Long> result;
+        lock.lock();
+        try {
+            if (pending.isEmpty()) {
+                result = inFlightResult;
+            } else {
+                flushRequested = true;
+                hasWork.signal();
+                result = pendingResult;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (result != null) {
+            await(result);
+        }
+    }
+
+    /**
+     * Save the queued pairs on specified connection right away, after waiting for the flush in progress if any. The
+     * result completes once the pairs are written on specified connection, i.e. before the caller's transaction
+     * commits.
+     * @param conn connection to save the queued pairs on
+     */
+    private void flushOn(final Connection conn) {
+        try {
+            flushLock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for write-behind flush", e);
+        }
+        try {
+            final FlushResult result = takePending();
+            if (result == null) {
+                return;
+            }
+            try {
+                result.complete(writer.batchSave(conn, result.batch));
+            } catch (RuntimeException e) {
+                result.fail(e);
+                throw e;
+            } catch (Error e) {
+                result.fail(e);
+                throw e;
+            } finally {
+                clearInFlight(result);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Take the queued pairs for writing and publish their result as the flush in progress. Must be called while
+     * holding <tt>flushLock</tt>.
+     * @return result of the taken pairs, which carries them as its batch, <tt>null</tt> if none were queued
+     */
+    private FlushResult takePending() {
+        lock.lock();
+        try {
+            if (pending.isEmpty()) {
+                return null;
+            }
+            final FlushResult result = pendingResult;
+            result.batch = pending;
+            pending = new LinkedHashMap<K, V>();
+            pendingResult = new FlushResult();
+            inFlightResult = result;
+            flushRequested = false;
+            notFull.signalAll();
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Clear the flush in progress if it is specified one.
+     * @param result result of the finished flush
+     */
+    private void clearInFlight(final FlushResult result) {
+        lock.lock();
+        try {
+            if (inFlightResult == result) {
+                inFlightResult = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close the queue after the background thread died of specified throwable, failing the queued pairs and waking
+     * up blocked savers.
+     * @param e throwable that killed the background thread
+     */
+    private void flusherDied(final Throwable e) {
+        lock.lock();
+        try {
+            closed = true;
+            flusherFailure = e;
+            pending = new LinkedHashMap<K, V>();
+            pendingResult.fail(e); // a batch in flight is failed, if at all, by whoever writes it
+            hasWork.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flush queued pairs and stop the background thread. Further saves fail with {@link IllegalStateException}.
+     */
+    @Override
+    public final void close() {
+        lock.lock();
+        try {
+            closed = true;
+            hasWork.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Background loop - wait for the coalescing window or a full queue, then flush.
+     */
+    private void flushLoop() {
+        while (true) {
+            lock.lock();
+            try {
+                while (pending.isEmpty() && !closed) {
+                    hasWork.await();
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                long remaining = firstQueuedAt + windowNanos - System.nanoTime();
+                while (!closed && !flushRequested && pending.size() < maxBatchSize && remaining > 0) {
+                    remaining = hasWork.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                closed = true; // interrupting the flush thread is treated as a request to close
+                continue;
+            } finally {
+                lock.unlock();
+            }
+            flushLock.lock();
+            try {
+                final FlushResult result = takePending();
+                if (result == null) {
+                    continue; // taken by an operation saving the queued pairs on its own connection
+                }
+                try {
+                    flushBatch(result);
+                } finally {
+                    clearInFlight(result);
+                }
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Save the batch of specified result on a new connection and complete the result.
+     * @param result result to complete, carrying the key-value pairs to save
+     */
+    private void flushBatch(final FlushResult result) {
+        final Map<K, V> batch = result.batch;
+        try {
+            final long version = JdbcUtil.withConnection(dataSource, new IConnectionActivity<Long>() {
+                @Override
+                public Long execute(final Connection conn) {
+                    return writer.batchSave(conn, batch);
+                }
+            });
+            flushes.incrementAndGet();
+            result.complete(version);
+        } catch (RuntimeException e) {
+            result.fail(e);
+        } catch (Error e) {
+            result.fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for specified flush result and return the version, rethrowing the flush exception if any.
+     * @param  result flush result
+     * @return        version written by the flush
+     */
+    private static long await(final Future<Long> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for write-behind flush", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Write-behind flush failed", cause);
+        }
+    }
+
+    // ---- statistics ----
+
+    /**
+     * Return number of saves that replaced the value of an already queued key.
+     * @return coalesced save count
+     */
+    public final long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * Return number of successful flushes.
+     * @return flush count
+     */
+    public final long getFlushCount() {
+        return flushes.get();
+    }
+
+    /**
+     * Return number of keys currently queued (not including the flush in progress).
+     * @return queued key count
+     */
+    public final int getPendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ----- insert -----
+
+    @Override
+    public final long insert(final Connection conn, final K key, final V value) {
+        flushOn(conn);
+        return writer.insert(conn, key, value);
+    }
+
+    @Override
+    public final long batchInsert(final Connection conn, final Map<K, V> pairs) {
+        flushOn(conn);
+        return writer.batchInsert(conn, pairs);
+    }
+
+    // ---- save, regardless of whether they already exist ----
+
+    @Override
+    public final long save(final Connection conn, final K key, final V value) {
+        return await(saveAsync(key, value));
+    }
+
+    @Override
+    public final long batchSave(final Connection conn, final Map<K, V> pairs) {
+        final List<Future<Long>> results = new ArrayList<Future<Long>>(1);
+        for (Map.Entry<K, V> each: pairs.entrySet()) {
+            final Future<Long> result = saveAsync(each.getKey(), each.getValue());
+            if (results.isEmpty() || results.get(results.size() - 1) != result) {
+                results.add(result);
+            }
+        }
+        long version = 0;
+        for (Future<Long> each: results) {
+            version = await(each);
+        }
+        return version;
+    }
+
+    // ---- swap (requires old version) ----
+
+    @Override
+    public final Long swap(final Connection conn, final K key, final V value, final long version) {
+        flushOn(conn);
+        return writer.swap(conn, key, value, version);
+    }
+
+    @Override
+    public final Long batchSwap(final Connection conn, final Map<K, V> pairs, final long version) {
+        flushOn(conn);
+        return writer.batchSwap(conn, pairs, version);
+    }
+
+    @Override
+    public final Long batchSwap(final Connection conn, final List<KeyValueVersion<K, V>> triplets) {
+        flushOn(conn);
+        return writer.batchSwap(conn, triplets);
+    }
+
+    // ---- touch (update version) ----
+
+    @Override
+    public final Long touch(final Connection conn, final K key) {
+        flushOn(conn);
+        return writer.touch(conn, key);
+    }
+
+    @Override
+    public final Long batchTouch(final Connection conn, final List<K> keys) {
+        flushOn(conn);
+        return writer.batchTouch(conn, keys);
+    }
+
+    // ---- delete ----
+
+    @Override
+    public final void delete(final Connection conn, final K key) {
+        flushOn(conn);
+        writer.delete(conn, key);
+    }
+
+    @Override
+    public final void batchDelete(final Connection conn, final List<K> keys) {
+        flushOn(conn);
+        writer.batchDelete(conn, keys);
+    }
+
+    // ---- remove (requires old version) ----
+
+    @Override
+    public final void remove(final Connection conn, final K key, final long version) {
+        flushOn(conn);
+        writer.remove(conn, key, version);
+    }
+
+    @Override
+    public final void batchRemove(final Connection conn, final List<K> keys, final long version) {
+        flushOn(conn);
+        writer.batchRemove(conn, keys, version);
+    }
+
+    @Override
+    public final void batchRemove(final Connection conn, final Map<K, Long> keys) {
+        flushOn(conn);
+        writer.batchRemove(conn, keys);
+    }
+
+}
@@ -0,0 +1,98 @@
+package net.sf.bitumen.util;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive <tt>long</tt> values, backed by an array. Avoids boxing every element as would be the
+ * case with <tt>List&lt;Long&gt;</tt>. Not thread-safe.
+ *
+ */
+public class LongList {
+
+    /** Default initial capacity. */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** Elements; only the first {@link #size} are valid. */
+    private long[] elements;
+
+    /** Number of elements. */
+    private int size = 0;
+
+    /**
+     * Construct empty instance with default initial capacity.
+     */
+    public LongList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct empty instance with specified initial capacity.
+     * @param  initialCapacity initial capacity
+     */
+    public LongList(final int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Expected non-negative capacity, found: " + initialCapacity);
+        }
+        this.elements = new long[initialCapacity];
+    }
+
+    /**
+     * Append an element.
+     * @param  value element to append
+     */
+    public final void add(final long value) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(DEFAULT_CAPACITY, size + (size >> 1)));
+        }
+        elements[size++] = value;
+    }
+
+    /**
+     * Return element at specified index.
+     * @param  index element index
+     * @return       element
+     */
+    public final long get(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return elements[index];
+    }
+
+    /**
+     * Return number of elements.
+     * @return number of elements
+     */
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * Return <tt>true</tt> if there are no elements, <tt>false</tt> otherwise.
+     * @return whether the list is empty
+     */
+    public final boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all elements, retaining the capacity.
+     */
+    public final void clear() {
+        size = 0;
+    }
+
+    /**
+     * Return a copy of the elements as an array.
+     * @return array of elements
+     */
+    public final long[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    @Override
+    public final String toString() {
+        return Arrays.toString(toArray());
+    }
+
+}
@@ -0,0 +1,148 @@
+package net.sf.bitumen.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing (linear probing) hash map of object keys to primitive <tt>long</tt> values. Avoids the entry object
+ * and the boxed value that <tt>Map&lt;K, Long&gt;</tt> allocates for every mapping. <tt>null</tt> keys are not
+ * supported and mappings cannot be removed. Not thread-safe.
+ *
+ * @param <K> key type
+ */
+public class ObjectLongMap<K> {
+
+    /** Maximum ratio of size to capacity before the table is grown. */
+    private static final float LOAD_FACTOR = 0.5f;
+
+    /** Keys; <tt>null</tt> denotes a free slot. */
+    private Object[] keys;
+
+    /** Values, at the same slot as the corresponding key. */
+    private long[] values;
+
+    /** Number of mappings. */
+    private int size = 0;
+
+    /** Size at which the table is grown. */
+    private int threshold;
+
+    /**
+     * Construct empty instance able to hold specified number of mappings without growing.
+     * @param  expectedSize expected number of mappings
+     */
+    public ObjectLongMap(final int expectedSize) {
+        int capacity = 4;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Allocate table of specified capacity (must be a power of two).
+     * @param  capacity table capacity
+     */
+    private void allocate(final int capacity) {
+        this.keys = new Object[capacity];
+        this.values = new long[capacity];
+        this.threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Return the slot where specified key is, or should be, stored.
+     * @param  key the key
+     * @return     slot index
+     */
+    private int slot(final Object key) {
+        final int mask = keys.length - 1;
+        final int h = key.hashCode();
+        int i = (h ^ (h >>> 16)) & mask;
+        while (keys[i] != null && !keys[i].equals(key)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Associate specified value with specified key, replacing any existing value.
+     * @param  key   the key, must not be <tt>null</tt>
+     * @param  value the value
+     */
+    public final void put(final K key, final long value) {
+        Util.assertNotNull(key, "Key must not be null");
+        int i = slot(key);
+        if (keys[i] == null) {
+            if (size >= threshold) {
+                rehash();
+                i = slot(key);
+            }
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+    }
+
+    /**
+     * Return the value associated with specified key, or specified default value if the key is not found.
+     * @param  key          the key
+     * @param  defaultValue value to return if the key is not found
+     * @return              associated value, or the default value
+     */
+    public final long get(final Object key, final long defaultValue) {
+        if (key == null) {
+            return defaultValue;
+        }
+        final int i = slot(key);
+        return keys[i] == null ? defaultValue : values[i];
+    }
+
+    /**
+     * Return <tt>true</tt> if specified key is found, <tt>false</tt> otherwise.
+     * @param  key the key
+     * @return     whether the key is found
+     */
+    public final boolean containsKey(final Object key) {
+        return key != null && keys[slot(key)] != null;
+    }
+
+    /**
+     * Return number of mappings.
+     * @return number of mappings
+     */
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * Return <tt>true</tt> if there are no mappings, <tt>false</tt> otherwise.
+     * @return whether the map is empty
+     */
+    public final boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all mappings, retaining the capacity.
+     */
+    public final void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    /**
+     * Double the table capacity and re-insert all mappings.
+     */
+    private void rehash() {
+        final Object[] oldKeys = keys;
+        final long[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                final int i = slot(oldKeys[j]);
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+}
@@ -201,6 +201,62 @@ public final class Util {
         return result;
     }
 
+    /**
+     * Split a list into consecutive sub-lists (views) of specified maximum size, preserving order. A non-positive
+     * size means no split, i.e. the whole list as the only sub-list. An empty list yields no sub-lists.
+     * @param  <T>  element type
+     * @param  list the list to split
+     * @param  size maximum size of each sub-list
+     * @return      list of sub-lists
+     */
+    public static <T> List<List<T>> partition(final List<T> list, final int size) {
+        final int len = list.size();
+        if (len == 0) {
+            return new ArrayList<List<T>>(0);
+        }
+        if (size <= 0 || len <= size) {
+            final List<List<T>> result = new ArrayList<List<T>>(1);
+            result.add(list);
+            return result;
+        }
+        final List<List<T>> result = new ArrayList<List<T>>((len + size - 1) / size);
+        for (int i = 0; i < len; i += size) {
+            result.add(list.subList(i, Math.min(len, i + size)));
+        }
+        return result;
+    }
+
+    /**
+     * Split a map into consecutive sub-maps of specified maximum size, preserving iteration order. A non-positive size
+     * means no split, i.e. the whole map as the only sub-map. An empty map yields no sub-maps.
+     * @param  <K>  key type
+     * @param  <V>  value type
+     * @param  map  the map to split
+     * @param  size maximum size of each sub-map
+     * @return      list of sub-maps
+     */
+    public static <K, V> List<Map<K, V>> partition(final Map<K, V> map, final int size) {
+        final int len = map.size();
+        if (len == 0) {
+            return new ArrayList<Map<K, V>>(0);
+        }
+        if (size <= 0 || len <= size) {
+            final List<Map<K, V>> result = new ArrayList<Map<K, V>>(1);
+            result.add(map);
+            return result;
+        }
+        final List<Map<K, V>> result = new ArrayList<Map<K, V>>((len + size - 1) / size);
+        Map<K, V> chunk = null;
+        for (Entry<K, V> entry: map.entrySet()) {
+            if (chunk == null || chunk.size() == size) {
+                chunk = new LinkedHashMap<K, V>(size * 2);
+                result.add(chunk);
+            }
+            chunk.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
     /**
      * Given a collection, make sure it has only one item and return the item.
      * @param  <T>  element type in the collection
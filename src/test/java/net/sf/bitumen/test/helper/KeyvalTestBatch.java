@@ -5,7 +5,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import javax.sql.DataSource;
 
@@ -13,8 +15,10 @@ import net.sf.bitumen.jdbc.JdbcException;
 import net.sf.bitumen.jdbc.impl.DataSourceTemplate;
 import net.sf.bitumen.jdbc.impl.IConnectionActivity;
 import net.sf.bitumen.jdbc.impl.IConnectionActivityNoResult;
+import net.sf.bitumen.jdbc.kv.IKeyvalConditionalWrite;
 import net.sf.bitumen.jdbc.kv.IKeyvalRead;
 import net.sf.bitumen.jdbc.kv.IKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.KeyValueVersion;
 import net.sf.bitumen.jdbc.kv.ValueVersion;
 import net.sf.bitumen.util.Util;
 
@@ -28,6 +32,16 @@ public class KeyvalTestBatch implements KeyvalTestSuite {
         this.dst = new DataSourceTemplate(ds);
     }
 
+    private static List<Integer> foundKeys(final Map<Integer, ?> kvPairs) {
+        final List<Integer> result = new ArrayList<Integer>(kvPairs.size());
+        for (Map.Entry<Integer, ?> entry: kvPairs.entrySet()) {
+            if (entry.getValue() != null) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
     private List<String> readValues(final IKeyvalRead<Integer, String> reader, final List<Integer> keys) {
         final Map<Integer, String> kvPairs = dst.withConnection(new IConnectionActivity<Map<Integer, String>>() {
             public Map<Integer, String> execute(Connection conn) {
@@ -202,6 +216,40 @@ public class KeyvalTestBatch implements KeyvalTestSuite {
         }
     }
 
+    public void touchTest(final IKeyvalWrite<Integer, String> writer, final IKeyvalRead<Integer, String> reader) {
+        final List<Integer> keys = Arrays.asList(1, 2, 3);
+        final List<String> vals1 = Arrays.asList("abc", "bcd", "cde");
+        final Long version1 = dst.withConnection(new IConnectionActivity<Long>() {
+            public Long execute(Connection conn) {
+                return writer.batchSave(conn, Util.zipmap(keys, vals1));
+            }
+        });
+
+        // touch non-existent keys, which should fail
+        final Long version2 = dst.withConnection(new IConnectionActivity<Long>() {
+            public Long execute(Connection conn) {
+                return writer.batchTouch(conn, Arrays.asList(7, 8));
+            }
+        });
+        Assert.assertNull(version2);
+
+        // touch existing keys, which should change version but not value
+        final Long version3 = dst.withConnection(new IConnectionActivity<Long>() {
+            public Long execute(Connection conn) {
+                return writer.batchTouch(conn, keys);
+            }
+        });
+        Assert.assertNotNull(version3);
+        Assert.assertNotEquals(version1, version3);
+        Assert.assertEquals(vals1, readValues(reader, keys));
+        final List<Long> versions = dst.withConnection(new IConnectionActivity<List<Long>>() {
+            public List<Long> execute(Connection conn) {
+                return reader.batchContains(conn, keys);
+            }
+        });
+        Assert.assertEquals(Collections.nCopies(3, version3), versions);
+    }
+
     public void readTest(final IKeyvalWrite<Integer, String> writer, final IKeyvalRead<Integer, String> reader) {
         final List<Integer> keys = Arrays.asList(1, 2, 3);
 
@@ -297,6 +345,65 @@ public class KeyvalTestBatch implements KeyvalTestSuite {
         }
         Assert.assertEquals(vals1, vs);
         Assert.assertEquals(Arrays.asList(version1, version1, version1), vers);
+
+        // batch results follow the requested key order, not the database order
+        final List<Integer> shuffled = Arrays.asList(3, Integer.MAX_VALUE, 1, 2);
+        final List<Integer> found = Arrays.asList(3, 1, 2);
+        dst.withConnectionNoResult(new IConnectionActivityNoResult() {
+            public void execute(Connection conn) {
+                Assert.assertEquals(found, foundKeys(reader.batchRead(conn, shuffled)));
+                Assert.assertEquals(found, foundKeys(reader.batchReadAll(conn, shuffled)));
+                final Map<Integer, Long> keyVersions = new LinkedHashMap<Integer, Long>();
+                for (Integer each: shuffled) {
+                    keyVersions.put(each, version1);
+                }
+                Assert.assertEquals(found, foundKeys(reader.batchReadForVersion(conn, keyVersions)));
+            }
+        });
+    }
+
+    public void conditionalWriteTest(final IKeyvalWrite<Integer, String> writer,
+            final IKeyvalConditionalWrite<Integer, String> condWriter, final IKeyvalRead<Integer, String> reader) {
+        final List<Integer> keys = Arrays.asList(1, 2, 3, 4, 5);
+        final long version1 = dst.withConnection(new IConnectionActivity<Long>() {
+            public Long execute(Connection conn) {
+                return writer.batchInsert(conn, Util.zipmap(keys, Arrays.asList("abc", "bcd", "cde", "def", "efg")));
+            }
+        });
+
+        // swap - key 2 has stale version, key 6 does not exist
+        final List<KeyValueVersion<Integer, String>> triplets = Arrays.asList(
+                new KeyValueVersion<Integer, String>(1, "pqr", version1),
+                new KeyValueVersion<Integer, String>(2, "qrs", version1 + 1),
+                new KeyValueVersion<Integer, String>(3, "rst", version1),
+                new KeyValueVersion<Integer, String>(6, "stu", version1),
+                new KeyValueVersion<Integer, String>(5, "tuv", version1));
+        final Map<Integer, Long> swapped = dst.withConnection(new IConnectionActivity<Map<Integer, Long>>() {
+            public Map<Integer, Long> execute(Connection conn) {
+                return condWriter.batchSwapEach(conn, triplets);
+            }
+        });
+        Assert.assertEquals(Arrays.asList(1, 3, 5), new ArrayList<Integer>(swapped.keySet()));
+        final long version2 = swapped.get(1);
+        Assert.assertNotEquals(version1, version2);
+        Assert.assertEquals(Collections.nCopies(3, version2), new ArrayList<Long>(swapped.values()));
+        Assert.assertEquals(Arrays.asList("pqr", "bcd", "rst", "def", "tuv"), readValues(reader, keys));
+
+        // remove - key 3 has stale version, key 7 does not exist
+        final Map<Integer, Long> removals = new LinkedHashMap<Integer, Long>();
+        removals.put(1, version2);
+        removals.put(2, version1);
+        removals.put(3, version1);
+        removals.put(7, version1);
+        removals.put(4, version1);
+        final Set<Integer> removed = dst.withConnection(new IConnectionActivity<Set<Integer>>() {
+            public Set<Integer> execute(Connection conn) {
+                return condWriter.batchRemoveEach(conn, removals);
+            }
+        });
+        Assert.assertEquals(Arrays.asList(1, 2, 4), new ArrayList<Integer>(removed));
+        Assert.assertEquals(2, TestUtil.findRowCountForKeys(dst, keys));
+        Assert.assertEquals(Arrays.asList(null, null, "rst", null, "tuv"), readValues(reader, keys));
     }
 
 }
@@ -85,6 +85,51 @@ public class TestUtil {
         });
     }
 
+    public static void createTable(DataSource ds, final String tableName) {
+        JdbcUtil.withConnectionNoResult(ds, new IConnectionActivityNoResult() {
+            public void execute(Connection conn) {
+                new DefaultJdbcWrite().update(conn, loadProperties().getProperty("create.table.ddl")
+                        .replaceFirst("TABLE session", "TABLE " + tableName), null);
+            }
+        });
+    }
+
+    public static void createExpiryTable(DataSource ds, final String tableName) {
+        createTable(ds, tableName);
+        JdbcUtil.withConnectionNoResult(ds, new IConnectionActivityNoResult() {
+            public void execute(Connection conn) {
+                new DefaultJdbcWrite().update(conn, "ALTER TABLE " + tableName + " ADD COLUMN expires TIMESTAMP NULL",
+                        null);
+            }
+        });
+    }
+
+    public static void createBinaryTable(DataSource ds, final String tableName) {
+        JdbcUtil.withConnectionNoResult(ds, new IConnectionActivityNoResult() {
+            public void execute(Connection conn) {
+                new DefaultJdbcWrite().update(conn, loadProperties().getProperty("create.table.ddl")
+                        .replaceFirst("TABLE session", "TABLE " + tableName)
+                        .replaceFirst("value TEXT", "value BLOB"), null);
+            }
+        });
+    }
+
+    public static void dropTable(DataSource ds, final String tableName) {
+        JdbcUtil.withConnectionNoResult(ds, new IConnectionActivityNoResult() {
+            public void execute(Connection conn) {
+                new DefaultJdbcWrite().update(conn, "DROP TABLE " + tableName, null);
+            }
+        });
+    }
+
+    public static TableMetadata makeMeta(String tableName) {
+        return TableMetadata.create(tableName, "skey", "value", "version", "created", "updated");
+    }
+
+    public static TableMetadata makeExpiryMeta(String tableName) {
+        return TableMetadata.create(tableName, "skey", "value", "version", "created", "updated", "expires");
+    }
+
     public static void deleteAll(DataSourceTemplate dst) {
         dst.withConnectionNoResult(new IConnectionActivityNoResult() {
             public void execute(Connection conn) {
@@ -0,0 +1,177 @@
+package net.sf.bitumen.test.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.sql.DataSource;
+
+import net.sf.bitumen.jdbc.kv.IAsyncKeyvalRead;
+import net.sf.bitumen.jdbc.kv.IAsyncKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.IKeyvalRead;
+import net.sf.bitumen.jdbc.kv.ValueVersion;
+import net.sf.bitumen.jdbc.kv.impl.AsyncKeyvalRead;
+import net.sf.bitumen.jdbc.kv.impl.AsyncKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalRead;
+import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalWrite;
+import net.sf.bitumen.test.helper.TestUtil;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class AsyncKeyvalTest {
+
+    private static DataSource dataSource;
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        dataSource = TestUtil.makeTestDataSource();
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        executor.shutdown();
+        executor = null;
+        dataSource = null;
+    }
+
+    IAsyncKeyvalWrite<Integer, String> writer;
+    AsyncKeyvalRead<Integer, String> reader;
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.createTable(dataSource);
+        writer = new AsyncKeyvalWrite<Integer, String>(new DefaultKeyvalWrite<Integer, String>(TestUtil.meta),
+                dataSource, executor);
+        reader = new AsyncKeyvalRead<Integer, String>(new DefaultKeyvalRead<Integer, String>(TestUtil.meta,
+                Integer.class, String.class), dataSource, executor, 10, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtil.dropTable(dataSource);
+    }
+
+    @Test
+    public void asyncCrudTest() throws InterruptedException, ExecutionException {
+        final Future<Long> saved = writer.save(1, "abc");
+        final long version = saved.get();
+        Assert.assertEquals("abc", reader.read(1).get());
+        final ValueVersion<String> vv = reader.readAll(1).get();
+        Assert.assertEquals(Long.valueOf(version), vv.getVersion());
+
+        final Map<Integer, String> pairs = new LinkedHashMap<Integer, String>();
+        pairs.put(2, "bcd");
+        pairs.put(3, "cde");
+        writer.batchInsert(pairs).get();
+        Assert.assertEquals(Arrays.asList(version, null),
+                Arrays.asList(reader.batchContains(Arrays.asList(1, 4)).get().toArray()));
+        Assert.assertEquals(pairs, reader.batchRead(Arrays.asList(2, 3)).get());
+
+        final Long swapped = writer.swap(1, "xyz", version).get();
+        Assert.assertNotNull(swapped);
+        Assert.assertEquals("xyz", reader.readForVersion(1, swapped).get());
+        writer.remove(1, swapped).get();
+        Assert.assertNull(reader.read(1).get());
+    }
+
+    @Test
+    public void timeoutTest() throws InterruptedException, ExecutionException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            single.submit(new Runnable() {
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            final IAsyncKeyvalRead<Integer, String> blocked = new AsyncKeyvalRead<Integer, String>(
+                    new DefaultKeyvalRead<Integer, String>(TestUtil.meta, Integer.class, String.class), dataSource,
+                    single).withTimeout(50, TimeUnit.MILLISECONDS);
+            final Future<String> result = blocked.read(1);
+            boolean timedOut = false;
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                timedOut = e.getCause() instanceof TimeoutException;
+            }
+            Assert.assertTrue(timedOut);
+            Assert.assertTrue(result.isCancelled());
+        } finally {
+            release.countDown();
+            single.shutdown();
+        }
+    }
+
+    @Test
+    public void deadlineWithoutGetTest() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            single.submit(new Runnable() {
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            final Future<String> result = new AsyncKeyvalRead<Integer, String>(
+                    new DefaultKeyvalRead<Integer, String>(TestUtil.meta, Integer.class, String.class), dataSource,
+                    single, 50, TimeUnit.MILLISECONDS).read(1);
+            // nobody waits for the result, yet the operation is cancelled at the deadline
+            final long until = System.currentTimeMillis() + 5000;
+            while (!result.isCancelled() && System.currentTimeMillis() < until) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(result.isCancelled());
+        } finally {
+            release.countDown();
+            single.shutdown();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void queryTimeoutTest() throws InterruptedException, ExecutionException {
+        // reader that reports the query timeout of the statements it creates
+        final IKeyvalRead<Integer, String> probe = (IKeyvalRead<Integer, String>) Proxy.newProxyInstance(
+                IKeyvalRead.class.getClassLoader(), new Class<?>[] {IKeyvalRead.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        final PreparedStatement pstmt = ((Connection) args[0]).prepareStatement("SELECT 1");
+                        try {
+                            return String.valueOf(pstmt.getQueryTimeout());
+                        } finally {
+                            pstmt.close();
+                        }
+                    }
+                });
+        Assert.assertEquals("3", new AsyncKeyvalRead<Integer, String>(probe, dataSource, executor, 2500,
+                TimeUnit.MILLISECONDS).read(1).get());
+        Assert.assertEquals("0", new AsyncKeyvalRead<Integer, String>(probe, dataSource, executor).read(1).get());
+    }
+
+}
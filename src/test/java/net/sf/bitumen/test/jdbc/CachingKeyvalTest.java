@@ -0,0 +1,187 @@
+package net.sf.bitumen.test.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import net.sf.bitumen.jdbc.impl.DataSourceTemplate;
+import net.sf.bitumen.jdbc.impl.IConnectionActivity;
+import net.sf.bitumen.jdbc.kv.IKeyvalRead;
+import net.sf.bitumen.jdbc.kv.IKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.ValueVersion;
+import net.sf.bitumen.jdbc.kv.impl.CachingKeyvalRead;
+import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalRead;
+import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalWrite;
+import net.sf.bitumen.test.helper.KeyvalTestBatch;
+import net.sf.bitumen.test.helper.KeyvalTestSingle;
+import net.sf.bitumen.test.helper.TestUtil;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CachingKeyvalTest {
+
+    private static DataSource dataSource;
+    private static KeyvalTestSingle opsTestSingle;
+    private static KeyvalTestBatch  opsTestBatch;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        dataSource = TestUtil.makeTestDataSource();
+        opsTestSingle = new KeyvalTestSingle(dataSource);
+        opsTestBatch = new KeyvalTestBatch(dataSource);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        opsTestSingle = null;
+        opsTestBatch = null;
+        dataSource = null;
+    }
+
+    final IKeyvalWrite<Integer, String> writer = new DefaultKeyvalWrite<Integer, String>(TestUtil.meta);
+    final CachingKeyvalRead<Integer, String> reader = new CachingKeyvalRead<Integer, String>(
+            new DefaultKeyvalRead<Integer, String>(TestUtil.meta, Integer.class, String.class));
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.createTable(dataSource);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtil.dropTable(dataSource);
+    }
+
+    @Test
+    public void cachingCrudTest() {
+        opsTestSingle.crudTest(writer, reader);
+    }
+
+    @Test
+    public void cachingBatchCrudTest() {
+        opsTestBatch.crudTest(writer, reader);
+    }
+
+    @Test
+    public void cachingVersionTest() {
+        opsTestSingle.versionTest(writer, reader);
+    }
+
+    @Test
+    public void cachingBatchVersionTest() {
+        opsTestBatch.versionTest(writer, reader);
+    }
+
+    @Test
+    public void cachingReadTest() {
+        opsTestSingle.readTest(writer, reader);
+    }
+
+    @Test
+    public void cachingBatchReadTest() {
+        opsTestBatch.readTest(writer, reader);
+    }
+
+    @Test
+    public void cacheModeTest() {
+        final DataSourceTemplate dst = new DataSourceTemplate(dataSource);
+        final CachingKeyvalRead<Integer, String> ttlReader = new CachingKeyvalRead<Integer, String>(
+                new DefaultKeyvalRead<Integer, String>(TestUtil.meta, Integer.class, String.class), 1,
+                CachingKeyvalRead.Mode.TTL, 1, TimeUnit.HOURS);
+        final IConnectionActivity<String> readValidate = new IConnectionActivity<String>() {
+            public String execute(Connection conn) {
+                return reader.read(conn, 1);
+            }
+        };
+        final IConnectionActivity<String> readTtl = new IConnectionActivity<String>() {
+            public String execute(Connection conn) {
+                return ttlReader.read(conn, 1);
+            }
+        };
+        dst.withConnection(new IConnectionActivity<Long>() {
+            public Long execute(Connection conn) {
+                return writer.insert(conn, 1, "abc");
+            }
+        });
+        Assert.assertEquals("abc", dst.withConnection(readValidate));
+        Assert.assertEquals("abc", dst.withConnection(readValidate));
+        Assert.assertEquals("abc", dst.withConnection(readTtl));
+        Assert.assertEquals("abc", dst.withConnection(readTtl));
+        Assert.assertEquals(1, reader.getHitCount());
+        Assert.assertEquals(1, reader.getValidationCount());
+        Assert.assertEquals(1, ttlReader.getHitCount());
+        Assert.assertEquals(0, ttlReader.getValidationCount());
+
+        // validating cache sees the update, TTL cache serves the stale value until invalidated
+        dst.withConnection(new IConnectionActivity<Long>() {
+            public Long execute(Connection conn) {
+                return writer.save(conn, 1, "bcd");
+            }
+        });
+        Assert.assertEquals("bcd", dst.withConnection(readValidate));
+        Assert.assertEquals("abc", dst.withConnection(readTtl));
+        ttlReader.invalidate(1);
+        Assert.assertEquals("bcd", dst.withConnection(readTtl));
+
+        // eviction
+        dst.withConnection(new IConnectionActivity<String>() {
+            public String execute(Connection conn) {
+                return ttlReader.read(conn, 2);
+            }
+        });
+        Assert.assertEquals(1, ttlReader.size());
+        Assert.assertEquals(0, ttlReader.getEvictionCount());
+        dst.withConnection(new IConnectionActivity<Long>() {
+            public Long execute(Connection conn) {
+                return writer.insert(conn, 2, "xyz");
+            }
+        });
+        Assert.assertEquals("xyz", dst.withConnection(new IConnectionActivity<String>() {
+            public String execute(Connection conn) {
+                return ttlReader.read(conn, 2);
+            }
+        }));
+        Assert.assertEquals(1, ttlReader.size());
+        Assert.assertEquals(1, ttlReader.getEvictionCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void invalidateDuringReadTest() throws Exception {
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        // reader that blocks while reading the value from before the invalidation
+        final IKeyvalRead<Integer, String> blocking = (IKeyvalRead<Integer, String>) Proxy.newProxyInstance(
+                IKeyvalRead.class.getClassLoader(), new Class<?>[] {IKeyvalRead.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        reading.countDown();
+                        release.await();
+                        return new ValueVersion<String>("old", 1L);
+                    }
+                });
+        final CachingKeyvalRead<Integer, String> ttlReader = new CachingKeyvalRead<Integer, String>(blocking, 10,
+                CachingKeyvalRead.Mode.TTL, 1, TimeUnit.HOURS);
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                ttlReader.readAll(null, 1);
+            }
+        });
+        thread.start();
+        Assert.assertTrue(reading.await(5, TimeUnit.SECONDS));
+        ttlReader.invalidate(1);
+        release.countDown();
+        thread.join(5000);
+        Assert.assertEquals(0, ttlReader.size());
+    }
+
+}
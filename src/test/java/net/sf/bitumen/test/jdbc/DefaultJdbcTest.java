@@ -1,23 +1,35 @@
 package net.sf.bitumen.test.jdbc;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import javax.sql.DataSource;
 
 import net.sf.bitumen.jdbc.IJdbcRead;
+import net.sf.bitumen.jdbc.IJdbcStreamingRead;
 import net.sf.bitumen.jdbc.IJdbcWrite;
+import net.sf.bitumen.jdbc.IRowCursor;
 import net.sf.bitumen.jdbc.IRowExtractor;
 import net.sf.bitumen.jdbc.impl.DataSourceTemplate;
 import net.sf.bitumen.jdbc.impl.DefaultJdbcRead;
 import net.sf.bitumen.jdbc.impl.DefaultJdbcWrite;
 import net.sf.bitumen.jdbc.impl.IConnectionActivity;
 import net.sf.bitumen.jdbc.impl.IConnectionActivityNoResult;
+import net.sf.bitumen.jdbc.impl.JdbcUtil;
+import net.sf.bitumen.jdbc.impl.PreparedStatementCache;
+import net.sf.bitumen.jdbc.impl.RowMap;
 import net.sf.bitumen.test.helper.TestUtil;
 import net.sf.bitumen.util.NamedParams;
 import net.sf.bitumen.util.Util;
@@ -56,7 +68,7 @@ public class DefaultJdbcTest {
         TestUtil.dropTable(dataSource);
     }
 
-    final IJdbcRead reader = new DefaultJdbcRead();
+    final IJdbcStreamingRead reader = new DefaultJdbcRead();
     final IJdbcWrite writer = new DefaultJdbcWrite();
 
     public static class Session {
@@ -227,4 +239,149 @@ public class DefaultJdbcTest {
         Assert.assertEquals(0, rows);
     }
 
+    @Test
+    public void cursorTest() {
+        dst.withConnectionNoResult(new IConnectionActivityNoResult() {
+            @Override
+            public void execute(Connection conn) {
+                for (int i = 0; i < 10; i++) {
+                    writer.update(conn,
+                            "INSERT INTO session (skey, value, version, created, updated) VALUES (?, ?, ?, ?, ?)",
+                            Arrays.asList(1000 + i, s1.value, s1.version, s1.created, s1.updated));
+                }
+                // iterate till the end, which closes the cursor
+                final IRowCursor<Session> cursor = reader.queryForCursor(conn,
+                        "SELECT skey, value, version, created, updated FROM session ORDER BY skey", null,
+                        sessionExtractor, 3);
+                int expectedKey = 1000;
+                while (cursor.hasNext()) {
+                    Assert.assertEquals(expectedKey++, cursor.next().skey);
+                }
+                Assert.assertEquals(10, cursor.getRowCount());
+                Assert.assertTrue(cursor.isClosed());
+                // abandon iteration midway and close explicitly
+                final IRowCursor<Map<String, Object>> mapCursor = reader.queryForCursor(conn,
+                        "SELECT skey, value FROM session ORDER BY skey", null, IJdbcStreamingRead.DEFAULT_FETCH_SIZE);
+                try {
+                    Assert.assertTrue(mapCursor.hasNext());
+                    Assert.assertEquals(2, mapCursor.next().size());
+                } finally {
+                    mapCursor.close();
+                }
+                Assert.assertTrue(mapCursor.isClosed());
+                Assert.assertFalse(mapCursor.hasNext());
+            }
+        });
+    }
+
+    @Test
+    public void statementCacheTest() {
+        final PreparedStatementCache cache = new PreparedStatementCache(2);
+        final IJdbcRead cachedReader = new DefaultJdbcRead(cache);
+        final IJdbcWrite cachedWriter = new DefaultJdbcWrite(cache);
+        dst.withConnectionNoResult(new IConnectionActivityNoResult() {
+            @Override
+            public void execute(Connection conn) {
+                for (int i = 0; i < 5; i++) {
+                    cachedWriter.update(conn,
+                            "INSERT INTO session (skey, value, version, created, updated) VALUES (?, ?, ?, ?, ?)",
+                            Arrays.asList(1000 + i, s1.value, s1.version, s1.created, s1.updated));
+                }
+                Assert.assertEquals(1, cache.getMissCount());
+                Assert.assertEquals(4, cache.getHitCount());
+                for (int i = 0; i < 5; i++) {
+                    final List<Session> slist = cachedReader.queryForList(conn,
+                            "SELECT skey, value, version, created, updated FROM session WHERE skey = ?",
+                            Arrays.asList(1000 + i), sessionExtractor);
+                    Assert.assertEquals(1000 + i, slist.get(0).skey);
+                }
+                Assert.assertEquals(2, cache.getMissCount());
+                Assert.assertEquals(8, cache.getHitCount());
+                Assert.assertEquals(2, cache.size());
+                // a third distinct statement evicts the least recently used one
+                cachedReader.queryForList(conn, "SELECT COUNT(*) FROM session", null);
+                Assert.assertEquals(1, cache.getEvictionCount());
+                cache.evict(conn);
+                Assert.assertEquals(0, cache.size());
+            }
+        });
+    }
+
+    /**
+     * Return a wrapper of specified connection that, like a pooled connection proxy, unwraps to it and does not close
+     * it when closed.
+     */
+    private static Connection wrap(final Connection physical) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("unwrap")) {
+                            return physical;
+                        }
+                        if (method.getName().equals("close")) {
+                            return null;
+                        }
+                        try {
+                            return method.invoke(physical, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+    }
+
+    @Test
+    public void statementCachePhysicalConnectionTest() {
+        final PreparedStatementCache cache = new PreparedStatementCache();
+        final IJdbcRead cachedReader = new DefaultJdbcRead(cache);
+        JdbcUtil.withConnectionNoResult(dataSource, cache, new IConnectionActivityNoResult() {
+            @Override
+            public void execute(Connection conn) {
+                // every checkout of a pooled connection is a distinct wrapper of the same physical connection
+                for (int i = 0; i < 3; i++) {
+                    final Connection wrapper = wrap(conn);
+                    Assert.assertFalse(cache.isPhysical(wrapper));
+                    cachedReader.queryForList(wrapper, "SELECT COUNT(*) FROM session", null);
+                    JdbcUtil.close(cache, wrapper);
+                }
+                Assert.assertEquals(1, cache.getMissCount());
+                Assert.assertEquals(2, cache.getHitCount());
+                Assert.assertEquals(1, cache.size());
+            }
+        });
+        // closing the physical connection evicts its statements
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void rowMapTest() {
+        final RowMap.Columns columns = new RowMap.Columns(new String[] {"a", "b", "a", "c"});
+        final Map<String, Object> row = new RowMap(columns, new Object[] {1, 2, 3, null});
+        final Map<String, Object> expected = Util.zipmap(new String[] {"a", "b", "a", "c"},
+                new Object[] {1, 2, 3, null});
+        Assert.assertEquals(expected, row);
+        Assert.assertEquals(expected.hashCode(), row.hashCode());
+        Assert.assertEquals(new ArrayList<String>(expected.keySet()), new ArrayList<String>(row.keySet()));
+        Assert.assertTrue(row.containsKey("c"));
+        Assert.assertFalse(row.containsKey("d"));
+        Assert.assertEquals(2, row.put("b", 20));
+        Assert.assertEquals(20, row.get("b"));
+        // adding and removing columns falls back to a copy
+        Assert.assertNull(row.remove("d"));
+        Assert.assertNull(row.put("d", 4));
+        Assert.assertEquals(Arrays.asList("a", "b", "c", "d"), new ArrayList<String>(row.keySet()));
+        Assert.assertEquals(3, row.remove("a"));
+        Assert.assertEquals(Util.zipmap(new String[] {"b", "c", "d"}, new Object[] {20, null, 4}), row);
+
+        final Map<String, Object> other = new RowMap(columns, new Object[] {1, 2, 3, null});
+        final Iterator<Map.Entry<String, Object>> iter = other.entrySet().iterator();
+        iter.next();
+        iter.next().setValue(30);
+        iter.remove();
+        Assert.assertTrue(iter.hasNext());
+        Assert.assertEquals("c", iter.next().getKey());
+        Assert.assertFalse(iter.hasNext());
+        Assert.assertEquals(Util.zipmap(new String[] {"a", "c"}, new Object[] {3, null}), other);
+    }
+
 }
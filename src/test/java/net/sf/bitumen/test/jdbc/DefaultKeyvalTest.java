@@ -2,8 +2,12 @@ package net.sf.bitumen.test.jdbc;
 
 import javax.sql.DataSource;
 
+import net.sf.bitumen.jdbc.impl.DefaultJdbcRead;
+import net.sf.bitumen.jdbc.impl.DefaultJdbcWrite;
+import net.sf.bitumen.jdbc.kv.IKeyvalConditionalWrite;
 import net.sf.bitumen.jdbc.kv.IKeyvalRead;
 import net.sf.bitumen.jdbc.kv.IKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalConditionalWrite;
 import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalRead;
 import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalWrite;
 import net.sf.bitumen.test.helper.KeyvalTestBatch;
@@ -37,7 +41,17 @@ public class DefaultKeyvalTest {
     }
 
     final IKeyvalWrite<Integer, String> writer = new DefaultKeyvalWrite<Integer, String>(TestUtil.meta);
+    final IKeyvalWrite<Integer, String> multiRowWriter = new DefaultKeyvalWrite<Integer, String>(TestUtil.meta,
+            new DefaultJdbcWrite(), 2);
+    final IKeyvalWrite<Integer, String> typedWriter = new DefaultKeyvalWrite<Integer, String>(TestUtil.meta,
+            new DefaultJdbcWrite(), 0, Integer.class, String.class);
+    final IKeyvalConditionalWrite<Integer, String> condWriter = new DefaultKeyvalConditionalWrite<Integer, String>(
+            TestUtil.meta, Integer.class, new DefaultJdbcRead(), new DefaultJdbcWrite(), 2);
     final IKeyvalRead<Integer, String> reader = new DefaultKeyvalRead<Integer, String>(TestUtil.meta, Integer.class, String.class);
+    final IKeyvalRead<Integer, String> chunkedReader = new DefaultKeyvalRead<Integer, String>(TestUtil.meta,
+            Integer.class, String.class, new DefaultJdbcRead(), 2);
+    final IKeyvalRead<Integer, String> bucketedReader = new DefaultKeyvalRead<Integer, String>(TestUtil.meta,
+            Integer.class, String.class, new DefaultJdbcRead(), 4, true);
 
     @Before
     public void setUp() throws Exception {
@@ -89,4 +103,55 @@ public class DefaultKeyvalTest {
         opsTestBatch.readTest(writer, reader);
     }
 
+    @Test
+    public void chunkedBatchVersionTest() {
+        opsTestBatch.versionTest(writer, chunkedReader);
+    }
+
+    @Test
+    public void chunkedBatchReadTest() {
+        opsTestBatch.readTest(writer, chunkedReader);
+    }
+
+    @Test
+    public void bucketedBatchVersionTest() {
+        opsTestBatch.versionTest(writer, bucketedReader);
+    }
+
+    @Test
+    public void bucketedBatchReadTest() {
+        opsTestBatch.readTest(writer, bucketedReader);
+    }
+
+    @Test
+    public void multiRowBatchInsertTest() {
+        opsTestBatch.insertTest(multiRowWriter, reader);
+    }
+
+    @Test
+    public void multiRowBatchCrudTest() {
+        opsTestBatch.crudTest(multiRowWriter, reader);
+    }
+
+    @Test
+    public void genericBatchTouchTest() {
+        opsTestBatch.touchTest(writer, reader);
+    }
+
+    @Test
+    public void typedBatchCrudTest() {
+        opsTestBatch.crudTest(typedWriter, reader);
+    }
+
+    @Test
+    public void typedBatchVersionTest() {
+        opsTestBatch.versionTest(typedWriter, reader);
+        opsTestBatch.touchTest(typedWriter, reader);
+    }
+
+    @Test
+    public void conditionalWriteTest() {
+        opsTestBatch.conditionalWriteTest(writer, condWriter, reader);
+    }
+
 }
@@ -0,0 +1,258 @@
+package net.sf.bitumen.test.jdbc;
+
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import net.sf.bitumen.jdbc.impl.DataSourceTemplate;
+import net.sf.bitumen.jdbc.impl.DefaultJdbcRead;
+import net.sf.bitumen.jdbc.impl.DefaultJdbcWrite;
+import net.sf.bitumen.jdbc.impl.IConnectionActivity;
+import net.sf.bitumen.jdbc.impl.IConnectionActivityNoResult;
+import net.sf.bitumen.jdbc.impl.JdbcUtil;
+import net.sf.bitumen.jdbc.kv.IKeyvalRead;
+import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalRead;
+import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.impl.ExpiringKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.impl.ExpiryReaper;
+import net.sf.bitumen.jdbc.kv.impl.TableMetadata;
+import net.sf.bitumen.test.helper.TestUtil;
+import net.sf.bitumen.util.ThreadUtil;
+import net.sf.bitumen.util.Util;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ExpiryTest {
+
+    private static final String TABLE_NAME = "session_ttl";
+    private static final TableMetadata meta = TestUtil.makeExpiryMeta(TABLE_NAME);
+
+    private static DataSource dataSource;
+    private static DataSourceTemplate dst;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        dataSource = TestUtil.makeTestDataSource();
+        dst = new DataSourceTemplate(dataSource);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        dst = null;
+        dataSource = null;
+    }
+
+    final ExpiringKeyvalWrite<Integer, String> writer = new ExpiringKeyvalWrite<Integer, String>(meta, 1,
+            TimeUnit.HOURS);
+    final IKeyvalRead<Integer, String> reader = new DefaultKeyvalRead<Integer, String>(meta, Integer.class,
+            String.class);
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.createExpiryTable(dataSource, TABLE_NAME);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtil.dropTable(dataSource, TABLE_NAME);
+    }
+
+    private static Timestamp past() {
+        return new Timestamp(Util.now().getTime() - 1000);
+    }
+
+    private void saveAndExpire(final Map<Integer, String> pairs, final List<Integer> expiredKeys) {
+        dst.withConnectionNoResult(new IConnectionActivityNoResult() {
+            public void execute(Connection conn) {
+                writer.batchSave(conn, pairs);
+                writer.batchExpire(conn, expiredKeys, past());
+            }
+        });
+    }
+
+    private long rowCount() {
+        return dst.withConnection(new IConnectionActivity<Long>() {
+            public Long execute(Connection conn) {
+                return new DefaultJdbcRead().queryForList(conn, "SELECT COUNT(*) FROM " + TABLE_NAME, null,
+                        JdbcUtil.makeColumnExtractor(Long.class, 1)).get(0);
+            }
+        });
+    }
+
+    @Test
+    public void expiredReadTest() {
+        final Map<Integer, String> pairs = new LinkedHashMap<Integer, String>();
+        pairs.put(1, "one");
+        pairs.put(2, "two");
+        pairs.put(3, "three");
+        saveAndExpire(pairs, Arrays.asList(2));
+        dst.withConnectionNoResult(new IConnectionActivityNoResult() {
+            public void execute(Connection conn) {
+                // never expires
+                writer.expire(conn, 3, null);
+
+                Assert.assertEquals("one", reader.read(conn, 1));
+                Assert.assertNull(reader.read(conn, 2));
+                Assert.assertEquals("three", reader.read(conn, 3));
+                Assert.assertNull(reader.contains(conn, 2));
+                Assert.assertNull(reader.readAll(conn, 2));
+                final Map<Integer, String> found = reader.batchRead(conn, Arrays.asList(1, 2, 3));
+                Assert.assertEquals(Arrays.asList(1, 3), Arrays.asList(found.keySet().toArray()));
+                final List<Long> versions = reader.batchContains(conn, Arrays.asList(1, 2, 3));
+                Assert.assertNotNull(versions.get(0));
+                Assert.assertNull(versions.get(1));
+                Assert.assertNotNull(versions.get(2));
+
+                // an expired pair can not be touched, but can be inserted again
+                Assert.assertNull(writer.touch(conn, 2));
+                final long version = writer.insert(conn, 2, "two again");
+                Assert.assertEquals("two again", reader.read(conn, 2));
+                Assert.assertTrue(reader.containsVersion(conn, 2, version));
+            }
+        });
+    }
+
+    @Test
+    public void writeExpiryTest() {
+        final ExpiringKeyvalWrite<Integer, String> multiRowWriter = new ExpiringKeyvalWrite<Integer, String>(meta,
+                new DefaultJdbcWrite(), 2, Integer.class, String.class, 1, TimeUnit.HOURS);
+        final Map<Integer, String> pairs = new LinkedHashMap<Integer, String>();
+        for (int i = 0; i < 5; i++) {
+            pairs.put(i, "value" + i);
+        }
+        dst.withConnectionNoResult(new IConnectionActivityNoResult() {
+            public void execute(Connection conn) {
+                // the expiry timestamp is written along with the pair
+                final long version = multiRowWriter.batchInsert(conn, pairs);
+                Assert.assertEquals(0, unexpiringRowCount(conn));
+                writer.expire(conn, 4, null);
+                Assert.assertNotNull(writer.swap(conn, 4, "swapped", version));
+                Assert.assertNotNull(writer.touch(conn, 3));
+                writer.save(conn, 5, "five");
+                Assert.assertEquals(0, unexpiringRowCount(conn));
+
+                // expired pairs can neither be swapped nor touched, but can be inserted again
+                writer.batchExpire(conn, Arrays.asList(0, 1, 2), past());
+                Assert.assertNull(writer.swap(conn, 0, "swapped", version));
+                Assert.assertNull(writer.batchTouch(conn, Arrays.asList(1, 2)));
+                final Map<Integer, String> again = new LinkedHashMap<Integer, String>();
+                again.put(0, "zero");
+                again.put(1, "one");
+                final long newVersion = multiRowWriter.batchInsert(conn, again);
+                final Map<Integer, Long> keyVersions = new LinkedHashMap<Integer, Long>();
+                keyVersions.put(0, newVersion);
+                keyVersions.put(1, newVersion);
+                Assert.assertEquals(again, reader.batchReadForVersion(conn, keyVersions));
+                Assert.assertNull(reader.read(conn, 2));
+            }
+        });
+    }
+
+    private static long unexpiringRowCount(final Connection conn) {
+        return new DefaultJdbcRead().queryForList(conn, "SELECT COUNT(*) FROM " + TABLE_NAME
+                + " WHERE expires IS NULL", null, JdbcUtil.makeColumnExtractor(Long.class, 1)).get(0);
+    }
+
+    @Test
+    public void nonExpiringWriteTest() {
+        final DefaultKeyvalWrite<Integer, String> plainWriter = new DefaultKeyvalWrite<Integer, String>(meta);
+        final Map<Integer, String> pairs = new LinkedHashMap<Integer, String>();
+        pairs.put(1, "one");
+        pairs.put(2, "two");
+        pairs.put(3, "three");
+        saveAndExpire(pairs, Arrays.asList(1, 2, 3));
+        dst.withConnectionNoResult(new IConnectionActivityNoResult() {
+            public void execute(Connection conn) {
+                // expired pairs are neither swapped nor touched
+                final long expiredVersion = new DefaultJdbcRead().queryForList(conn, "SELECT version FROM "
+                        + TABLE_NAME + " WHERE skey = 1", null, JdbcUtil.makeColumnExtractor(Long.class, 1)).get(0);
+                Assert.assertNull(plainWriter.swap(conn, 1, "swapped", expiredVersion));
+                Assert.assertNull(plainWriter.touch(conn, 1));
+
+                // writes clear the expiry timestamp, and an expired key can be inserted again
+                plainWriter.save(conn, 1, "one again");
+                plainWriter.insert(conn, 2, "two again");
+                Assert.assertEquals("one again", reader.read(conn, 1));
+                Assert.assertEquals("two again", reader.read(conn, 2));
+                Assert.assertNull(reader.read(conn, 3));
+                Assert.assertEquals(2, unexpiringRowCount(conn));
+            }
+        });
+    }
+
+    @Test
+    public void reapTest() {
+        final Map<Integer, String> pairs = new LinkedHashMap<Integer, String>();
+        for (int i = 0; i < 10; i++) {
+            pairs.put(i, "value" + i);
+        }
+        saveAndExpire(pairs, Arrays.asList(0, 2, 3, 5, 6, 8, 9));
+        final ExpiryReaper reaper = new ExpiryReaper(dataSource, meta, new DefaultJdbcRead(), new DefaultJdbcWrite(),
+                3, 1, 1, TimeUnit.HOURS);
+        try {
+            Assert.assertEquals(7, reaper.reap());
+            Assert.assertEquals(7, reaper.getReapedCount());
+            Assert.assertEquals(3, rowCount());
+            Assert.assertEquals(0, reaper.reap());
+        } finally {
+            reaper.close();
+        }
+        Assert.assertNull(reaper.getLastError());
+    }
+
+    @Test
+    public void interruptedReapTest() {
+        final Map<Integer, String> pairs = new LinkedHashMap<Integer, String>();
+        for (int i = 0; i < 10; i++) {
+            pairs.put(i, "value" + i);
+        }
+        saveAndExpire(pairs, Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7));
+        final ExpiryReaper reaper = new ExpiryReaper(dataSource, meta, new DefaultJdbcRead(), new DefaultJdbcWrite(),
+                3, TimeUnit.MINUTES.toMillis(1), 1, TimeUnit.HOURS);
+        try {
+            // an interrupted caller ends its pass early and stays interrupted, without closing the reaper
+            Thread.currentThread().interrupt();
+            Assert.assertEquals(3, reaper.reap());
+            Assert.assertTrue(Thread.interrupted());
+            Thread.currentThread().interrupt();
+            Assert.assertEquals(3, reaper.reap());
+            Assert.assertTrue(Thread.interrupted());
+            Assert.assertEquals(4, rowCount());
+        } finally {
+            reaper.close();
+        }
+    }
+
+    @Test
+    public void backgroundReapTest() {
+        final Map<Integer, String> pairs = new LinkedHashMap<Integer, String>();
+        for (int i = 0; i < 10; i++) {
+            pairs.put(i, "value" + i);
+        }
+        saveAndExpire(pairs, Arrays.asList(1, 4, 7));
+        final ExpiryReaper reaper = new ExpiryReaper(dataSource, meta, new DefaultJdbcRead(), new DefaultJdbcWrite(),
+                2, 1, 10, TimeUnit.MILLISECONDS);
+        try {
+            for (int i = 0; i < 200 && reaper.getReapedCount() < 3; i++) {
+                ThreadUtil.sleep(10);
+            }
+        } finally {
+            reaper.close();
+        }
+        Assert.assertNull(reaper.getLastError());
+        Assert.assertEquals(3, reaper.getReapedCount());
+        Assert.assertEquals(7, rowCount());
+    }
+
+}
@@ -0,0 +1,206 @@
+package net.sf.bitumen.test.jdbc;
+
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.sql.DataSource;
+
+import net.sf.bitumen.jdbc.impl.DataSourceTemplate;
+import net.sf.bitumen.jdbc.impl.DefaultJdbcRead;
+import net.sf.bitumen.jdbc.impl.IConnectionActivity;
+import net.sf.bitumen.jdbc.kv.IKeyvalScan;
+import net.sf.bitumen.jdbc.kv.IKeyvalVisitor;
+import net.sf.bitumen.jdbc.kv.IKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.KeyValueChange;
+import net.sf.bitumen.jdbc.kv.KeyValueVersion;
+import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalScan;
+import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.impl.ParallelKeyvalScan;
+import net.sf.bitumen.test.helper.TestUtil;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class KeyvalScanTest {
+
+    private static final int KEY_COUNT = 25;
+    private static final int PAGE_SIZE = 4;
+
+    private static DataSource dataSource;
+    private static DataSourceTemplate dst;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        dataSource = TestUtil.makeTestDataSource();
+        dst = new DataSourceTemplate(dataSource);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        dst = null;
+        dataSource = null;
+    }
+
+    final IKeyvalWrite<Integer, String> writer = new DefaultKeyvalWrite<Integer, String>(TestUtil.meta);
+    final IKeyvalScan<Integer, String> scanner = new DefaultKeyvalScan<Integer, String>(TestUtil.meta, Integer.class,
+            String.class);
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.createTable(dataSource);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtil.dropTable(dataSource);
+    }
+
+    private long save(final Map<Integer, String> pairs) {
+        return dst.withConnection(new IConnectionActivity<Long>() {
+            public Long execute(Connection conn) {
+                return writer.batchSave(conn, pairs);
+            }
+        });
+    }
+
+    @Test
+    public void scanTest() {
+        final Map<Integer, String> pairs = new LinkedHashMap<Integer, String>();
+        for (int i = KEY_COUNT; i > 0; i--) {
+            pairs.put(i, "value" + i);
+        }
+        final long version = save(pairs);
+
+        // iterate all pages
+        final List<Integer> keys = dst.withConnection(new IConnectionActivity<List<Integer>>() {
+            public List<Integer> execute(Connection conn) {
+                final List<Integer> result = new ArrayList<Integer>();
+                final Iterator<KeyValueVersion<Integer, String>> iter = scanner.scan(conn, null, PAGE_SIZE);
+                while (iter.hasNext()) {
+                    final KeyValueVersion<Integer, String> each = iter.next();
+                    Assert.assertEquals("value" + each.getKey(), each.getValue());
+                    Assert.assertEquals(Long.valueOf(version), each.getVersion());
+                    result.add(each.getKey());
+                }
+                return result;
+            }
+        });
+        Assert.assertEquals(KEY_COUNT, keys.size());
+        for (int i = 0; i < KEY_COUNT; i++) {
+            Assert.assertEquals(Integer.valueOf(i + 1), keys.get(i));
+        }
+
+        // resume after a key, and reach the short last page
+        final List<KeyValueVersion<Integer, String>> page = dst.withConnection(
+                new IConnectionActivity<List<KeyValueVersion<Integer, String>>>() {
+                    public List<KeyValueVersion<Integer, String>> execute(Connection conn) {
+                        return scanner.scanPage(conn, 23, PAGE_SIZE);
+                    }
+                });
+        Assert.assertEquals(2, page.size());
+        Assert.assertEquals(Integer.valueOf(24), page.get(0).getKey());
+        Assert.assertEquals(Integer.valueOf(25), page.get(1).getKey());
+    }
+
+    @Test
+    public void changesTest() throws InterruptedException {
+        final Map<Integer, String> pairs = new LinkedHashMap<Integer, String>();
+        for (int i = 1; i <= KEY_COUNT; i++) {
+            pairs.put(i, "value" + i);
+        }
+        save(pairs);
+        Thread.sleep(20);
+        final Map<Integer, String> updates = new LinkedHashMap<Integer, String>();
+        updates.put(30, "thirty");
+        updates.put(7, "seven");
+        updates.put(3, "three");
+        final long version = save(updates);
+
+        // all changes, ordered by update timestamp and key
+        final List<KeyValueChange<Integer, String>> all = dst.withConnection(
+                new IConnectionActivity<List<KeyValueChange<Integer, String>>>() {
+                    public List<KeyValueChange<Integer, String>> execute(Connection conn) {
+                        final List<KeyValueChange<Integer, String>> result =
+                                new ArrayList<KeyValueChange<Integer, String>>();
+                        final Iterator<KeyValueChange<Integer, String>> iter = scanner.changes(conn,
+                                new Timestamp(0), null, PAGE_SIZE);
+                        while (iter.hasNext()) {
+                            result.add(iter.next());
+                        }
+                        return result;
+                    }
+                });
+        Assert.assertEquals(KEY_COUNT + 1, all.size());
+        final List<KeyValueChange<Integer, String>> recent = all.subList(KEY_COUNT - 2, KEY_COUNT + 1);
+        Assert.assertEquals(Integer.valueOf(3), recent.get(0).getKey());
+        Assert.assertEquals(Integer.valueOf(7), recent.get(1).getKey());
+        Assert.assertEquals(Integer.valueOf(30), recent.get(2).getKey());
+        Assert.assertEquals("seven", recent.get(1).getValue());
+        Assert.assertEquals(Long.valueOf(version), recent.get(1).getVersion());
+        for (int i = 1; i < all.size(); i++) {
+            Assert.assertFalse(all.get(i).getUpdated().before(all.get(i - 1).getUpdated()));
+        }
+
+        // resume after the first recent change
+        final KeyValueChange<Integer, String> first = recent.get(0);
+        final List<KeyValueChange<Integer, String>> rest = dst.withConnection(
+                new IConnectionActivity<List<KeyValueChange<Integer, String>>>() {
+                    public List<KeyValueChange<Integer, String>> execute(Connection conn) {
+                        return scanner.changesPage(conn, first.getUpdated(), first.getKey(), PAGE_SIZE);
+                    }
+                });
+        Assert.assertEquals(recent.subList(1, 3), rest);
+    }
+
+    @Test
+    public void parallelScanTest() {
+        final int count = 1000;
+        final Map<Integer, String> pairs = new LinkedHashMap<Integer, String>();
+        for (int i = 0; i < count; i++) {
+            pairs.put(i, "value" + i);
+        }
+        final long version = save(pairs);
+        final ParallelKeyvalScan<Integer, String> parallelScanner = new ParallelKeyvalScan<Integer, String>(
+                dataSource, TestUtil.meta, Integer.class, String.class, new DefaultJdbcRead(), 3, 7);
+
+        // sampled boundaries
+        final List<Integer> boundaries = parallelScanner.sampleBoundaries(12);
+        Assert.assertEquals(11, boundaries.size());
+        for (int i = 0; i < boundaries.size(); i++) {
+            // even ranges: boundary i is about the last key of range i
+            Assert.assertEquals((i + 1) * count / 12.0, boundaries.get(i) + 1, 5.0);
+        }
+        final ConcurrentMap<Integer, String> found = new ConcurrentHashMap<Integer, String>();
+        final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final IKeyvalVisitor<Integer, String> visitor = new IKeyvalVisitor<Integer, String>() {
+            public void visit(KeyValueVersion<Integer, String> triplet) {
+                Assert.assertEquals(Long.valueOf(version), triplet.getVersion());
+                Assert.assertNull(found.put(triplet.getKey(), triplet.getValue()));
+                threads.add(Thread.currentThread().getName());
+            }
+        };
+        Assert.assertEquals(count, parallelScanner.scan(visitor));
+        Assert.assertEquals(pairs, found);
+        Assert.assertTrue(threads.toString(), threads.size() <= 3); // one connection per thread
+
+        // explicit boundaries, including ranges without keys
+        found.clear();
+        Assert.assertEquals(count, parallelScanner.scan(Arrays.asList(-5, 0, 499, 500, 2000), visitor));
+        Assert.assertEquals(pairs, found);
+    }
+
+}
@@ -2,6 +2,7 @@ package net.sf.bitumen.test.jdbc;
 
 import javax.sql.DataSource;
 
+import net.sf.bitumen.jdbc.impl.DefaultJdbcWrite;
 import net.sf.bitumen.jdbc.kv.IKeyvalRead;
 import net.sf.bitumen.jdbc.kv.IKeyvalWrite;
 import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalRead;
@@ -161,4 +162,15 @@ public class MysqlKeyvalTest {
         }
     }
 
+    @Test
+    public void mysqlMultiRowBatchCrudTest() {
+        if (TestUtil.isMysqlTestEnabled()) {
+            System.out.println("Running mysqlMultiRowBatchCrudTest()");
+            final IKeyvalWrite<Integer, String> multiRowWriter = new MysqlKeyvalWrite<Integer, String>(TestUtil.meta,
+                    false, new DefaultJdbcWrite(), 2);
+            opsTestBatch.insertTest(multiRowWriter, reader);
+            opsTestBatch.crudTest(multiRowWriter, reader);
+        }
+    }
+
 }
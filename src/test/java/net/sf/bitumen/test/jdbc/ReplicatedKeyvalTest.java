@@ -1,20 +1,40 @@
 package net.sf.bitumen.test.jdbc;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sql.DataSource;
 
+import net.sf.bitumen.jdbc.impl.IConnectionActivity;
 import net.sf.bitumen.jdbc.kv.IKeyvalRead;
 import net.sf.bitumen.jdbc.kv.IKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalRead;
 import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalWrite;
 import net.sf.bitumen.jdbc.kv.impl.IReplicationSlavesPointer;
+import net.sf.bitumen.jdbc.kv.impl.ISlaveSelector;
 import net.sf.bitumen.jdbc.kv.impl.ReplicatedKeyvalRead;
+import net.sf.bitumen.jdbc.kv.impl.ReplicationLagTracker;
+import net.sf.bitumen.jdbc.kv.impl.SlaveSelectors;
 import net.sf.bitumen.test.helper.KeyvalTestBatch;
 import net.sf.bitumen.test.helper.KeyvalTestSingle;
 import net.sf.bitumen.test.helper.TestUtil;
 
 import org.junit.After;
 import org.junit.AfterClass;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -24,16 +44,20 @@ public class ReplicatedKeyvalTest {
     private static DataSource dataSource;
     private static KeyvalTestSingle opsTestSingle;
     private static KeyvalTestBatch  opsTestBatch;
+    private static ExecutorService  executor;
 
     @BeforeClass
     public static void setUpBeforeClass() throws Exception {
         dataSource = TestUtil.makeTestDataSource();
         opsTestSingle = new KeyvalTestSingle(dataSource);
         opsTestBatch = new KeyvalTestBatch(dataSource);
+        executor = Executors.newFixedThreadPool(2);
     }
 
     @AfterClass
     public static void tearDownAfterClass() throws Exception {
+        executor.shutdown();
+        executor = null;
         opsTestSingle = null;
         opsTestBatch = null;
         dataSource = null;
@@ -46,6 +70,20 @@ public class ReplicatedKeyvalTest {
             return slaveDataSources;
         }
     });
+    final IKeyvalRead<Integer, String> parallelReader = new ReplicatedKeyvalRead<Integer, String>(
+            new IReplicationSlavesPointer() {
+                public List<DataSource> getDataSources() {
+                    return slaveDataSources;
+                }
+            }, new DefaultKeyvalRead<Integer, String>(TestUtil.meta, Integer.class, String.class), executor);
+    final IKeyvalRead<Integer, String> selectingReader = new ReplicatedKeyvalRead<Integer, String>(
+            new IReplicationSlavesPointer() {
+                public List<DataSource> getDataSources() {
+                    return slaveDataSources;
+                }
+            }, new DefaultKeyvalRead<Integer, String>(TestUtil.meta, Integer.class, String.class), null,
+            SlaveSelectors.circuitBreaking(SlaveSelectors.powerOfTwoChoices(SlaveSelectors.DEFAULT_EWMA_ALPHA), 3,
+                    1, TimeUnit.SECONDS));
 
     @Before
     public void setUp() throws Exception {
@@ -87,4 +125,233 @@ public class ReplicatedKeyvalTest {
         opsTestBatch.readTest(writer, reader);
     }
 
+    @Test
+    public void parallelCrudTest() {
+        opsTestSingle.crudTest(writer, parallelReader);
+    }
+
+    @Test
+    public void parallelBatchCrudTest() {
+        opsTestBatch.crudTest(writer, parallelReader);
+    }
+
+    @Test
+    public void parallelReadTest() {
+        opsTestSingle.readTest(writer, parallelReader);
+    }
+
+    @Test
+    public void parallelBatchReadTest() {
+        opsTestBatch.readTest(writer, parallelReader);
+    }
+
+    @Test
+    public void selectingCrudTest() {
+        opsTestSingle.crudTest(writer, selectingReader);
+    }
+
+    @Test
+    public void selectingBatchReadTest() {
+        opsTestBatch.readTest(writer, selectingReader);
+    }
+
+    @Test
+    public void slaveSelectorTest() {
+        final DataSource one = slaveDataSources.get(0), two = slaveDataSources.get(1);
+
+        // least outstanding
+        final ISlaveSelector leastOutstanding = SlaveSelectors.leastOutstanding();
+        leastOutstanding.readStarted(one);
+        Assert.assertSame(two, leastOutstanding.select(slaveDataSources));
+        Assert.assertSame(two, leastOutstanding.select(slaveDataSources));
+        leastOutstanding.readFinished(one, 1000, false);
+        leastOutstanding.readStarted(two);
+        Assert.assertSame(one, leastOutstanding.select(slaveDataSources));
+
+        // EWMA latency
+        final ISlaveSelector ewma = SlaveSelectors.ewmaLatency(SlaveSelectors.DEFAULT_EWMA_ALPHA);
+        ewma.readStarted(one);
+        ewma.readFinished(one, 5000000, false);
+        ewma.readStarted(two);
+        ewma.readFinished(two, 1000000, false);
+        Assert.assertSame(two, ewma.select(slaveDataSources));
+        // a fast failing slave is penalized rather than preferred
+        ewma.readStarted(two);
+        ewma.readFinished(two, 1000, true);
+        Assert.assertSame(one, ewma.select(slaveDataSources));
+
+        // circuit breaking on stale reads, and on failures
+        final ISlaveSelector breaker = SlaveSelectors.circuitBreaking(SlaveSelectors.roundRobin(), 2, 1,
+                TimeUnit.HOURS);
+        breaker.readReconciled(one, true);
+        breaker.readReconciled(one, false);
+        breaker.readReconciled(one, true);
+        breaker.readReconciled(one, true);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertSame(two, breaker.select(slaveDataSources));
+        }
+        breaker.readStarted(two);
+        breaker.readFinished(two, 1000, true);
+        breaker.readStarted(two);
+        breaker.readFinished(two, 1000, true);
+        Assert.assertNull(breaker.select(slaveDataSources));
+
+        // circuit breaking on reads slower than the timeout
+        final ISlaveSelector timeoutBreaker = SlaveSelectors.circuitBreaking(SlaveSelectors.roundRobin(), 2, 1,
+                TimeUnit.HOURS, 100, TimeUnit.MILLISECONDS);
+        timeoutBreaker.readFinished(one, TimeUnit.SECONDS.toNanos(1), false);
+        timeoutBreaker.readFinished(one, TimeUnit.MILLISECONDS.toNanos(1), false);
+        timeoutBreaker.readFinished(one, TimeUnit.SECONDS.toNanos(1), false);
+        Assert.assertNotNull(timeoutBreaker.select(slaveDataSources));
+        timeoutBreaker.readFinished(one, TimeUnit.SECONDS.toNanos(1), false);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertSame(two, timeoutBreaker.select(slaveDataSources));
+        }
+    }
+
+    @Test
+    public void hangingSlaveTest() throws Exception {
+        opsTestSingle.dst.withConnection(new IConnectionActivity<Long>() {
+            public Long execute(Connection conn) {
+                return writer.save(conn, 1, "one");
+            }
+        });
+        for (ISlaveSelector selector: Arrays.asList(SlaveSelectors.ewmaLatency(SlaveSelectors.DEFAULT_EWMA_ALPHA),
+                SlaveSelectors.powerOfTwoChoices(SlaveSelectors.DEFAULT_EWMA_ALPHA))) {
+            final CountDownLatch hanging = new CountDownLatch(1), release = new CountDownLatch(1);
+            final AtomicInteger hangingReads = new AtomicInteger();
+            // slave that blocks inside its first read until released
+            final DataSource delegate = slaveDataSources.get(0);
+            final DataSource hangingSlave = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+                    new Class<?>[] {DataSource.class}, new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            if (method.getName().equals("getConnection") && hangingReads.incrementAndGet() == 1) {
+                                hanging.countDown();
+                                release.await();
+                            }
+                            try {
+                                return method.invoke(delegate, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        }
+                    });
+            final List<DataSource> slaves = new ArrayList<DataSource>();
+            slaves.add(hangingSlave);
+            slaves.addAll(slaveDataSources);
+            final IKeyvalRead<Integer, String> hangingReader = new ReplicatedKeyvalRead<Integer, String>(
+                    new IReplicationSlavesPointer() {
+                        public List<DataSource> getDataSources() {
+                            return slaves;
+                        }
+                    }, new DefaultKeyvalRead<Integer, String>(TestUtil.meta, Integer.class, String.class), null,
+                    selector);
+            final IConnectionActivity<String> readActivity = new IConnectionActivity<String>() {
+                public String execute(Connection conn) {
+                    return hangingReader.read(conn, 1);
+                }
+            };
+            final Thread first = new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < 1000 && hanging.getCount() > 0; i++) { // until a read goes to the slave
+                        opsTestSingle.dst.withConnection(readActivity);
+                    }
+                }
+            });
+            first.start();
+            try {
+                Assert.assertTrue(hanging.await(5, TimeUnit.SECONDS));
+                for (int i = 0; i < 20; i++) {
+                    Assert.assertEquals("one", opsTestSingle.dst.withConnection(readActivity));
+                }
+                Assert.assertEquals(1, hangingReads.get());
+            } finally {
+                release.countDown();
+                first.join(5000);
+            }
+        }
+    }
+
+    @Test
+    public void lagTrackerTest() {
+        final DataSource one = slaveDataSources.get(0), two = slaveDataSources.get(1);
+        final ReplicationLagTracker<Integer, String> tracker = new ReplicationLagTracker<Integer, String>(
+                SlaveSelectors.roundRobin(), new IReplicationSlavesPointer() {
+                    public List<DataSource> getDataSources() {
+                        return slaveDataSources;
+                    }
+                }, dataSource, writer, new DefaultKeyvalRead<Integer, String>(TestUtil.meta, Integer.class,
+                        String.class), -1, "heartbeat", 1, TimeUnit.SECONDS, 0.5);
+        tracker.run();
+        tracker.run();
+        Assert.assertEquals(0, tracker.getEstimatedLag(one, TimeUnit.NANOSECONDS));
+        Assert.assertEquals(0, tracker.getEstimatedLag(two, TimeUnit.NANOSECONDS));
+        Assert.assertNotNull(tracker.select(slaveDataSources));
+
+        // stale reads route away from the slave, and fresh probes bring it back
+        for (int i = 0; i < 10; i++) {
+            tracker.readReconciled(one, true);
+        }
+        Assert.assertFalse(tracker.isWithinLimits(one));
+        for (int i = 0; i < 4; i++) {
+            Assert.assertSame(two, tracker.select(slaveDataSources));
+        }
+        for (int i = 0; i < 10; i++) {
+            tracker.probe(one);
+        }
+        Assert.assertTrue(tracker.isWithinLimits(one));
+
+        // replicated reads through the tracker
+        final IKeyvalRead<Integer, String> trackedReader = new ReplicatedKeyvalRead<Integer, String>(
+                new IReplicationSlavesPointer() {
+                    public List<DataSource> getDataSources() {
+                        return slaveDataSources;
+                    }
+                }, new DefaultKeyvalRead<Integer, String>(TestUtil.meta, Integer.class, String.class), null,
+                tracker);
+        opsTestBatch.readTest(writer, trackedReader);
+
+        // a heartbeat key shared with another tracker is reported
+        final ReplicationLagTracker<Integer, String> other = new ReplicationLagTracker<Integer, String>(
+                SlaveSelectors.roundRobin(), new IReplicationSlavesPointer() {
+                    public List<DataSource> getDataSources() {
+                        return slaveDataSources;
+                    }
+                }, dataSource, writer, new DefaultKeyvalRead<Integer, String>(TestUtil.meta, Integer.class,
+                        String.class), -1, "heartbeat", 1, TimeUnit.SECONDS, 0.5);
+        other.heartbeat();
+        try {
+            tracker.heartbeat();
+            Assert.fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        tracker.heartbeat();
+    }
+
+    @Test
+    public void largeBatchReadTest() {
+        final Map<Integer, String> pairs = new LinkedHashMap<Integer, String>();
+        for (int i = 0; i < 5000; i++) {
+            pairs.put(i, "value-" + i);
+        }
+        final List<Integer> keys = new ArrayList<Integer>(pairs.keySet());
+        keys.add(-2); // not found
+        opsTestSingle.dst.withConnection(new IConnectionActivity<Long>() {
+            public Long execute(Connection conn) {
+                return writer.batchSave(conn, pairs);
+            }
+        });
+        for (final IKeyvalRead<Integer, String> each: Arrays.asList(reader, parallelReader)) {
+            final Map<Integer, String> result = opsTestSingle.dst.withConnection(
+                    new IConnectionActivity<Map<Integer, String>>() {
+                public Map<Integer, String> execute(Connection conn) {
+                    return each.batchRead(conn, keys);
+                }
+            });
+            Assert.assertEquals(pairs, result);
+            Assert.assertEquals(new ArrayList<Integer>(pairs.keySet()), new ArrayList<Integer>(result.keySet()));
+        }
+    }
+
 }
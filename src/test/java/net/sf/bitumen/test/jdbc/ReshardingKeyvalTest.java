@@ -0,0 +1,214 @@
+package net.sf.bitumen.test.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
+
+import net.sf.bitumen.jdbc.kv.ValueVersion;
+import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalRead;
+import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.impl.ReshardingKeyvalStore;
+import net.sf.bitumen.jdbc.kv.impl.Shard;
+import net.sf.bitumen.jdbc.kv.impl.ShardedKeyvalStore;
+import net.sf.bitumen.test.helper.TestUtil;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ReshardingKeyvalTest {
+
+    private static final int KEY_COUNT = 250;
+
+    private static DataSource dataSource;
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        dataSource = TestUtil.makeTestDataSource();
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        executor.shutdown();
+        executor = null;
+        dataSource = null;
+    }
+
+    ShardedKeyvalStore<Integer, String> oldStore;
+    ShardedKeyvalStore<Integer, String> newStore;
+    ReshardingKeyvalStore<Integer, String> store;
+
+    private static ShardedKeyvalStore<Integer, String> makeStore(String prefix, int shardCount) {
+        final List<Shard<Integer, String>> shards = new ArrayList<Shard<Integer, String>>();
+        for (int i = 0; i < shardCount; i++) {
+            TestUtil.createTable(dataSource, prefix + i);
+            shards.add(new Shard<Integer, String>(dataSource, TestUtil.makeMeta(prefix + i), Integer.class,
+                    String.class));
+        }
+        return new ShardedKeyvalStore<Integer, String>(shards);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        oldStore = makeStore("session_old", 2);
+        newStore = makeStore("session_new", 3);
+        store = new ReshardingKeyvalStore<Integer, String>(oldStore, newStore, 40);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            TestUtil.dropTable(dataSource, "session_old" + i);
+        }
+        for (int i = 0; i < 3; i++) {
+            TestUtil.dropTable(dataSource, "session_new" + i);
+        }
+    }
+
+    @Test
+    public void migrateTest() throws Exception {
+        final Map<Integer, String> pairs = new LinkedHashMap<Integer, String>();
+        final List<Integer> keys = new ArrayList<Integer>();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            pairs.put(i, "value" + i);
+            keys.add(i);
+        }
+        oldStore.batchSave(pairs); // existing data, before resharding
+
+        // dual-write before migration
+        final long version = store.save(1000, "dual");
+        Assert.assertEquals(Long.valueOf(version), newStore.contains(1000));
+        store.delete(0);
+        Assert.assertNull(newStore.contains(0));
+
+        // concurrent writes during migration - the later ones may go to the new mapping only, after switch over
+        final Future<?> migration = executor.submit(store);
+        final Map<Integer, Long> updated = new LinkedHashMap<Integer, Long>();
+        for (int i = 1; i < 50; i++) {
+            updated.put(i, store.save(i, "updated" + i));
+        }
+        migration.get();
+        Assert.assertTrue(store.isSwitched());
+        Assert.assertTrue(store.getRepairCount() >= KEY_COUNT);
+
+        // versions and values are carried over
+        final List<Integer> untouched = new ArrayList<Integer>(keys.subList(50, KEY_COUNT));
+        untouched.add(0);
+        untouched.add(1000);
+        Assert.assertEquals(oldStore.batchContains(untouched), newStore.batchContains(untouched));
+        Assert.assertEquals(oldStore.batchReadAll(untouched), newStore.batchReadAll(untouched));
+        for (final Map.Entry<Integer, Long> each: updated.entrySet()) {
+            Assert.assertEquals(new ValueVersion<String>("updated" + each.getKey(), each.getValue()),
+                    newStore.readAll(each.getKey()));
+        }
+        Assert.assertNull(store.read(0));
+        Assert.assertEquals("updated1", store.read(1));
+        Assert.assertEquals("value200", store.read(200));
+
+        // after switch over, writes go to the new mapping only, and old versions remain valid
+        Assert.assertNotNull(store.swap(1000, "swapped", version));
+        Assert.assertEquals("swapped", newStore.read(1000));
+        Assert.assertEquals("dual", oldStore.read(1000));
+    }
+
+    @Test
+    public void steadyWritesTest() throws Exception {
+        final Map<Integer, String> pairs = new LinkedHashMap<Integer, String>();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            pairs.put(i, "value" + i);
+        }
+        final Map<Integer, ValueVersion<String>> expected = new HashMap<Integer, ValueVersion<String>>();
+        for (final Map.Entry<Integer, Long> each: oldStore.batchSave(pairs).entrySet()) {
+            expected.put(each.getKey(), new ValueVersion<String>(pairs.get(each.getKey()), each.getValue()));
+        }
+
+        // keep writing until migration returns
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final Future<Integer> writes = executor.submit(new Callable<Integer>() {
+            public Integer call() {
+                final Random random = new Random(42);
+                int count = 0;
+                while (!done.get()) {
+                    final int key = random.nextInt(KEY_COUNT);
+                    final String value = "written" + count++;
+                    expected.put(key, new ValueVersion<String>(value, store.save(key, value)));
+                }
+                return count;
+            }
+        });
+        try {
+            store.migrate();
+        } finally {
+            done.set(true);
+        }
+        Assert.assertTrue(writes.get() > 0);
+        Assert.assertTrue(store.isSwitched());
+
+        final List<Integer> all = new ArrayList<Integer>(pairs.keySet());
+        Assert.assertEquals(expected, newStore.batchReadAll(all));
+        Assert.assertEquals(expected, store.batchReadAll(all));
+    }
+
+    @Test
+    public void mirrorFailureTest() throws Exception {
+        // target mapping whose data source fails with a non-JDBC exception while the flag is set
+        final AtomicBoolean failing = new AtomicBoolean(true);
+        final DataSource flaky = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+                new Class<?>[] {DataSource.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (failing.get()) {
+                            throw new IllegalStateException("target unavailable");
+                        }
+                        try {
+                            return method.invoke(dataSource, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+        final List<Shard<Integer, String>> shards = new ArrayList<Shard<Integer, String>>();
+        shards.add(new Shard<Integer, String>(flaky, TestUtil.makeMeta("session_new0"), Integer.class,
+                String.class));
+        final ReshardingKeyvalStore<Integer, String> flakyStore = new ReshardingKeyvalStore<Integer, String>(
+                oldStore, new ShardedKeyvalStore<Integer, String>(shards), 40);
+
+        // the source write succeeds, and the key is synced again before the switch over
+        final long version = flakyStore.save(1, "one");
+        Assert.assertEquals(Long.valueOf(version), oldStore.contains(1));
+        Assert.assertEquals(1, flakyStore.getUnsyncedCount());
+        failing.set(false);
+        flakyStore.migrate();
+        Assert.assertTrue(flakyStore.isSwitched());
+        Assert.assertEquals(0, flakyStore.getUnsyncedCount());
+        Assert.assertEquals(new ValueVersion<String>("one", version), flakyStore.readAll(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shardWithoutMetadataTest() {
+        final List<Shard<Integer, String>> shards = new ArrayList<Shard<Integer, String>>();
+        shards.add(new Shard<Integer, String>(dataSource, new DefaultKeyvalRead<Integer, String>(
+                TestUtil.makeMeta("session_new0"), Integer.class, String.class),
+                new DefaultKeyvalWrite<Integer, String>(TestUtil.makeMeta("session_new0"))));
+        new ReshardingKeyvalStore<Integer, String>(oldStore, new ShardedKeyvalStore<Integer, String>(shards));
+    }
+
+}
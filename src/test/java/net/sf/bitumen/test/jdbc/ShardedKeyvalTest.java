@@ -0,0 +1,161 @@
+package net.sf.bitumen.test.jdbc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sql.DataSource;
+
+import net.sf.bitumen.jdbc.kv.IKeyvalStore;
+import net.sf.bitumen.jdbc.kv.KeyValueVersion;
+import net.sf.bitumen.jdbc.kv.ValueVersion;
+import net.sf.bitumen.jdbc.kv.impl.Shard;
+import net.sf.bitumen.jdbc.kv.impl.ShardedKeyvalStore;
+import net.sf.bitumen.test.helper.TestUtil;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ShardedKeyvalTest {
+
+    private static final int SHARD_COUNT = 3;
+
+    private static DataSource dataSource;
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        dataSource = TestUtil.makeTestDataSource();
+        executor = Executors.newFixedThreadPool(SHARD_COUNT);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        executor.shutdown();
+        executor = null;
+        dataSource = null;
+    }
+
+    ShardedKeyvalStore<Integer, String> store;
+
+    @Before
+    public void setUp() throws Exception {
+        final List<Shard<Integer, String>> shards = new ArrayList<Shard<Integer, String>>();
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            TestUtil.createTable(dataSource, "session_" + i);
+            shards.add(new Shard<Integer, String>(dataSource, TestUtil.makeMeta("session_" + i), Integer.class,
+                    String.class));
+        }
+        store = new ShardedKeyvalStore<Integer, String>(shards, executor);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            TestUtil.dropTable(dataSource, "session_" + i);
+        }
+    }
+
+    @Test
+    public void jumpHashTest() {
+        int moved = 0;
+        for (long key = 0; key < 10000; key++) {
+            final int before = ShardedKeyvalStore.jumpHash(key, 10);
+            final int after = ShardedKeyvalStore.jumpHash(key, 11);
+            Assert.assertTrue(before >= 0 && before < 10);
+            if (before != after) {
+                Assert.assertEquals(10, after); // keys only move to the new bucket
+                moved++;
+            }
+        }
+        Assert.assertTrue("moved " + moved, moved > 500 && moved < 1400); // ~1/11 of the keys
+    }
+
+    @Test
+    public void singleKeyTest() {
+        final IKeyvalStore<Integer, String> kv = store;
+        final long version = kv.insert(1, "abc");
+        Assert.assertEquals(Long.valueOf(version), kv.contains(1));
+        Assert.assertEquals("abc", kv.readForVersion(1, version));
+        final Long swapped = kv.swap(1, "xyz", version);
+        Assert.assertNotNull(swapped);
+        Assert.assertEquals(new ValueVersion<String>("xyz", swapped), kv.readAll(1));
+        kv.remove(1, swapped);
+        Assert.assertNull(kv.read(1));
+    }
+
+    @Test
+    public void batchTest() {
+        final Map<Integer, String> pairs = new LinkedHashMap<Integer, String>();
+        final List<Integer> keys = new ArrayList<Integer>();
+        for (int i = 100; i > 0; i--) {
+            pairs.put(i, "value" + i);
+            keys.add(i);
+        }
+        final Map<Integer, Long> versions = store.batchSave(pairs);
+        Assert.assertEquals(keys, new ArrayList<Integer>(versions.keySet()));
+        final boolean[] used = new boolean[SHARD_COUNT];
+        for (final Integer key: keys) {
+            used[store.shardIndex(key)] = true;
+        }
+        Assert.assertTrue(Arrays.toString(used), used[0] && used[1] && used[2]);
+
+        // results are merged in request order
+        final List<Integer> requested = new ArrayList<Integer>(keys);
+        requested.add(1, 1000);
+        final Map<Integer, String> read = store.batchRead(requested);
+        Assert.assertEquals(keys, new ArrayList<Integer>(read.keySet()));
+        Assert.assertEquals(pairs, read);
+        final List<Long> found = store.batchContains(requested);
+        Assert.assertNull(found.get(1));
+        for (int i = 0; i < keys.size(); i++) {
+            Assert.assertEquals(versions.get(keys.get(i)), found.get(i == 0 ? 0 : i + 1));
+        }
+        Assert.assertEquals(pairs, store.batchReadForVersion(versions));
+
+        final List<KeyValueVersion<Integer, String>> triplets = new ArrayList<KeyValueVersion<Integer, String>>();
+        for (final Integer key: keys.subList(0, 10)) {
+            triplets.add(new KeyValueVersion<Integer, String>(key, "swapped", versions.get(key)));
+        }
+        final Map<Integer, Long> swapped = store.batchSwap(triplets);
+        Assert.assertEquals(10, swapped.size());
+        for (final Map.Entry<Integer, Long> each: swapped.entrySet()) {
+            Assert.assertEquals(new ValueVersion<String>("swapped", each.getValue()), store.readAll(each.getKey()));
+        }
+
+        // stale versions and missing keys are reported per key, not per shard
+        final List<KeyValueVersion<Integer, String>> mixed = new ArrayList<KeyValueVersion<Integer, String>>();
+        for (final Integer key: keys.subList(0, 20)) {
+            mixed.add(new KeyValueVersion<Integer, String>(key, "again", versions.get(key)));
+        }
+        final Map<Integer, Long> reswapped = store.batchSwap(mixed);
+        Assert.assertEquals(keys.subList(0, 20), new ArrayList<Integer>(reswapped.keySet()));
+        for (final Integer key: keys.subList(0, 20)) {
+            final Long version = reswapped.get(key);
+            if (key > keys.get(10)) { // swapped above
+                Assert.assertNull(version);
+                Assert.assertEquals("swapped", store.read(key));
+            } else {
+                Assert.assertNotNull(version);
+                Assert.assertEquals(new ValueVersion<String>("again", version), store.readAll(key));
+            }
+        }
+        final Map<Integer, Long> touched = store.batchTouch(Arrays.asList(keys.get(0), 1000, keys.get(1)));
+        Assert.assertEquals(Arrays.asList(keys.get(0), 1000, keys.get(1)), new ArrayList<Integer>(touched.keySet()));
+        Assert.assertEquals(store.contains(keys.get(0)), touched.get(keys.get(0)));
+        Assert.assertNull(touched.get(1000));
+
+        store.batchDelete(keys.subList(0, 50));
+        Assert.assertTrue(store.batchRead(keys.subList(0, 50)).isEmpty());
+        Assert.assertEquals(50, store.batchReadAll(keys).size());
+    }
+
+}
@@ -0,0 +1,157 @@
+package net.sf.bitumen.test.jdbc;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import javax.sql.DataSource;
+
+import net.sf.bitumen.jdbc.impl.DataSourceTemplate;
+import net.sf.bitumen.jdbc.impl.DefaultJdbcWrite;
+import net.sf.bitumen.jdbc.impl.IConnectionActivityNoResult;
+import net.sf.bitumen.jdbc.kv.IKeyvalRead;
+import net.sf.bitumen.jdbc.kv.IKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.IValueCodec;
+import net.sf.bitumen.jdbc.kv.ValueVersion;
+import net.sf.bitumen.jdbc.kv.impl.CodecKeyvalRead;
+import net.sf.bitumen.jdbc.kv.impl.CodecKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalRead;
+import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.impl.TableMetadata;
+import net.sf.bitumen.jdbc.kv.impl.ValueCodecs;
+import net.sf.bitumen.test.helper.TestUtil;
+import net.sf.bitumen.util.Util;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ValueCodecTest {
+
+    private static final String TABLE_NAME = "session_bin";
+    private static final TableMetadata meta = TestUtil.makeMeta(TABLE_NAME);
+
+    private static DataSource dataSource;
+    private static DataSourceTemplate dst;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        dataSource = TestUtil.makeTestDataSource();
+        dst = new DataSourceTemplate(dataSource);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        dst = null;
+        dataSource = null;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.createBinaryTable(dataSource, TABLE_NAME);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtil.dropTable(dataSource, TABLE_NAME);
+    }
+
+    private static String largeValue(int n) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append("attribute").append(i % 10).append('=').append("some session value;");
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void deflateTest() {
+        final IValueCodec<String> codec = ValueCodecs.deflate(ValueCodecs.STRING, 64, 6);
+
+        // below threshold - stored raw
+        final byte[] small = codec.encode("small");
+        Assert.assertEquals(6, small.length);
+        Assert.assertEquals("small", codec.decode(small));
+
+        // compressible - stored compressed
+        final String large = largeValue(200);
+        final byte[] compressed = codec.encode(large);
+        Assert.assertTrue(compressed.length * 5 < large.length());
+        Assert.assertEquals(large, codec.decode(compressed));
+
+        // incompressible - stored raw
+        final byte[] random = new byte[1000];
+        new Random(42).nextBytes(random);
+        final IValueCodec<byte[]> bytesCodec = ValueCodecs.deflate(ValueCodecs.BYTES);
+        final byte[] encoded = bytesCodec.encode(random);
+        Assert.assertEquals(random.length + 1, encoded.length);
+        Assert.assertArrayEquals(random, bytesCodec.decode(encoded));
+
+        try {
+            codec.decode(new byte[] {9, 1, 2});
+            Assert.fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            Util.echo(e.getMessage());
+        }
+
+        // corrupt uncompressed length - rejected before allocating
+        for (byte[] corrupt: Arrays.asList(new byte[] {1, (byte) 0x80, 0, 0, 0, 1, 2},
+                new byte[] {1, 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 1, 2})) {
+            try {
+                codec.decode(corrupt);
+                Assert.fail("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                Util.echo(e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void serializingTest() {
+        final IValueCodec<HashMap> codec = ValueCodecs.deflate(ValueCodecs.serializing(HashMap.class));
+        final HashMap<String, Object> value = new HashMap<String, Object>();
+        value.put("user", "jdoe");
+        value.put("roles", new ArrayList<String>(Arrays.asList("admin", "user")));
+        value.put("payload", largeValue(50));
+        Assert.assertEquals(value, codec.decode(codec.encode(value)));
+    }
+
+    @Test
+    public void storeTest() {
+        final IValueCodec<String> codec = ValueCodecs.deflate(ValueCodecs.STRING);
+        final IKeyvalWrite<Integer, String> writer = new CodecKeyvalWrite<Integer, String>(
+                new DefaultKeyvalWrite<Integer, byte[]>(meta, new DefaultJdbcWrite(), 0, Integer.class, byte[].class),
+                codec);
+        final IKeyvalRead<Integer, String> reader = new CodecKeyvalRead<Integer, String>(
+                new DefaultKeyvalRead<Integer, byte[]>(meta, Integer.class, byte[].class), codec);
+        final Map<Integer, String> pairs = new LinkedHashMap<Integer, String>();
+        pairs.put(1, "one");
+        pairs.put(2, largeValue(100));
+        pairs.put(3, largeValue(300));
+        dst.withConnectionNoResult(new IConnectionActivityNoResult() {
+            public void execute(Connection conn) {
+                final long version = writer.batchInsert(conn, pairs);
+                Assert.assertEquals(pairs, reader.batchRead(conn, Arrays.asList(1, 2, 3)));
+                Assert.assertEquals(pairs.get(2), reader.read(conn, 2));
+                final ValueVersion<String> vv = reader.readAll(conn, 3);
+                Assert.assertEquals(pairs.get(3), vv.getValue());
+                Assert.assertEquals(Long.valueOf(version), vv.getVersion());
+
+                final Long newVersion = writer.swap(conn, 1, "uno", version);
+                Assert.assertNotNull(newVersion);
+                Assert.assertEquals("uno", reader.readForVersion(conn, 1, newVersion));
+                writer.save(conn, 4, largeValue(20));
+                Assert.assertEquals(largeValue(20), reader.read(conn, 4));
+            }
+        });
+    }
+
+}
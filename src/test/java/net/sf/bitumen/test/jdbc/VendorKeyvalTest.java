@@ -0,0 +1,186 @@
+package net.sf.bitumen.test.jdbc;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import net.sf.bitumen.jdbc.impl.DefaultJdbcRead;
+import net.sf.bitumen.jdbc.impl.DefaultJdbcWrite;
+import net.sf.bitumen.jdbc.impl.IConnectionActivity;
+import net.sf.bitumen.jdbc.impl.JdbcUtil;
+import net.sf.bitumen.jdbc.kv.IKeyvalBulkLoad;
+import net.sf.bitumen.jdbc.kv.IKeyvalRead;
+import net.sf.bitumen.jdbc.kv.IKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalRead;
+import net.sf.bitumen.jdbc.kv.impl.vendor.H2KeyvalWrite;
+import net.sf.bitumen.jdbc.kv.impl.vendor.KeyvalWriters;
+import net.sf.bitumen.jdbc.kv.impl.vendor.KeyvalWriters.Dialect;
+import net.sf.bitumen.jdbc.kv.impl.vendor.PostgresKeyvalBulkLoad;
+import net.sf.bitumen.jdbc.kv.impl.vendor.PostgresKeyvalWrite;
+import net.sf.bitumen.test.helper.KeyvalTestBatch;
+import net.sf.bitumen.test.helper.KeyvalTestSingle;
+import net.sf.bitumen.test.helper.TestUtil;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class VendorKeyvalTest {
+
+    private static DataSource dataSource;
+    private static Dialect dialect;
+    private static KeyvalTestSingle opsTestSingle;
+    private static KeyvalTestBatch  opsTestBatch;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        dataSource = TestUtil.makeTestDataSource();
+        dialect = KeyvalWriters.detect(dataSource);
+        opsTestSingle = new KeyvalTestSingle(dataSource);
+        opsTestBatch  = new KeyvalTestBatch(dataSource);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        opsTestSingle = null;
+        opsTestBatch  = null;
+        dataSource = null;
+    }
+
+    final IKeyvalRead<Integer, String> reader = new DefaultKeyvalRead<Integer, String>(TestUtil.meta, Integer.class, String.class);
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.createTable(dataSource);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtil.dropTable(dataSource);
+    }
+
+    private IKeyvalWrite<Integer, String> vendorWriter() {
+        switch (dialect) {
+        case H2:
+            return new H2KeyvalWrite<Integer, String>(TestUtil.meta);
+        case POSTGRESQL:
+            return new PostgresKeyvalWrite<Integer, String>(TestUtil.meta);
+        default:
+            return null;
+        }
+    }
+
+    @Test
+    public void postgresMultiRowTest() {
+        if (dialect == Dialect.POSTGRESQL) {
+            System.out.println("Running postgresMultiRowTest()");
+            final IKeyvalWrite<Integer, String> writer = new PostgresKeyvalWrite<Integer, String>(TestUtil.meta,
+                    new DefaultJdbcWrite(), 2);
+            opsTestBatch.insertTest(writer, reader);
+            opsTestBatch.crudTest(writer, reader);
+        }
+    }
+
+    @Test
+    public void factoryTest() {
+        final IKeyvalWrite<Integer, String> writer = KeyvalWriters.create(dataSource, TestUtil.meta);
+        Assert.assertNotNull(writer);
+        if (vendorWriter() != null) {
+            Assert.assertEquals(vendorWriter().getClass(), writer.getClass());
+        }
+    }
+
+    @Test
+    public void vendorCrudTest() {
+        final IKeyvalWrite<Integer, String> writer = vendorWriter();
+        if (writer != null) {
+            System.out.println("Running vendorCrudTest() for " + dialect);
+            opsTestSingle.crudTest(writer, reader);
+            opsTestBatch.crudTest(writer, reader);
+        }
+    }
+
+    @Test
+    public void vendorVersionTest() {
+        final IKeyvalWrite<Integer, String> writer = vendorWriter();
+        if (writer != null) {
+            System.out.println("Running vendorVersionTest() for " + dialect);
+            opsTestSingle.versionTest(writer, reader);
+            opsTestBatch.versionTest(writer, reader);
+        }
+    }
+
+    @Test
+    public void vendorReadTest() {
+        final IKeyvalWrite<Integer, String> writer = vendorWriter();
+        if (writer != null) {
+            System.out.println("Running vendorReadTest() for " + dialect);
+            opsTestSingle.readTest(writer, reader);
+            opsTestBatch.readTest(writer, reader);
+        }
+    }
+
+    @Test
+    public void vendorSaveKeepsCreatedTest() {
+        final IKeyvalWrite<Integer, String> writer = vendorWriter();
+        if (writer != null) {
+            JdbcUtil.withConnection(dataSource, new IConnectionActivity<Void>() {
+                public Void execute(Connection conn) {
+                    final String sql = "SELECT created FROM session WHERE skey = ?";
+                    final List<Integer> params = Arrays.asList(1);
+                    writer.save(conn, 1, "abc");
+                    final Object created = new DefaultJdbcRead().queryForList(conn, sql, params).get(0);
+                    final long version = writer.save(conn, 1, "bcd");
+                    Assert.assertEquals(created, new DefaultJdbcRead().queryForList(conn, sql, params).get(0));
+                    Assert.assertEquals("bcd", reader.readForVersion(conn, 1, version));
+                    return null;
+                }
+            });
+        }
+    }
+
+    @Test
+    public void conditionalWriteTest() {
+        opsTestBatch.conditionalWriteTest(KeyvalWriters.<Integer, String>create(dataSource, TestUtil.meta),
+                KeyvalWriters.<Integer, String>createConditionalWrite(dataSource, TestUtil.meta, Integer.class), reader);
+    }
+
+    @Test
+    public void bulkLoadTest() {
+        final int count = 2500;
+        final Map<Integer, String> pairs = new LinkedHashMap<Integer, String>();
+        for (int i = 0; i < count; i++) {
+            pairs.put(i, i % 2 == 0 ? "value," + i : "\"quoted\" " + i);
+        }
+        final List<IKeyvalBulkLoad<Integer, String>> loaders = Arrays.asList(
+                KeyvalWriters.<Integer, String>createBulkLoad(dataSource, TestUtil.meta),
+                new PostgresKeyvalBulkLoad<Integer, String>(TestUtil.meta)); // falls back to batches unless Postgres
+        for (final IKeyvalBulkLoad<Integer, String> loader: loaders) {
+            TestUtil.deleteAll(opsTestSingle.dst);
+            final long version = opsTestSingle.dst.withConnection(new IConnectionActivity<Long>() {
+                public Long execute(Connection conn) {
+                    return loader.load(conn, pairs.entrySet().iterator());
+                }
+            });
+            final List<Integer> keys = new ArrayList<Integer>(pairs.keySet());
+            Assert.assertEquals(count, TestUtil.findRowCountForKeys(opsTestSingle.dst, keys));
+            opsTestSingle.dst.withConnection(new IConnectionActivity<Void>() {
+                public Void execute(Connection conn) {
+                    Assert.assertEquals(pairs, reader.batchRead(conn, keys));
+                    Assert.assertEquals(Collections.nCopies(count, version), reader.batchContains(conn, keys));
+                    return null;
+                }
+            });
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package net.sf.bitumen.test.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.sql.DataSource;
+
+import net.sf.bitumen.jdbc.impl.DataSourceTemplate;
+import net.sf.bitumen.jdbc.impl.IConnectionActivity;
+import net.sf.bitumen.jdbc.kv.IKeyvalRead;
+import net.sf.bitumen.jdbc.kv.IKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.ValueVersion;
+import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalRead;
+import net.sf.bitumen.jdbc.kv.impl.DefaultKeyvalWrite;
+import net.sf.bitumen.jdbc.kv.impl.WriteBehindKeyvalWrite;
+import net.sf.bitumen.test.helper.KeyvalTestBatch;
+import net.sf.bitumen.test.helper.KeyvalTestSingle;
+import net.sf.bitumen.test.helper.TestUtil;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class WriteBehindKeyvalTest {
+
+    private static DataSource dataSource;
+    private static KeyvalTestSingle opsTestSingle;
+    private static KeyvalTestBatch  opsTestBatch;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        dataSource = TestUtil.makeTestDataSource();
+        opsTestSingle = new KeyvalTestSingle(dataSource);
+        opsTestBatch = new KeyvalTestBatch(dataSource);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        opsTestSingle = null;
+        opsTestBatch = null;
+        dataSource = null;
+    }
+
+    WriteBehindKeyvalWrite<Integer, String> writer;
+    final IKeyvalRead<Integer, String> reader = new DefaultKeyvalRead<Integer, String>(TestUtil.meta, Integer.class, String.class);
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.createTable(dataSource);
+        writer = new WriteBehindKeyvalWrite<Integer, String>(new DefaultKeyvalWrite<Integer, String>(TestUtil.meta),
+                dataSource, 5, TimeUnit.MILLISECONDS, 2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        writer.close();
+        TestUtil.dropTable(dataSource);
+    }
+
+    @Test
+    public void writeBehindCrudTest() {
+        opsTestSingle.crudTest(writer, reader);
+    }
+
+    @Test
+    public void writeBehindBatchCrudTest() {
+        opsTestBatch.crudTest(writer, reader);
+    }
+
+    @Test
+    public void coalescingTest() throws InterruptedException, ExecutionException {
+        final WriteBehindKeyvalWrite<Integer, String> slowWriter = new WriteBehindKeyvalWrite<Integer, String>(
+                new DefaultKeyvalWrite<Integer, String>(TestUtil.meta), dataSource, 1, TimeUnit.HOURS, 100);
+        final Future<Long> first = slowWriter.saveAsync(1, "abc");
+        final Future<Long> second = slowWriter.saveAsync(1, "bcd");
+        slowWriter.saveAsync(2, "xyz");
+        Assert.assertEquals(1, slowWriter.getCoalescedCount());
+        Assert.assertEquals(2, slowWriter.getPendingCount());
+        Assert.assertFalse(first.isDone());
+
+        // flush on close
+        slowWriter.close();
+        Assert.assertEquals(first.get(), second.get());
+        Assert.assertEquals(1, slowWriter.getFlushCount());
+        final ValueVersion<String> vv = new DataSourceTemplate(dataSource).withConnection(
+                new IConnectionActivity<ValueVersion<String>>() {
+            public ValueVersion<String> execute(Connection conn) {
+                return reader.readAll(conn, 1);
+            }
+        });
+        Assert.assertEquals("bcd", vv.getValue());
+        Assert.assertEquals(first.get(), vv.getVersion());
+        Assert.assertEquals(2, TestUtil.findRowCountForKeys(opsTestSingle.dst, Arrays.asList(1, 2)));
+
+        boolean exception = false;
+        try {
+            slowWriter.saveAsync(3, "pqr");
+        } catch (IllegalStateException e) {
+            exception = true;
+        }
+        Assert.assertTrue(exception);
+    }
+
+    @Test
+    public void flushOnCallerConnectionTest() {
+        final WriteBehindKeyvalWrite<Integer, String> slowWriter = new WriteBehindKeyvalWrite<Integer, String>(
+                new DefaultKeyvalWrite<Integer, String>(TestUtil.meta), dataSource, 1, TimeUnit.HOURS, 100);
+        try {
+            final Future<Long> saved = slowWriter.saveAsync(1, "abc");
+            // the queued save is written on the caller's connection, within the caller's transaction
+            final Long touched = new DataSourceTemplate(dataSource).withTransaction(new IConnectionActivity<Long>() {
+                public Long execute(Connection conn) {
+                    return slowWriter.touch(conn, 1);
+                }
+            });
+            Assert.assertNotNull(touched);
+            Assert.assertTrue(saved.isDone());
+            Assert.assertEquals(0, slowWriter.getPendingCount());
+        } finally {
+            slowWriter.close();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void flusherErrorTest() throws InterruptedException {
+        final IKeyvalWrite<Integer, String> failing = (IKeyvalWrite<Integer, String>) Proxy.newProxyInstance(
+                IKeyvalWrite.class.getClassLoader(), new Class<?>[] {IKeyvalWrite.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        throw new AssertionError("flush failed");
+                    }
+                });
+        final WriteBehindKeyvalWrite<Integer, String> dyingWriter = new WriteBehindKeyvalWrite<Integer, String>(
+                failing, dataSource, 1, TimeUnit.MILLISECONDS, 1);
+        try {
+            final Future<Long> saved = dyingWriter.saveAsync(1, "abc");
+            try {
+                saved.get(10, TimeUnit.SECONDS);
+                Assert.fail("Expected ExecutionException");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof AssertionError);
+            } catch (TimeoutException e) {
+                Assert.fail("Expected flush to fail");
+            }
+            // no thread left to flush, so saving fails instead of blocking
+            for (int i = 0; i < 100; i++) {
+                try {
+                    dyingWriter.saveAsync(2 + i, "bcd");
+                } catch (IllegalStateException e) {
+                    Assert.assertTrue(e.getCause() instanceof AssertionError);
+                    return;
+                }
+                Thread.sleep(10);
+            }
+            Assert.fail("Expected IllegalStateException");
+        } finally {
+            dyingWriter.close();
+        }
+    }
+
+}